@@ -1,25 +1,39 @@
 package com.example.exam.config;
 
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * RabbitMQ Configuration for async snapshot processing
  * 
  * Architecture:
  * - Exchange: exam.events (topic)
- * - Queue: snapshot.process
- * - Routing Key: snapshot.uploaded
+ * - Queue: snapshot.process (live lane), snapshot.process.backlog (backlog lane)
+ * - Routing Key: snapshot.uploaded, snapshot.backlog
+ *
+ * Lanes: snapshots of ACTIVE sessions go to the live queue, everything else (ended sessions, requeued
+ * dead letters) to the backlog queue, each with its own consumers, so a large backlog never delays
+ * live incidents. See {@link Lane}.
  * 
  * Flow:
- * 1. IngestService uploads snapshot → publishes message
+ * 1. IngestService uploads snapshot → stages message in the outbox, SnapshotOutbox publishes it after commit
  * 2. Worker listens to queue → processes snapshot
  * 3. Worker updates face_count + creates incidents
+ *
+ * Retries (SnapshotRetryRouter): a failed message is acked and republished to a delay queue
+ * <lane queue>.retry.<delay>ms (per-queue TTL, dead-lettered back to the lane's routing key),
+ * one queue per lane and configured delay; after max-attempts it goes to snapshot.process.dlq instead.
  */
 @Configuration
 public class RabbitMQConfig {
@@ -27,6 +41,34 @@ public class RabbitMQConfig {
     public static final String EXCHANGE_NAME = "exam.events";
     public static final String QUEUE_NAME = "snapshot.process";
     public static final String ROUTING_KEY = "snapshot.uploaded";
+    public static final String BATCH_LISTENER_FACTORY = "snapshotBatchListenerFactory";
+    public static final String DEAD_LETTER_QUEUE = "snapshot.process.dlq";
+    public static final String DEAD_LETTER_ROUTING_KEY = "snapshot.dead";
+    public static final String BACKLOG_QUEUE_NAME = "snapshot.process.backlog";
+    public static final String BACKLOG_ROUTING_KEY = "snapshot.backlog";
+
+    /**
+     * Snapshot processing lane: its queue, the routing key that reaches it, and its delay queues
+     */
+    public enum Lane {
+        LIVE(QUEUE_NAME, ROUTING_KEY),
+        BACKLOG(BACKLOG_QUEUE_NAME, BACKLOG_ROUTING_KEY);
+
+        public final String queue;
+        public final String routingKey;
+
+        Lane(String queue, String routingKey) {
+            this.queue = queue;
+            this.routingKey = routingKey;
+        }
+
+        /**
+         * Name (and routing key) of this lane's delay queue for this delay
+         */
+        public String retryQueueName(long delayMs) {
+            return queue + ".retry." + delayMs + "ms";
+        }
+    }
 
     /**
      * Topic exchange for exam events
@@ -57,6 +99,62 @@ public class RabbitMQConfig {
                 .with(ROUTING_KEY);
     }
 
+    /**
+     * Backlog lane: snapshots nobody is waiting for live
+     */
+    @Bean
+    public Queue snapshotBacklogQueue() {
+        return QueueBuilder.durable(BACKLOG_QUEUE_NAME).build();
+    }
+
+    @Bean
+    public Binding snapshotBacklogBinding(Queue snapshotBacklogQueue, TopicExchange examEventsExchange) {
+        return BindingBuilder
+                .bind(snapshotBacklogQueue)
+                .to(examEventsExchange)
+                .with(BACKLOG_ROUTING_KEY);
+    }
+
+    /**
+     * Delay queues, one per lane and snapshot.worker.retry.delays-ms entry: messages wait out the queue's TTL
+     * and are dead-lettered back to their lane's routing key. Every message in a queue has the same TTL, so expiry
+     * is always at the head. The delay is part of the name, so changing the delays declares new queues
+     * instead of clashing with the arguments of existing ones.
+     */
+    @Bean
+    public Declarables snapshotRetryQueues(TopicExchange examEventsExchange,
+                                           @Value("${snapshot.worker.retry.delays-ms:1000,5000,30000,120000}") long[] delaysMs) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (Lane lane : Lane.values()) {
+            for (long delayMs : delaysMs) {
+                Queue queue = QueueBuilder.durable(lane.retryQueueName(delayMs))
+                        .ttl((int) delayMs)
+                        .deadLetterExchange(EXCHANGE_NAME)
+                        .deadLetterRoutingKey(lane.routingKey)
+                        .build();
+                declarables.add(queue);
+                declarables.add(BindingBuilder.bind(queue).to(examEventsExchange).with(queue.getName()));
+            }
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * Messages that failed max-attempts times; requeued by POST /api/admin/snapshots/dead-letters/requeue
+     */
+    @Bean
+    public Queue snapshotDeadLetterQueue() {
+        return QueueBuilder.durable(DEAD_LETTER_QUEUE).build();
+    }
+
+    @Bean
+    public Binding snapshotDeadLetterBinding(Queue snapshotDeadLetterQueue, TopicExchange examEventsExchange) {
+        return BindingBuilder
+                .bind(snapshotDeadLetterQueue)
+                .to(examEventsExchange)
+                .with(DEAD_LETTER_ROUTING_KEY);
+    }
+
     /**
      * JSON message converter for DTOs
      */
@@ -74,4 +172,30 @@ public class RabbitMQConfig {
         template.setMessageConverter(jsonMessageConverter());
         return template;
     }
+
+    /**
+     * Listener container factory for batch consumption (snapshot.worker.batch.enabled)
+     * Each listener call receives up to batch-size messages (consumerBatchEnabled); a partial
+     * batch is delivered once no message arrives for receive-timeout-ms.
+     * Prefetch is raised to at least batch-size so a consumer can fill a whole batch.
+     */
+    @Bean(name = BATCH_LISTENER_FACTORY)
+    public SimpleRabbitListenerContainerFactory snapshotBatchListenerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${snapshot.worker.batch.size:32}") int batchSize,
+            @Value("${snapshot.worker.batch.prefetch:64}") int prefetch,
+            @Value("${snapshot.worker.batch.concurrency:4}") int concurrency,
+            @Value("${snapshot.worker.batch.receive-timeout-ms:200}") long receiveTimeoutMs) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(concurrency);
+        factory.setReceiveTimeout(receiveTimeoutMs);
+        return factory;
+    }
 }
@@ -0,0 +1,44 @@
+package com.example.exam.config;
+
+import com.example.exam.service.IncidentFeed;
+import com.example.exam.service.SessionStatusCache;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Redis pub/sub between service nodes
+ *
+ * Channels:
+ * - session:status: session status changes, applied to every node's SessionStatusCache
+ *   (session.cache.redis-invalidation.enabled)
+ * - incidents:feed: new incidents, delivered to every node's IncidentFeed subscribers
+ *   (incidents.feed.redis-fanout.enabled)
+ *
+ * Only created when at least one of them is enabled, so single-node setups never open a
+ * subscription connection.
+ */
+@Configuration
+@ConditionalOnExpression("${session.cache.redis-invalidation.enabled:false} or ${incidents.feed.redis-fanout.enabled:false}")
+public class RedisPubSubConfig {
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                        SessionStatusCache sessionStatusCache,
+                                                                        IncidentFeed incidentFeed,
+                                                                        Environment environment) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        if (environment.getProperty("session.cache.redis-invalidation.enabled", Boolean.class, false)) {
+            container.addMessageListener(sessionStatusCache, new ChannelTopic(SessionStatusCache.CHANNEL));
+        }
+        if (environment.getProperty("incidents.feed.redis-fanout.enabled", Boolean.class, false)) {
+            container.addMessageListener(incidentFeed, new ChannelTopic(IncidentFeed.CHANNEL));
+        }
+        return container;
+    }
+}
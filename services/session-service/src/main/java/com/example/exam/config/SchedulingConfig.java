@@ -0,0 +1,12 @@
+package com.example.exam.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables @Scheduled background jobs (rule window maintenance, ...)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
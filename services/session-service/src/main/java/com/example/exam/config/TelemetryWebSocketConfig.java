@@ -0,0 +1,67 @@
+package com.example.exam.config;
+
+import com.example.exam.controller.TelemetryEndpoint;
+import com.example.exam.service.TelemetryHub;
+import jakarta.servlet.ServletContext;
+import jakarta.websocket.DeploymentException;
+import jakarta.websocket.server.ServerContainer;
+import jakarta.websocket.server.ServerEndpointConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.ServletContextAware;
+
+/**
+ * Registers the telemetry WebSocket endpoint with the servlet container (JSR 356, no STOMP/broker).
+ * Runs once all singletons exist, when the embedded container has already created its ServerContainer.
+ */
+@Configuration
+@ConditionalOnProperty(name = "telemetry.websocket.enabled", havingValue = "true")
+public class TelemetryWebSocketConfig implements ServletContextAware, SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryWebSocketConfig.class);
+
+    private final TelemetryHub hub;
+    private final int maxFrameBytes;
+    private final long idleTimeoutMs;
+    private ServletContext servletContext;
+
+    public TelemetryWebSocketConfig(TelemetryHub hub,
+                                    @Value("${telemetry.websocket.max-frame-bytes:65536}") int maxFrameBytes,
+                                    @Value("${telemetry.websocket.idle-timeout-ms:120000}") long idleTimeoutMs) {
+        this.hub = hub;
+        this.maxFrameBytes = maxFrameBytes;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    @Override
+    public void setServletContext(ServletContext servletContext) {
+        this.servletContext = servletContext;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        Object attr = servletContext == null ? null : servletContext.getAttribute(ServerContainer.class.getName());
+        if (!(attr instanceof ServerContainer container)) {
+            log.warn("No WebSocket ServerContainer available, telemetry endpoint not registered");
+            return;
+        }
+        var config = ServerEndpointConfig.Builder.create(TelemetryEndpoint.class, TelemetryEndpoint.PATH)
+                .configurator(new ServerEndpointConfig.Configurator() {
+                    @Override
+                    public <T> T getEndpointInstance(Class<T> endpointClass) {
+                        return endpointClass.cast(new TelemetryEndpoint(hub, maxFrameBytes, idleTimeoutMs));
+                    }
+                })
+                .build();
+        try {
+            container.addEndpoint(config);
+            log.info("Telemetry WebSocket endpoint registered at {}", TelemetryEndpoint.PATH);
+        } catch (DeploymentException e) {
+            throw new IllegalStateException("Could not register telemetry endpoint", e);
+        }
+    }
+}
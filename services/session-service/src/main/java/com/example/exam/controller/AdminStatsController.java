@@ -0,0 +1,52 @@
+package com.example.exam.controller;
+
+import com.example.exam.service.AdminStatsService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.NonNull;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Set;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/admin/stats")
+@Tag(name = "Stats", description = "Dashboard counters maintained in memory and reconciled with the database")
+public class AdminStatsController {
+
+    private final AdminStatsService stats;
+
+    public AdminStatsController(AdminStatsService stats) {
+        this.stats = stats;
+    }
+
+    @GetMapping
+    @Operation(summary = "Active sessions, open review backlog, events per minute and incidents by type and status (ADMIN only)")
+    public ResponseEntity<AdminStatsService.Overview> overview() {
+        return ResponseEntity.ok(stats.overview());
+    }
+
+    @GetMapping("/exams")
+    @Operation(summary = "Ids of exams with sessions or incidents (ADMIN only)")
+    public ResponseEntity<Set<UUID>> exams() {
+        return ResponseEntity.ok(stats.exams());
+    }
+
+    @GetMapping("/exams/{examId}")
+    @Operation(summary = "Active sessions, open review backlog and incidents by type and status for one exam (ADMIN only)")
+    public ResponseEntity<AdminStatsService.ExamStats> exam(@PathVariable("examId") @NonNull UUID examId) {
+        return ResponseEntity.ok(stats.exam(examId));
+    }
+
+    @PostMapping("/reconcile")
+    @Operation(summary = "Recompute the counters from the database now instead of at the next interval (ADMIN only)")
+    public ResponseEntity<AdminStatsService.Overview> reconcile() {
+        stats.reconcile();
+        return ResponseEntity.ok(stats.overview());
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.exam.controller;
+
+import com.example.exam.dto.EventImportDto;
+import com.example.exam.service.EventImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/admin/events")
+@Tag(name = "Events")
+public class EventImportController {
+
+    static final String NDJSON = "application/x-ndjson";
+
+    private final EventImportService importService;
+
+    public EventImportController(EventImportService importService) {
+        this.importService = importService;
+    }
+
+    @PostMapping(value = "/import", consumes = {NDJSON, "text/csv"})
+    @Operation(summary = "Bulk import offline/replayed events via COPY (ADMIN only)",
+            description = "NDJSON: one EventIngestDto.EventItem object per line. CSV: session_id,ts,event_type," +
+                    "details,idempotency_key with an optional header. Deduplicated like ingest; rows with an " +
+                    "unknown session or invalid field are counted as rejected")
+    public ResponseEntity<EventImportDto.Result> importEvents(HttpServletRequest request) throws IOException {
+        var format = MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.valueOf("text/csv"))
+                ? EventImportService.Format.CSV
+                : EventImportService.Format.NDJSON;
+        return ResponseEntity.ok(importService.importEvents(request.getInputStream(), format));
+    }
+}
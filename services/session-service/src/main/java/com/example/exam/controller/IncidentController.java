@@ -1,21 +1,31 @@
 package com.example.exam.controller;
 
+import com.example.exam.dto.CursorPage;
 import com.example.exam.dto.IncidentDto;
 import com.example.exam.model.Incident;
 import com.example.exam.model.IncidentStatus;
 import com.example.exam.repository.IncidentRepository;
 import com.example.exam.repository.SessionRepository;
+import com.example.exam.service.AdminStatsService;
+import com.example.exam.service.IncidentFeed;
+import com.example.exam.service.IncidentRaised;
+import com.example.exam.util.PageCursor;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -26,10 +36,27 @@ public class IncidentController {
 
     private final IncidentRepository incidentRepository;
     private final SessionRepository sessionRepository;
+    private final AdminStatsService adminStats;
+    private final IncidentFeed incidentFeed;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int defaultLimit;
+    private final int maxLimit;
+    private final int maxUnpaged;
 
-    public IncidentController(IncidentRepository incidentRepository, SessionRepository sessionRepository) {
+    public IncidentController(IncidentRepository incidentRepository, SessionRepository sessionRepository,
+                              AdminStatsService adminStats, IncidentFeed incidentFeed,
+                              ApplicationEventPublisher eventPublisher,
+                              @Value("${pagination.default-limit:50}") int defaultLimit,
+                              @Value("${pagination.max-limit:500}") int maxLimit,
+                              @Value("${pagination.max-unpaged:1000}") int maxUnpaged) {
         this.incidentRepository = incidentRepository;
         this.sessionRepository = sessionRepository;
+        this.adminStats = adminStats;
+        this.incidentFeed = incidentFeed;
+        this.eventPublisher = eventPublisher;
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+        this.maxUnpaged = maxUnpaged;
     }
 
     @PostMapping
@@ -51,36 +78,52 @@ public class IncidentController {
         entity.setCreatedAt(Instant.now());
 
         Incident saved = incidentRepository.save(entity);
+        adminStats.incidentsCreated(List.of(saved));
+        eventPublisher.publishEvent(new IncidentRaised(saved));
         return ResponseEntity.ok(IncidentDto.Response.from(saved));
     }
 
     @GetMapping
-    @Operation(summary = "List incidents, optionally by sessionId with pagination & sort")
+    @Operation(summary = "List incidents, optionally by sessionId, with keyset (cursor) or offset pagination",
+            description = "cursor/limit: keyset pages, newest first (by session: oldest first), with nextCursor. " +
+                    "page/size/sort: offset pages (legacy). No paging params: a plain list, capped; " +
+                    "X-Next-Cursor is set when rows were left out.")
     public ResponseEntity<?> list(
             @RequestParam(value = "sessionId", required = false) UUID sessionId,
             @RequestParam(value = "page", required = false) Integer page,
             @RequestParam(value = "size", required = false) Integer size,
-            @RequestParam(value = "sort", required = false) String sort
+            @RequestParam(value = "sort", required = false) String sort,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "includeTotal", defaultValue = "false") boolean includeTotal
     ) {
-        // Backward-compatible path (no pagination params): keep previous behavior and ordering
+        // Keyset path: the cost of a page does not depend on how deep it is
+        if (cursor != null || limit != null) {
+            int n = CursorPage.limit(limit, defaultLimit, maxLimit);
+            Long total = includeTotal
+                    ? (sessionId == null ? incidentRepository.count() : incidentRepository.countBySessionId(sessionId))
+                    : null;
+            return ResponseEntity.ok(CursorPage.of(findPage(sessionId, cursor, n), n,
+                    IncidentController::cursorOf, IncidentDto.Response::from, total));
+        }
+
+        // Backward-compatible path (no pagination params): same list and ordering, but bounded
         if (page == null && size == null && sort == null) {
-            if (sessionId == null) {
-                var incidents = incidentRepository.findAll();
-                return ResponseEntity.ok(incidents.stream().map(IncidentDto.Response::from).toList());
-            } else {
-                var incidents = incidentRepository.findBySessionIdOrderByTsAsc(sessionId);
-                return ResponseEntity.ok(incidents.stream().map(IncidentDto.Response::from).toList());
-            }
+            var rows = findPage(sessionId, null, maxUnpaged);
+            var data = CursorPage.of(rows, maxUnpaged, IncidentController::cursorOf, IncidentDto.Response::from, null);
+            var response = ResponseEntity.ok();
+            if (data.nextCursor() != null) response.header(CursorPage.NEXT_CURSOR_HEADER, data.nextCursor());
+            return response.body(data.items());
         }
 
-        // New pagination path
+        // Offset pagination path
         String sortExpr = (sort == null || sort.isBlank()) ? "ts,desc" : sort;
         String[] sortParts = sortExpr.split(",");
         String sortProp = sortParts[0];
         Sort.Direction dir = (sortParts.length > 1 && sortParts[1].equalsIgnoreCase("asc")) ? Sort.Direction.ASC : Sort.Direction.DESC;
 
         int p = (page == null) ? 0 : page;
-        int s = (size == null) ? 20 : size;
+        int s = (size == null) ? 20 : Math.min(size, maxLimit);
         Pageable pageable = PageRequest.of(p, s, Sort.by(dir, sortProp));
 
         if (sessionId == null) {
@@ -92,6 +135,15 @@ public class IncidentController {
         }
     }
 
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Live feed of new incidents (server-sent events), optionally for one exam or session",
+            description = "Event \"incident\": one new incident, with examId. Event \"dropped\": this many incidents " +
+                    "were skipped because the client fell behind; re-read GET /api/incidents to catch up.")
+    public SseEmitter stream(@RequestParam(value = "examId", required = false) UUID examId,
+                             @RequestParam(value = "sessionId", required = false) UUID sessionId) {
+        return incidentFeed.subscribe(examId, sessionId);
+    }
+
     @GetMapping("/{id}")
     @Operation(summary = "Get incident by id")
     public ResponseEntity<IncidentDto.Response> get(@PathVariable("id") UUID id) {
@@ -99,4 +151,20 @@ public class IncidentController {
         return opt.map(incident -> ResponseEntity.ok(IncidentDto.Response.from(incident)))
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
+
+    /**
+     * Up to limit + 1 incidents after the cursor: all incidents newest first, one session's oldest first
+     */
+    private List<Incident> findPage(UUID sessionId, String cursor, int limit) {
+        if (sessionId == null) {
+            PageCursor after = PageCursor.decode(cursor, PageCursor.FIRST_DESC);
+            return incidentRepository.findPageBefore(after.key(), after.id(), limit + 1);
+        }
+        PageCursor after = PageCursor.decode(cursor, PageCursor.FIRST_ASC);
+        return incidentRepository.findSessionPageAfter(sessionId, after.key(), after.id(), limit + 1);
+    }
+
+    private static String cursorOf(Incident incident) {
+        return new PageCursor(incident.getTs(), incident.getId()).encode();
+    }
 }
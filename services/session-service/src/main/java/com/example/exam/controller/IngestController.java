@@ -3,13 +3,24 @@ package com.example.exam.controller;
 import com.example.exam.dto.EventIngestDto;
 import com.example.exam.dto.SnapshotIngestDto;
 import com.example.exam.dto.SnapshotUploadDto;
+import com.example.exam.service.EventBinaryCodec;
+import com.example.exam.service.EventStreamIngestService;
+import com.example.exam.service.EventWriteBuffer;
 import com.example.exam.service.IngestService;
 import com.example.exam.service.MediaStorageService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
 import java.util.UUID;
@@ -17,21 +28,72 @@ import java.util.UUID;
 @RestController
 @RequestMapping("/api/ingest")
 public class IngestController {
+    static final String NDJSON = "application/x-ndjson";
+
     private final IngestService ingestService;
     private final MediaStorageService mediaStorageService;
+    private final EventWriteBuffer eventWriteBuffer;
+    private final EventStreamIngestService eventStreamIngestService;
+    private final int maxBinaryBytes;
 
-    public IngestController(IngestService ingestService, MediaStorageService mediaStorageService) {
+    public IngestController(IngestService ingestService, MediaStorageService mediaStorageService,
+                            EventWriteBuffer eventWriteBuffer, EventStreamIngestService eventStreamIngestService,
+                            @Value("${ingest.events.binary.max-bytes:8388608}") int maxBinaryBytes) {
         this.ingestService = ingestService;
         this.mediaStorageService = mediaStorageService;
+        this.eventWriteBuffer = eventWriteBuffer;
+        this.eventStreamIngestService = eventStreamIngestService;
+        this.maxBinaryBytes = maxBinaryBytes;
     }
 
     @PostMapping("/events")
-    @Operation(summary = "Ingest events (idempotent)")
-    public ResponseEntity<EventIngestDto.Result> ingestEvents(@Valid @RequestBody EventIngestDto.Request request) {
+    @Operation(summary = "Ingest events (idempotent)",
+            description = "With write-behind enabled returns 202 once buffered (429 when the buffer is full, 413 " +
+                    "for more events than it holds); " +
+                    "ack=flush waits for the group commit and returns the usual result")
+    public ResponseEntity<EventIngestDto.Result> ingestEvents(
+            @Valid @RequestBody EventIngestDto.Request request,
+            @RequestParam(value = "ack", required = false) String ack) {
+        return ingest(request, ack);
+    }
+
+    @PostMapping(value = "/events", consumes = EventBinaryCodec.MEDIA_TYPE)
+    @Operation(summary = "Ingest events in the compact binary encoding (idempotent)",
+            description = "Same semantics and response as the JSON variant; layout documented on EventBinaryCodec. " +
+                    "413 past ingest.events.binary.max-bytes")
+    public ResponseEntity<EventIngestDto.Result> ingestEventsBinary(
+            HttpServletRequest request,
+            @RequestParam(value = "ack", required = false) String ack) throws IOException {
+        byte[] body = request.getInputStream().readNBytes(maxBinaryBytes + 1);
+        if (body.length > maxBinaryBytes) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Binary event batch exceeds " + maxBinaryBytes + " bytes");
+        }
+        return ingest(EventBinaryCodec.decode(body).toRequest(), ack);
+    }
+
+    private ResponseEntity<EventIngestDto.Result> ingest(EventIngestDto.Request request, String ack) {
+        if (eventWriteBuffer.isEnabled()) {
+            var pending = eventWriteBuffer.submit(request);
+            if (eventWriteBuffer.waitForFlush(ack)) {
+                var flushed = eventWriteBuffer.await(pending);
+                if (flushed != null) return ResponseEntity.ok(flushed);
+            }
+            return ResponseEntity.accepted().build();
+        }
         var result = ingestService.ingestEvents(request);
         return ResponseEntity.ok(result);
     }
 
+    @PostMapping(value = "/events", consumes = NDJSON)
+    @Operation(summary = "Stream events as NDJSON, one item per line (idempotent)",
+            description = "Events are committed in chunks while the body is still arriving; the response streams " +
+                    "one ack line per chunk (ids aligned with the input lines, null = skipped) and a final summary line")
+    public void ingestEventStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        eventStreamIngestService.ingest(request.getInputStream(), response.getOutputStream());
+    }
+
     @PostMapping("/snapshots")
     @Operation(summary = "Ingest media snapshots (idempotent)")
     public ResponseEntity<SnapshotIngestDto.Result> ingestSnapshots(@Valid @RequestBody SnapshotIngestDto.Request request) {
@@ -50,15 +112,16 @@ public class IngestController {
         String idempotencyKey = sessionId + "-snapshot-" + ts;
         
         // Store file to disk
-        String objectKey = mediaStorageService.storeFile(file);
+        var stored = mediaStorageService.storeFile(file, sessionId, ts);
         
         // Prepare ingest request
         var item = new SnapshotIngestDto.Item();
         item.sessionId = sessionId;
         item.ts = ts;
-        item.objectKey = objectKey;
-        item.fileSize = file.getSize();
+        item.objectKey = stored.objectKey();
+        item.fileSize = stored.size();
         item.mimeType = file.getContentType();
+        item.contentHash = stored.contentHash();
         item.faceCount = null; // will be set by worker later
         item.idempotencyKey = idempotencyKey;
         
@@ -75,11 +138,49 @@ public class IngestController {
         ));
     }
 
-    @PostMapping("/snapshots/upload-base64")
-    @Operation(summary = "Upload snapshots as base64 and ingest (legacy, writes to disk, idempotent)")
-    public ResponseEntity<SnapshotUploadDto.Result> uploadSnapshotsBase64(@Valid @RequestBody SnapshotUploadDto.Request request) {
+    @PostMapping(value = "/snapshots/stream",
+            consumes = {MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    @Operation(summary = "Upload one snapshot as the raw request body (streamed to disk, idempotent)",
+            description = "The body is written straight to storage through a fixed-size buffer; " +
+                    "413 once it exceeds media.upload.max-bytes. Returns size and SHA-256 of the stored file.")
+    public ResponseEntity<SnapshotUploadDto.StreamResult> uploadSnapshotStream(
+            @RequestParam("sessionId") UUID sessionId,
+            @RequestParam("ts") Long ts,
+            @RequestParam(value = "idempotencyKey", required = false) String idempotencyKey,
+            HttpServletRequest request
+    ) throws IOException {
+        MediaType contentType = MediaType.parseMediaType(request.getContentType());
+        String mime = contentType.getType() + "/" + contentType.getSubtype();
+        var stored = mediaStorageService.storeStream(request.getInputStream(), request.getContentLengthLong(),
+                mime, sessionId, ts);
+
+        var item = new SnapshotIngestDto.Item();
+        item.sessionId = sessionId;
+        item.ts = ts;
+        item.objectKey = stored.objectKey();
+        item.fileSize = stored.size();
+        item.mimeType = mime;
+        item.contentHash = stored.contentHash();
+        item.faceCount = null; // will be set by worker later
+        item.idempotencyKey = idempotencyKey != null ? idempotencyKey : sessionId + "-snapshot-" + ts;
+
+        var ingestReq = new SnapshotIngestDto.Request();
+        ingestReq.items = java.util.List.of(item);
+        var ingestResult = ingestService.ingestSnapshots(ingestReq);
+
+        return ResponseEntity.ok(new SnapshotUploadDto.StreamResult(
+                new SnapshotUploadDto.Result(ingestResult.created, ingestResult.duplicates, ingestResult.ids),
+                stored.objectKey(), stored.size(), stored.sha256()));
+    }
+
+    @PostMapping(value = "/snapshots/upload-base64", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Upload snapshots as base64 and ingest (legacy, writes to disk, idempotent)",
+            description = "The body is parsed and decoded as a stream; images go straight to disk.",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(content = @Content(
+                    schema = @Schema(implementation = SnapshotUploadDto.Request.class))))
+    public ResponseEntity<SnapshotUploadDto.Result> uploadSnapshotsBase64(HttpServletRequest request) throws IOException {
         // Store images to disk and transform to SnapshotIngestDto to reuse existing path
-        var ingestReq = mediaStorageService.prepareIngestRequest(request);
+        var ingestReq = mediaStorageService.prepareIngestRequest(request.getInputStream());
         var ingestResult = ingestService.ingestSnapshots(ingestReq);
         return ResponseEntity.ok(new SnapshotUploadDto.Result(ingestResult.created, ingestResult.duplicates, ingestResult.ids));
     }
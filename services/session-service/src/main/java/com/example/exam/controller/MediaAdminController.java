@@ -0,0 +1,49 @@
+package com.example.exam.controller;
+
+import com.example.exam.repository.MediaBlobRepository;
+import com.example.exam.repository.MediaSnapshotRepository;
+import com.example.exam.service.MediaDedupStats;
+import com.example.exam.service.MediaStorageService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/media")
+@Tag(name = "Media")
+public class MediaAdminController {
+
+    private final MediaStorageService storage;
+    private final MediaDedupStats dedupStats;
+    private final MediaBlobRepository blobRepository;
+    private final MediaSnapshotRepository snapshotRepository;
+
+    public MediaAdminController(MediaStorageService storage, MediaDedupStats dedupStats,
+                                MediaBlobRepository blobRepository, MediaSnapshotRepository snapshotRepository) {
+        this.storage = storage;
+        this.dedupStats = dedupStats;
+        this.blobRepository = blobRepository;
+        this.snapshotRepository = snapshotRepository;
+    }
+
+    @GetMapping("/dedup-stats")
+    @Operation(summary = "Snapshot deduplication rate: since startup and over everything stored (ADMIN only)")
+    public ResponseEntity<Map<String, Object>> dedupStats() {
+        long snapshots = snapshotRepository.countByContentHashIsNotNull();
+        long blobs = blobRepository.countBlobs();
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("contentAddressed", storage.isContentAddressed());
+        body.put("sinceStartup", dedupStats.snapshot());
+        body.put("hashedSnapshots", snapshots);
+        body.put("storedObjects", blobs);
+        body.put("storedDuplicateRate", snapshots == 0 ? 0.0 : 1.0 - (double) blobs / snapshots);
+        return ResponseEntity.ok(body);
+    }
+}
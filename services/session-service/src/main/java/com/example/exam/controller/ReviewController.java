@@ -1,9 +1,11 @@
 package com.example.exam.controller;
 
 import com.example.exam.dto.ReviewDto;
+import com.example.exam.model.Incident;
 import com.example.exam.model.Review;
 import com.example.exam.repository.IncidentRepository;
 import com.example.exam.repository.ReviewRepository;
+import com.example.exam.service.AdminStatsService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
@@ -21,10 +23,13 @@ public class ReviewController {
 
     private final ReviewRepository reviewRepository;
     private final IncidentRepository incidentRepository;
+    private final AdminStatsService adminStats;
 
-    public ReviewController(ReviewRepository reviewRepository, IncidentRepository incidentRepository) {
+    public ReviewController(ReviewRepository reviewRepository, IncidentRepository incidentRepository,
+                            AdminStatsService adminStats) {
         this.reviewRepository = reviewRepository;
         this.incidentRepository = incidentRepository;
+        this.adminStats = adminStats;
     }
 
     @PostMapping
@@ -32,7 +37,8 @@ public class ReviewController {
     public ResponseEntity<?> create(@Valid @RequestBody ReviewDto.CreateRequest req) {
         // Ensure incident exists
         UUID incidentId = java.util.Objects.requireNonNull(req.incidentId);
-        if (!incidentRepository.existsById(incidentId)) {
+        Optional<Incident> incident = incidentRepository.findById(incidentId);
+        if (incident.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
         // Enforce one review per incident
@@ -61,6 +67,7 @@ public class ReviewController {
         r.setNote(req.note);
         r.setReviewedAt(Instant.now());
         Review saved = reviewRepository.save(r);
+        adminStats.incidentReviewed(incident.get(), saved.getStatus());
         return ResponseEntity.ok(ReviewDto.Response.from(saved));
     }
 
@@ -0,0 +1,100 @@
+package com.example.exam.controller;
+
+import com.example.exam.dto.RuleDefinitionDto;
+import com.example.exam.model.RuleDefinition;
+import com.example.exam.repository.RuleDefinitionRepository;
+import com.example.exam.service.CompiledRule;
+import com.example.exam.service.RuleDefinitionRegistry;
+import com.example.exam.service.RuleService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/admin/rules")
+@Tag(name = "Rules")
+public class RuleDefinitionController {
+
+    private final RuleDefinitionRepository ruleDefinitionRepository;
+    private final RuleDefinitionRegistry registry;
+    private final RuleService ruleService;
+
+    public RuleDefinitionController(RuleDefinitionRepository ruleDefinitionRepository, RuleDefinitionRegistry registry,
+                                    RuleService ruleService) {
+        this.ruleDefinitionRepository = ruleDefinitionRepository;
+        this.registry = registry;
+        this.ruleService = ruleService;
+    }
+
+    @GetMapping
+    @Operation(summary = "List rule definitions, optionally for one exam (ADMIN only)")
+    public ResponseEntity<List<RuleDefinitionDto.Response>> list(@RequestParam(value = "examId", required = false) UUID examId) {
+        var rules = examId == null ? ruleDefinitionRepository.findAll() : ruleDefinitionRepository.findByExamIdOrderByEventTypeAsc(examId);
+        return ResponseEntity.ok(rules.stream().map(RuleDefinitionDto.Response::from).toList());
+    }
+
+    @PostMapping
+    @Operation(summary = "Create a rule definition and apply it immediately (ADMIN only)")
+    public ResponseEntity<RuleDefinitionDto.Response> create(@Valid @RequestBody RuleDefinitionDto.Request req) {
+        RuleDefinition saved = save(new RuleDefinition(), req);
+        return ResponseEntity.ok(RuleDefinitionDto.Response.from(saved));
+    }
+
+    @PutMapping("/{id}")
+    @Operation(summary = "Update a rule definition and apply it immediately (ADMIN only)")
+    public ResponseEntity<RuleDefinitionDto.Response> update(@PathVariable("id") UUID id,
+                                                             @Valid @RequestBody RuleDefinitionDto.Request req) {
+        return ruleDefinitionRepository.findById(Objects.requireNonNull(id))
+                .map(existing -> ResponseEntity.ok(RuleDefinitionDto.Response.from(save(existing, req))))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @DeleteMapping("/{id}")
+    @Operation(summary = "Delete a rule definition (ADMIN only)")
+    public ResponseEntity<Void> delete(@PathVariable("id") UUID id) {
+        if (!ruleDefinitionRepository.existsById(Objects.requireNonNull(id))) {
+            return ResponseEntity.notFound().build();
+        }
+        ruleDefinitionRepository.deleteById(id);
+        registry.reload();
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/evaluation")
+    @Operation(summary = "Rule evaluation lag: queued batches, oldest wait and last commit-to-evaluation delay (ADMIN only)")
+    public ResponseEntity<RuleService.EvaluationStats> evaluation() {
+        return ResponseEntity.ok(ruleService.evaluationStats());
+    }
+
+    @PostMapping("/reload")
+    @Operation(summary = "Recompile rules from the database now (ADMIN only)")
+    public ResponseEntity<Map<String, Integer>> reload() {
+        return ResponseEntity.ok(Map.of("rules", registry.reload()));
+    }
+
+    private RuleDefinition save(RuleDefinition d, RuleDefinitionDto.Request req) {
+        d.setExamId(req.examId);
+        d.setEventType(req.eventType);
+        d.setIncidentType(req.incidentType);
+        d.setWindowSeconds(req.windowSeconds);
+        d.setThreshold(req.threshold);
+        d.setScoreBase(req.scoreBase);
+        d.setScoreSpan(req.scoreSpan);
+        d.setReasonTemplate(req.reasonTemplate);
+        d.setEnabled(req.enabled == null || req.enabled);
+        d.setUpdatedAt(Instant.now());
+        // Compile before saving so an invalid definition is rejected (400) instead of breaking the next reload
+        CompiledRule.from(d).reason(req.threshold + 1);
+        RuleDefinition saved = ruleDefinitionRepository.save(d);
+        registry.reload();
+        return saved;
+    }
+}
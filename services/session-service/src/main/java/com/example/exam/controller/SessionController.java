@@ -1,11 +1,21 @@
 package com.example.exam.controller;
 
+import com.example.exam.dto.CursorPage;
+import com.example.exam.dto.EventDto;
 import com.example.exam.dto.SessionResponse;
 import com.example.exam.dto.StartSessionRequest;
+import com.example.exam.model.Event;
 import com.example.exam.model.Session;
 import com.example.exam.model.SessionStatus;
+import com.example.exam.repository.EventRepository;
 import com.example.exam.repository.SessionRepository;
+import com.example.exam.service.AdminStatsService;
+import com.example.exam.service.RuleWindowStore;
+import com.example.exam.service.SessionStatusCache;
+import com.example.exam.service.SessionTimeline;
+import com.example.exam.util.PageCursor;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -20,9 +30,30 @@ import org.springframework.lang.NonNull;
 public class SessionController {
 
     private final SessionRepository sessionRepository;
+    private final SessionStatusCache sessionCache;
+    private final AdminStatsService adminStats;
+    private final EventRepository eventRepository;
+    private final RuleWindowStore ruleWindows;
+    private final SessionTimeline timeline;
+    private final int defaultLimit;
+    private final int maxLimit;
+    private final int maxUnpaged;
 
-    public SessionController(SessionRepository sessionRepository) {
+    public SessionController(SessionRepository sessionRepository, SessionStatusCache sessionCache,
+                             AdminStatsService adminStats, EventRepository eventRepository,
+                             SessionTimeline timeline, RuleWindowStore ruleWindows,
+                             @Value("${pagination.default-limit:50}") int defaultLimit,
+                             @Value("${pagination.max-limit:500}") int maxLimit,
+                             @Value("${pagination.max-unpaged:1000}") int maxUnpaged) {
         this.sessionRepository = sessionRepository;
+        this.sessionCache = sessionCache;
+        this.adminStats = adminStats;
+        this.eventRepository = eventRepository;
+        this.ruleWindows = ruleWindows;
+        this.timeline = timeline;
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+        this.maxUnpaged = maxUnpaged;
     }
 
     // Start a session
@@ -39,18 +70,36 @@ public class SessionController {
         s.setStartedAt(Instant.now());
         s.setStatus(SessionStatus.ACTIVE);
         Session saved = sessionRepository.save(s);
+        sessionCache.sessionStarted(saved.getId());
+        adminStats.sessionStarted(saved.getId(), saved.getExamId());
         return ResponseEntity.ok(SessionResponse.from(saved));
     }
 
-    // List sessions (simple pagination later)
+    // List sessions, most recently started first
     @GetMapping
     @io.swagger.v3.oas.annotations.Operation(
         summary = "List sessions",
-        description = "Returns all sessions (pagination to be added later)"
+        description = "cursor/limit: keyset pages with nextCursor (optionally by examId, includeTotal=true adds the count). " +
+                "No paging params: a plain list, capped; X-Next-Cursor is set when sessions were left out."
     )
-    public ResponseEntity<List<SessionResponse>> listSessions() {
-        List<SessionResponse> data = sessionRepository.findAll().stream().map(SessionResponse::from).toList();
-        return ResponseEntity.ok(data);
+    public ResponseEntity<?> listSessions(
+            @RequestParam(value = "examId", required = false) UUID examId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "includeTotal", defaultValue = "false") boolean includeTotal) {
+        if (cursor == null && limit == null) {
+            var data = CursorPage.of(findPage(examId, null, maxUnpaged), maxUnpaged,
+                    SessionController::cursorOf, SessionResponse::from, null);
+            var response = ResponseEntity.ok();
+            if (data.nextCursor() != null) response.header(CursorPage.NEXT_CURSOR_HEADER, data.nextCursor());
+            return response.body(data.items());
+        }
+        int n = CursorPage.limit(limit, defaultLimit, maxLimit);
+        Long total = includeTotal
+                ? (examId == null ? sessionRepository.count() : sessionRepository.countByExamId(examId))
+                : null;
+        return ResponseEntity.ok(CursorPage.of(findPage(examId, cursor, n), n,
+                SessionController::cursorOf, SessionResponse::from, total));
     }
 
     // Get session by id
@@ -75,12 +124,54 @@ public class SessionController {
         Optional<Session> maybe = sessionRepository.findById(id);
         if (maybe.isEmpty()) return ResponseEntity.notFound().build();
         Session s = maybe.get();
+        SessionStatus previous = s.getStatus();
         s.setEndedAt(Instant.now());
         s.setStatus(SessionStatus.ENDED);
         Session saved = sessionRepository.save(s);
+        sessionCache.sessionEnded(saved.getId(), SessionStatus.ENDED);
+        adminStats.sessionEnded(saved.getId(), saved.getExamId(), previous);
+        ruleWindows.forget(saved.getId());
         return ResponseEntity.ok(SessionResponse.from(saved));
     }
 
+    // Events of a session, oldest first
+    @GetMapping("/{id}/events")
+    @io.swagger.v3.oas.annotations.Operation(
+        summary = "List a session's events",
+        description = "Keyset pages ordered by (ts, id); pass nextCursor back as cursor for the next page"
+    )
+    public ResponseEntity<CursorPage<EventDto.Response>> listEvents(
+            @PathVariable("id") @NonNull UUID id,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "includeTotal", defaultValue = "false") boolean includeTotal) {
+        int n = CursorPage.limit(limit, defaultLimit, maxLimit);
+        PageCursor after = PageCursor.decode(cursor, PageCursor.FIRST_ASC);
+        List<Event> rows = eventRepository.findSessionPageAfter(id, after.key(), after.id(), n + 1);
+        // Only an empty first page needs to tell "no events" from "no session"
+        if (rows.isEmpty() && cursor == null && !sessionRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        Long total = includeTotal ? eventRepository.countBySessionId(id) : null;
+        return ResponseEntity.ok(CursorPage.of(rows, n,
+                e -> new PageCursor(e.getTs(), e.getId()).encode(), EventDto.Response::from, total));
+    }
+
+    // Per-minute counts of a session, for the review page
+    @GetMapping("/{id}/timeline")
+    @io.swagger.v3.oas.annotations.Operation(
+        summary = "Get a session's timeline",
+        description = "Events by type, snapshots by face count and incidents by type per minute, oldest first; " +
+                      "only minutes with activity are listed"
+    )
+    public ResponseEntity<List<SessionTimeline.Minute>> getTimeline(@PathVariable("id") @NonNull UUID id) {
+        List<SessionTimeline.Minute> minutes = timeline.timeline(id);
+        if (minutes.isEmpty() && !sessionRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(minutes);
+    }
+
     // Get all sessions for a specific user
     @GetMapping("/user/{userId}")
     @io.swagger.v3.oas.annotations.Operation(
@@ -88,15 +179,24 @@ public class SessionController {
         description = "Returns all sessions for a specific user, ordered by started_at descending"
     )
     public ResponseEntity<List<SessionResponse>> getSessionsByUser(@PathVariable("userId") @NonNull String userId) {
-        try {
-            List<SessionResponse> sessions = sessionRepository.findByUserIdOrderByStartedAtDesc(userId)
-                    .stream()
-                    .map(SessionResponse::from)
-                    .toList();
-            return ResponseEntity.ok(sessions);
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw e;
-        }
+        List<SessionResponse> sessions = sessionRepository.findByUserIdOrderByStartedAtDesc(userId)
+                .stream()
+                .map(SessionResponse::from)
+                .toList();
+        return ResponseEntity.ok(sessions);
+    }
+
+    /**
+     * Up to limit + 1 sessions after the cursor, most recently started first
+     */
+    private List<Session> findPage(UUID examId, String cursor, int limit) {
+        PageCursor after = PageCursor.decode(cursor, PageCursor.LATEST);
+        return examId == null
+                ? sessionRepository.findPageBefore(after.instantKey(), after.id(), limit + 1)
+                : sessionRepository.findExamPageBefore(examId, after.instantKey(), after.id(), limit + 1);
+    }
+
+    private static String cursorOf(Session session) {
+        return PageCursor.of(session.getStartedAt(), session.getId()).encode();
     }
 }
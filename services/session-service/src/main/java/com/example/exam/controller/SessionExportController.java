@@ -0,0 +1,67 @@
+package com.example.exam.controller;
+
+import com.example.exam.model.Session;
+import com.example.exam.repository.SessionRepository;
+import com.example.exam.service.SessionExportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/admin/sessions")
+@Tag(name = "Sessions")
+public class SessionExportController {
+
+    private final SessionRepository sessionRepository;
+    private final SessionExportService exportService;
+
+    public SessionExportController(SessionRepository sessionRepository, SessionExportService exportService) {
+        this.sessionRepository = sessionRepository;
+        this.exportService = exportService;
+    }
+
+    @GetMapping("/{id}/export")
+    @Operation(summary = "Download everything about a session: events, snapshots, incidents and reviews (ADMIN only)",
+            description = "format=ndjson (default): one {\"kind\", \"data\"} line per row, session first. " +
+                    "format=zip: session.json and one CSV per table (events.csv can be re-imported through " +
+                    "POST /api/admin/events/import); media=true adds the snapshot images. Streamed as it is read.")
+    public void export(@PathVariable("id") @NonNull UUID id,
+                       @RequestParam(value = "format", defaultValue = "ndjson") String format,
+                       @RequestParam(value = "media", defaultValue = "false") boolean media,
+                       HttpServletResponse response) throws IOException {
+        SessionExportService.Format f = parseFormat(format);
+        // Checked before anything is written, so a missing session is still a normal 404
+        Session session = sessionRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Session not found"));
+        // Likewise the 503 when too many exports run; headers are set only once a slot is held
+        try (var slot = exportService.acquire()) {
+            String filename = "session-" + id + (f == SessionExportService.Format.ZIP ? ".zip" : ".ndjson");
+            response.setContentType(f == SessionExportService.Format.ZIP ? "application/zip" : EventImportController.NDJSON);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                    ContentDisposition.attachment().filename(filename).build().toString());
+            exportService.export(session, f, media, response.getOutputStream());
+        }
+    }
+
+    private static SessionExportService.Format parseFormat(String format) {
+        try {
+            return SessionExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown export format: " + format);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.exam.controller;
+
+import com.example.exam.service.SnapshotRetryRouter;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/snapshots")
+@Tag(name = "Media")
+public class SnapshotAdminController {
+
+    private static final int MAX_REQUEUE = 10_000;
+
+    private final SnapshotRetryRouter retryRouter;
+
+    public SnapshotAdminController(SnapshotRetryRouter retryRouter) {
+        this.retryRouter = retryRouter;
+    }
+
+    @GetMapping("/dead-letters")
+    @Operation(summary = "Number of snapshot messages in the dead-letter queue (ADMIN only)")
+    public ResponseEntity<Map<String, Object>> deadLetters() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("deadLetters", retryRouter.deadLetterCount());
+        return ResponseEntity.ok(body);
+    }
+
+    @PostMapping("/dead-letters/requeue")
+    @Operation(summary = "Move dead-lettered snapshot messages to the backlog lane with a fresh attempt count (ADMIN only)")
+    public ResponseEntity<Map<String, Object>> requeue(@RequestParam(defaultValue = "1000") int max) {
+        if (max < 1 || max > MAX_REQUEUE) {
+            throw new IllegalArgumentException("max must be between 1 and " + MAX_REQUEUE);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("requeued", retryRouter.requeueDeadLetters(max));
+        body.put("remaining", retryRouter.deadLetterCount());
+        return ResponseEntity.ok(body);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.exam.controller;
+
+import com.example.exam.service.TelemetryHub;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.Endpoint;
+import jakarta.websocket.EndpointConfig;
+import jakarta.websocket.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Telemetry WebSocket for one exam session: EventIngestDto.Item frames in, acks and incidents out.
+ * One instance per connection; the work is done by {@link TelemetryHub}.
+ */
+public class TelemetryEndpoint extends Endpoint {
+
+    public static final String PATH = "/api/ingest/telemetry/{sessionId}";
+    private static final Logger log = LoggerFactory.getLogger(TelemetryEndpoint.class);
+
+    private final TelemetryHub hub;
+    private final int maxFrameBytes;
+    private final long idleTimeoutMs;
+    private UUID sessionId;
+
+    public TelemetryEndpoint(TelemetryHub hub, int maxFrameBytes, long idleTimeoutMs) {
+        this.hub = hub;
+        this.maxFrameBytes = maxFrameBytes;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    @Override
+    public void onOpen(Session socket, EndpointConfig config) {
+        try {
+            sessionId = UUID.fromString(socket.getPathParameters().get("sessionId"));
+        } catch (IllegalArgumentException e) {
+            close(socket, CloseReason.CloseCodes.CANNOT_ACCEPT, "Invalid session id");
+            return;
+        }
+        // The upgrade request already passed the JWT filter chain; this checks the session itself, once
+        String refused = hub.authorize(sessionId, socket.getUserPrincipal());
+        if (refused != null) {
+            close(socket, CloseReason.CloseCodes.VIOLATED_POLICY, refused);
+            return;
+        }
+        socket.setMaxTextMessageBufferSize(maxFrameBytes);
+        socket.setMaxIdleTimeout(idleTimeoutMs);
+        socket.addMessageHandler(String.class, frame -> hub.receive(sessionId, socket, frame));
+        hub.opened(sessionId, socket);
+    }
+
+    @Override
+    public void onClose(Session socket, CloseReason reason) {
+        if (sessionId != null) hub.closed(sessionId, socket);
+    }
+
+    @Override
+    public void onError(Session socket, Throwable error) {
+        log.debug("Telemetry socket error for session {}: {}", sessionId, error.getMessage());
+    }
+
+    private static void close(Session socket, CloseReason.CloseCodes code, String reason) {
+        try {
+            socket.close(new CloseReason(code, reason));
+        } catch (IOException ignored) {
+            // Already gone
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.exam.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One keyset page: pass nextCursor back as ?cursor= for the next one (null on the last page)
+ *
+ * @param total number of matching rows, only when requested with includeTotal=true
+ */
+public record CursorPage<T>(List<T> items,
+                            String nextCursor,
+                            @JsonInclude(JsonInclude.Include.NON_NULL) Long total) {
+
+    /** Set on capped unpaged list responses when rows were left out; usable as ?cursor= */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * Requested page size, or the default when absent
+     *
+     * @throws IllegalArgumentException outside 1..max
+     */
+    public static int limit(Integer requested, int defaultLimit, int max) {
+        if (requested == null) return defaultLimit;
+        if (requested < 1 || requested > max) {
+            throw new IllegalArgumentException("limit must be between 1 and " + max);
+        }
+        return requested;
+    }
+
+    /**
+     * @param rows up to limit + 1 rows; the extra row only tells that there is another page
+     * @param cursor token for the last returned row
+     */
+    public static <R, T> CursorPage<T> of(List<R> rows, int limit, Function<R, String> cursor,
+                                          Function<R, T> mapper, Long total) {
+        boolean more = rows.size() > limit;
+        List<R> page = more ? rows.subList(0, limit) : rows;
+        String next = more ? cursor.apply(page.get(page.size() - 1)) : null;
+        return new CursorPage<>(page.stream().map(mapper).toList(), next, total);
+    }
+}
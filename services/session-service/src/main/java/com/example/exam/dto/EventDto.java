@@ -0,0 +1,33 @@
+package com.example.exam.dto;
+
+import com.example.exam.model.Event;
+import com.example.exam.model.EventType;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public class EventDto {
+
+    public static class Response {
+        public UUID id;
+        public UUID sessionId;
+        public Long ts;
+        public EventType eventType;
+        // Stored as jsonb, returned as JSON rather than as an escaped string
+        @JsonRawValue
+        public String details;
+        public Instant createdAt;
+
+        public static Response from(Event e) {
+            Response r = new Response();
+            r.id = e.getId();
+            r.sessionId = e.getSessionId();
+            r.ts = e.getTs();
+            r.eventType = e.getEventType();
+            r.details = e.getDetails();
+            r.createdAt = e.getCreatedAt();
+            return r;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.exam.dto;
+
+public class EventImportDto {
+
+    /**
+     * Outcome of a bulk import; created/duplicates as in EventIngestDto.Result, without per-row ids
+     */
+    public static class Result {
+        public long rows;
+        public long created;
+        public long duplicates;
+        // Unknown session, unparseable field or missing idempotency key
+        public long rejected;
+        public long elapsedMs;
+
+        public Result(long rows, long created, long duplicates, long rejected, long elapsedMs) {
+            this.rows = rows;
+            this.created = created;
+            this.duplicates = duplicates;
+            this.rejected = rejected;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+}
@@ -39,4 +39,40 @@ public class EventIngestDto {
             this.ids = ids;
         }
     }
+
+    /**
+     * One line of the NDJSON stream response, written after each chunk of events is committed.
+     * ids are aligned with the chunk's input lines; null marks a skipped line (unknown or ended session).
+     */
+    public static class StreamAck {
+        public long seq;
+        public long firstLine;
+        public int created;
+        public int duplicates;
+        public int skipped;
+        public List<UUID> ids;
+
+        public StreamAck(long seq, long firstLine, int created, int duplicates, int skipped, List<UUID> ids) {
+            this.seq = seq;
+            this.firstLine = firstLine;
+            this.created = created;
+            this.duplicates = duplicates;
+            this.skipped = skipped;
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * Last line of the NDJSON stream response. error is set when the stream stopped at a bad line;
+     * everything acknowledged before it is committed.
+     */
+    public static class StreamSummary {
+        public boolean done = true;
+        public long lines;
+        public long created;
+        public long duplicates;
+        public long skipped;
+        public String error;
+        public Long errorLine;
+    }
 }
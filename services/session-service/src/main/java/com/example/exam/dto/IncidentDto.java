@@ -48,4 +48,26 @@ public class IncidentDto {
             return r;
         }
     }
+
+    /**
+     * Incident as pushed by the live feed, with the exam it belongs to
+     */
+    public static class FeedItem extends Response {
+        public UUID examId;
+
+        public static FeedItem from(Incident i, UUID examId) {
+            FeedItem r = new FeedItem();
+            r.id = i.getId();
+            r.sessionId = i.getSessionId();
+            r.ts = i.getTs();
+            r.type = i.getType();
+            r.score = i.getScore();
+            r.reason = i.getReason();
+            r.evidenceUrl = i.getEvidenceUrl();
+            r.status = i.getStatus();
+            r.createdAt = i.getCreatedAt();
+            r.examId = examId;
+            return r;
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package com.example.exam.dto;
+
+import com.example.exam.model.EventType;
+import com.example.exam.model.IncidentType;
+import com.example.exam.model.RuleDefinition;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+public class RuleDefinitionDto {
+
+    public static class Request {
+        public UUID examId; // null = default for all exams
+        @NotNull
+        public EventType eventType;
+        @NotNull
+        public IncidentType incidentType;
+        @NotNull
+        @Min(1)
+        public Integer windowSeconds;
+        @NotNull
+        @Min(0)
+        public Integer threshold;
+        @NotNull
+        @DecimalMin("0.0")
+        @DecimalMax("1.0")
+        public BigDecimal scoreBase;
+        @NotNull
+        @Min(1)
+        public Integer scoreSpan;
+        @NotBlank
+        public String reasonTemplate; // String.format args: count, window minutes, threshold
+        public Boolean enabled;
+    }
+
+    public static class Response {
+        public UUID id;
+        public UUID examId;
+        public EventType eventType;
+        public IncidentType incidentType;
+        public Integer windowSeconds;
+        public Integer threshold;
+        public BigDecimal scoreBase;
+        public Integer scoreSpan;
+        public String reasonTemplate;
+        public boolean enabled;
+        public Instant updatedAt;
+
+        public static Response from(RuleDefinition d) {
+            Response r = new Response();
+            r.id = d.getId();
+            r.examId = d.getExamId();
+            r.eventType = d.getEventType();
+            r.incidentType = d.getIncidentType();
+            r.windowSeconds = d.getWindowSeconds();
+            r.threshold = d.getThreshold();
+            r.scoreBase = d.getScoreBase();
+            r.scoreSpan = d.getScoreSpan();
+            r.reasonTemplate = d.getReasonTemplate();
+            r.enabled = d.isEnabled();
+            r.updatedAt = d.getUpdatedAt();
+            return r;
+        }
+    }
+}
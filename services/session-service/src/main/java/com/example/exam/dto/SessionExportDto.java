@@ -0,0 +1,23 @@
+package com.example.exam.dto;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public class SessionExportDto {
+
+    /**
+     * One NDJSON line: kind is session, event, snapshot, incident or review
+     */
+    public record Line(String kind, Object data) {
+    }
+
+    public static class Snapshot {
+        public UUID id;
+        public Long ts;
+        public String mimeType;
+        public Long fileSize;
+        public Integer faceCount;
+        public String contentHash;
+        public Instant uploadedAt;
+    }
+}
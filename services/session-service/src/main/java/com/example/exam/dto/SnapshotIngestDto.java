@@ -1,5 +1,6 @@
 package com.example.exam.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -21,6 +22,9 @@ public class SnapshotIngestDto {
         public Integer faceCount;
         @NotBlank
         public String idempotencyKey;
+        // SHA-256 (hex) of the stored object, set by MediaStorageService in content-addressed mode; never bound from JSON
+        @JsonIgnore
+        public String contentHash;
     }
 
     public static class Request {
@@ -41,4 +41,20 @@ public class SnapshotUploadDto {
             this.ids = ids;
         }
     }
+
+    /**
+     * Result of a streamed upload: the usual ingest counts plus what was stored
+     */
+    public static class StreamResult extends Result {
+        public String objectKey;
+        public long size;
+        public String sha256;
+
+        public StreamResult(Result result, String objectKey, long size, String sha256) {
+            super(result.created, result.duplicates, result.ids);
+            this.objectKey = objectKey;
+            this.size = size;
+            this.sha256 = sha256;
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package com.example.exam.dto;
+
+import com.example.exam.model.IncidentType;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Frames sent to the client on the telemetry WebSocket. Inbound frames are one EventIngestDto.Item
+ * or a JSON array of them; sessionId may be omitted (the socket is bound to one session).
+ */
+public class TelemetryDto {
+
+    /**
+     * Answer to one inbound frame, in frame order; ids aligned with its items, null = skipped
+     */
+    public static class Ack {
+        public final String type = "ack";
+        public int created;
+        public int duplicates;
+        public List<UUID> ids;
+
+        public Ack(int created, int duplicates, List<UUID> ids) {
+            this.created = created;
+            this.duplicates = duplicates;
+            this.ids = ids;
+        }
+    }
+
+    /**
+     * A rule raised an incident for this session (e.g. TAB_ABUSE), pushed after it is committed
+     */
+    public static class Incident {
+        public final String type = "incident";
+        public UUID id;
+        public IncidentType incidentType;
+        public long ts;
+        public String reason;
+
+        public Incident(UUID id, IncidentType incidentType, long ts, String reason) {
+            this.id = id;
+            this.incidentType = incidentType;
+            this.ts = ts;
+            this.reason = reason;
+        }
+    }
+
+    /**
+     * An inbound frame was rejected; nothing from it was stored
+     */
+    public static class Error {
+        public final String type = "error";
+        public String message;
+
+        public Error(String message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.exam.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * One physically stored snapshot file in content-addressed mode, keyed by its SHA-256.
+ * ref_count is maintained by a trigger on media_snapshots (V10).
+ */
+@Entity
+@Table(name = "media_blobs")
+public class MediaBlob {
+
+    @Id
+    @Column(name = "sha256", length = 64)
+    private String sha256;
+
+    @Column(name = "object_key", nullable = false, unique = true)
+    private String objectKey;
+
+    @Column(name = "size", nullable = false)
+    private Long size;
+
+    @Column(name = "mime_type")
+    private String mimeType;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    @Column(name = "face_count")
+    private Integer faceCount;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "released_at")
+    private Instant releasedAt;
+
+    // getters/setters
+    public String getSha256() { return sha256; }
+    public void setSha256(String sha256) { this.sha256 = sha256; }
+    public String getObjectKey() { return objectKey; }
+    public void setObjectKey(String objectKey) { this.objectKey = objectKey; }
+    public Long getSize() { return size; }
+    public void setSize(Long size) { this.size = size; }
+    public String getMimeType() { return mimeType; }
+    public void setMimeType(String mimeType) { this.mimeType = mimeType; }
+    public Integer getRefCount() { return refCount; }
+    public void setRefCount(Integer refCount) { this.refCount = refCount; }
+    public Integer getFaceCount() { return faceCount; }
+    public void setFaceCount(Integer faceCount) { this.faceCount = faceCount; }
+    public Instant getCreatedAt() { return createdAt; }
+    public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
+    public Instant getReleasedAt() { return releasedAt; }
+    public void setReleasedAt(Instant releasedAt) { this.releasedAt = releasedAt; }
+}
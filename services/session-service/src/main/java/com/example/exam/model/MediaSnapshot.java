@@ -17,7 +17,8 @@ public class MediaSnapshot {
     @Column(name = "ts", nullable = false)
     private Long ts;
 
-    @Column(name = "object_key", nullable = false, unique = true)
+    // Not unique: in content-addressed mode identical snapshots share one object
+    @Column(name = "object_key", nullable = false)
     private String objectKey;
 
     @Column(name = "file_size")
@@ -35,6 +36,10 @@ public class MediaSnapshot {
     @Column(name = "idempotency_key", unique = true, length = 255)
     private String idempotencyKey;
 
+    // SHA-256 of the stored object (content-addressed mode only)
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     public MediaSnapshot() {
         this.id = UUID.randomUUID();
     }
@@ -57,4 +62,6 @@ public class MediaSnapshot {
     public void setFaceCount(Integer faceCount) { this.faceCount = faceCount; }
     public String getIdempotencyKey() { return idempotencyKey; }
     public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
 }
@@ -0,0 +1,79 @@
+package com.example.exam.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+@Entity
+@Table(name = "rule_definitions")
+public class RuleDefinition {
+
+    @Id
+    private UUID id;
+
+    // null = default rule for all exams
+    @Column(name = "exam_id")
+    private UUID examId;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.NAMED_ENUM)
+    @Column(name = "event_type", columnDefinition = "event_type", nullable = false)
+    private EventType eventType;
+
+    @Enumerated(EnumType.STRING)
+    @JdbcTypeCode(SqlTypes.NAMED_ENUM)
+    @Column(name = "incident_type", columnDefinition = "incident_type", nullable = false)
+    private IncidentType incidentType;
+
+    @Column(name = "window_seconds", nullable = false)
+    private Integer windowSeconds;
+
+    @Column(name = "threshold", nullable = false)
+    private Integer threshold;
+
+    @Column(name = "score_base", precision = 5, scale = 2, nullable = false)
+    private BigDecimal scoreBase;
+
+    @Column(name = "score_span", nullable = false)
+    private Integer scoreSpan;
+
+    @Column(name = "reason_template", nullable = false)
+    private String reasonTemplate;
+
+    @Column(name = "enabled", nullable = false)
+    private boolean enabled = true;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public RuleDefinition() {
+        this.id = UUID.randomUUID();
+    }
+
+    // getters/setters
+    public UUID getId() { return id; }
+    public UUID getExamId() { return examId; }
+    public void setExamId(UUID examId) { this.examId = examId; }
+    public EventType getEventType() { return eventType; }
+    public void setEventType(EventType eventType) { this.eventType = eventType; }
+    public IncidentType getIncidentType() { return incidentType; }
+    public void setIncidentType(IncidentType incidentType) { this.incidentType = incidentType; }
+    public Integer getWindowSeconds() { return windowSeconds; }
+    public void setWindowSeconds(Integer windowSeconds) { this.windowSeconds = windowSeconds; }
+    public Integer getThreshold() { return threshold; }
+    public void setThreshold(Integer threshold) { this.threshold = threshold; }
+    public BigDecimal getScoreBase() { return scoreBase; }
+    public void setScoreBase(BigDecimal scoreBase) { this.scoreBase = scoreBase; }
+    public Integer getScoreSpan() { return scoreSpan; }
+    public void setScoreSpan(Integer scoreSpan) { this.scoreSpan = scoreSpan; }
+    public String getReasonTemplate() { return reasonTemplate; }
+    public void setReasonTemplate(String reasonTemplate) { this.reasonTemplate = reasonTemplate; }
+    public boolean isEnabled() { return enabled; }
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -3,13 +3,24 @@ package com.example.exam.repository;
 import com.example.exam.model.Event;
 import com.example.exam.model.EventType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
-public interface EventRepository extends JpaRepository<Event, UUID> {
+public interface EventRepository extends JpaRepository<Event, UUID>, EventRepositoryCustom {
     List<Event> findBySessionIdOrderByTsAsc(UUID sessionId);
-    Optional<Event> findByIdempotencyKey(String idempotencyKey);
     Optional<Event> findBySessionIdAndTsAndEventType(UUID sessionId, Long ts, EventType eventType);
+    long countBySessionId(UUID sessionId);
+
+    /**
+     * Keyset page over one session's events, oldest first: up to limit rows after (ts, id).
+     * The plain ts bound lets the planner skip earlier partitions.
+     */
+    @Query(value = "SELECT * FROM events WHERE session_id = :sessionId AND ts >= :ts AND (ts, id) > (:ts, :id) " +
+            "ORDER BY ts, id LIMIT :limit", nativeQuery = true)
+    List<Event> findSessionPageAfter(@Param("sessionId") UUID sessionId, @Param("ts") long ts,
+                                     @Param("id") UUID id, @Param("limit") int limit);
 }
@@ -0,0 +1,111 @@
+package com.example.exam.repository;
+
+import com.example.exam.model.Event;
+import com.example.exam.model.EventType;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Set-based operations on events that Spring Data cannot derive.
+ * Each method is a single round trip regardless of batch size.
+ */
+public interface EventRepositoryCustom {
+
+    /**
+     * Find existing events whose idempotency_key is in the given set, at most one per key
+     * (resolved through event_idempotency_keys, V16)
+     */
+    List<EventRef> findRefsByIdempotencyKeys(Collection<String> idempotencyKeys);
+
+    /**
+     * Claim the event's idempotency key in event_idempotency_keys before inserting it, in the same
+     * transaction; a concurrent claim of the same key waits for the other transaction to finish
+     *
+     * @return false if the key already belongs to another event
+     */
+    boolean claimIdempotencyKey(Event event);
+
+    /**
+     * Give back a key claimed for an event that is not going to be inserted after all
+     */
+    void releaseIdempotencyKey(Event event);
+
+    /**
+     * Find existing events matching the (session_id, ts, event_type) of the given events
+     */
+    List<EventRef> findRefsByNaturalKeys(Collection<Event> events);
+
+    /**
+     * Claim the keys and insert all events in one statement ({@code INSERT ... ON CONFLICT DO NOTHING
+     * RETURNING id}); claims of rows that lost on (session_id, ts, event_type) are released again
+     *
+     * @return ids of the rows actually inserted; rows skipped because of a conflict are absent
+     */
+    Set<UUID> insertAllIgnoringConflicts(Collection<Event> events);
+
+    /**
+     * Range partitions of events (V11), including the default partition
+     */
+    List<EventPartition> findEventPartitions();
+
+    /**
+     * Create a partition for [fromTs, toTs): rows already in events_default for that range are moved
+     * into it before it is attached. Must run in a transaction: inserts into events_default wait until it ends,
+     * and a failed ATTACH rolls the move back.
+     *
+     * @param name must look like events_pYYYYMMDD
+     */
+    void createEventPartition(String name, long fromTs, long toTs);
+
+    /**
+     * Detach and drop a partition with all its rows, and record [fromTs, toTs) in event_key_purges so its
+     * idempotency keys are deleted later by {@link #purgeIdempotencyKeys}, not in this transaction
+     */
+    void dropEventPartition(String name, long fromTs, long toTs);
+
+    /**
+     * Ranges of dropped partitions whose idempotency keys may still exist, oldest first
+     */
+    List<KeyPurge> findKeyPurges();
+
+    /**
+     * Delete up to limit keys with fromTs <= ts < toTs that no longer have their event
+     *
+     * @return number of keys deleted; fewer than limit means the range is done
+     */
+    int purgeIdempotencyKeys(long fromTs, long toTs, int limit);
+
+    /**
+     * Forget a range once all its keys are gone
+     */
+    void completeKeyPurge(long fromTs, long toTs);
+
+    /**
+     * Longest retention_days among the exams whose sessions have events in this partition (0 if none)
+     */
+    int maxRetentionDaysInEventPartition(String name);
+
+    /**
+     * Shortest retention_days of any exam (0 if there are no exams)
+     */
+    int minExamRetentionDays();
+
+    /**
+     * Lightweight projection of an existing event, enough to resolve duplicates
+     */
+    record EventRef(UUID id, UUID sessionId, long ts, EventType eventType, String idempotencyKey) {}
+
+    record KeyPurge(long fromTs, long toTs) {}
+
+    /**
+     * One partition of events: rows with fromTs <= ts < toTs; bounds are null for the default partition
+     */
+    record EventPartition(String name, Long fromTs, Long toTs) {
+        public boolean isDefault() {
+            return fromTs == null;
+        }
+    }
+}
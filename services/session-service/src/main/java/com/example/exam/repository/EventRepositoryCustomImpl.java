@@ -0,0 +1,264 @@
+package com.example.exam.repository;
+
+import com.example.exam.model.Event;
+import com.example.exam.model.EventType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JDBC implementation of {@link EventRepositoryCustom}.
+ * Batches are bound as PostgreSQL arrays so every statement has a fixed number of parameters
+ * (no IN-list expansion, one cached plan per statement).
+ * Runs on the connection of the surrounding JPA transaction.
+ */
+class EventRepositoryCustomImpl implements EventRepositoryCustom {
+
+    // Through the key table, so a key stored twice before V16 still resolves to one event
+    private static final String SELECT_BY_KEYS =
+            "SELECT e.id, e.session_id, e.ts, e.event_type::text AS event_type, k.idempotency_key " +
+            "FROM event_idempotency_keys k JOIN events e ON e.id = k.event_id AND e.ts = k.ts " +
+            "WHERE k.idempotency_key = ANY(?)";
+
+    private static final String CLAIM_KEY =
+            "INSERT INTO event_idempotency_keys (idempotency_key, event_id, session_id, ts) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT DO NOTHING";
+
+    private static final String RELEASE_KEY =
+            "DELETE FROM event_idempotency_keys WHERE idempotency_key = ? AND event_id = ?";
+
+    private static final String SELECT_BY_NATURAL_KEYS =
+            "SELECT e.id, e.session_id, e.ts, e.event_type::text AS event_type, e.idempotency_key " +
+            "FROM events e " +
+            "JOIN unnest(?::uuid[], ?::bigint[], ?::text[]) AS k(session_id, ts, event_type) " +
+            "ON e.session_id = k.session_id AND e.ts = k.ts AND e.event_type = k.event_type::event_type";
+
+    // Rows whose key is already claimed are not inserted; ON CONFLICT then covers (session_id, ts, event_type)
+    private static final String INSERT_IGNORING_CONFLICTS =
+            "WITH t AS (" +
+            "  SELECT * FROM unnest(?::uuid[], ?::uuid[], ?::bigint[], ?::text[], ?::text[], ?::text[]) " +
+            "  AS t(id, session_id, ts, event_type, details, idempotency_key)" +
+            "), claimed AS (" +
+            "  INSERT INTO event_idempotency_keys (idempotency_key, event_id, session_id, ts) " +
+            "  SELECT idempotency_key, id, session_id, ts FROM t ON CONFLICT DO NOTHING RETURNING event_id" +
+            ") " +
+            "INSERT INTO events (id, session_id, ts, event_type, details, idempotency_key, created_at) " +
+            "SELECT t.id, t.session_id, t.ts, t.event_type::event_type, t.details, t.idempotency_key, ? " +
+            "FROM t JOIN claimed c ON c.event_id = t.id " +
+            "ON CONFLICT DO NOTHING RETURNING id";
+
+    private static final String RELEASE_KEYS = "DELETE FROM event_idempotency_keys WHERE event_id = ANY(?)";
+
+    private static final String ADD_KEY_PURGE =
+            "INSERT INTO event_key_purges (from_ts, to_ts) VALUES (?, ?) ON CONFLICT DO NOTHING";
+
+    private static final String SELECT_KEY_PURGES =
+            "SELECT from_ts, to_ts FROM event_key_purges ORDER BY requested_at, from_ts";
+
+    // Keys of events written into the range after the drop (they land in events_default) are kept
+    private static final String PURGE_KEYS =
+            "DELETE FROM event_idempotency_keys WHERE idempotency_key IN (" +
+            "  SELECT k.idempotency_key FROM event_idempotency_keys k WHERE k.ts >= ? AND k.ts < ? " +
+            "  AND NOT EXISTS (SELECT 1 FROM events e WHERE e.id = k.event_id AND e.ts = k.ts) LIMIT ?)";
+
+    private static final String COMPLETE_KEY_PURGE = "DELETE FROM event_key_purges WHERE from_ts = ? AND to_ts = ?";
+
+    private static final String SELECT_PARTITIONS =
+            "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) AS bound " +
+            "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'events'::regclass ORDER BY c.relname";
+
+    // e.g. FOR VALUES FROM ('1700000000000') TO ('1700086400000')
+    private static final Pattern RANGE_BOUND = Pattern.compile("FROM \\('?(-?\\d+)'?\\) TO \\('?(-?\\d+)'?\\)");
+    private static final Pattern PARTITION_NAME = Pattern.compile("events_p\\d{8}");
+    private static final String DEFAULT_PARTITION = "events_default";
+
+    private static final RowMapper<EventRef> REF_MAPPER = (rs, rowNum) -> new EventRef(
+            rs.getObject("id", UUID.class),
+            rs.getObject("session_id", UUID.class),
+            rs.getLong("ts"),
+            EventType.valueOf(rs.getString("event_type")),
+            rs.getString("idempotency_key"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    EventRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<EventRef> findRefsByIdempotencyKeys(Collection<String> idempotencyKeys) {
+        if (idempotencyKeys.isEmpty()) return List.of();
+        return jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(SELECT_BY_KEYS);
+            ps.setArray(1, con.createArrayOf("text", idempotencyKeys.toArray()));
+            return ps;
+        }, REF_MAPPER);
+    }
+
+    @Override
+    public boolean claimIdempotencyKey(Event event) {
+        return jdbcTemplate.update(CLAIM_KEY, event.getIdempotencyKey(), event.getId(), event.getSessionId(),
+                event.getTs()) == 1;
+    }
+
+    @Override
+    public void releaseIdempotencyKey(Event event) {
+        jdbcTemplate.update(RELEASE_KEY, event.getIdempotencyKey(), event.getId());
+    }
+
+    @Override
+    public List<EventRef> findRefsByNaturalKeys(Collection<Event> events) {
+        if (events.isEmpty()) return List.of();
+        int n = events.size();
+        UUID[] sessionIds = new UUID[n];
+        Long[] ts = new Long[n];
+        String[] types = new String[n];
+        int i = 0;
+        for (Event e : events) {
+            sessionIds[i] = e.getSessionId();
+            ts[i] = e.getTs();
+            types[i] = e.getEventType().name();
+            i++;
+        }
+        return jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(SELECT_BY_NATURAL_KEYS);
+            ps.setArray(1, con.createArrayOf("uuid", sessionIds));
+            ps.setArray(2, con.createArrayOf("int8", ts));
+            ps.setArray(3, con.createArrayOf("text", types));
+            return ps;
+        }, REF_MAPPER);
+    }
+
+    @Override
+    public Set<UUID> insertAllIgnoringConflicts(Collection<Event> events) {
+        if (events.isEmpty()) return Set.of();
+        int n = events.size();
+        UUID[] ids = new UUID[n];
+        UUID[] sessionIds = new UUID[n];
+        Long[] ts = new Long[n];
+        String[] types = new String[n];
+        String[] details = new String[n];
+        String[] keys = new String[n];
+        Instant createdAt = null;
+        int i = 0;
+        for (Event e : events) {
+            ids[i] = e.getId();
+            sessionIds[i] = e.getSessionId();
+            ts[i] = e.getTs();
+            types[i] = e.getEventType().name();
+            details[i] = e.getDetails();
+            keys[i] = e.getIdempotencyKey();
+            if (createdAt == null) createdAt = e.getCreatedAt();
+            i++;
+        }
+        Timestamp created = Timestamp.from(createdAt != null ? createdAt : Instant.now());
+        List<UUID> inserted = jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(INSERT_IGNORING_CONFLICTS);
+            ps.setArray(1, con.createArrayOf("uuid", ids));
+            ps.setArray(2, con.createArrayOf("uuid", sessionIds));
+            ps.setArray(3, con.createArrayOf("int8", ts));
+            ps.setArray(4, con.createArrayOf("text", types));
+            ps.setArray(5, con.createArrayOf("text", details));
+            ps.setArray(6, con.createArrayOf("text", keys));
+            ps.setTimestamp(7, created);
+            return ps;
+        }, (rs, rowNum) -> rs.getObject(1, UUID.class));
+        Set<UUID> result = new HashSet<>(inserted);
+        if (result.size() < n) {
+            // Claims of rows that lost on (session_id, ts, event_type); ids are fresh, so only ours match
+            List<UUID> lost = new ArrayList<>(n - result.size());
+            for (UUID id : ids) {
+                if (!result.contains(id)) lost.add(id);
+            }
+            jdbcTemplate.update(con -> {
+                var ps = con.prepareStatement(RELEASE_KEYS);
+                ps.setArray(1, con.createArrayOf("uuid", lost.toArray()));
+                return ps;
+            });
+        }
+        return result;
+    }
+
+    @Override
+    public List<EventPartition> findEventPartitions() {
+        return jdbcTemplate.query(SELECT_PARTITIONS, (rs, rowNum) -> {
+            String name = rs.getString("relname");
+            Matcher m = RANGE_BOUND.matcher(rs.getString("bound"));
+            return m.find()
+                    ? new EventPartition(name, Long.parseLong(m.group(1)), Long.parseLong(m.group(2)))
+                    : new EventPartition(name, null, null);
+        });
+    }
+
+    @Override
+    public void createEventPartition(String name, long fromTs, long toTs) {
+        String table = checkedName(name);
+        jdbcTemplate.execute("CREATE TABLE " + table + " (LIKE events INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        // Hold inserts into the default partition until commit; one landing between the move and
+        // the ATTACH would make the ATTACH fail its default-partition check
+        jdbcTemplate.execute("LOCK TABLE " + DEFAULT_PARTITION + " IN SHARE ROW EXCLUSIVE MODE");
+        jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " WHERE ts >= ? AND ts < ? RETURNING *) " +
+                "INSERT INTO " + table + " SELECT * FROM moved", fromTs, toTs);
+        jdbcTemplate.execute("ALTER TABLE events ATTACH PARTITION " + table +
+                " FOR VALUES FROM (" + fromTs + ") TO (" + toTs + ")");
+    }
+
+    @Override
+    public void dropEventPartition(String name, long fromTs, long toTs) {
+        String table = checkedName(name);
+        jdbcTemplate.execute("ALTER TABLE events DETACH PARTITION " + table);
+        jdbcTemplate.execute("DROP TABLE " + table);
+        jdbcTemplate.update(ADD_KEY_PURGE, fromTs, toTs);
+    }
+
+    @Override
+    public List<KeyPurge> findKeyPurges() {
+        return jdbcTemplate.query(SELECT_KEY_PURGES, (rs, rowNum) -> new KeyPurge(rs.getLong("from_ts"), rs.getLong("to_ts")));
+    }
+
+    @Override
+    public int purgeIdempotencyKeys(long fromTs, long toTs, int limit) {
+        return jdbcTemplate.update(PURGE_KEYS, fromTs, toTs, limit);
+    }
+
+    @Override
+    public void completeKeyPurge(long fromTs, long toTs) {
+        jdbcTemplate.update(COMPLETE_KEY_PURGE, fromTs, toTs);
+    }
+
+    @Override
+    public int maxRetentionDaysInEventPartition(String name) {
+        Integer days = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(max(x.retention_days), 0) " +
+                "FROM (SELECT DISTINCT session_id FROM " + checkedName(name) + ") e " +
+                "JOIN sessions s ON s.id = e.session_id JOIN exams x ON x.id = s.exam_id", Integer.class);
+        return days == null ? 0 : days;
+    }
+
+    @Override
+    public int minExamRetentionDays() {
+        Integer days = jdbcTemplate.queryForObject("SELECT COALESCE(min(retention_days), 0) FROM exams", Integer.class);
+        return days == null ? 0 : days;
+    }
+
+    /**
+     * Partition names end up in DDL, so only our own naming scheme is accepted
+     */
+    private static String checkedName(String name) {
+        if (!PARTITION_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Not an events partition: " + name);
+        }
+        return name;
+    }
+}
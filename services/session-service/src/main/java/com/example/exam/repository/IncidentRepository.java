@@ -6,14 +6,34 @@ import com.example.exam.model.IncidentType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
-public interface IncidentRepository extends JpaRepository<Incident, UUID> {
+public interface IncidentRepository extends JpaRepository<Incident, UUID>, IncidentRepositoryCustom {
     List<Incident> findBySessionIdOrderByTsAsc(UUID sessionId);
     List<Incident> findByTypeAndStatus(IncidentType type, IncidentStatus status);
     Page<Incident> findBySessionId(UUID sessionId, Pageable pageable);
     Optional<Incident> findBySessionIdAndTypeAndTs(UUID sessionId, IncidentType type, Long ts);
+    List<Incident> findBySessionIdInAndTsIn(Collection<UUID> sessionIds, Collection<Long> ts);
+    long countBySessionId(UUID sessionId);
+
+    /**
+     * Keyset page over all incidents, newest first: up to limit rows after (ts, id) in that order
+     */
+    @Query(value = "SELECT * FROM incidents WHERE ts <= :ts AND (ts, id) < (:ts, :id) " +
+            "ORDER BY ts DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Incident> findPageBefore(@Param("ts") long ts, @Param("id") UUID id, @Param("limit") int limit);
+
+    /**
+     * Keyset page over one session's incidents, oldest first: up to limit rows after (ts, id)
+     */
+    @Query(value = "SELECT * FROM incidents WHERE session_id = :sessionId AND ts >= :ts AND (ts, id) > (:ts, :id) " +
+            "ORDER BY ts, id LIMIT :limit", nativeQuery = true)
+    List<Incident> findSessionPageAfter(@Param("sessionId") UUID sessionId, @Param("ts") long ts,
+                                        @Param("id") UUID id, @Param("limit") int limit);
 }
@@ -0,0 +1,19 @@
+package com.example.exam.repository;
+
+import com.example.exam.model.Incident;
+
+import java.util.Collection;
+
+/**
+ * Set-based operations on incidents that Spring Data cannot derive
+ */
+public interface IncidentRepositoryCustom {
+
+    /**
+     * Insert all incidents in one INSERT ... SELECT FROM unnest(...).
+     * Unlike saveAll, this does not issue a SELECT per entity for the pre-assigned ids.
+     *
+     * @return number of rows inserted
+     */
+    int insertAll(Collection<Incident> incidents);
+}
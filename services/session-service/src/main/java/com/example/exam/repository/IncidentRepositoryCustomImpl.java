@@ -0,0 +1,70 @@
+package com.example.exam.repository;
+
+import com.example.exam.model.Incident;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * JDBC implementation of {@link IncidentRepositoryCustom}.
+ * Runs on the connection of the surrounding JPA transaction.
+ */
+class IncidentRepositoryCustomImpl implements IncidentRepositoryCustom {
+
+    private static final String INSERT_ALL =
+            "INSERT INTO incidents (id, session_id, ts, type, score, reason, evidence_url, status, created_at) " +
+            "SELECT t.id, t.session_id, t.ts, t.type::incident_type, t.score, t.reason, t.evidence_url, " +
+            "t.status::incident_status, t.created_at " +
+            "FROM unnest(?::uuid[], ?::uuid[], ?::bigint[], ?::text[], ?::numeric[], ?::text[], ?::text[], ?::text[], ?::timestamptz[]) " +
+            "AS t(id, session_id, ts, type, score, reason, evidence_url, status, created_at)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    IncidentRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int insertAll(Collection<Incident> incidents) {
+        if (incidents.isEmpty()) return 0;
+        int n = incidents.size();
+        UUID[] ids = new UUID[n];
+        UUID[] sessionIds = new UUID[n];
+        Long[] ts = new Long[n];
+        String[] types = new String[n];
+        BigDecimal[] scores = new BigDecimal[n];
+        String[] reasons = new String[n];
+        String[] evidenceUrls = new String[n];
+        String[] statuses = new String[n];
+        Timestamp[] createdAt = new Timestamp[n];
+        int i = 0;
+        for (Incident inc : incidents) {
+            ids[i] = inc.getId();
+            sessionIds[i] = inc.getSessionId();
+            ts[i] = inc.getTs();
+            types[i] = inc.getType().name();
+            scores[i] = inc.getScore();
+            reasons[i] = inc.getReason();
+            evidenceUrls[i] = inc.getEvidenceUrl();
+            statuses[i] = inc.getStatus().name();
+            createdAt[i] = Timestamp.from(inc.getCreatedAt());
+            i++;
+        }
+        return jdbcTemplate.update(con -> {
+            var ps = con.prepareStatement(INSERT_ALL);
+            ps.setArray(1, con.createArrayOf("uuid", ids));
+            ps.setArray(2, con.createArrayOf("uuid", sessionIds));
+            ps.setArray(3, con.createArrayOf("int8", ts));
+            ps.setArray(4, con.createArrayOf("text", types));
+            ps.setArray(5, con.createArrayOf("numeric", scores));
+            ps.setArray(6, con.createArrayOf("text", reasons));
+            ps.setArray(7, con.createArrayOf("text", evidenceUrls));
+            ps.setArray(8, con.createArrayOf("text", statuses));
+            ps.setArray(9, con.createArrayOf("timestamptz", createdAt));
+            return ps;
+        });
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.exam.repository;
+
+import com.example.exam.model.MediaBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface MediaBlobRepository extends JpaRepository<MediaBlob, String> {
+
+    /**
+     * Remember the detection result for this content; the first result wins
+     */
+    @Modifying
+    @Query("update MediaBlob b set b.faceCount = :faceCount where b.sha256 = :sha256 and b.faceCount is null")
+    int recordFaceCount(@Param("sha256") String sha256, @Param("faceCount") int faceCount);
+
+    /**
+     * Delete blobs unreferenced since before the cutoff and return their object keys
+     */
+    @Transactional
+    @Query(value = "DELETE FROM media_blobs WHERE ref_count = 0 AND released_at < :cutoff RETURNING object_key",
+            nativeQuery = true)
+    List<String> deleteReleasedBefore(@Param("cutoff") Instant cutoff);
+
+    @Query("select count(b) from MediaBlob b")
+    long countBlobs();
+}
@@ -7,7 +7,8 @@ import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
-public interface MediaSnapshotRepository extends JpaRepository<MediaSnapshot, UUID> {
+public interface MediaSnapshotRepository extends JpaRepository<MediaSnapshot, UUID>, MediaSnapshotRepositoryCustom {
     Optional<MediaSnapshot> findByIdempotencyKey(String idempotencyKey);
     List<MediaSnapshot> findBySessionIdOrderByTsAsc(UUID sessionId);
+    long countByContentHashIsNotNull();
 }
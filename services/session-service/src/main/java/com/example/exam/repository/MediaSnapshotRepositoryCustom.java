@@ -0,0 +1,18 @@
+package com.example.exam.repository;
+
+import com.example.exam.model.MediaSnapshot;
+
+import java.util.Collection;
+
+/**
+ * Set-based operations on media_snapshots that Spring Data cannot derive
+ */
+public interface MediaSnapshotRepositoryCustom {
+
+    /**
+     * Write the face_count of every given snapshot in one UPDATE ... FROM unnest(...)
+     *
+     * @return number of rows updated
+     */
+    int updateFaceCounts(Collection<MediaSnapshot> snapshots);
+}
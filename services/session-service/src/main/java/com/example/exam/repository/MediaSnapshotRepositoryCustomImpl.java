@@ -0,0 +1,45 @@
+package com.example.exam.repository;
+
+import com.example.exam.model.MediaSnapshot;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * JDBC implementation of {@link MediaSnapshotRepositoryCustom}.
+ * Runs on the connection of the surrounding JPA transaction.
+ */
+class MediaSnapshotRepositoryCustomImpl implements MediaSnapshotRepositoryCustom {
+
+    private static final String UPDATE_FACE_COUNTS =
+            "UPDATE media_snapshots m SET face_count = t.face_count " +
+            "FROM unnest(?::uuid[], ?::int[]) AS t(id, face_count) " +
+            "WHERE m.id = t.id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    MediaSnapshotRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int updateFaceCounts(Collection<MediaSnapshot> snapshots) {
+        if (snapshots.isEmpty()) return 0;
+        int n = snapshots.size();
+        UUID[] ids = new UUID[n];
+        Integer[] faceCounts = new Integer[n];
+        int i = 0;
+        for (MediaSnapshot s : snapshots) {
+            ids[i] = s.getId();
+            faceCounts[i] = s.getFaceCount();
+            i++;
+        }
+        return jdbcTemplate.update(con -> {
+            var ps = con.prepareStatement(UPDATE_FACE_COUNTS);
+            ps.setArray(1, con.createArrayOf("uuid", ids));
+            ps.setArray(2, con.createArrayOf("int4", faceCounts));
+            return ps;
+        });
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.exam.repository;
+
+import com.example.exam.model.RuleDefinition;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface RuleDefinitionRepository extends JpaRepository<RuleDefinition, UUID> {
+    List<RuleDefinition> findByEnabledTrue();
+    List<RuleDefinition> findByExamIdOrderByEventTypeAsc(UUID examId);
+}
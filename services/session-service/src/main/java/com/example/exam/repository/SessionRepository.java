@@ -1,8 +1,13 @@
 package com.example.exam.repository;
 
 import com.example.exam.model.Session;
+import com.example.exam.model.SessionStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -17,4 +22,50 @@ public interface SessionRepository extends JpaRepository<Session, UUID> {
      * Find all sessions for a specific exam
      */
     List<Session> findByExamId(UUID examId);
+
+    long countByExamId(UUID examId);
+
+    /**
+     * Keyset page over all sessions, most recently started first: up to limit rows after (started_at, id)
+     */
+    @Query(value = "SELECT * FROM sessions WHERE started_at <= :startedAt AND (started_at, id) < (:startedAt, :id) " +
+            "ORDER BY started_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Session> findPageBefore(@Param("startedAt") Instant startedAt, @Param("id") UUID id,
+                                 @Param("limit") int limit);
+
+    /**
+     * Same as {@link #findPageBefore} for one exam's sessions
+     */
+    @Query(value = "SELECT * FROM sessions WHERE exam_id = :examId AND started_at <= :startedAt " +
+            "AND (started_at, id) < (:startedAt, :id) ORDER BY started_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Session> findExamPageBefore(@Param("examId") UUID examId, @Param("startedAt") Instant startedAt,
+                                     @Param("id") UUID id, @Param("limit") int limit);
+
+    /**
+     * Return the subset of the given ids that exist (one query for a whole ingest batch)
+     */
+    @Query("select s.id from Session s where s.id in :ids")
+    List<UUID> findExistingIds(@Param("ids") Collection<UUID> ids);
+
+    /**
+     * Id and status of the given sessions that exist (one query, no entity loading)
+     */
+    @Query("select s.id as id, s.status as status from Session s where s.id in :ids")
+    List<StatusView> findStatuses(@Param("ids") Collection<UUID> ids);
+
+    interface StatusView {
+        UUID getId();
+        SessionStatus getStatus();
+    }
+
+    /**
+     * Id and exam of the given sessions that exist (one query, no entity loading)
+     */
+    @Query("select s.id as id, s.examId as examId from Session s where s.id in :ids")
+    List<ExamView> findExamIds(@Param("ids") Collection<UUID> ids);
+
+    interface ExamView {
+        UUID getId();
+        UUID getExamId();
+    }
 }
@@ -0,0 +1,358 @@
+package com.example.exam.service;
+
+import com.example.exam.model.Incident;
+import com.example.exam.model.IncidentStatus;
+import com.example.exam.model.IncidentType;
+import com.example.exam.model.ReviewStatus;
+import com.example.exam.model.SessionStatus;
+import com.example.exam.util.AfterCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Materialized admin statistics: incidents per exam by type and status, ACTIVE sessions,
+ * the open review backlog (OPEN incidents without a review) and ingested events per minute
+ *
+ * Flow:
+ * 1. Every reconcile-interval-ms the counts are recomputed from Postgres with two grouped queries
+ *    and become the new baseline (also once at startup); these scan incidents, reviews and sessions, so
+ *    the interval is long and only bounds drift
+ * 2. In between, session start/end, incident creation, reviews (status and backlog) and event ingest on
+ *    this node add to in-memory deltas once their transaction has committed
+ * 3. Reads add the deltas to the baseline; their cost depends on the number of exams, never on table sizes
+ * 4. Event counts are kept per minute; every event-rate.flush-interval-ms the finished minutes are added
+ *    to event_rate_minutes and the last complete minute, summed over all nodes, is read back
+ *
+ * Changes made on other nodes (or directly in the database) show up at the next reconcile.
+ * A change committed while a reconcile query runs may be counted twice until the following one.
+ */
+@Service
+public class AdminStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(AdminStatsService.class);
+
+    private static final String INCIDENT_COUNTS =
+            "SELECT s.exam_id, i.type::text AS type, i.status::text AS status, count(*) AS total, " +
+            "count(*) FILTER (WHERE r.id IS NULL) AS unreviewed " +
+            "FROM incidents i JOIN sessions s ON s.id = i.session_id " +
+            "LEFT JOIN reviews r ON r.incident_id = i.id " +
+            "GROUP BY s.exam_id, i.type, i.status";
+
+    private static final String ACTIVE_SESSIONS =
+            "SELECT exam_id, count(*) AS active FROM sessions WHERE status = 'ACTIVE' GROUP BY exam_id";
+
+    private static final String ADD_EVENT_MINUTE =
+            "INSERT INTO event_rate_minutes (minute, events) VALUES (?, ?) " +
+            "ON CONFLICT (minute) DO UPDATE SET events = event_rate_minutes.events + EXCLUDED.events";
+
+    private static final String EVENT_MINUTE = "SELECT events FROM event_rate_minutes WHERE minute = ?";
+
+    private static final String PURGE_EVENT_MINUTES =
+            "DELETE FROM event_rate_minutes WHERE minute < now() - make_interval(hours => ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SessionExamCache sessionExams;
+    private final int eventRateRetentionHours;
+    private final Clock clock;
+
+    // Replaced as a whole, so a read never sees a new baseline together with deltas it already contains
+    private volatile State state = new State(new Counts(), null, new Counts(), null);
+    // Event counts of this node per epoch minute, until flushed
+    private final ConcurrentHashMap<Long, LongAdder> eventMinutes = new ConcurrentHashMap<>();
+    private volatile EventRate eventRate = new EventRate(null, 0);
+
+    public AdminStatsService(JdbcTemplate jdbcTemplate,
+                             SessionExamCache sessionExams,
+                             @Value("${admin.stats.event-rate.retention-hours:24}") int eventRateRetentionHours) {
+        this(jdbcTemplate, sessionExams, eventRateRetentionHours, Clock.systemUTC());
+    }
+
+    AdminStatsService(JdbcTemplate jdbcTemplate, SessionExamCache sessionExams, int eventRateRetentionHours,
+                      Clock clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sessionExams = sessionExams;
+        this.eventRateRetentionHours = eventRateRetentionHours;
+        this.clock = clock;
+    }
+
+    public void sessionStarted(UUID sessionId, UUID examId) {
+        sessionExams.put(sessionId, examId);
+        AfterCommit.run(() -> state.current.sessions(examId, 1));
+    }
+
+    /**
+     * @param previous status before the session was ended; only ending an ACTIVE session changes the count
+     */
+    public void sessionEnded(UUID sessionId, UUID examId, SessionStatus previous) {
+        sessionExams.put(sessionId, examId);
+        if (previous == SessionStatus.ACTIVE) {
+            AfterCommit.run(() -> state.current.sessions(examId, -1));
+        }
+    }
+
+    /**
+     * Count newly inserted incidents; call inside the inserting transaction (exams are resolved there)
+     */
+    public void incidentsCreated(Collection<Incident> incidents) {
+        if (incidents.isEmpty()) return;
+        Map<UUID, UUID> exams = sessionExams.examsOf(incidents.stream().map(Incident::getSessionId).toList());
+        List<Incident> counted = List.copyOf(incidents);
+        AfterCommit.run(() -> {
+            Counts current = state.current;
+            for (Incident incident : counted) {
+                UUID examId = exams.get(incident.getSessionId());
+                if (examId != null) current.incidents(examId, incident.getType(), incident.getStatus(), 1, 1);
+            }
+        });
+    }
+
+    /**
+     * The first review was saved for this incident: the reviews trigger moves it from its loaded status to the
+     * review's, and it leaves the open backlog if it was OPEN
+     */
+    public void incidentReviewed(Incident incident, ReviewStatus review) {
+        UUID examId = sessionExams.examOf(incident.getSessionId());
+        if (examId == null) return;
+        IncidentType type = incident.getType();
+        IncidentStatus from = incident.getStatus();
+        IncidentStatus to = IncidentStatus.valueOf(review.name());
+        AfterCommit.run(() -> {
+            Counts current = state.current;
+            current.incidents(examId, type, from, -1, -1);
+            current.incidents(examId, type, to, 1, 0);
+        });
+    }
+
+    public void eventsIngested(int count) {
+        if (count <= 0) return;
+        AfterCommit.run(() -> eventMinutes.computeIfAbsent(epochMinute(clock.millis()), m -> new LongAdder()).add(count));
+    }
+
+    /**
+     * Recompute all counts from Postgres and make them the baseline; on failure the previous baseline
+     * and the deltas recorded since stay in use
+     */
+    @Scheduled(fixedDelayString = "${admin.stats.reconcile-interval-ms:900000}")
+    public synchronized void reconcile() {
+        State before = state;
+        Counts draining = before.current;
+        // From here on changes go to a fresh delta set; the old one is still read until the new baseline is in
+        state = new State(before.baseline, draining, new Counts(), before.reconciledAt);
+        try {
+            Counts baseline = new Counts();
+            jdbcTemplate.query(INCIDENT_COUNTS, (RowCallbackHandler) rs -> baseline.incidents(
+                    rs.getObject("exam_id", UUID.class),
+                    IncidentType.valueOf(rs.getString("type")),
+                    IncidentStatus.valueOf(rs.getString("status")),
+                    rs.getLong("total"), rs.getLong("unreviewed")));
+            jdbcTemplate.query(ACTIVE_SESSIONS, (RowCallbackHandler) rs ->
+                    baseline.sessions(rs.getObject("exam_id", UUID.class), rs.getLong("active")));
+            state = new State(baseline, null, state.current, clock.instant());
+            log.debug("Admin stats reconciled: {} active sessions, {} open incidents without review",
+                    baseline.activeTotal.sum(), baseline.backlogTotal.sum());
+        } catch (DataAccessException e) {
+            log.warn("Admin stats reconcile failed, keeping the previous counts: {}", e.getMessage());
+            Counts current = state.current;
+            state = new State(before.baseline, null, draining, before.reconciledAt);
+            draining.add(current);
+        }
+    }
+
+    /**
+     * Add finished minutes of this node to event_rate_minutes and read back the last complete minute
+     */
+    @Scheduled(fixedDelayString = "${admin.stats.event-rate.flush-interval-ms:10000}")
+    public synchronized void flushEventRate() {
+        long currentMinute = epochMinute(clock.millis());
+        Map<Long, Long> finished = new HashMap<>();
+        for (Long minute : eventMinutes.keySet()) {
+            if (minute >= currentMinute) continue;
+            LongAdder adder = eventMinutes.remove(minute);
+            if (adder != null) finished.put(minute, adder.sum());
+        }
+        try {
+            if (!finished.isEmpty()) {
+                List<Object[]> rows = new ArrayList<>(finished.size());
+                finished.forEach((minute, events) -> rows.add(new Object[]{minuteStart(minute), events}));
+                jdbcTemplate.batchUpdate(ADD_EVENT_MINUTE, rows);
+            }
+            Timestamp last = minuteStart(currentMinute - 1);
+            List<Long> events = jdbcTemplate.queryForList(EVENT_MINUTE, Long.class, last);
+            eventRate = new EventRate(last.toInstant(), events.isEmpty() ? 0 : events.get(0));
+        } catch (DataAccessException e) {
+            log.warn("Event rate flush failed, will retry: {}", e.getMessage());
+            finished.forEach((minute, events) -> eventMinutes.computeIfAbsent(minute, m -> new LongAdder()).add(events));
+        }
+    }
+
+    /**
+     * @return number of minute rows removed
+     */
+    @Scheduled(fixedDelayString = "${admin.stats.event-rate.purge-interval-ms:3600000}")
+    public int purgeEventRate() {
+        return jdbcTemplate.update(PURGE_EVENT_MINUTES, eventRateRetentionHours);
+    }
+
+    public Overview overview() {
+        State s = state;
+        Map<IncidentType, Long> byType = new EnumMap<>(IncidentType.class);
+        for (IncidentType type : IncidentType.values()) {
+            byType.put(type, s.sum(c -> c.byType[type.ordinal()].sum()));
+        }
+        Map<IncidentStatus, Long> byStatus = new EnumMap<>(IncidentStatus.class);
+        for (IncidentStatus status : IncidentStatus.values()) {
+            byStatus.put(status, s.sum(c -> c.byStatus[status.ordinal()].sum()));
+        }
+        EventRate rate = eventRate;
+        return new Overview(s.sum(c -> c.activeTotal.sum()), s.sum(c -> c.backlogTotal.sum()),
+                rate.events(), rate.minute(), byType, byStatus, s.reconciledAt);
+    }
+
+    public ExamStats exam(UUID examId) {
+        State s = state;
+        Map<IncidentType, Map<IncidentStatus, Long>> incidents = new EnumMap<>(IncidentType.class);
+        for (IncidentType type : IncidentType.values()) {
+            Map<IncidentStatus, Long> byStatus = new EnumMap<>(IncidentStatus.class);
+            for (IncidentStatus status : IncidentStatus.values()) {
+                IncidentKey key = new IncidentKey(examId, type, status);
+                byStatus.put(status, s.sum(c -> Counts.get(c.incidents, key)));
+            }
+            incidents.put(type, byStatus);
+        }
+        return new ExamStats(examId, s.sum(c -> Counts.get(c.activeSessions, examId)),
+                s.sum(c -> Counts.get(c.openBacklog, examId)), incidents, s.reconciledAt);
+    }
+
+    /**
+     * Exams that have sessions or incidents, in no particular order
+     */
+    public Set<UUID> exams() {
+        State s = state;
+        Set<UUID> ids = new HashSet<>();
+        for (Counts c : s.all()) {
+            ids.addAll(c.activeSessions.keySet());
+            c.incidents.keySet().forEach(key -> ids.add(key.examId()));
+        }
+        return ids;
+    }
+
+    private static long epochMinute(long millis) {
+        return TimeUnit.MILLISECONDS.toMinutes(millis);
+    }
+
+    private static Timestamp minuteStart(long epochMinute) {
+        return new Timestamp(TimeUnit.MINUTES.toMillis(epochMinute));
+    }
+
+    private record IncidentKey(UUID examId, IncidentType type, IncidentStatus status) {}
+
+    /**
+     * @param draining deltas recorded before the running reconcile started, or null
+     * @param current deltas new changes are added to
+     */
+    private record State(Counts baseline, Counts draining, Counts current, Instant reconciledAt) {
+
+        List<Counts> all() {
+            return draining == null ? List.of(baseline, current) : List.of(baseline, draining, current);
+        }
+
+        long sum(ToLongFunction<Counts> count) {
+            long total = 0;
+            for (Counts c : all()) total += count.applyAsLong(c);
+            return total;
+        }
+    }
+
+    /**
+     * One set of counters: a reconciled baseline (filled once, then only read) or the deltas since one
+     */
+    private static final class Counts {
+
+        final ConcurrentHashMap<IncidentKey, LongAdder> incidents = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<UUID, LongAdder> openBacklog = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<UUID, LongAdder> activeSessions = new ConcurrentHashMap<>();
+        final LongAdder[] byType = adders(IncidentType.values().length);
+        final LongAdder[] byStatus = adders(IncidentStatus.values().length);
+        final LongAdder activeTotal = new LongAdder();
+        final LongAdder backlogTotal = new LongAdder();
+
+        /**
+         * @param unreviewed how many of them have no review (only counts towards the backlog when OPEN)
+         */
+        void incidents(UUID examId, IncidentType type, IncidentStatus status, long total, long unreviewed) {
+            add(incidents, new IncidentKey(examId, type, status), total);
+            byType[type.ordinal()].add(total);
+            byStatus[status.ordinal()].add(total);
+            if (status == IncidentStatus.OPEN && unreviewed != 0) {
+                add(openBacklog, examId, unreviewed);
+                backlogTotal.add(unreviewed);
+            }
+        }
+
+        void sessions(UUID examId, long delta) {
+            add(activeSessions, examId, delta);
+            activeTotal.add(delta);
+        }
+
+        void add(Counts other) {
+            other.incidents.forEach((key, n) -> add(incidents, key, n.sum()));
+            other.openBacklog.forEach((examId, n) -> add(openBacklog, examId, n.sum()));
+            other.activeSessions.forEach((examId, n) -> add(activeSessions, examId, n.sum()));
+            for (int i = 0; i < byType.length; i++) byType[i].add(other.byType[i].sum());
+            for (int i = 0; i < byStatus.length; i++) byStatus[i].add(other.byStatus[i].sum());
+            activeTotal.add(other.activeTotal.sum());
+            backlogTotal.add(other.backlogTotal.sum());
+        }
+
+        static <K> void add(ConcurrentHashMap<K, LongAdder> counters, K key, long delta) {
+            counters.computeIfAbsent(key, k -> new LongAdder()).add(delta);
+        }
+
+        static <K> long get(Map<K, LongAdder> counters, K key) {
+            LongAdder adder = counters.get(key);
+            return adder == null ? 0 : adder.sum();
+        }
+
+        private static LongAdder[] adders(int n) {
+            LongAdder[] adders = new LongAdder[n];
+            for (int i = 0; i < n; i++) adders[i] = new LongAdder();
+            return adders;
+        }
+    }
+
+    private record EventRate(Instant minute, long events) {}
+
+    /**
+     * @param eventsPerMinute events ingested by all nodes during {@code eventsMinute}, the last complete minute
+     * @param reconciledAt when the counts were last recomputed from Postgres (null before the first reconcile)
+     */
+    public record Overview(long activeSessions, long openReviewBacklog, long eventsPerMinute, Instant eventsMinute,
+                           Map<IncidentType, Long> incidentsByType, Map<IncidentStatus, Long> incidentsByStatus,
+                           Instant reconciledAt) {}
+
+    public record ExamStats(UUID examId, long activeSessions, long openReviewBacklog,
+                            Map<IncidentType, Map<IncidentStatus, Long>> incidents, Instant reconciledAt) {}
+}
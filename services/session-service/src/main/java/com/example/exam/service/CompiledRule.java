@@ -0,0 +1,67 @@
+package com.example.exam.service;
+
+import com.example.exam.model.EventType;
+import com.example.exam.model.IncidentType;
+import com.example.exam.model.RuleDefinition;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Immutable, ready-to-evaluate form of a {@link RuleDefinition}.
+ * The score curve is precomputed per count, so scoring an incident is an array lookup.
+ */
+public final class CompiledRule {
+
+    private final EventType eventType;
+    private final IncidentType incidentType;
+    private final long windowMillis;
+    private final int windowMinutes;
+    private final int threshold;
+    private final String reasonTemplate;
+    // scores[i] = score for count threshold + 1 + i; counts past the end score 1.0
+    private final BigDecimal[] scores;
+
+    public CompiledRule(EventType eventType, IncidentType incidentType, int windowSeconds, int threshold,
+                        BigDecimal scoreBase, int scoreSpan, String reasonTemplate) {
+        if (windowSeconds <= 0 || threshold < 0 || scoreSpan <= 0) {
+            throw new IllegalArgumentException("Invalid rule for " + eventType + ": window, threshold and span must be positive");
+        }
+        this.eventType = eventType;
+        this.incidentType = incidentType;
+        this.windowMillis = windowSeconds * 1000L;
+        this.windowMinutes = Math.max(1, windowSeconds / 60);
+        this.threshold = threshold;
+        this.reasonTemplate = reasonTemplate;
+        // Linear curve: score = min(1.0, base + (count - threshold) / span), rounded to 2 decimals
+        double base = scoreBase.doubleValue();
+        this.scores = new BigDecimal[scoreSpan + 1];
+        for (int i = 0; i < scores.length; i++) {
+            double score = Math.min(1.0, (i + 1) / (double) scoreSpan + base);
+            scores[i] = BigDecimal.valueOf(score).setScale(2, RoundingMode.HALF_UP);
+        }
+    }
+
+    public static CompiledRule from(RuleDefinition d) {
+        return new CompiledRule(d.getEventType(), d.getIncidentType(), d.getWindowSeconds(), d.getThreshold(),
+                d.getScoreBase(), d.getScoreSpan(), d.getReasonTemplate());
+    }
+
+    public EventType eventType() { return eventType; }
+    public IncidentType incidentType() { return incidentType; }
+    public long windowMillis() { return windowMillis; }
+    public int threshold() { return threshold; }
+
+    /**
+     * Severity score (0.0 - 1.0) for a count above the threshold
+     */
+    public BigDecimal score(int count) {
+        int i = count - threshold - 1;
+        if (i < 0) i = 0;
+        return i < scores.length ? scores[i] : scores[scores.length - 1];
+    }
+
+    public String reason(int count) {
+        return String.format(reasonTemplate, count, windowMinutes, threshold);
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.exam.service;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Removes the "data:&lt;mime&gt;;base64," header at the start of JSON string values, so a streaming
+ * JSON parser can decode data URLs with readBinaryValue (which only accepts plain base64).
+ *
+ * Only a prefix that starts the string, is shorter than 128 bytes and ends in ";base64," is removed;
+ * every other byte passes through unchanged. Strings and escapes are tracked, so the header is
+ * never matched inside a value or a key.
+ */
+final class DataUrlPrefixStrippingInputStream extends FilterInputStream {
+
+    private static final int MAX_PREFIX = 128;
+    private static final byte[] DATA = "data:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BASE64_MARK = ";base64".getBytes(StandardCharsets.US_ASCII);
+
+    private boolean inString;
+    private boolean escaped;
+    private boolean atStringStart;
+
+    // Bytes read ahead while checking for a header that turned out not to be one
+    private final byte[] lookahead = new byte[MAX_PREFIX];
+    private int pendingPos;
+    private int pendingLen;
+    // Byte that ended a failed look-ahead; goes through the state machine after the pending bytes
+    private int deferred = -1;
+
+    DataUrlPrefixStrippingInputStream(InputStream in) {
+        super(new BufferedInputStream(in, 8192));
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pendingPos < pendingLen) {
+            return lookahead[pendingPos++] & 0xff;
+        }
+        int b;
+        if (deferred >= 0) {
+            b = deferred;
+            deferred = -1;
+        } else {
+            b = in.read();
+        }
+        if (b < 0) return -1;
+
+        if (!inString) {
+            if (b == '"') {
+                inString = true;
+                atStringStart = true;
+            }
+            return b;
+        }
+        if (atStringStart) {
+            atStringStart = false;
+            if (b == DATA[0]) return lookAhead(b);
+        }
+        if (escaped) {
+            escaped = false;
+        } else if (b == '\\') {
+            escaped = true;
+        } else if (b == '"') {
+            inString = false;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        int n = 0;
+        while (n < len) {
+            int c = read();
+            if (c < 0) return n == 0 ? -1 : n;
+            b[off + n++] = (byte) c;
+            // Hand over what we have rather than block for more network input
+            if (pendingPos >= pendingLen && deferred < 0 && in.available() == 0) break;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && read() >= 0) skipped++;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (pendingLen - pendingPos) + in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private int lookAhead(int first) throws IOException {
+        lookahead[0] = (byte) first;
+        int n = 1;
+        while (true) {
+            int c = in.read();
+            if (c == ',' && isDataUrlHeader(n)) {
+                // Header dropped; continue with the first base64 byte
+                return read();
+            }
+            boolean stillPossible = c >= 0 && c != '"' && c != '\\' && c != ',' && n < MAX_PREFIX
+                    && (n >= DATA.length || c == DATA[n]);
+            if (!stillPossible) {
+                deferred = c;
+                pendingPos = 1;
+                pendingLen = n;
+                return lookahead[0] & 0xff;
+            }
+            lookahead[n++] = (byte) c;
+        }
+    }
+
+    private boolean isDataUrlHeader(int n) {
+        if (n < DATA.length + BASE64_MARK.length) return false;
+        for (int i = 0; i < BASE64_MARK.length; i++) {
+            if (lookahead[n - BASE64_MARK.length + i] != BASE64_MARK[i]) return false;
+        }
+        return true;
+    }
+}
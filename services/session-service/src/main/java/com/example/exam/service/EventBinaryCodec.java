@@ -0,0 +1,223 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.EventIngestDto;
+import com.example.exam.model.EventType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of event batches (Content-Type application/vnd.exam.events+binary)
+ *
+ * Layout, version 1:
+ *   0xE7 0x01                      magic, version
+ *   varint count
+ *   per event:
+ *     byte flags                   bit 0: same session as the previous event, bit 1: details present
+ *     16 bytes sessionId           big-endian msb, lsb; omitted when bit 0 is set
+ *     zigzag varint ts             delta to the previous event's ts (the first is absolute)
+ *     byte eventType               EventType ordinal; new types must only be appended to the enum
+ *     varint length + UTF-8        idempotencyKey
+ *     varint length + UTF-8        details (JSON), only when bit 1 is set
+ *
+ * A batch of one session's events costs about 4 bytes plus the key per event instead of ~200 bytes of JSON.
+ * Decoding fills the primitive columns of a {@link Batch} directly, with no token or tree objects.
+ */
+public final class EventBinaryCodec {
+
+    public static final String MEDIA_TYPE = "application/vnd.exam.events+binary";
+
+    private static final int MAGIC = 0xE7;
+    private static final int VERSION = 1;
+    private static final int SAME_SESSION = 1;
+    private static final int HAS_DETAILS = 2;
+    private static final int MAX_KEY_BYTES = 255 * 4;
+    private static final EventType[] TYPES = EventType.values();
+
+    private EventBinaryCodec() {
+    }
+
+    /**
+     * Decoded events, one array element per event
+     */
+    public static final class Batch {
+        public final int size;
+        public final long[] sessionMsb;
+        public final long[] sessionLsb;
+        public final long[] ts;
+        public final byte[] eventType;
+        public final String[] idempotencyKey;
+        public final String[] details;
+
+        Batch(int size) {
+            this.size = size;
+            this.sessionMsb = new long[size];
+            this.sessionLsb = new long[size];
+            this.ts = new long[size];
+            this.eventType = new byte[size];
+            this.idempotencyKey = new String[size];
+            this.details = new String[size];
+        }
+
+        /**
+         * The ingest request for this batch; the ingest path works on items
+         */
+        public EventIngestDto.Request toRequest() {
+            List<EventIngestDto.Item> items = new ArrayList<>(size);
+            UUID session = null;
+            for (int i = 0; i < size; i++) {
+                if (session == null || session.getMostSignificantBits() != sessionMsb[i]
+                        || session.getLeastSignificantBits() != sessionLsb[i]) {
+                    session = new UUID(sessionMsb[i], sessionLsb[i]);
+                }
+                var item = new EventIngestDto.Item();
+                item.sessionId = session;
+                item.ts = ts[i];
+                item.eventType = TYPES[eventType[i]];
+                item.idempotencyKey = idempotencyKey[i];
+                item.details = details[i];
+                items.add(item);
+            }
+            var request = new EventIngestDto.Request();
+            request.items = items;
+            return request;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a valid version 1 batch
+     */
+    public static Batch decode(byte[] body) {
+        var r = new Reader(body);
+        if (r.u8() != MAGIC || r.u8() != VERSION) {
+            throw new IllegalArgumentException("Not a version 1 binary event batch");
+        }
+        long count = r.varint();
+        // Every event needs at least 4 bytes, so a count beyond that is corrupt, not a reason to allocate
+        if (count < 0 || count > (body.length - r.pos) / 4) {
+            throw new IllegalArgumentException("Invalid event count " + count);
+        }
+        Batch b = new Batch((int) count);
+        long msb = 0, lsb = 0, ts = 0;
+        for (int i = 0; i < b.size; i++) {
+            int flags = r.u8();
+            if ((flags & SAME_SESSION) == 0) {
+                msb = r.int64();
+                lsb = r.int64();
+            } else if (i == 0) {
+                throw new IllegalArgumentException("Event 1 has no session");
+            }
+            long zigzag = r.varint();
+            ts += (zigzag >>> 1) ^ -(zigzag & 1);
+            int type = r.u8();
+            if (type >= TYPES.length) throw new IllegalArgumentException("Unknown event type " + type + " at event " + (i + 1));
+            String key = r.string(MAX_KEY_BYTES);
+            if (key.isBlank()) throw new IllegalArgumentException("Empty idempotencyKey at event " + (i + 1));
+            b.sessionMsb[i] = msb;
+            b.sessionLsb[i] = lsb;
+            b.ts[i] = ts;
+            b.eventType[i] = (byte) type;
+            b.idempotencyKey[i] = key;
+            b.details[i] = (flags & HAS_DETAILS) != 0 ? r.string(body.length) : null;
+        }
+        if (r.pos != body.length) throw new IllegalArgumentException("Trailing bytes after " + b.size + " events");
+        return b;
+    }
+
+    /**
+     * Encode items (the client side of the format; used by tests and the benchmark)
+     */
+    public static byte[] encode(List<EventIngestDto.Item> items) {
+        var out = new ByteArrayOutputStream(16 + items.size() * 48);
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeVarint(out, items.size());
+        UUID previousSession = null;
+        long previousTs = 0;
+        for (var item : items) {
+            boolean same = item.sessionId.equals(previousSession);
+            out.write((same ? SAME_SESSION : 0) | (item.details != null ? HAS_DETAILS : 0));
+            if (!same) {
+                writeLong(out, item.sessionId.getMostSignificantBits());
+                writeLong(out, item.sessionId.getLeastSignificantBits());
+            }
+            long delta = item.ts - previousTs;
+            writeVarint(out, (delta << 1) ^ (delta >> 63));
+            out.write(item.eventType.ordinal());
+            writeString(out, item.idempotencyKey);
+            if (item.details != null) writeString(out, item.details);
+            previousSession = item.sessionId;
+            previousTs = item.ts;
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long v) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (v >>> shift));
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static final class Reader {
+        final byte[] buf;
+        int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int u8() {
+            if (pos >= buf.length) throw truncated();
+            return buf[pos++] & 0xFF;
+        }
+
+        long int64() {
+            if (pos + 8 > buf.length) throw truncated();
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        long varint() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = u8();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IllegalArgumentException("Malformed varint at byte " + pos);
+        }
+
+        String string(int maxBytes) {
+            long len = varint();
+            if (len < 0 || len > maxBytes) throw new IllegalArgumentException("Invalid string length at byte " + pos);
+            if (pos + len > buf.length) throw truncated();
+            String s = new String(buf, pos, (int) len, StandardCharsets.UTF_8);
+            pos += (int) len;
+            return s;
+        }
+
+        private IllegalArgumentException truncated() {
+            return new IllegalArgumentException("Truncated binary event batch at byte " + pos);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.EventImportDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * CLI mode: import one file and exit, e.g.
+ * java -jar session-service.jar --spring.main.web-application-type=none --events.import.file=backlog.ndjson
+ *
+ * The format follows the extension (.csv, otherwise NDJSON) unless events.import.format is set.
+ * Exit code 0 on success, 1 if the import failed.
+ */
+@Component
+@ConditionalOnProperty(name = "events.import.file")
+public class EventImportCommand implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(EventImportCommand.class);
+
+    private final EventImportService importService;
+    private final ConfigurableApplicationContext context;
+    private final Path file;
+    private final String format;
+
+    public EventImportCommand(EventImportService importService,
+                              ConfigurableApplicationContext context,
+                              @Value("${events.import.file}") String file,
+                              @Value("${events.import.format:}") String format) {
+        this.importService = importService;
+        this.context = context;
+        this.file = Path.of(file);
+        this.format = format;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            EventImportDto.Result result = importService.importEvents(in, format());
+            log.info("Imported {}: {} created, {} duplicates, {} rejected of {} rows",
+                    file, result.created, result.duplicates, result.rejected, result.rows);
+        } catch (Exception e) {
+            log.error("Import of {} failed: {}", file, e.getMessage());
+            exitCode = 1;
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+
+    EventImportService.Format format() {
+        if (!format.isBlank()) return EventImportService.Format.valueOf(format.toUpperCase());
+        return file.getFileName().toString().toLowerCase().endsWith(".csv")
+                ? EventImportService.Format.CSV
+                : EventImportService.Format.NDJSON;
+    }
+}
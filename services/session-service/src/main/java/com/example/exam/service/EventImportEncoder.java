@@ -0,0 +1,119 @@
+package com.example.exam.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns an import body into the CSV that COPY reads into the staging table:
+ * session_id,ts,event_type,details,idempotency_key, one row per event.
+ *
+ * Values are written as text and validated by the merge statement, so a bad row is counted as
+ * rejected instead of failing the whole import. NDJSON is parsed with the streaming parser, one
+ * event at a time; CSV is passed through unchanged apart from an optional header line.
+ */
+final class EventImportEncoder {
+
+    private static final JsonFactory JSON = new ObjectMapper().getFactory();
+    private static final int HEADER_PEEK = 64;
+
+    private EventImportEncoder() {
+    }
+
+    static void encode(InputStream in, EventImportService.Format format, OutputStream out) throws IOException {
+        if (format == EventImportService.Format.CSV) {
+            copyCsv(in, out);
+        } else {
+            ndjsonToCsv(in, out);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the body is not a sequence of JSON objects
+     */
+    static void ndjsonToCsv(InputStream in, OutputStream out) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try (JsonParser p = JSON.createParser(in)) {
+            long line = 0;
+            JsonToken token;
+            while ((token = p.nextToken()) != null) {
+                line++;
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Event " + line + " is not a JSON object");
+                }
+                String sessionId = null, ts = null, eventType = null, details = null, idempotencyKey = null;
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = p.getCurrentName();
+                    JsonToken value = p.nextToken();
+                    switch (field) {
+                        case "sessionId" -> sessionId = scalar(p, value);
+                        case "ts" -> ts = scalar(p, value);
+                        case "eventType" -> eventType = scalar(p, value);
+                        case "idempotencyKey" -> idempotencyKey = scalar(p, value);
+                        case "details" -> details = value.isStructStart()
+                                ? p.readValueAsTree().toString()
+                                : scalar(p, value);
+                        default -> p.skipChildren();
+                    }
+                }
+                writeRow(w, sessionId, ts, eventType, details, idempotencyKey);
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed NDJSON: " + e.getOriginalMessage());
+        }
+        w.flush();
+    }
+
+    /**
+     * Copy CSV rows, dropping a first line that is a header (starts with session_id or sessionId)
+     */
+    static void copyCsv(InputStream in, OutputStream out) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(HEADER_PEEK);
+        byte[] head = buffered.readNBytes(HEADER_PEEK);
+        String start = new String(head, StandardCharsets.UTF_8).stripLeading().replace("\"", "");
+        buffered.reset();
+        if (start.startsWith("session_id") || start.startsWith("sessionId")) {
+            int b;
+            while ((b = buffered.read()) != -1 && b != '\n') {
+                // skip header
+            }
+        }
+        buffered.transferTo(out);
+        out.flush();
+    }
+
+    private static String scalar(JsonParser p, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) return null;
+        if (value.isStructStart()) {
+            // Not a valid value for this column: leave it empty and let the merge reject the row
+            p.skipChildren();
+            return null;
+        }
+        return p.getText();
+    }
+
+    private static void writeRow(Writer w, String... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) w.write(',');
+            // Unquoted empty is NULL for COPY CSV; everything else is quoted
+            if (values[i] != null) {
+                w.write('"');
+                w.write(values[i].replace("\"", "\"\""));
+                w.write('"');
+            }
+        }
+        w.write('\n');
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.EventImportDto;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Array;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Bulk import of offline/replayed events (e.g. a proctoring client's local backlog, or a re-run
+ * of an exported session) through PostgreSQL COPY instead of per-batch INSERTs
+ *
+ * Flow:
+ * 1. Create a temp staging table (text columns, dropped at commit)
+ * 2. Stream the body into it with COPY ... FROM STDIN, converting NDJSON to CSV on the fly
+ * 3. One INSERT ... SELECT validates the rows, drops unknown sessions, dedupes on idempotency_key
+ *    (within the file, then by claiming it in event_idempotency_keys) and on (session_id, ts, event_type)
+ *    via ON CONFLICT, returning the inserted rows summed per session, minute and event type
+ * 4. Those sums are counted in the admin stats and the session timeline, like live ingest; no row
+ *    of the import is held in memory
+ *
+ * Imported events are history: they are not run through the live rules and may target ENDED sessions.
+ */
+@Service
+public class EventImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(EventImportService.class);
+
+    public enum Format { NDJSON, CSV }
+
+    private static final String CREATE_STAGING =
+            "CREATE TEMP TABLE event_import_staging (" +
+            "line BIGINT GENERATED ALWAYS AS IDENTITY, session_id TEXT, ts TEXT, event_type TEXT, " +
+            "details TEXT, idempotency_key TEXT) ON COMMIT DROP";
+
+    private static final String COPY_STAGING =
+            "COPY event_import_staging (session_id, ts, event_type, details, idempotency_key) " +
+            "FROM STDIN WITH (FORMAT csv)";
+
+    // Invalid values become NULL instead of failing the cast, so they are rejected row by row
+    private static final String MERGE =
+            "WITH typed AS (" +
+            "  SELECT line, " +
+            "    CASE WHEN session_id ~* '^[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}$' " +
+            "         THEN session_id::uuid END AS session_id, " +
+            "    CASE WHEN ts ~ '^[0-9]{1,18}$' THEN ts::bigint END AS ts, " +
+            "    CASE WHEN event_type = ANY (enum_range(NULL::event_type)::text[]) " +
+            "         THEN event_type::event_type END AS event_type, " +
+            "    details, idempotency_key " +
+            "  FROM event_import_staging" +
+            "), valid AS (" +
+            "  SELECT t.* FROM typed t JOIN sessions s ON s.id = t.session_id " +
+            "  WHERE t.ts IS NOT NULL AND t.event_type IS NOT NULL " +
+            "    AND t.idempotency_key <> '' AND length(t.idempotency_key) <= 255" +
+            "), first_per_key AS (" +
+            "  SELECT DISTINCT ON (idempotency_key) * FROM valid ORDER BY idempotency_key, line" +
+            "), claimed AS (" +
+            "  INSERT INTO event_idempotency_keys (idempotency_key, event_id, session_id, ts) " +
+            "  SELECT idempotency_key, gen_random_uuid(), session_id, ts FROM first_per_key " +
+            "  ON CONFLICT DO NOTHING RETURNING idempotency_key, event_id" +
+            "), inserted AS (" +
+            "  INSERT INTO events (id, session_id, ts, event_type, details, idempotency_key) " +
+            "  SELECT c.event_id, f.session_id, f.ts, f.event_type, f.details, f.idempotency_key " +
+            "  FROM first_per_key f JOIN claimed c ON c.idempotency_key = f.idempotency_key " +
+            "  ORDER BY f.ts " +
+            "  ON CONFLICT DO NOTHING RETURNING id, session_id, ts, event_type" +
+            ") " +
+            // One row per session, minute and type inserted (or a single row with NULLs when nothing was),
+            // totals repeated on each; minutes are rounded as in V15
+            "SELECT g.session_id, g.minute_ts, g.event_type, g.events, " +
+            "  (SELECT count(*) FROM valid) AS valid_rows, " +
+            "  (SELECT array_agg(c.event_id) FROM claimed c WHERE c.event_id NOT IN (SELECT id FROM inserted)) AS lost " +
+            "FROM (SELECT 1) one LEFT JOIN (" +
+            "  SELECT session_id, ts - ts % 60000 AS minute_ts, event_type::text AS event_type, count(*) AS events " +
+            "  FROM inserted GROUP BY 1, 2, 3" +
+            ") g ON true";
+
+    // Claims of rows that lost on (session_id, ts, event_type); the CTEs above cannot see each other's rows
+    private static final String RELEASE_KEYS = "DELETE FROM event_idempotency_keys WHERE event_id = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AdminStatsService adminStats;
+    private final SessionTimeline timeline;
+    private final int copyBufferBytes;
+
+    public EventImportService(JdbcTemplate jdbcTemplate,
+                              AdminStatsService adminStats,
+                              SessionTimeline timeline,
+                              @Value("${events.import.copy-buffer-bytes:65536}") int copyBufferBytes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.adminStats = adminStats;
+        this.timeline = timeline;
+        this.copyBufferBytes = copyBufferBytes;
+    }
+
+    /**
+     * Import all events in the body in one transaction
+     *
+     * @throws IllegalArgumentException if the body cannot be parsed as the given format
+     */
+    @Transactional
+    public EventImportDto.Result importEvents(InputStream body, Format format) {
+        long start = System.nanoTime();
+        List<SessionTimeline.Count> inserted = new ArrayList<>();
+        long[] created = new long[1];
+        EventImportDto.Result result = jdbcTemplate.execute((ConnectionCallback<EventImportDto.Result>) con -> {
+            try (Statement st = con.createStatement()) {
+                st.execute(CREATE_STAGING);
+            }
+            long rows = copy(con.unwrap(PGConnection.class), body, format);
+            long valid = -1;
+            Object[] lost = null;
+            try (Statement st = con.createStatement(); var rs = st.executeQuery(MERGE)) {
+                while (rs.next()) {
+                    if (valid < 0) {
+                        valid = rs.getLong("valid_rows");
+                        Array array = rs.getArray("lost");
+                        lost = array == null ? null : (Object[]) array.getArray();
+                    }
+                    UUID sessionId = rs.getObject("session_id", UUID.class);
+                    if (sessionId == null) continue;
+                    int events = rs.getInt("events");
+                    inserted.add(new SessionTimeline.Count(sessionId, rs.getLong("minute_ts"), rs.getString("event_type"), events));
+                    created[0] += events;
+                }
+            }
+            if (lost != null) {
+                try (var ps = con.prepareStatement(RELEASE_KEYS)) {
+                    ps.setArray(1, con.createArrayOf("uuid", lost));
+                    ps.executeUpdate();
+                }
+            }
+            return new EventImportDto.Result(rows, created[0], valid - created[0], rows - valid, 0);
+        });
+        // Same bookkeeping as live ingest: dashboard rate after commit, timeline rows in this transaction
+        adminStats.eventsIngested((int) Math.min(created[0], Integer.MAX_VALUE));
+        timeline.eventsCounted(inserted);
+        result.elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        log.info("Event import ({}): {} rows, {} created, {} duplicates, {} rejected in {} ms",
+                format, result.rows, result.created, result.duplicates, result.rejected, result.elapsedMs);
+        return result;
+    }
+
+    private long copy(PGConnection pg, InputStream body, Format format) throws SQLException {
+        CopyIn copyIn = pg.getCopyAPI().copyIn(COPY_STAGING);
+        try {
+            PGCopyOutputStream out = new PGCopyOutputStream(copyIn, copyBufferBytes);
+            EventImportEncoder.encode(body, format, out);
+            out.flush();
+            return copyIn.endCopy();
+        } catch (SQLException e) {
+            // COPY rejects malformed CSV (wrong column count, unterminated quote): a client error
+            throw new IllegalArgumentException("Malformed CSV: " + e.getMessage());
+        } catch (IOException e) {
+            // The copy stream reports server-side COPY errors as IOException too
+            if (e.getCause() instanceof SQLException sql) {
+                throw new IllegalArgumentException("Malformed CSV: " + sql.getMessage());
+            }
+            throw new UncheckedIOException("Event import body could not be read", e);
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.exam.service;
+
+import com.example.exam.repository.EventRepository;
+import com.example.exam.repository.EventRepositoryCustom.EventPartition;
+import com.example.exam.repository.EventRepositoryCustom.KeyPurge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maintains the range partitions of the events table (V11)
+ *
+ * Flow:
+ * 1. Pre-create: make sure a partition exists for every day (or ISO week) from today up to
+ *    events.partitions.precreate-days ahead, so inserts never land in events_default
+ * 2. Retention: a partition is dropped (detach + drop) once its end is older than the longest
+ *    Exam.retentionDays of the exams it holds events for; the drop records its range in event_key_purges
+ * 3. Key purge: the idempotency keys of dropped ranges are deleted from event_idempotency_keys in batches
+ *    of key-purge-batch, each in its own short transaction, outside the drop
+ *
+ * Retention is partition-granular: an exam's events are kept at least retentionDays and go when the
+ * whole partition has expired for every exam in it. No row-by-row DELETE on events.
+ * event_idempotency_keys (V16) is the exception: it is unpartitioned so keys stay unique across partitions,
+ * which costs every insert its index updates and leaves its keys to be deleted row by row (V18), in the
+ * background so the drop stays short and autovacuum can keep up between batches.
+ */
+@Service
+public class EventPartitionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(EventPartitionManager.class);
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    public enum Interval { DAILY, WEEKLY }
+
+    private final EventRepository eventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Interval interval;
+    private final int precreateDays;
+    private final int keyPurgeBatch;
+    private final Clock clock;
+
+    public EventPartitionManager(EventRepository eventRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${events.partitions.enabled:true}") boolean enabled,
+                                 @Value("${events.partitions.interval:daily}") String interval,
+                                 @Value("${events.partitions.precreate-days:7}") int precreateDays,
+                                 @Value("${events.partitions.key-purge-batch:5000}") int keyPurgeBatch) {
+        this(eventRepository, transactionManager, enabled, Interval.valueOf(interval.toUpperCase()), precreateDays,
+                keyPurgeBatch, Clock.systemUTC());
+    }
+
+    EventPartitionManager(EventRepository eventRepository, PlatformTransactionManager transactionManager,
+                          boolean enabled, Interval interval, int precreateDays, int keyPurgeBatch, Clock clock) {
+        this.eventRepository = eventRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.interval = interval;
+        this.precreateDays = precreateDays;
+        this.keyPurgeBatch = keyPurgeBatch;
+        this.clock = clock;
+    }
+
+    /**
+     * Create missing partitions from today to precreate-days ahead; runs at startup and then hourly
+     *
+     * @return names of the partitions created
+     */
+    @Scheduled(fixedDelayString = "${events.partitions.precreate-interval-ms:3600000}")
+    public List<String> precreate() {
+        if (!enabled) return List.of();
+        List<EventPartition> existing = new ArrayList<>(eventRepository.findEventPartitions());
+        List<String> created = new ArrayList<>();
+        LocalDate today = LocalDate.now(clock);
+        for (LocalDate start = periodStart(today); !start.isAfter(today.plusDays(precreateDays)); start = periodEnd(start)) {
+            long from = epochMillis(start);
+            long to = epochMillis(periodEnd(start));
+            EventPartition overlap = overlapping(existing, from, to);
+            if (overlap != null) {
+                if (overlap.fromTs() != from || overlap.toTs() != to) {
+                    log.debug("Events partition for {} overlaps {}, skipped", start, overlap.name());
+                }
+                continue;
+            }
+            String name = partitionName(start);
+            try {
+                transactionTemplate.executeWithoutResult(status -> eventRepository.createEventPartition(name, from, to));
+                existing.add(new EventPartition(name, from, to));
+                created.add(name);
+            } catch (RuntimeException e) {
+                log.error("Could not create events partition {}: {}", name, e.getMessage());
+            }
+        }
+        if (!created.isEmpty()) {
+            log.info("Created events partitions {}", created);
+        }
+        return created;
+    }
+
+    /**
+     * Drop partitions whose events are past the retention of every exam they belong to; runs daily
+     *
+     * @return names of the partitions dropped
+     */
+    @Scheduled(cron = "${events.partitions.retention-cron:0 30 3 * * *}", zone = "UTC")
+    public List<String> applyRetention() {
+        if (!enabled) return List.of();
+        long now = clock.millis();
+        // Nothing younger than the shortest retention can expire; saves scanning recent partitions
+        long horizon = now - Duration.ofDays(eventRepository.minExamRetentionDays()).toMillis();
+        List<String> dropped = new ArrayList<>();
+        for (EventPartition p : eventRepository.findEventPartitions()) {
+            if (p.isDefault() || p.toTs() > horizon) continue;
+            int retentionDays = eventRepository.maxRetentionDaysInEventPartition(p.name());
+            if (p.toTs() > now - Duration.ofDays(retentionDays).toMillis()) continue;
+            try {
+                transactionTemplate.executeWithoutResult(status -> eventRepository.dropEventPartition(p.name(), p.fromTs(), p.toTs()));
+                dropped.add(p.name());
+            } catch (RuntimeException e) {
+                log.error("Could not drop events partition {}: {}", p.name(), e.getMessage());
+            }
+        }
+        if (!dropped.isEmpty()) {
+            log.info("Dropped expired events partitions {}", dropped);
+        }
+        return dropped;
+    }
+
+    /**
+     * Delete the idempotency keys of dropped partitions, one batch per statement (autocommit)
+     *
+     * @return number of keys deleted
+     */
+    @Scheduled(fixedDelayString = "${events.partitions.key-purge-interval-ms:60000}")
+    public long purgeIdempotencyKeys() {
+        if (!enabled) return 0;
+        long deleted = 0;
+        for (KeyPurge range : eventRepository.findKeyPurges()) {
+            try {
+                int n;
+                do {
+                    n = eventRepository.purgeIdempotencyKeys(range.fromTs(), range.toTs(), keyPurgeBatch);
+                    deleted += n;
+                } while (n >= keyPurgeBatch);
+                eventRepository.completeKeyPurge(range.fromTs(), range.toTs());
+            } catch (RuntimeException e) {
+                log.error("Could not purge idempotency keys for [{}, {}), will retry: {}",
+                        range.fromTs(), range.toTs(), e.getMessage());
+            }
+        }
+        if (deleted > 0) {
+            log.info("Purged {} idempotency keys of dropped events partitions", deleted);
+        }
+        return deleted;
+    }
+
+    static String partitionName(LocalDate start) {
+        return "events_p" + start.format(NAME_FORMAT);
+    }
+
+    private LocalDate periodStart(LocalDate day) {
+        return interval == Interval.WEEKLY ? day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : day;
+    }
+
+    private LocalDate periodEnd(LocalDate start) {
+        return interval == Interval.WEEKLY ? start.plusWeeks(1) : start.plusDays(1);
+    }
+
+    private static long epochMillis(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private static EventPartition overlapping(List<EventPartition> partitions, long from, long to) {
+        for (EventPartition p : partitions) {
+            if (!p.isDefault() && p.fromTs() < to && from < p.toTs()) return p;
+        }
+        return null;
+    }
+}
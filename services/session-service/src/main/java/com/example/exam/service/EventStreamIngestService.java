@@ -0,0 +1,172 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.EventIngestDto;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * NDJSON event ingest: one EventIngestDto.Item per line in, one StreamAck per committed chunk out
+ *
+ * Flow:
+ * 1. Items are parsed one at a time with a MappingIterator and validated like the JSON endpoint
+ * 2. A chunk is committed through the bulk path when it reaches max-chunk, or when the next read
+ *    would block (the client has sent nothing more yet), so a trickling client gets acks right away
+ * 3. Each commit writes one StreamAck line and flushes it; the last line is a StreamSummary
+ *
+ * Memory is bounded by max-chunk items, whatever the length of the stream. A bad line (malformed
+ * JSON, failed validation) ends the stream: earlier chunks stay committed, the summary carries the error.
+ */
+@Service
+public class EventStreamIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(EventStreamIngestService.class);
+
+    private final IngestService ingestService;
+    private final ObjectMapper mapper;
+    private final ObjectReader itemReader;
+    private final Validator validator;
+    private final int maxChunk;
+
+    public EventStreamIngestService(IngestService ingestService,
+                                    ObjectMapper mapper,
+                                    Validator validator,
+                                    @Value("${ingest.events.stream.max-chunk:500}") int maxChunk) {
+        this.ingestService = ingestService;
+        this.mapper = mapper;
+        this.itemReader = mapper.readerFor(EventIngestDto.Item.class);
+        this.validator = validator;
+        this.maxChunk = maxChunk;
+    }
+
+    public EventIngestDto.StreamSummary ingest(InputStream in, OutputStream out) throws IOException {
+        var stream = new Chunker(out);
+        var summary = stream.summary;
+        try (MappingIterator<EventIngestDto.Item> items = itemReader.readValues(new IdleFlushingInputStream(in, stream))) {
+            while (items.hasNextValue()) {
+                EventIngestDto.Item item = items.nextValue();
+                summary.lines++;
+                String invalid = validate(item);
+                if (invalid != null) {
+                    stream.flush();
+                    return stream.finish(invalid, summary.lines);
+                }
+                stream.add(item);
+            }
+        } catch (JsonProcessingException e) {
+            stream.flush();
+            return stream.finish("Malformed event: " + e.getOriginalMessage(), summary.lines + 1);
+        }
+        stream.flush();
+        return stream.finish(null, null);
+    }
+
+    private String validate(EventIngestDto.Item item) {
+        Set<ConstraintViolation<EventIngestDto.Item>> violations = validator.validate(item);
+        if (!violations.isEmpty()) {
+            var v = violations.iterator().next();
+            return v.getPropertyPath() + " " + v.getMessage();
+        }
+        try {
+            ingestService.validateDetails(item);
+        } catch (ResponseStatusException e) {
+            return e.getReason();
+        }
+        return null;
+    }
+
+    /**
+     * Pending chunk and response writer of one stream
+     */
+    private final class Chunker {
+        final OutputStream out;
+        final EventIngestDto.StreamSummary summary = new EventIngestDto.StreamSummary();
+        final List<EventIngestDto.Item> pending = new ArrayList<>();
+        long seq;
+
+        Chunker(OutputStream out) {
+            this.out = out;
+        }
+
+        void add(EventIngestDto.Item item) throws IOException {
+            pending.add(item);
+            if (pending.size() >= maxChunk) flush();
+        }
+
+        void flush() throws IOException {
+            if (pending.isEmpty()) return;
+            long firstLine = summary.lines - pending.size() + 1;
+            var outcomes = ingestService.ingestEventItemsBulk(pending);
+            int created = 0, duplicates = 0, skipped = 0;
+            for (int i = 0; i < pending.size(); i++) {
+                if (outcomes.ids()[i] == null) skipped++;
+                else if (outcomes.created()[i]) created++;
+                else duplicates++;
+            }
+            summary.created += created;
+            summary.duplicates += duplicates;
+            summary.skipped += skipped;
+            pending.clear();
+            write(new EventIngestDto.StreamAck(++seq, firstLine, created, duplicates, skipped,
+                    Arrays.asList(outcomes.ids())));
+        }
+
+        EventIngestDto.StreamSummary finish(String error, Long errorLine) throws IOException {
+            summary.error = error;
+            summary.errorLine = errorLine;
+            if (error != null) {
+                log.debug("Event stream stopped at line {}: {}", errorLine, error);
+            }
+            write(summary);
+            return summary;
+        }
+
+        private void write(Object line) throws IOException {
+            out.write(mapper.writeValueAsBytes(line));
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    /**
+     * Commits the pending chunk before a read that would block, i.e. when every event received so
+     * far has been parsed. The parser only reads once its buffer is consumed, so nothing is held back.
+     */
+    private static final class IdleFlushingInputStream extends FilterInputStream {
+        private final Chunker chunker;
+
+        IdleFlushingInputStream(InputStream in, Chunker chunker) {
+            super(in);
+            this.chunker = chunker;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (in.available() == 0) chunker.flush();
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (in.available() == 0) chunker.flush();
+            return in.read(b, off, len);
+        }
+    }
+}
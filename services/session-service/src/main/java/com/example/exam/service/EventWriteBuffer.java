@@ -0,0 +1,263 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.EventIngestDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Optional write-behind buffer for /api/ingest/events
+ *
+ * Flow:
+ * 1. Request thread validates and enqueues its items into a bounded ring buffer (429 when full,
+ *    413 for a request larger than the whole buffer)
+ * 2. A single flusher thread drains the buffer every flush-interval-ms or max-batch rows,
+ *    whichever comes first, and writes everything in one transaction (group commit)
+ * 3. Each request's future completes with its own created/duplicates/ids once that commit is done
+ *
+ * On shutdown new submissions are refused and the buffer is drained before the DataSource closes.
+ */
+@Service
+public class EventWriteBuffer implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(EventWriteBuffer.class);
+    private static final long IDLE_POLL_MS = 100;
+
+    private final IngestService ingestService;
+    private final boolean enabled;
+    private final int capacity;
+    private final long flushIntervalMs;
+    private final int maxBatch;
+    private final boolean ackFlushByDefault;
+    private final long ackTimeoutMs;
+
+    // Ring buffer of pending requests; row permits bound the total number of buffered events
+    private final ArrayBlockingQueue<Pending> queue;
+    private final Semaphore rowPermits;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public EventWriteBuffer(IngestService ingestService,
+                            @Value("${ingest.events.write-behind.enabled:false}") boolean enabled,
+                            @Value("${ingest.events.write-behind.capacity:10000}") int capacity,
+                            @Value("${ingest.events.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+                            @Value("${ingest.events.write-behind.max-batch:1000}") int maxBatch,
+                            @Value("${ingest.events.write-behind.ack:enqueue}") String ack,
+                            @Value("${ingest.events.write-behind.ack-timeout-ms:5000}") long ackTimeoutMs) {
+        this.ingestService = ingestService;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxBatch = maxBatch;
+        this.ackFlushByDefault = "flush".equalsIgnoreCase(ack);
+        this.ackTimeoutMs = ackTimeoutMs;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.rowPermits = new Semaphore(capacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether the caller should wait for the group commit: explicit ?ack=flush|enqueue wins over the configured default
+     */
+    public boolean waitForFlush(String ack) {
+        if (ack == null || ack.isBlank()) return ackFlushByDefault;
+        return "flush".equalsIgnoreCase(ack);
+    }
+
+    /**
+     * Enqueue a request; never blocks
+     *
+     * @throws ResponseStatusException 429 when the buffer is full, 413 when the request has more rows than
+     *                                 it can ever hold, 503 while shutting down,
+     *                                 400 for malformed details (checked before enqueue)
+     */
+    public CompletableFuture<EventIngestDto.Result> submit(EventIngestDto.Request req) {
+        if (!running) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Event buffer is not accepting writes");
+        }
+        int rows = req.items.size();
+        if (rows == 0) {
+            return CompletableFuture.completedFuture(new EventIngestDto.Result(0, 0, new ArrayList<>()));
+        }
+        for (var item : req.items) {
+            ingestService.validateDetails(item);
+        }
+        if (rows > capacity) {
+            // Retrying cannot help: it would not fit into an empty buffer either
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Request has " + rows + " events, the event buffer holds at most " + capacity);
+        }
+        if (!rowPermits.tryAcquire(rows)) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Event buffer full, retry later");
+        }
+        var pending = new Pending(req.items, new CompletableFuture<>());
+        // Cannot fail: every pending request holds at least one of the 'capacity' row permits
+        queue.add(pending);
+        return pending.ack;
+    }
+
+    /**
+     * Wait for the flush acknowledgment of a submitted request
+     *
+     * @return the result, or null if the commit did not happen within ack-timeout-ms (events stay queued)
+     */
+    public EventIngestDto.Result await(CompletableFuture<EventIngestDto.Result> ack) {
+        try {
+            return ack.get(ackTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Number of events currently buffered
+     */
+    public int size() {
+        return capacity - rowPermits.availablePermits();
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+        running = true;
+        flusher = new Thread(this::flushLoop, "event-write-behind");
+        flusher.start();
+        log.info("Event write-behind enabled: capacity={}, flushIntervalMs={}, maxBatch={}", capacity, flushIntervalMs, maxBatch);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Requests that raced with shutdown past the running check
+        List<Pending> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest, rest.stream().mapToInt(p -> p.items.size()).sum());
+        }
+        log.info("Event write-behind drained");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stop after graceful shutdown (DEFAULT_PHASE - 1024) and the web server (DEFAULT_PHASE - 2048), so
+     * in-flight requests can still enqueue, and before singletons are destroyed so the DataSource is
+     * still up for the drain
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 4096;
+    }
+
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                // Idle wait is capped so stop() is noticed promptly even with a long flush interval
+                Pending first = queue.poll(Math.min(flushIntervalMs, IDLE_POLL_MS), TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                int rows = first.items.size();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (rows < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    // Same cap while filling a batch: stop() flushes what we have instead of waiting out the interval
+                    Pending next = running
+                            ? queue.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MS)), TimeUnit.NANOSECONDS)
+                            : queue.poll();
+                    if (next == null) {
+                        if (running) continue;
+                        break;
+                    }
+                    batch.add(next);
+                    rows += next.items.size();
+                }
+                flush(batch, rows);
+            } catch (InterruptedException e) {
+                // Keep draining; stop() relies on this loop to empty the queue
+                log.warn("Event write-behind flusher interrupted, draining {} buffered events", size());
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in event write-behind flusher", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch, int rows) {
+        List<Runnable> acks = new ArrayList<>(batch.size());
+        try {
+            commit(batch, rows, acks);
+        } catch (RuntimeException e) {
+            acks.clear();
+            if (batch.size() == 1) {
+                log.error("Failed to flush {} buffered events", rows, e);
+                acks.add(() -> batch.get(0).ack.completeExceptionally(e));
+            } else {
+                // Isolate the failing request instead of failing everyone in the group
+                log.warn("Group commit of {} requests failed, retrying individually: {}", batch.size(), e.getMessage());
+                for (Pending p : batch) {
+                    try {
+                        commit(List.of(p), p.items.size(), acks);
+                    } catch (RuntimeException ex) {
+                        log.error("Failed to flush {} buffered events", p.items.size(), ex);
+                        acks.add(() -> p.ack.completeExceptionally(ex));
+                    }
+                }
+            }
+        } finally {
+            // Free the rows before acknowledging, so a caller that sees its ack also sees the space
+            rowPermits.release(rows);
+            acks.forEach(Runnable::run);
+        }
+    }
+
+    private void commit(List<Pending> batch, int rows, List<Runnable> acks) {
+        List<EventIngestDto.Item> items = new ArrayList<>(rows);
+        for (Pending p : batch) items.addAll(p.items);
+        var outcomes = ingestService.ingestEventItemsBulk(items);
+        int offset = 0;
+        for (Pending p : batch) {
+            int end = offset + p.items.size();
+            var result = outcomes.toResult(offset, end);
+            acks.add(() -> p.ack.complete(result));
+            offset = end;
+        }
+        log.debug("Group commit of {} events from {} requests", rows, batch.size());
+    }
+
+    private record Pending(List<EventIngestDto.Item> items, CompletableFuture<EventIngestDto.Result> ack) {}
+}
@@ -5,104 +5,401 @@ import com.example.exam.dto.SnapshotMessage;
 import com.example.exam.model.Incident;
 import com.example.exam.model.IncidentStatus;
 import com.example.exam.model.IncidentType;
+import com.example.exam.model.MediaBlob;
 import com.example.exam.model.MediaSnapshot;
 import com.example.exam.repository.IncidentRepository;
+import com.example.exam.repository.MediaBlobRepository;
 import com.example.exam.repository.MediaSnapshotRepository;
+import jakarta.annotation.PreDestroy;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Worker that processes snapshot messages from RabbitMQ
- * Performs face detection (stubbed) and creates incidents
+ * Performs face detection (FaceDetector) and creates incidents
  * 
  * Flow:
  * 1. Receive message from queue
  * 2. Load snapshot from DB
- * 3. Perform face detection (stubbed as random)
+ * 3. Perform face detection (FaceDetector)
  * 4. Update face_count in DB
  * 5. Create incident if no face or multiple faces
+ *
+ * An UNDETERMINED detection leaves face_count NULL and raises nothing: "could not tell" is not NO_FACE.
+ *
+ * Failures (DB errors, unreadable files, ...) are not swallowed: the message is acked and handed to
+ * SnapshotRetryRouter, which delays and retries it, then dead-letters it after max-attempts.
+ *
+ * Batch mode (snapshot.worker.batch.enabled): the listener receives up to batch-size messages per call,
+ * loads all snapshots with one findAllById, runs detection on a bounded pool, and writes face counts
+ * and incidents back in one transaction. Prefetch/concurrency: see RabbitMQConfig.snapshotBatchListenerFactory.
+ *
+ * Lanes: the live queue (snapshots of ACTIVE sessions) and the backlog queue have separate listeners,
+ * consumer counts (snapshot.worker.backlog.concurrency for backlog) and detection pools, so backlog
+ * work can only ever use its own share of consumers and detection threads.
+ *
+ * Content-addressed snapshots (content_hash set) reuse the face count already recorded on their media_blobs
+ * row instead of running detection again; the first detection of a content is recorded there.
  */
 @Service
 public class FaceDetectionWorker {
     
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(FaceDetectionWorker.class);
-    private static final Random random = new Random();
     
     private final MediaSnapshotRepository snapshotRepository;
     private final IncidentRepository incidentRepository;
+    private final FaceDetector faceDetector;
+    private final MediaBlobRepository blobRepository;
+    private final MediaDedupStats dedupStats;
+    private final TransactionTemplate transactionTemplate;
+    private final SnapshotRetryRouter retryRouter;
+    private final AdminStatsService adminStats;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SessionTimeline timeline;
+    // Detection pools per lane: bounded queue, and the listener thread runs the task itself when it is full
+    private final ThreadPoolExecutor detectionPool;
+    private final ThreadPoolExecutor backlogDetectionPool;
     
     public FaceDetectionWorker(MediaSnapshotRepository snapshotRepository,
-                               IncidentRepository incidentRepository) {
+                               IncidentRepository incidentRepository,
+                               FaceDetector faceDetector,
+                               MediaBlobRepository blobRepository,
+                               MediaDedupStats dedupStats,
+                               PlatformTransactionManager transactionManager,
+                               SnapshotRetryRouter retryRouter,
+                               AdminStatsService adminStats,
+                               ApplicationEventPublisher eventPublisher,
+                               SessionTimeline timeline,
+                               @Value("${snapshot.worker.batch.detection-threads:4}") int detectionThreads,
+                               @Value("${snapshot.worker.backlog.detection-threads:1}") int backlogDetectionThreads) {
         this.snapshotRepository = snapshotRepository;
         this.incidentRepository = incidentRepository;
+        this.faceDetector = faceDetector;
+        this.blobRepository = blobRepository;
+        this.dedupStats = dedupStats;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retryRouter = retryRouter;
+        this.adminStats = adminStats;
+        this.eventPublisher = eventPublisher;
+        this.timeline = timeline;
+        this.detectionPool = detectionPool("face-detect-", detectionThreads);
+        this.backlogDetectionPool = detectionPool("face-detect-backlog-", backlogDetectionThreads);
+    }
+    
+    private static ThreadPoolExecutor detectionPool(String namePrefix, int threads) {
+        AtomicInteger threadNo = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4),
+                r -> {
+                    Thread t = new Thread(r, namePrefix + threadNo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        detectionPool.shutdown();
+        backlogDetectionPool.shutdown();
     }
     
     /**
      * Listen to snapshot.process queue
-     * Process each snapshot message asynchronously
+     * Process each snapshot message asynchronously; a failure is routed to a delayed retry or the DLQ
+     */
+    @RabbitListener(queues = RabbitMQConfig.QUEUE_NAME,
+            autoStartup = "#{!${snapshot.worker.batch.enabled:false}}")
+    public void processSnapshot(SnapshotMessage message,
+                                @Header(name = SnapshotRetryRouter.ATTEMPTS_HEADER, required = false) Integer attempts) {
+        process(message, RabbitMQConfig.Lane.LIVE, attempts);
+    }
+    
+    /**
+     * Listen to snapshot.process.backlog with its own, smaller consumer count
+     */
+    @RabbitListener(queues = RabbitMQConfig.BACKLOG_QUEUE_NAME,
+            concurrency = "${snapshot.worker.backlog.concurrency:1}",
+            autoStartup = "#{!${snapshot.worker.batch.enabled:false}}")
+    public void processBacklogSnapshot(SnapshotMessage message,
+                                       @Header(name = SnapshotRetryRouter.ATTEMPTS_HEADER, required = false) Integer attempts) {
+        process(message, RabbitMQConfig.Lane.BACKLOG, attempts);
+    }
+    
+    private void process(SnapshotMessage message, RabbitMQConfig.Lane lane, Integer attempts) {
+        try {
+            processSnapshot(message);
+        } catch (Exception ex) {
+            // Nothing was written (the write transaction is rolled back); ack this delivery and retry later from a delay queue
+            retryRouter.failed(message, lane, attempts, ex);
+        }
+    }
+    
+    /**
+     * Detect one snapshot, then write back the result and its incident in one transaction; failures propagate
+     *
+     * Detection runs before the transaction opens, so no pooled connection is held while the image is read.
      */
-    @RabbitListener(queues = RabbitMQConfig.QUEUE_NAME)
-    @Transactional
     public void processSnapshot(SnapshotMessage message) {
         log.info("Processing snapshot: snapshotId={}, sessionId={}", 
                 message.snapshotId(), message.sessionId());
         
-        try {
-            // 1. Load snapshot from DB
-            Optional<MediaSnapshot> snapshotOpt = snapshotRepository.findById(message.snapshotId());
-            if (snapshotOpt.isEmpty()) {
-                log.warn("Snapshot not found: {}", message.snapshotId());
+        // 1. Load snapshot from DB
+        Optional<MediaSnapshot> snapshotOpt = snapshotRepository.findById(message.snapshotId());
+        if (snapshotOpt.isEmpty()) {
+            // Deleted with its session: nothing to retry
+            log.warn("Snapshot not found: {}", message.snapshotId());
+            return;
+        }
+        
+        MediaSnapshot snapshot = snapshotOpt.get();
+        
+        // 2. Perform face detection (or reuse the result for identical content)
+        String hash = snapshot.getContentHash();
+        Integer known = hash == null ? null
+                : blobRepository.findById(hash).map(MediaBlob::getFaceCount).orElse(null);
+        int faceCount;
+        if (known != null) {
+            faceCount = known;
+            dedupStats.recordDetectionReused();
+        } else {
+            faceCount = faceDetector.detectFaces(snapshot.getObjectKey());
+            dedupStats.recordDetection();
+            if (faceCount == FaceDetector.UNDETERMINED) {
+                log.info("Face count undetermined: snapshotId={}", snapshot.getId());
                 return;
             }
-            
-            MediaSnapshot snapshot = snapshotOpt.get();
-            
-            // 2. Perform face detection (STUB - random for now)
-            int faceCount = detectFaces(snapshot.getObjectKey());
-            
-            // 3. Update face_count in DB
-            snapshot.setFaceCount(faceCount);
+        }
+        boolean detected = known == null;
+        int count = faceCount;
+        
+        // 3. Update face_count in DB (a redelivered snapshot is counted in the timeline only once)
+        //    and create an incident if needed, in one transaction
+        transactionTemplate.executeWithoutResult(status -> {
+            if (detected && hash != null) blobRepository.recordFaceCount(hash, count);
+            boolean first = snapshot.getFaceCount() == null;
+            snapshot.setFaceCount(count);
             snapshotRepository.save(snapshot);
-            
-            log.info("Face detection complete: snapshotId={}, faceCount={}", 
-                    snapshot.getId(), faceCount);
-            
-            // 4. Create incident if needed
+            if (first) timeline.facesDetected(List.of(snapshot));
             createIncidentIfNeeded(snapshot);
-            
+        });
+        
+        log.info("Face detection complete: snapshotId={}, faceCount={}", 
+                snapshot.getId(), faceCount);
+    }
+    
+    /**
+     * Batch listener on snapshot.process (only started when snapshot.worker.batch.enabled=true)
+     *
+     * Flow:
+     * 1. Load all snapshots of the batch with one findAllById
+     * 2. Run face detection in parallel on the detection pool, once per distinct content;
+     *    content with a recorded face count is not detected again
+     * 3. In one transaction: update all face counts, record new per-content results,
+     *    look up existing incidents once, insert the new ones
+     *
+     * If the batch write fails, messages are reprocessed one by one so a single bad snapshot
+     * does not fail the others.
+     */
+    @RabbitListener(queues = RabbitMQConfig.QUEUE_NAME,
+            containerFactory = RabbitMQConfig.BATCH_LISTENER_FACTORY,
+            autoStartup = "${snapshot.worker.batch.enabled:false}")
+    public void processSnapshots(List<Message<SnapshotMessage>> deliveries) {
+        processDeliveries(deliveries, RabbitMQConfig.Lane.LIVE);
+    }
+    
+    /**
+     * Batch listener on snapshot.process.backlog: same as the live one, with backlog consumers and detection pool
+     */
+    @RabbitListener(queues = RabbitMQConfig.BACKLOG_QUEUE_NAME,
+            containerFactory = RabbitMQConfig.BATCH_LISTENER_FACTORY,
+            concurrency = "${snapshot.worker.backlog.concurrency:1}",
+            autoStartup = "${snapshot.worker.batch.enabled:false}")
+    public void processBacklogSnapshots(List<Message<SnapshotMessage>> deliveries) {
+        processDeliveries(deliveries, RabbitMQConfig.Lane.BACKLOG);
+    }
+    
+    private void processDeliveries(List<Message<SnapshotMessage>> deliveries, RabbitMQConfig.Lane lane) {
+        List<SnapshotMessage> messages = new ArrayList<>(deliveries.size());
+        for (Message<SnapshotMessage> delivery : deliveries) {
+            messages.add(delivery.getPayload());
+        }
+        log.info("Processing snapshot batch: lane={}, size={}", lane, messages.size());
+        Set<UUID> failed = new HashSet<>();
+        try {
+            processBatch(messages, lane, failed);
         } catch (Exception ex) {
-            log.error("Error processing snapshot: snapshotId={}, error={}", 
-                    message.snapshotId(), ex.getMessage(), ex);
-            // Don't throw - let message be acknowledged
-            // In production, might want to use DLQ for failed messages
+            log.warn("Snapshot batch of {} failed, processing individually: {}", messages.size(), ex.getMessage());
+            for (Message<SnapshotMessage> delivery : deliveries) {
+                process(delivery.getPayload(), lane, attempts(delivery));
+            }
+            return;
+        }
+        // Snapshots whose detection failed (e.g. the file is not readable yet) were left unprocessed
+        for (Message<SnapshotMessage> delivery : deliveries) {
+            if (failed.remove(delivery.getPayload().snapshotId())) {
+                retryRouter.failed(delivery.getPayload(), lane, attempts(delivery),
+                        new IllegalStateException("Face detection failed"));
+            }
         }
     }
     
+    private static Integer attempts(Message<SnapshotMessage> delivery) {
+        return delivery.getHeaders().get(SnapshotRetryRouter.ATTEMPTS_HEADER, Integer.class);
+    }
+    
     /**
-     * Stub face detection - returns random face count
-     * Distribution:
-     * - 0 faces: 30% (candidate not looking at camera)
-     * - 1 face: 60% (normal)
-     * - 2 faces: 10% (someone helping)
-     * 
-     * In real implementation, would use OpenCV or ML model
+     * Detect and write back one batch
+     *
+     * @return number of incidents created
      */
-    private int detectFaces(String objectKey) {
-        int rand = random.nextInt(100);
-        if (rand < 30) {
-            return 0; // No face
-        } else if (rand < 90) {
-            return 1; // Normal
-        } else {
-            return 2; // Multiple faces
+    public int processBatch(List<SnapshotMessage> messages) {
+        return processBatch(messages, RabbitMQConfig.Lane.LIVE, new HashSet<>());
+    }
+    
+    /**
+     * @param lane    selects the detection pool
+     * @param failed  receives the ids of snapshots whose detection failed; they are not written back
+     */
+    public int processBatch(List<SnapshotMessage> messages, RabbitMQConfig.Lane lane, Set<UUID> failed) {
+        // 1. Load snapshots (redeliveries may repeat an id within a batch)
+        Set<UUID> ids = new LinkedHashSet<>();
+        for (SnapshotMessage m : messages) {
+            if (m.snapshotId() != null) ids.add(m.snapshotId());
+        }
+        List<MediaSnapshot> snapshots = snapshotRepository.findAllById(ids);
+        if (snapshots.size() < ids.size()) {
+            log.warn("Snapshots not found: {} of {}", ids.size() - snapshots.size(), ids.size());
+        }
+        if (snapshots.isEmpty()) return 0;
+        
+        // 2. Detect in parallel; a snapshot that cannot be read is left unprocessed, the rest go on
+        Map<String, Integer> known = knownFaceCounts(snapshots);
+        Map<String, CompletableFuture<Integer>> byContent = new HashMap<>();
+        List<CompletableFuture<Integer>> detections = new ArrayList<>(snapshots.size());
+        for (MediaSnapshot snapshot : snapshots) {
+            String hash = snapshot.getContentHash();
+            if (hash != null && (known.containsKey(hash) || byContent.containsKey(hash))) {
+                dedupStats.recordDetectionReused();
+                detections.add(known.containsKey(hash)
+                        ? CompletableFuture.completedFuture(known.get(hash)) : byContent.get(hash));
+                continue;
+            }
+            var detection = CompletableFuture.supplyAsync(() -> detectOrNull(snapshot),
+                    lane == RabbitMQConfig.Lane.BACKLOG ? backlogDetectionPool : detectionPool);
+            if (hash != null) byContent.put(hash, detection);
+            detections.add(detection);
+        }
+        List<MediaSnapshot> detected = new ArrayList<>(snapshots.size());
+        List<MediaSnapshot> firstDetected = new ArrayList<>(snapshots.size());
+        for (int i = 0; i < snapshots.size(); i++) {
+            Integer faceCount = detections.get(i).join();
+            if (faceCount != null && faceCount == FaceDetector.UNDETERMINED) {
+                log.info("Face count undetermined: snapshotId={}", snapshots.get(i).getId());
+            } else if (faceCount != null) {
+                if (snapshots.get(i).getFaceCount() == null) firstDetected.add(snapshots.get(i));
+                snapshots.get(i).setFaceCount(faceCount);
+                detected.add(snapshots.get(i));
+            } else {
+                failed.add(snapshots.get(i).getId());
+            }
         }
+        if (detected.isEmpty()) return 0;
+        Map<String, Integer> newResults = new HashMap<>();
+        byContent.forEach((hash, detection) -> {
+            Integer faceCount = detection.join();
+            if (faceCount != null && faceCount != FaceDetector.UNDETERMINED) newResults.put(hash, faceCount);
+        });
+        
+        // 3. Write back in one transaction
+        Integer created = transactionTemplate.execute(status -> {
+            newResults.forEach(blobRepository::recordFaceCount);
+            timeline.facesDetected(firstDetected);
+            return writeBack(detected);
+        });
+        log.info("Snapshot batch complete: snapshots={}, incidents={}", detected.size(), created);
+        return created == null ? 0 : created;
+    }
+    
+    /**
+     * Face counts already recorded for the contents in this batch, by hash
+     */
+    private Map<String, Integer> knownFaceCounts(List<MediaSnapshot> snapshots) {
+        Set<String> hashes = new HashSet<>();
+        for (MediaSnapshot snapshot : snapshots) {
+            if (snapshot.getContentHash() != null) hashes.add(snapshot.getContentHash());
+        }
+        if (hashes.isEmpty()) return Map.of();
+        Map<String, Integer> known = new HashMap<>();
+        for (MediaBlob blob : blobRepository.findAllById(hashes)) {
+            if (blob.getFaceCount() != null) known.put(blob.getSha256(), blob.getFaceCount());
+        }
+        return known;
+    }
+    
+    private Integer detectOrNull(MediaSnapshot snapshot) {
+        try {
+            int faceCount = faceDetector.detectFaces(snapshot.getObjectKey());
+            dedupStats.recordDetection();
+            return faceCount;
+        } catch (RuntimeException ex) {
+            log.error("Face detection failed: snapshotId={}, error={}", snapshot.getId(), ex.getMessage());
+            return null;
+        }
+    }
+    
+    private int writeBack(List<MediaSnapshot> snapshots) {
+        snapshotRepository.updateFaceCounts(snapshots);
+        
+        List<Incident> candidates = new ArrayList<>();
+        Set<UUID> sessionIds = new HashSet<>();
+        Set<Long> timestamps = new HashSet<>();
+        for (MediaSnapshot snapshot : snapshots) {
+            Incident incident = incidentFor(snapshot);
+            if (incident != null) {
+                candidates.add(incident);
+                sessionIds.add(incident.getSessionId());
+                timestamps.add(incident.getTs());
+            }
+        }
+        if (candidates.isEmpty()) return 0;
+        
+        // Idempotency: one lookup for the whole batch instead of one per snapshot
+        Set<IncidentKey> seen = new HashSet<>();
+        for (Incident existing : incidentRepository.findBySessionIdInAndTsIn(sessionIds, timestamps)) {
+            seen.add(IncidentKey.of(existing));
+        }
+        List<Incident> fresh = new ArrayList<>(candidates.size());
+        for (Incident incident : candidates) {
+            if (seen.add(IncidentKey.of(incident))) fresh.add(incident);
+        }
+        incidentRepository.insertAll(fresh);
+        adminStats.incidentsCreated(fresh);
+        fresh.forEach(incident -> eventPublisher.publishEvent(new IncidentRaised(incident)));
+        return fresh.size();
     }
     
     /**
@@ -113,8 +410,38 @@ public class FaceDetectionWorker {
      * Idempotent: Check if incident already exists
      */
     private void createIncidentIfNeeded(MediaSnapshot snapshot) {
-        UUID sessionId = snapshot.getSessionId();
-        Long timestamp = snapshot.getTs();
+        Incident incident = incidentFor(snapshot);
+        if (incident == null) {
+            // Normal case (1 face) - no incident
+            return;
+        }
+        UUID sessionId = incident.getSessionId();
+        IncidentType type = incident.getType();
+        Long timestamp = incident.getTs();
+        
+        // Check if incident already exists (idempotency)
+        Optional<Incident> existing = incidentRepository.findBySessionIdAndTypeAndTs(
+                sessionId, type, timestamp
+        );
+        
+        if (existing.isPresent()) {
+            log.debug("Incident already exists: sessionId={}, type={}, ts={}", 
+                    sessionId, type, timestamp);
+            return;
+        }
+        
+        incidentRepository.save(incident);
+        adminStats.incidentsCreated(List.of(incident));
+        eventPublisher.publishEvent(new IncidentRaised(incident));
+        
+        log.warn("Created incident: sessionId={}, type={}, faceCount={}, score={}", 
+                sessionId, type, snapshot.getFaceCount(), incident.getScore());
+    }
+    
+    /**
+     * Build (unsaved) incident for a snapshot's face count, or null if the count is normal
+     */
+    private Incident incidentFor(MediaSnapshot snapshot) {
         int faceCount = snapshot.getFaceCount();
         
         IncidentType type = null;
@@ -130,35 +457,24 @@ public class FaceDetectionWorker {
             reason = String.format("%d faces detected (possible assistance)", faceCount);
             score = new BigDecimal("0.85");
         } else {
-            // Normal case (1 face) - no incident
-            return;
+            return null;
         }
         
-        // Check if incident already exists (idempotency)
-        Optional<Incident> existing = incidentRepository.findBySessionIdAndTypeAndTs(
-                sessionId, type, timestamp
-        );
-        
-        if (existing.isPresent()) {
-            log.debug("Incident already exists: sessionId={}, type={}, ts={}", 
-                    sessionId, type, timestamp);
-            return;
-        }
-        
-        // Create new incident
         Incident incident = new Incident();
-        incident.setSessionId(sessionId);
+        incident.setSessionId(snapshot.getSessionId());
         incident.setType(type);
-        incident.setTs(timestamp);
+        incident.setTs(snapshot.getTs());
         incident.setScore(score);
         incident.setReason(reason);
         incident.setEvidenceUrl(snapshot.getObjectKey()); // Link to snapshot
         incident.setStatus(IncidentStatus.OPEN);
         incident.setCreatedAt(Instant.now());
-        
-        incidentRepository.save(incident);
-        
-        log.warn("Created incident: sessionId={}, type={}, faceCount={}, score={}", 
-                sessionId, type, faceCount, score);
+        return incident;
+    }
+    
+    private record IncidentKey(UUID sessionId, IncidentType type, Long ts) {
+        static IncidentKey of(Incident incident) {
+            return new IncidentKey(incident.getSessionId(), incident.getType(), incident.getTs());
+        }
     }
 }
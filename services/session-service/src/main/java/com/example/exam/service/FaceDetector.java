@@ -0,0 +1,23 @@
+package com.example.exam.service;
+
+/**
+ * Face detection engine used by {@link FaceDetectionWorker}.
+ * Implementations must be thread-safe: the worker calls them from its detection pool.
+ */
+public interface FaceDetector {
+
+    /**
+     * Result when the image cannot tell whether a face is there (e.g. a grayscale or IR frame for a
+     * colour-based detector); the snapshot keeps no face count and raises no incident
+     */
+    int UNDETERMINED = -1;
+
+    /**
+     * Count faces in a stored snapshot
+     *
+     * @param objectKey key of the image in {@link MediaStorageService}
+     * @return number of faces found (0 when none), or {@link #UNDETERMINED}
+     * @throws java.io.UncheckedIOException if the image cannot be read or decoded
+     */
+    int detectFaces(String objectKey);
+}
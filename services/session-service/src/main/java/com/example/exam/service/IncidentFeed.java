@@ -0,0 +1,332 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.IncidentDto;
+import com.example.exam.model.Incident;
+import com.example.exam.util.AfterCommit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live incident feed for proctor dashboards (GET /api/incidents/stream, server-sent events)
+ *
+ * Flow:
+ * 1. Every new incident is published as {@link IncidentRaised}; its exam is looked up inside the
+ *    creating transaction and the incident is fanned out after commit
+ * 2. With redis-fanout enabled it goes out on {@link #CHANNEL} and every node (this one included)
+ *    delivers it to its own subscribers; otherwise it is delivered here directly
+ * 3. Each subscriber (filtered by exam and/or session) has a bounded buffer drained by the send pool
+ *
+ * Slow consumers: a full buffer drops its oldest incident; the number dropped is sent to the client as a
+ * "dropped" event before the next incident, so it knows to re-read GET /api/incidents. A failed send
+ * closes the subscription. Nothing is replayed on reconnect.
+ *
+ * Stalled consumers: SseEmitter.send blocks until the servlet write completes. A send still blocked after
+ * send-timeout-ms closes its subscription and interrupts its thread, and the send pool gets an extra thread
+ * until that send returns, so stalled connections never hold up the other subscribers.
+ */
+@Service
+public class IncidentFeed implements MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(IncidentFeed.class);
+    public static final String CHANNEL = "incidents:feed";
+
+    private final SessionExamCache sessionExams;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper mapper;
+    private final boolean fanout;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final long timeoutMs;
+    private final long sendTimeoutNanos;
+    private final ThreadPoolExecutor sendPool;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    public IncidentFeed(SessionExamCache sessionExams,
+                        StringRedisTemplate redisTemplate,
+                        ObjectMapper mapper,
+                        @Value("${incidents.feed.redis-fanout.enabled:false}") boolean fanout,
+                        @Value("${incidents.feed.subscriber-buffer:256}") int bufferSize,
+                        @Value("${incidents.feed.max-subscribers:1000}") int maxSubscribers,
+                        @Value("${incidents.feed.timeout-ms:1800000}") long timeoutMs,
+                        @Value("${incidents.feed.send-threads:2}") int sendThreads,
+                        @Value("${incidents.feed.send-timeout-ms:5000}") long sendTimeoutMs) {
+        this.sessionExams = sessionExams;
+        this.redisTemplate = redisTemplate;
+        this.mapper = mapper;
+        this.fanout = fanout;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMs = timeoutMs;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        AtomicInteger threadNo = new AtomicInteger();
+        // Unbounded queue is fine: a subscriber has at most one drain task queued at a time
+        this.sendPool = new ThreadPoolExecutor(sendThreads, sendThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "incident-feed-" + threadNo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Open a subscription; null filters match everything
+     */
+    public SseEmitter subscribe(UUID examId, UUID sessionId) {
+        return subscribe(new SseEmitter(timeoutMs), examId, sessionId);
+    }
+
+    SseEmitter subscribe(SseEmitter emitter, UUID examId, UUID sessionId) {
+        Subscriber subscriber = new Subscriber(emitter, examId, sessionId, bufferSize);
+        synchronized (subscribers) {
+            if (subscribers.size() >= maxSubscribers) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many incident feed subscribers");
+            }
+            subscribers.add(subscriber);
+        }
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        return emitter;
+    }
+
+    /**
+     * Resolve the exam while the creating transaction is still open, then fan out after it commits
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onIncident(IncidentRaised event) {
+        // Single node and nobody listening: skip the exam lookup
+        if (!fanout && subscribers.isEmpty()) return;
+        Incident incident = event.incident();
+        IncidentDto.FeedItem item = IncidentDto.FeedItem.from(incident, sessionExams.examOf(incident.getSessionId()));
+        AfterCommit.run(() -> publish(item));
+    }
+
+    /**
+     * Incident published by any node (including this one)
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            deliver(mapper.readValue(message.getBody(), IncidentDto.FeedItem.class));
+        } catch (IOException e) {
+            log.warn("Ignoring malformed incident feed message: {}",
+                    new String(message.getBody(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Queue an incident for every matching local subscriber
+     */
+    void deliver(IncidentDto.FeedItem item) {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.matches(item)) continue;
+            subscriber.offer(item);
+            schedule(subscriber);
+        }
+    }
+
+    /**
+     * Keep idle connections (and proxies in between) from timing them out
+     */
+    @Scheduled(fixedDelayString = "${incidents.feed.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeatDue = true;
+            schedule(subscriber);
+        }
+    }
+
+    /**
+     * Close subscriptions whose send has been blocked longer than send-timeout-ms
+     *
+     * @return number closed
+     */
+    @Scheduled(fixedDelayString = "${incidents.feed.send-check-ms:1000}")
+    public int closeStalled() {
+        long now = System.nanoTime();
+        int closed = 0;
+        for (Subscriber subscriber : subscribers) {
+            synchronized (subscriber) {
+                if (subscriber.sender == null || subscriber.stalled
+                        || now - subscriber.sendStartedNanos < sendTimeoutNanos) continue;
+                // Still inside drain, so its finally gives the extra thread back
+                subscriber.stalled = true;
+                subscriber.replaced.set(true);
+                synchronized (sendPool) {
+                    sendPool.setMaximumPoolSize(sendPool.getMaximumPoolSize() + 1);
+                    sendPool.setCorePoolSize(sendPool.getCorePoolSize() + 1);
+                }
+                subscriber.sender.interrupt();
+            }
+            // The emitter is completed by drain once the send returns: completing it here would wait
+            // for the emitter's write lock, which the blocked send holds
+            subscribers.remove(subscriber);
+            log.info("Incident feed send blocked for over {} ms, closing subscription",
+                    TimeUnit.NANOSECONDS.toMillis(sendTimeoutNanos));
+            closed++;
+        }
+        return closed;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sendPool.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    private void publish(IncidentDto.FeedItem item) {
+        if (fanout) {
+            try {
+                redisTemplate.convertAndSend(CHANNEL, mapper.writeValueAsString(item));
+                return;
+            } catch (Exception e) {
+                // Other nodes miss it, this node's subscribers still get it
+                log.warn("Could not publish incident {} to the feed channel: {}", item.id, e.getMessage());
+            }
+        }
+        deliver(item);
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) submit(subscriber);
+    }
+
+    private void submit(Subscriber subscriber) {
+        try {
+            sendPool.execute(() -> drain(subscriber));
+        } catch (RejectedExecutionException e) {
+            subscriber.scheduled.set(false);
+        }
+    }
+
+    /**
+     * Send everything buffered for one subscriber; only one drain per subscriber runs at a time
+     */
+    private void drain(Subscriber subscriber) {
+        Exception failure = null;
+        try {
+            while (true) {
+                boolean sent = false;
+                IncidentDto.FeedItem item;
+                while ((item = subscriber.buffer.poll()) != null) {
+                    // Whatever was dropped was older than this item
+                    long dropped = subscriber.dropped.getAndSet(0);
+                    if (dropped > 0) {
+                        send(subscriber, SseEmitter.event().name("dropped").data(Map.of("dropped", dropped)));
+                    }
+                    send(subscriber, SseEmitter.event().name("incident").id(item.id.toString()).data(item));
+                    sent = true;
+                }
+                if (subscriber.heartbeatDue) {
+                    subscriber.heartbeatDue = false;
+                    if (!sent) send(subscriber, SseEmitter.event().comment("keepalive"));
+                }
+                subscriber.scheduled.set(false);
+                // An offer between the last poll and the reset above found the flag still set
+                if (subscriber.buffer.isEmpty() || !subscriber.scheduled.compareAndSet(false, true)) return;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Incident feed send failed, closing subscription: {}", e.getMessage());
+            failure = e;
+        } finally {
+            if (subscriber.replaced.compareAndSet(true, false)) {
+                synchronized (sendPool) {
+                    sendPool.setCorePoolSize(sendPool.getCorePoolSize() - 1);
+                    sendPool.setMaximumPoolSize(sendPool.getMaximumPoolSize() - 1);
+                }
+                Thread.interrupted(); // do not hand the interrupt to the next task on this thread
+                if (failure == null) failure = new IOException("Incident feed send timed out");
+            }
+        }
+        if (failure != null) {
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(failure);
+        }
+    }
+
+    private void send(Subscriber subscriber, SseEmitter.SseEventBuilder event) throws IOException {
+        synchronized (subscriber) {
+            if (subscriber.stalled) throw new IOException("Subscription closed");
+            subscriber.sendStartedNanos = System.nanoTime();
+            subscriber.sender = Thread.currentThread();
+        }
+        try {
+            subscriber.emitter.send(event);
+        } finally {
+            synchronized (subscriber) {
+                subscriber.sender = null;
+            }
+        }
+    }
+
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final UUID examId;
+        final UUID sessionId;
+        final ArrayBlockingQueue<IncidentDto.FeedItem> buffer;
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean heartbeatDue;
+        // Guarded by the subscriber's monitor: the thread of the send in progress and when it started
+        Thread sender;
+        long sendStartedNanos;
+        // Closed by closeStalled while its send was blocked; set under the monitor
+        volatile boolean stalled;
+        // The send pool has an extra thread for this subscriber's blocked drain until it returns
+        final AtomicBoolean replaced = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, UUID examId, UUID sessionId, int bufferSize) {
+            this.emitter = emitter;
+            this.examId = examId;
+            this.sessionId = sessionId;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        boolean matches(IncidentDto.FeedItem item) {
+            return (examId == null || examId.equals(item.examId))
+                    && (sessionId == null || sessionId.equals(item.sessionId));
+        }
+
+        /**
+         * Buffer an item, dropping the oldest ones if full
+         */
+        void offer(IncidentDto.FeedItem item) {
+            while (!buffer.offer(item)) {
+                if (buffer.poll() != null) dropped.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.exam.service;
+
+import com.example.exam.model.Incident;
+
+/**
+ * Application event published when an incident is created (rules, face detection, POST /api/incidents);
+ * listeners that push it to clients should use a transactional listener so nothing is sent for a rolled-back ingest
+ */
+public record IncidentRaised(Incident incident) {
+}
@@ -1,5 +1,6 @@
 package com.example.exam.service;
 
+import com.example.exam.config.RabbitMQConfig;
 import com.example.exam.dto.EventIngestDto;
 import com.example.exam.dto.SnapshotIngestDto;
 import com.example.exam.dto.SnapshotMessage;
@@ -7,10 +8,9 @@ import com.example.exam.model.Event;
 import com.example.exam.model.EventType;
 import com.example.exam.model.MediaSnapshot;
 import com.example.exam.repository.EventRepository;
+import com.example.exam.repository.EventRepositoryCustom.EventRef;
 import com.example.exam.repository.MediaSnapshotRepository;
-import com.example.exam.repository.SessionRepository;
-import com.example.exam.config.RabbitMQConfig;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -20,56 +20,94 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
 public class IngestService {
-    private final SessionRepository sessionRepository;
     private final EventRepository eventRepository;
     private final MediaSnapshotRepository snapshotRepository;
     private final RuleService ruleService;
-    private final RabbitTemplate rabbitTemplate;
+    private final SnapshotOutbox snapshotOutbox;
+    private final SessionStatusCache sessionCache;
+    private final AdminStatsService adminStats;
+    private final SessionTimeline timeline;
     private final ObjectMapper mapper = new ObjectMapper();
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(IngestService.class);
 
-    public IngestService(SessionRepository sessionRepository,
-                         EventRepository eventRepository,
+    // Set-based ingest (one query per step per batch) instead of up to 4 queries per item
+    @Value("${ingest.events.bulk-enabled:false}")
+    private boolean bulkEnabled;
+
+    public IngestService(EventRepository eventRepository,
                          MediaSnapshotRepository snapshotRepository,
                          RuleService ruleService,
-                         RabbitTemplate rabbitTemplate) {
-        this.sessionRepository = sessionRepository;
+                         SnapshotOutbox snapshotOutbox,
+                         SessionStatusCache sessionCache,
+                         AdminStatsService adminStats,
+                         SessionTimeline timeline) {
         this.eventRepository = eventRepository;
         this.snapshotRepository = snapshotRepository;
         this.ruleService = ruleService;
-        this.rabbitTemplate = rabbitTemplate;
+        this.snapshotOutbox = snapshotOutbox;
+        this.sessionCache = sessionCache;
+        this.adminStats = adminStats;
+        this.timeline = timeline;
     }
 
     @Transactional
     public EventIngestDto.Result ingestEvents(EventIngestDto.Request req) {
+        return bulkEnabled ? ingestEventsBulk(req) : ingestEventsPerItem(req);
+    }
+
+    /**
+     * Original per-item path: existence check, two dedupe lookups and a save for every item.
+     * The key lookup is a claim in event_idempotency_keys, so a new event still costs three statements.
+     */
+    @Transactional
+    public EventIngestDto.Result ingestEventsPerItem(EventIngestDto.Request req) {
         int created = 0;
         int dup = 0;
         List<UUID> ids = new ArrayList<>();
+        List<Event> saved = new ArrayList<>();
 
         for (var item : req.items) {
-            // Validate session existence (defensive null guard)
+            // Validate session existence (and ACTIVE status if configured) through the session cache
             var sessionId = item.sessionId;
-            if (sessionId == null || !sessionRepository.existsById(sessionId)) {
-                // Skip invalid session; alternatively could throw 404
+            if (!sessionCache.accepts(sessionId)) {
+                // Skip invalid or ended session; alternatively could throw 404
                 continue;
             }
 
-            // Check dedupe by idempotency key first
-            var existing = eventRepository.findByIdempotencyKey(item.idempotencyKey);
-            if (existing.isPresent()) {
+            Event e = new Event();
+            e.setSessionId(sessionId);
+            e.setTs(item.ts);
+            e.setEventType(item.eventType);
+            e.setDetails(item.details);
+            e.setIdempotencyKey(item.idempotencyKey);
+            e.setCreatedAt(Instant.now());
+
+            // Check dedupe by idempotency key first: claiming the key fails only if it is taken
+            // (events enforce the key per ts only; the claim makes it unique across the table)
+            if (!eventRepository.claimIdempotencyKey(e)) {
+                var existing = eventRepository.findRefsByIdempotencyKeys(List.of(item.idempotencyKey));
+                if (existing.isEmpty()) {
+                    throw new DataIntegrityViolationException("Idempotency key claimed without an event: " + item.idempotencyKey);
+                }
                 dup++;
-                ids.add(existing.get().getId());
+                ids.add(existing.get(0).id());
                 continue;
             }
 
             // Also check composite unique key (sessionId, ts, eventType)
             var existingComposite = eventRepository.findBySessionIdAndTsAndEventType(sessionId, item.ts, item.eventType);
             if (existingComposite.isPresent()) {
+                eventRepository.releaseIdempotencyKey(e);
                 dup++;
                 ids.add(existingComposite.get().getId());
                 continue;
@@ -84,32 +122,20 @@ public class IngestService {
                 }
             }
 
-            Event e = new Event();
-            e.setSessionId(sessionId);
-            e.setTs(item.ts);
-            e.setEventType(item.eventType);
-            e.setDetails(item.details);
-            e.setIdempotencyKey(item.idempotencyKey);
-            e.setCreatedAt(Instant.now());
-
             try {
                 e = eventRepository.save(e);
                 created++;
+                saved.add(e);
                 ids.add(e.getId());
-                
-                // Evaluate rules after saving event
-                if (item.eventType == EventType.TAB_SWITCH) {
-                    ruleService.evaluateTabSwitch(sessionId, Instant.ofEpochMilli(item.ts));
-                } else if (item.eventType == EventType.PASTE) {
-                    ruleService.evaluatePaste(sessionId, Instant.ofEpochMilli(item.ts));
-                }
             } catch (DataIntegrityViolationException ex) {
                 // Safety net: treat DB unique violations as duplicates instead of 500
                 var maybe = eventRepository.findBySessionIdAndTsAndEventType(sessionId, item.ts, item.eventType)
-                        .or(() -> eventRepository.findByIdempotencyKey(item.idempotencyKey));
+                        .map(Event::getId)
+                        .or(() -> eventRepository.findRefsByIdempotencyKeys(List.of(item.idempotencyKey)).stream()
+                                .findFirst().map(EventRef::id));
                 if (maybe.isPresent()) {
                     dup++;
-                    ids.add(maybe.get().getId());
+                    ids.add(maybe.get());
                     log.debug("Ingest duplicate detected via integrity violation: {}", item.idempotencyKey);
                 } else {
                     log.error("Unexpected data integrity error ingesting event: sessionId={}, ts={}, type={}, key={}",
@@ -122,18 +148,238 @@ public class IngestService {
             }
         }
 
+        adminStats.eventsIngested(created);
+        timeline.eventsCreated(saved);
+        ruleService.evaluateAfterCommit(saved);
         return new EventIngestDto.Result(created, dup, ids);
     }
 
+    /**
+     * Set-based path with the same result contract as {@link #ingestEventsPerItem}:
+     * 1. one session existence query for all distinct sessionIds not already in the session cache
+     * 2. one {@code idempotency_key = ANY(?)} dedupe query for the whole batch
+     * 3. one multi-row {@code INSERT ... ON CONFLICT DO NOTHING RETURNING id}
+     * Rows that lose a conflict at insert time (composite key or a concurrent writer) are
+     * resolved to the existing ids with one extra lookup, only when that happens.
+     */
+    @Transactional
+    public EventIngestDto.Result ingestEventsBulk(EventIngestDto.Request req) {
+        return ingestEventItemsBulk(req.items).toResult(0, req.items.size());
+    }
+
+    /**
+     * Bulk path returning one outcome per input item, so callers that merge several requests
+     * into one transaction (group commit) can split the results back per request.
+     */
+    @Transactional
+    public ItemOutcomes ingestEventItemsBulk(List<EventIngestDto.Item> items) {
+        ItemOutcomes outcomes = ingestItems(items);
+        // Not inline: a rolled-back batch that is retried (group commit) must not count its events twice
+        ruleService.evaluateAfterCommit(outcomes.events());
+        return outcomes;
+    }
+
+    /**
+     * Bulk path that leaves rule evaluation to the caller: pass {@link ItemOutcomes#events()} to
+     * {@link RuleService#evaluate(java.util.Collection)} once this call has returned (committed).
+     * Used by callers that keep a session's rule evaluation on one thread of their own.
+     */
+    @Transactional
+    public ItemOutcomes ingestEventItemsBulkWithoutRules(List<EventIngestDto.Item> items) {
+        return ingestItems(items);
+    }
+
+    private ItemOutcomes ingestItems(List<EventIngestDto.Item> items) {
+        int n = items.size();
+        UUID[] resolved = new UUID[n];
+        Event[] fresh = new Event[n];
+
+        Set<UUID> sessionIds = new HashSet<>();
+        for (var item : items) {
+            if (item.sessionId != null) sessionIds.add(item.sessionId);
+        }
+        if (sessionIds.isEmpty()) {
+            return new ItemOutcomes(resolved, new boolean[n]);
+        }
+        Set<UUID> knownSessions = sessionCache.accepting(sessionIds);
+
+        // Skip unknown sessions, validate details up front (same 400 as the per-item path)
+        boolean[] accepted = new boolean[n];
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < n; i++) {
+            var item = items.get(i);
+            if (item.sessionId == null || !knownSessions.contains(item.sessionId)) {
+                continue;
+            }
+            validateDetails(item);
+            accepted[i] = true;
+            keys.add(item.idempotencyKey);
+        }
+
+        Map<String, UUID> byKey = new HashMap<>();
+        Map<NaturalKey, UUID> byNaturalKey = new HashMap<>();
+        for (EventRef ref : eventRepository.findRefsByIdempotencyKeys(keys)) {
+            byKey.put(ref.idempotencyKey(), ref.id());
+            byNaturalKey.put(new NaturalKey(ref.sessionId(), ref.ts(), ref.eventType()), ref.id());
+        }
+
+        // Resolve each accepted item to an existing id or a new row; repeats inside the batch
+        // resolve to the first occurrence, as they would after a flush in the per-item loop
+        Instant now = Instant.now();
+        List<Event> toInsert = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (!accepted[i]) continue;
+            var item = items.get(i);
+            var naturalKey = new NaturalKey(item.sessionId, item.ts, item.eventType);
+            UUID existing = byKey.get(item.idempotencyKey);
+            if (existing == null) existing = byNaturalKey.get(naturalKey);
+            if (existing != null) {
+                resolved[i] = existing;
+                continue;
+            }
+            Event e = new Event();
+            e.setSessionId(item.sessionId);
+            e.setTs(item.ts);
+            e.setEventType(item.eventType);
+            e.setDetails(item.details);
+            e.setIdempotencyKey(item.idempotencyKey);
+            e.setCreatedAt(now);
+            byKey.put(item.idempotencyKey, e.getId());
+            byNaturalKey.put(naturalKey, e.getId());
+            resolved[i] = e.getId();
+            fresh[i] = e;
+            toInsert.add(e);
+        }
+
+        Set<UUID> inserted = eventRepository.insertAllIgnoringConflicts(toInsert);
+        adminStats.eventsIngested(inserted.size());
+
+        if (inserted.size() < toInsert.size()) {
+            resolveConflicts(toInsert, inserted, resolved, fresh);
+        }
+
+        boolean[] created = new boolean[n];
+        List<Event> saved = new ArrayList<>(inserted.size());
+        for (int i = 0; i < n; i++) {
+            if (fresh[i] != null && inserted.contains(fresh[i].getId())) {
+                created[i] = true;
+                saved.add(fresh[i]);
+            }
+        }
+        timeline.eventsCreated(saved);
+        return new ItemOutcomes(resolved, created, saved);
+    }
+
+    /**
+     * Reject malformed JSON in 'details' (avoids DB jsonb parse errors)
+     */
+    public void validateDetails(EventIngestDto.Item item) {
+        if (item.details != null) {
+            try {
+                mapper.readTree(item.details);
+            } catch (Exception ex) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid JSON in 'details'");
+            }
+        }
+    }
+
+    /**
+     * Map rows skipped by ON CONFLICT to the rows that won, by composite key first then by idempotency key
+     */
+    private void resolveConflicts(List<Event> toInsert, Set<UUID> inserted, UUID[] resolved, Event[] fresh) {
+        List<Event> lost = new ArrayList<>();
+        for (Event e : toInsert) {
+            if (!inserted.contains(e.getId())) lost.add(e);
+        }
+
+        Map<NaturalKey, UUID> byNaturalKey = new HashMap<>();
+        for (EventRef ref : eventRepository.findRefsByNaturalKeys(lost)) {
+            byNaturalKey.put(new NaturalKey(ref.sessionId(), ref.ts(), ref.eventType()), ref.id());
+        }
+        Map<UUID, UUID> winners = new HashMap<>();
+        List<String> unresolvedKeys = new ArrayList<>();
+        for (Event e : lost) {
+            UUID winner = byNaturalKey.get(new NaturalKey(e.getSessionId(), e.getTs(), e.getEventType()));
+            if (winner != null) {
+                winners.put(e.getId(), winner);
+            } else {
+                unresolvedKeys.add(e.getIdempotencyKey());
+            }
+        }
+        if (!unresolvedKeys.isEmpty()) {
+            Map<String, UUID> byKey = new HashMap<>();
+            for (EventRef ref : eventRepository.findRefsByIdempotencyKeys(unresolvedKeys)) {
+                byKey.put(ref.idempotencyKey(), ref.id());
+            }
+            for (Event e : lost) {
+                if (winners.containsKey(e.getId())) continue;
+                UUID winner = byKey.get(e.getIdempotencyKey());
+                if (winner == null) {
+                    log.error("Unexpected conflict ingesting event: sessionId={}, ts={}, type={}, key={}",
+                            e.getSessionId(), e.getTs(), e.getEventType(), e.getIdempotencyKey());
+                    throw new DataIntegrityViolationException("Event conflict could not be resolved: " + e.getIdempotencyKey());
+                }
+                winners.put(e.getId(), winner);
+            }
+        }
+
+        for (int i = 0; i < resolved.length; i++) {
+            if (resolved[i] == null) continue;
+            UUID winner = winners.get(resolved[i]);
+            if (winner != null) {
+                log.debug("Ingest duplicate detected via insert conflict: {}", fresh[i] != null ? fresh[i].getIdempotencyKey() : resolved[i]);
+                resolved[i] = winner;
+            }
+        }
+    }
+
+    private record NaturalKey(UUID sessionId, long ts, EventType eventType) {}
+
+    /**
+     * Per-item outcome of the bulk path, aligned with the input items.
+     * A null id means the item was skipped (missing or unknown session).
+     *
+     * @param events the rows actually inserted, in input order
+     */
+    public record ItemOutcomes(UUID[] ids, boolean[] created, List<Event> events) {
+
+        public ItemOutcomes(UUID[] ids, boolean[] created) {
+            this(ids, created, List.of());
+        }
+
+        /**
+         * Build the classic result for items [from, to)
+         */
+        public EventIngestDto.Result toResult(int from, int to) {
+            int createdCount = 0;
+            int dup = 0;
+            List<UUID> result = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                if (ids[i] == null) continue;
+                result.add(ids[i]);
+                if (created[i]) createdCount++; else dup++;
+            }
+            return new EventIngestDto.Result(createdCount, dup, result);
+        }
+    }
+
+    /**
+     * Insert new snapshots and stage their processing messages in the outbox, in one transaction;
+     * SnapshotOutbox publishes them to RabbitMQ after commit. Snapshots of ACTIVE sessions go to the
+     * live lane, the rest (e.g. uploads for an ended session) to the backlog lane.
+     */
     @Transactional
     public SnapshotIngestDto.Result ingestSnapshots(SnapshotIngestDto.Request req) {
         int created = 0;
         int dup = 0;
         List<UUID> ids = new ArrayList<>();
+        List<SnapshotMessage> messages = new ArrayList<>();
+        List<MediaSnapshot> counted = new ArrayList<>();
 
         for (var item : req.items) {
             var sessionId = item.sessionId;
-            if (sessionId == null || !sessionRepository.existsById(sessionId)) {
+            // Existence only: ended sessions still get their (already stored) images, on the backlog lane
+            if (!sessionCache.exists(sessionId)) {
                 continue;
             }
 
@@ -153,29 +399,31 @@ public class IngestService {
             s.setUploadedAt(Instant.now());
             s.setFaceCount(item.faceCount);
             s.setIdempotencyKey(item.idempotencyKey);
+            s.setContentHash(item.contentHash);
 
             s = snapshotRepository.save(s);
             created++;
             ids.add(s.getId());
-            
-            // Publish message to RabbitMQ for async processing
-            try {
-                SnapshotMessage message = new SnapshotMessage(
-                    s.getId(),
-                    s.getSessionId(),
-                    s.getObjectKey(),
-                    s.getTs()
-                );
-                rabbitTemplate.convertAndSend(
-                    RabbitMQConfig.EXCHANGE_NAME,
-                    RabbitMQConfig.ROUTING_KEY,
-                    message
-                );
-                log.info("Published snapshot message to queue: snapshotId={}, sessionId={}", s.getId(), s.getSessionId());
-            } catch (Exception ex) {
-                // Log but don't fail the request - worker will process eventually
-                log.error("Failed to publish snapshot message: snapshotId={}, error={}", s.getId(), ex.getMessage(), ex);
+            messages.add(new SnapshotMessage(s.getId(), s.getSessionId(), s.getObjectKey(), s.getTs()));
+            if (s.getFaceCount() != null) counted.add(s);
+        }
+        // Face counts sent by the client; the worker only counts snapshots it detects first
+        timeline.facesDetected(counted);
+
+        // Same transaction as the snapshot rows: a committed snapshot always has its message
+        if (!messages.isEmpty()) {
+            Set<UUID> sessionIds = new HashSet<>();
+            for (SnapshotMessage m : messages) sessionIds.add(m.sessionId());
+            Set<UUID> live = sessionCache.active(sessionIds);
+            List<SnapshotMessage> liveMessages = new ArrayList<>(messages.size());
+            List<SnapshotMessage> backlogMessages = new ArrayList<>();
+            for (SnapshotMessage m : messages) {
+                (live.contains(m.sessionId()) ? liveMessages : backlogMessages).add(m);
             }
+            snapshotOutbox.stage(liveMessages, RabbitMQConfig.Lane.LIVE);
+            snapshotOutbox.stage(backlogMessages, RabbitMQConfig.Lane.BACKLOG);
+            log.debug("Staged {} live and {} backlog snapshot messages in the outbox",
+                    liveMessages.size(), backlogMessages.size());
         }
 
         return new SnapshotIngestDto.Result(created, dup, ids);
@@ -0,0 +1,359 @@
+package com.example.exam.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * CPU-only face detector: Haar-like rectangle features evaluated on integral images.
+ *
+ * Flow:
+ * 1. Decode the snapshot with ImageIO, subsampling during decode down to about the working width
+ * 2. Area-average into a working-resolution luma plane and a skin mask (YCbCr skin range)
+ * 3. Build integral images of both, so every rectangle sum is 4 array reads
+ * 4. Scan square windows over several scales; a window is a face candidate when it is mostly skin,
+ *    the eye band is darker than the cheek band, and the nose bridge is brighter than both eyes
+ * 5. Non-maximum suppression; the remaining candidates are the face count
+ *
+ * The features and thresholds are hand-tuned for frontal webcam snapshots, not a trained cascade.
+ * Every window has to pass the skin gate, so an image with less skin-range area than the smallest
+ * window needs (grayscale and IR frames have none; so may unusual lighting) returns
+ * {@link FaceDetector#UNDETERMINED} rather than 0: the detector cannot see a face there, which is
+ * not evidence that there is none.
+ *
+ * All working buffers are primitive arrays kept per thread and reused across calls.
+ */
+@Service
+public class IntegralImageFaceDetector implements FaceDetector {
+
+    // Window must be at least this skin-covered
+    private static final int MIN_SKIN_PERCENT = 45;
+    // Eye band (eyes plus the skin around them) must be at least this skin-covered
+    private static final int MIN_EYE_BAND_SKIN_PERCENT = 60;
+    // Cheek band must be this much brighter than the eye band (mean luma, 0-255): a share of the cheek
+    // brightness, so darker skin (less light to lose) is held to the same relative contrast
+    private static final int EYE_CONTRAST_PERCENT = 6;
+    private static final int MIN_EYE_CONTRAST = 3;
+    private static final int MAX_EYE_CONTRAST = 8;
+    // Nose bridge must be this much brighter than each eye region, likewise
+    private static final int BRIDGE_CONTRAST_PERCENT = 5;
+    private static final int MIN_BRIDGE_CONTRAST = 2;
+    private static final int MAX_BRIDGE_CONTRAST = 6;
+    // Overlapping windows that must agree before a group counts as a face
+    private static final int MIN_NEIGHBORS = 2;
+    // Smallest face searched: a quarter of the shorter image side (webcam framing), never below 20 px
+    private static final int MIN_WINDOW = 20;
+    private static final int MIN_WINDOW_DIVISOR = 4;
+    private static final float SCALE_STEP = 1.2f;
+
+    private final MediaStorageService mediaStorageService;
+    private final int workingWidth;
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    public IntegralImageFaceDetector(MediaStorageService mediaStorageService,
+                                     @Value("${face-detection.working-width:160}") int workingWidth) {
+        this.mediaStorageService = mediaStorageService;
+        this.workingWidth = workingWidth;
+    }
+
+    @Override
+    public int detectFaces(String objectKey) {
+        try (ImageInputStream in = openImage(objectKey)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + objectKey);
+            }
+            return detect(decode(in, objectKey));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Face detection failed for " + objectKey, e);
+        }
+    }
+
+    private ImageInputStream openImage(String objectKey) throws IOException {
+        if (mediaStorageService.isFile(objectKey)) {
+            return ImageIO.createImageInputStream(mediaStorageService.resolve(objectKey).toFile());
+        }
+        // Segment-stored image: mapped bytes, no temp-file cache
+        return new MemoryCacheImageInputStream(mediaStorageService.open(objectKey));
+    }
+
+    /**
+     * Count faces in an already decoded image
+     */
+    public int detect(BufferedImage image) {
+        Buffers b = buffers.get();
+        loadWorkingPlanes(image, b);
+        buildIntegrals(b);
+        int minWindow = minWindow(b);
+        int skin = sum(b.skinIntegral, b.w, 0, 0, b.w, b.h);
+        if (minWindow > Math.min(b.w, b.h) || skin * 100 < minWindow * minWindow * MIN_SKIN_PERCENT) {
+            return UNDETERMINED;
+        }
+        return scan(b, minWindow);
+    }
+
+    private static int minWindow(Buffers b) {
+        return Math.max(MIN_WINDOW, Math.min(b.w, b.h) / MIN_WINDOW_DIVISOR);
+    }
+
+    private BufferedImage decode(ImageInputStream in, String objectKey) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format: " + objectKey);
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(in, true, true);
+            // Skip source pixels during decode; the area-average below does the final resize
+            int factor = Math.max(1, reader.getWidth(0) / (workingWidth * 2));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(factor, factor, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Area-average the image into luma and skin planes at working resolution
+     */
+    private void loadWorkingPlanes(BufferedImage image, Buffers b) {
+        int srcW = image.getWidth();
+        int srcH = image.getHeight();
+        int w = Math.min(workingWidth, srcW);
+        int h = Math.max(1, (int) ((long) srcH * w / srcW));
+        b.ensure(w, h, srcW);
+
+        int[] row = b.row;
+        int[] sumY = b.sumY;
+        int[] sumSkin = b.sumSkin;
+        int[] cnt = b.cnt;
+        int srcY = 0;
+        for (int y = 0; y < h; y++) {
+            int srcYEnd = Math.max(srcY + 1, (int) ((long) (y + 1) * srcH / h));
+            Arrays.fill(sumY, 0, w, 0);
+            Arrays.fill(sumSkin, 0, w, 0);
+            Arrays.fill(cnt, 0, w, 0);
+            for (int sy = srcY; sy < srcYEnd; sy++) {
+                image.getRGB(0, sy, srcW, 1, row, 0, srcW);
+                for (int sx = 0; sx < srcW; sx++) {
+                    int p = row[sx];
+                    int r = (p >> 16) & 0xff;
+                    int g = (p >> 8) & 0xff;
+                    int bl = p & 0xff;
+                    // ITU-R BT.601 in fixed point (x 256)
+                    int luma = (77 * r + 150 * g + 29 * bl) >> 8;
+                    int cb = 128 + ((-43 * r - 85 * g + 128 * bl) >> 8);
+                    int cr = 128 + ((128 * r - 107 * g - 21 * bl) >> 8);
+                    int x = (int) ((long) sx * w / srcW);
+                    sumY[x] += luma;
+                    if (cb >= 77 && cb <= 127 && cr >= 133 && cr <= 173) sumSkin[x]++;
+                    cnt[x]++;
+                }
+            }
+            int base = y * w;
+            for (int x = 0; x < w; x++) {
+                int c = cnt[x];
+                b.luma[base + x] = sumY[x] / c;
+                b.skin[base + x] = sumSkin[x] * 2 >= c ? 1 : 0;
+            }
+            srcY = srcYEnd;
+        }
+    }
+
+    private static void buildIntegrals(Buffers b) {
+        int w = b.w;
+        int h = b.h;
+        int stride = w + 1;
+        int[] li = b.lumaIntegral;
+        int[] si = b.skinIntegral;
+        Arrays.fill(li, 0, stride, 0);
+        Arrays.fill(si, 0, stride, 0);
+        for (int y = 0; y < h; y++) {
+            int rowLuma = 0;
+            int rowSkin = 0;
+            int src = y * w;
+            int dst = (y + 1) * stride;
+            li[dst] = 0;
+            si[dst] = 0;
+            for (int x = 0; x < w; x++) {
+                rowLuma += b.luma[src + x];
+                rowSkin += b.skin[src + x];
+                li[dst + x + 1] = li[dst - stride + x + 1] + rowLuma;
+                si[dst + x + 1] = si[dst - stride + x + 1] + rowSkin;
+            }
+        }
+    }
+
+    private int scan(Buffers b, int minWindow) {
+        int w = b.w;
+        int h = b.h;
+        int maxSize = Math.min(w, h);
+        b.candidates = 0;
+        for (float size = minWindow; size <= maxSize; size *= SCALE_STEP) {
+            int s = (int) size;
+            int step = Math.max(2, s / 8);
+            for (int y = 0; y + s <= h; y += step) {
+                for (int x = 0; x + s <= w; x += step) {
+                    int score = evaluate(b, x, y, s);
+                    if (score > 0) b.addCandidate(x, y, s, score);
+                }
+            }
+        }
+        return suppress(b);
+    }
+
+    /**
+     * Evaluate the feature stages on one window; returns a positive score for a candidate, 0 otherwise
+     */
+    private static int evaluate(Buffers b, int x, int y, int s) {
+        int area = s * s;
+        int skin = sum(b.skinIntegral, b.w, x, y, x + s, y + s);
+        if (skin * 100 < area * MIN_SKIN_PERCENT) return 0;
+
+        int left = x + s * 15 / 100;
+        int mid0 = x + s * 40 / 100;
+        int mid1 = x + s * 60 / 100;
+        int right = x + s * 85 / 100;
+        int eyeTop = y + s * 20 / 100;
+        int eyeBottom = y + s * 45 / 100;
+        int cheekBottom = y + s * 75 / 100;
+        if (right - left < 3 || eyeBottom - eyeTop < 2) return 0;
+
+        // Eyes sit inside the face: the eye band must itself be mostly skin, which rejects the top of
+        // the head where background in the corners would otherwise look like two dark eyes
+        int eyeBandArea = (right - left) * (eyeBottom - eyeTop);
+        int eyeBandSkin = sum(b.skinIntegral, b.w, left, eyeTop, right, eyeBottom);
+        if (eyeBandSkin * 100 < eyeBandArea * MIN_EYE_BAND_SKIN_PERCENT) return 0;
+
+        int eyeBand = mean(b.lumaIntegral, b.w, left, eyeTop, right, eyeBottom);
+        int cheekBand = mean(b.lumaIntegral, b.w, left, eyeBottom, right, cheekBottom);
+        int eyeContrast = cheekBand - eyeBand;
+        if (eyeContrast < required(cheekBand, EYE_CONTRAST_PERCENT, MIN_EYE_CONTRAST, MAX_EYE_CONTRAST)) return 0;
+
+        int leftEye = mean(b.lumaIntegral, b.w, left, eyeTop, mid0, eyeBottom);
+        int bridge = mean(b.lumaIntegral, b.w, mid0, eyeTop, mid1, eyeBottom);
+        int rightEye = mean(b.lumaIntegral, b.w, mid1, eyeTop, right, eyeBottom);
+        // Both eyes individually, so a window holding a single eye does not pass
+        int bridgeContrast = bridge - Math.max(leftEye, rightEye);
+        if (bridgeContrast < required(cheekBand, BRIDGE_CONTRAST_PERCENT, MIN_BRIDGE_CONTRAST, MAX_BRIDGE_CONTRAST)) {
+            return 0;
+        }
+
+        // Weighted by size so the window framing the whole face wins over windows on part of it
+        return (skin * 100 / area + eyeContrast + bridgeContrast) * s;
+    }
+
+    private static int required(int brightness, int percent, int min, int max) {
+        return Math.max(min, Math.min(max, brightness * percent / 100));
+    }
+
+    /**
+     * Greedy non-maximum suppression: the best-scoring window absorbs every window overlapping it;
+     * a group counts as a face only with enough supporting windows (isolated hits are noise)
+     */
+    private static int suppress(Buffers b) {
+        int n = b.candidates;
+        int[] c = b.cand;
+        boolean[] dropped = b.dropped;
+        Arrays.fill(dropped, 0, n, false);
+        int faces = 0;
+        while (true) {
+            int best = -1;
+            for (int i = 0; i < n; i++) {
+                if (!dropped[i] && (best < 0 || c[i * 4 + 3] > c[best * 4 + 3])) best = i;
+            }
+            if (best < 0) return faces;
+            dropped[best] = true;
+            int bx = c[best * 4], by = c[best * 4 + 1], bs = c[best * 4 + 2];
+            int support = 0;
+            for (int i = 0; i < n; i++) {
+                if (!dropped[i] && overlaps(bx, by, bs, c[i * 4], c[i * 4 + 1], c[i * 4 + 2])) {
+                    dropped[i] = true;
+                    support++;
+                }
+            }
+            if (support >= MIN_NEIGHBORS) faces++;
+        }
+    }
+
+    /**
+     * True if the intersection covers more than a quarter of the smaller window
+     */
+    private static boolean overlaps(int ax, int ay, int as, int bx, int by, int bs) {
+        int ix = Math.min(ax + as, bx + bs) - Math.max(ax, bx);
+        int iy = Math.min(ay + as, by + bs) - Math.max(ay, by);
+        if (ix <= 0 || iy <= 0) return false;
+        int smaller = Math.min(as, bs);
+        return ix * iy * 4 > smaller * smaller;
+    }
+
+    private static int sum(int[] ii, int w, int x0, int y0, int x1, int y1) {
+        int stride = w + 1;
+        return ii[y1 * stride + x1] - ii[y0 * stride + x1] - ii[y1 * stride + x0] + ii[y0 * stride + x0];
+    }
+
+    private static int mean(int[] ii, int w, int x0, int y0, int x1, int y1) {
+        return sum(ii, w, x0, y0, x1, y1) / ((x1 - x0) * (y1 - y0));
+    }
+
+    /**
+     * Per-thread working memory; arrays only grow, so steady-state detection allocates nothing here
+     */
+    private static final class Buffers {
+        int w;
+        int h;
+        int[] row = new int[0];
+        int[] sumY = new int[0];
+        int[] sumSkin = new int[0];
+        int[] cnt = new int[0];
+        int[] luma = new int[0];
+        int[] skin = new int[0];
+        int[] lumaIntegral = new int[0];
+        int[] skinIntegral = new int[0];
+        // x, y, size, score per candidate
+        int[] cand = new int[256];
+        boolean[] dropped = new boolean[64];
+        int candidates;
+
+        void ensure(int w, int h, int srcW) {
+            this.w = w;
+            this.h = h;
+            if (row.length < srcW) row = new int[srcW];
+            if (sumY.length < w) {
+                sumY = new int[w];
+                sumSkin = new int[w];
+                cnt = new int[w];
+            }
+            if (luma.length < w * h) {
+                luma = new int[w * h];
+                skin = new int[w * h];
+            }
+            int integralSize = (w + 1) * (h + 1);
+            if (lumaIntegral.length < integralSize) {
+                lumaIntegral = new int[integralSize];
+                skinIntegral = new int[integralSize];
+            }
+        }
+
+        void addCandidate(int x, int y, int s, int score) {
+            int i = candidates * 4;
+            if (i + 4 > cand.length) cand = Arrays.copyOf(cand, cand.length * 2);
+            if (candidates + 1 > dropped.length) dropped = new boolean[dropped.length * 2];
+            cand[i] = x;
+            cand[i + 1] = y;
+            cand[i + 2] = s;
+            cand[i + 3] = score;
+            candidates++;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.exam.service;
+
+import com.example.exam.model.MediaBlob;
+import com.example.exam.repository.MediaBlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Removes content-addressed objects that no snapshot references any more
+ *
+ * Flow:
+ * 1. Delete media_blobs rows whose ref_count has been 0 for longer than the grace period
+ * 2. Delete their files, unless a file was written or touched within the grace period
+ *    (a new upload of the same content may be about to reference it again)
+ * 3. Delete files under cas/ older than the grace period that have no media_blobs row at all
+ *    (stored, but the snapshot insert never happened, e.g. the request failed after the upload)
+ */
+@Service
+public class MediaBlobJanitor {
+
+    private static final Logger log = LoggerFactory.getLogger(MediaBlobJanitor.class);
+    private static final int LOOKUP_CHUNK = 500;
+
+    private final MediaBlobRepository blobRepository;
+    private final MediaStorageService storage;
+    private final Duration grace;
+
+    public MediaBlobJanitor(MediaBlobRepository blobRepository,
+                            MediaStorageService storage,
+                            @Value("${media.storage.release-grace-minutes:60}") long graceMinutes) {
+        this.blobRepository = blobRepository;
+        this.storage = storage;
+        this.grace = Duration.ofMinutes(graceMinutes);
+    }
+
+    /**
+     * @return number of files removed
+     */
+    @Scheduled(fixedDelayString = "${media.storage.sweep-interval-ms:600000}")
+    public int sweep() {
+        if (!storage.isContentAddressed()) return 0;
+        Instant cutoff = Instant.now().minus(grace);
+        List<String> released = blobRepository.deleteReleasedBefore(cutoff);
+        int removed = 0;
+        for (String objectKey : released) {
+            try {
+                Path file = storage.resolve(objectKey);
+                if (Files.getLastModifiedTime(file).toInstant().isAfter(cutoff)) continue;
+                Files.delete(file);
+                removed++;
+            } catch (NoSuchFileException e) {
+                // Already gone
+            } catch (IOException | IllegalArgumentException e) {
+                log.warn("Could not remove released media object {}: {}", objectKey, e.getMessage());
+            }
+        }
+        int orphans = removeOrphans(cutoff);
+        if (!released.isEmpty() || orphans > 0) {
+            log.info("Media sweep: {} blobs released, {} files removed, {} orphaned files removed",
+                    released.size(), removed, orphans);
+        }
+        return removed + orphans;
+    }
+
+    private int removeOrphans(Instant cutoff) {
+        Path root = storage.resolve("cas");
+        if (!Files.isDirectory(root)) return 0;
+        Map<String, Path> candidates = new HashMap<>();
+        int removed = 0;
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!Files.isRegularFile(file)) continue;
+                if (Files.getLastModifiedTime(file).toInstant().isAfter(cutoff)) continue;
+                candidates.put(file.getFileName().toString(), file);
+                if (candidates.size() == LOOKUP_CHUNK) {
+                    removed += removeUnknown(candidates);
+                    candidates.clear();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Media orphan sweep failed: {}", e.getMessage());
+        }
+        return removed + removeUnknown(candidates);
+    }
+
+    private int removeUnknown(Map<String, Path> candidates) {
+        if (candidates.isEmpty()) return 0;
+        for (MediaBlob blob : blobRepository.findAllById(candidates.keySet())) {
+            candidates.remove(blob.getSha256());
+        }
+        int removed = 0;
+        for (Path file : candidates.values()) {
+            try {
+                if (Files.deleteIfExists(file)) removed++;
+            } catch (IOException e) {
+                log.warn("Could not remove orphaned media object {}: {}", file, e.getMessage());
+            }
+        }
+        return removed;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.exam.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for content-addressed snapshot storage since startup:
+ * how many uploads were already stored, and how many detections were answered from a previous result
+ */
+@Component
+public class MediaDedupStats {
+
+    private final AtomicLong storedObjects = new AtomicLong();
+    private final AtomicLong duplicateObjects = new AtomicLong();
+    private final AtomicLong duplicateBytes = new AtomicLong();
+    private final AtomicLong detections = new AtomicLong();
+    private final AtomicLong detectionsReused = new AtomicLong();
+
+    void recordStored() {
+        storedObjects.incrementAndGet();
+    }
+
+    void recordDuplicate(long bytes) {
+        duplicateObjects.incrementAndGet();
+        duplicateBytes.addAndGet(bytes);
+    }
+
+    void recordDetection() {
+        detections.incrementAndGet();
+    }
+
+    void recordDetectionReused() {
+        detectionsReused.incrementAndGet();
+    }
+
+    public Snapshot snapshot() {
+        long stored = storedObjects.get();
+        long dup = duplicateObjects.get();
+        long detected = detections.get();
+        long reused = detectionsReused.get();
+        return new Snapshot(stored, dup, duplicateBytes.get(), ratio(dup, stored + dup),
+                detected, reused, ratio(reused, detected + reused));
+    }
+
+    private static double ratio(long part, long total) {
+        return total == 0 ? 0.0 : (double) part / total;
+    }
+
+    /**
+     * @param duplicateRate share of uploads whose content was already stored
+     * @param detectionReuseRate share of snapshots whose face count came from an earlier detection of the same content
+     */
+    public record Snapshot(long storedObjects, long duplicateObjects, long duplicateBytes, double duplicateRate,
+                           long detections, long detectionsReused, double detectionReuseRate) {}
+}
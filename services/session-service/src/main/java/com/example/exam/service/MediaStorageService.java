@@ -1,37 +1,173 @@
 package com.example.exam.service;
 
 import com.example.exam.dto.SnapshotIngestDto;
-import com.example.exam.dto.SnapshotUploadDto;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 @Service
 public class MediaStorageService {
 
+    private static final JsonFactory JSON = new JsonFactory();
+
     private final Path uploadRoot;
+    private final long maxUploadBytes;
+    private final int streamBufferBytes;
+    // Direct copy buffers shared by all request threads, at most streamBufferPoolSize of them;
+    // an upload that finds none free copies through a heap buffer instead of allocating more direct memory
+    private final int streamBufferPoolSize;
+    private final ArrayBlockingQueue<ByteBuffer> streamBuffers;
+    private final AtomicInteger streamBuffersAllocated = new AtomicInteger();
+    // Content-addressed mode: objects are keyed cas/<first 2 hex>/<sha256>, one copy per distinct content
+    private final boolean contentAddressed;
+    private final MediaDedupStats dedupStats;
+    // Segment mode: images are appended to per-session segment files instead of one file each
+    private final boolean segmentsEnabled;
+    private final SegmentStore segments;
+    private final long segmentIdleMillis;
+
+    public MediaStorageService(String uploadDir) {
+        this(uploadDir, 5L * 1024 * 1024, 64 * 1024);
+    }
+
+    public MediaStorageService(String uploadDir, long maxUploadBytes, int streamBufferBytes) {
+        this(uploadDir, maxUploadBytes, streamBufferBytes, false, new MediaDedupStats());
+    }
+
+    public MediaStorageService(String uploadDir, long maxUploadBytes, int streamBufferBytes,
+                               boolean contentAddressed, MediaDedupStats dedupStats) {
+        this(uploadDir, maxUploadBytes, streamBufferBytes, contentAddressed, dedupStats, false, 256L * 1024 * 1024, 60_000, true, 32);
+    }
 
-    public MediaStorageService(@Value("${media.upload-dir:/app/uploads}") String uploadDir) {
+    @Autowired
+    public MediaStorageService(@Value("${media.upload-dir:/app/uploads}") String uploadDir,
+                               @Value("${media.upload.max-bytes:5242880}") long maxUploadBytes,
+                               @Value("${media.upload.buffer-bytes:65536}") int streamBufferBytes,
+                               @Value("${media.storage.content-addressed:false}") boolean contentAddressed,
+                               MediaDedupStats dedupStats,
+                               @Value("${media.storage.segments.enabled:false}") boolean segmentsEnabled,
+                               @Value("${media.storage.segments.max-bytes:268435456}") long maxSegmentBytes,
+                               @Value("${media.storage.segments.idle-close-ms:60000}") long segmentIdleMillis,
+                               @Value("${media.storage.segments.fsync:true}") boolean segmentFsync,
+                               @Value("${media.upload.buffer-pool-size:32}") int streamBufferPoolSize) {
         this.uploadRoot = Path.of(uploadDir);
+        this.maxUploadBytes = maxUploadBytes;
+        this.streamBufferBytes = streamBufferBytes;
+        this.streamBufferPoolSize = Math.max(0, streamBufferPoolSize);
+        this.streamBuffers = new ArrayBlockingQueue<>(Math.max(1, streamBufferPoolSize));
+        this.contentAddressed = contentAddressed;
+        this.dedupStats = dedupStats;
+        // Content addressing keeps one object per hash, which segments cannot share across sessions
+        this.segmentsEnabled = segmentsEnabled && !contentAddressed;
+        this.segments = new SegmentStore(uploadRoot.resolve("segments"), maxSegmentBytes, segmentFsync);
+        this.segmentIdleMillis = segmentIdleMillis;
+    }
+
+    public boolean isContentAddressed() {
+        return contentAddressed;
     }
 
     /**
-     * Store MultipartFile and return objectKey
+     * Read a stored object, whichever layout it was written with
      */
-    public String storeFile(MultipartFile file) throws IOException {
-        // Get timestamp from current time
-        var zdt = ZonedDateTime.now(ZoneId.of("UTC"));
-        
+    public InputStream open(String objectKey) throws IOException {
+        if (SegmentStore.isSegmentKey(objectKey)) {
+            return segments.open(objectKey);
+        }
+        return Files.newInputStream(resolve(objectKey));
+    }
+
+    /**
+     * Whether the object is a plain file that {@link #resolve} can return
+     */
+    public boolean isFile(String objectKey) {
+        return !SegmentStore.isSegmentKey(objectKey);
+    }
+
+    /**
+     * Delete every stored image of a session: its segment directory and its per-image files.
+     * Content-addressed objects are shared and left to MediaBlobJanitor.
+     *
+     * @return number of files deleted
+     */
+    public int deleteSessionMedia(UUID sessionId) throws IOException {
+        int deleted = segments.deleteSession(sessionId);
+        Path dir = resolve(sessionId.toString());
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    if (Files.isRegularFile(p)) deleted++;
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    @Scheduled(fixedDelayString = "${media.storage.segments.idle-close-ms:60000}")
+    public void closeIdleSegments() {
+        segments.closeIdle(segmentIdleMillis);
+    }
+
+    @PreDestroy
+    public void closeSegments() {
+        segments.closeAll();
+    }
+
+    /**
+     * Local path of a stored file (not for segment keys, see {@link #open})
+     *
+     * @throws IllegalArgumentException if the key points outside the upload directory
+     */
+    public Path resolve(String objectKey) {
+        Path path = uploadRoot.resolve(objectKey).normalize();
+        if (!path.startsWith(uploadRoot.normalize())) {
+            throw new IllegalArgumentException("Invalid object key: " + objectKey);
+        }
+        return path;
+    }
+
+    /**
+     * Store MultipartFile and return where it went
+     */
+    public StoredObject storeFile(MultipartFile file, UUID sessionId, long ts) throws IOException {
         // Detect extension
         String originalFilename = file.getOriginalFilename();
         String ext = ".jpg"; // default
@@ -39,58 +175,174 @@ public class MediaStorageService {
             ext = originalFilename.substring(originalFilename.lastIndexOf("."));
         }
         
-        // Build object key: uploads/YYYY/MM/DD/uuid.ext
-        String objectKey = String.format("%04d/%02d/%02d/", 
-            zdt.getYear(), zdt.getMonthValue(), zdt.getDayOfMonth()) +
-            UUID.randomUUID() + ext;
-        
-        // Write file
-        Path target = uploadRoot.resolve(objectKey).normalize();
-        Files.createDirectories(target.getParent());
-        file.transferTo(target);
-        
-        return objectKey;
+        // Write file (hashing on the way, for content-addressed mode)
+        try (InputStream in = file.getInputStream()) {
+            return store(in, file.getSize(), sessionId, ts, objectKey(sessionId, ts, ext));
+        }
+    }
+
+    /**
+     * Stream a request body straight into its final file, without buffering the whole image
+     *
+     * Flow:
+     * 1. Reject up front if the declared Content-Length is over media.upload.max-bytes
+     * 2. Copy through a fixed-size direct buffer into a temp file (FileChannel), hashing (SHA-256)
+     *    and counting as bytes arrive; abort with 413 as soon as the limit is crossed
+     * 3. Move the temp file to its object key
+     *
+     * Heap use per upload is constant regardless of image size; a failed or aborted upload leaves no file.
+     *
+     * @param declaredLength Content-Length of the request, or -1 if unknown (chunked)
+     */
+    public StoredObject storeStream(InputStream body, long declaredLength, String mime,
+                                    UUID sessionId, long ts) throws IOException {
+        if (declaredLength > maxUploadBytes) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Snapshot exceeds " + maxUploadBytes + " bytes");
+        }
+        return store(body, declaredLength, sessionId, ts, objectKey(sessionId, ts, extensionFor(mime)));
     }
 
-    public SnapshotIngestDto.Request prepareIngestRequest(SnapshotUploadDto.Request uploadRequest) {
-        List<SnapshotIngestDto.Item> items = new ArrayList<>();
+    private StoredObject store(InputStream body, long declaredLength, UUID sessionId, long ts,
+                               String objectKey) throws IOException {
+        if (declaredLength > maxUploadBytes) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Snapshot exceeds " + maxUploadBytes + " bytes");
+        }
+        Files.createDirectories(uploadRoot);
+        Path temp = Files.createTempFile(uploadRoot, "upload-", ".part");
+
+        MessageDigest sha256 = sha256();
+        ByteBuffer buffer = acquireStreamBuffer();
+        long size = 0;
+        boolean complete = false;
+        try (ReadableByteChannel in = Channels.newChannel(body);
+             FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                size += buffer.remaining();
+                if (size > maxUploadBytes) {
+                    throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                            "Snapshot exceeds " + maxUploadBytes + " bytes");
+                }
+                buffer.mark();
+                sha256.update(buffer);
+                buffer.reset();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+            complete = size > 0;
+        } finally {
+            releaseStreamBuffer(buffer);
+            if (!complete) {
+                Files.deleteIfExists(temp);
+            }
+        }
+        if (size == 0) {
+            throw new IllegalArgumentException("Empty snapshot body");
+        }
+        String hash = HexFormat.of().formatHex(sha256.digest());
+        return new StoredObject(place(temp, hash, size, sessionId, ts, objectKey), size, hash, contentAddressed);
+    }
 
-        for (var up : uploadRequest.items) {
-            // Decode base64 & detect mime
-            var decoded = decodeDataUrl(up.imageBase64);
-            String mime = decoded.mime != null ? decoded.mime : "image/jpeg";
-            String ext = switch (mime) {
-                case "image/png" -> ".png";
-                case "image/jpeg", "image/jpg" -> ".jpg";
-                default -> ".bin";
-            };
+    private ByteBuffer acquireStreamBuffer() {
+        ByteBuffer pooled = streamBuffers.poll();
+        if (pooled != null) return pooled;
+        if (streamBuffersAllocated.getAndUpdate(n -> n < streamBufferPoolSize ? n + 1 : n) < streamBufferPoolSize) {
+            return ByteBuffer.allocateDirect(streamBufferBytes);
+        }
+        return ByteBuffer.allocate(streamBufferBytes);
+    }
 
-            // Build object key: sessionId/YYYY/MM/DD/uuid.ext
-            var zdt = ZonedDateTime.ofInstant(java.time.Instant.ofEpochMilli(up.ts), ZoneId.of("UTC"));
-            String objectKey = up.sessionId + "/" +
-                    String.format("%04d/%02d/%02d/", zdt.getYear(), zdt.getMonthValue(), zdt.getDayOfMonth()) +
-                    UUID.randomUUID() + ext;
+    private void releaseStreamBuffer(ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            buffer.clear();
+            streamBuffers.offer(buffer);
+        }
+    }
 
-            // Ensure directory and write file
-            Path target = uploadRoot.resolve(objectKey).normalize();
+    /**
+     * Move a fully written temp file to its final key and return that key.
+     * Content-addressed: the key is derived from the hash; if that object already exists it is touched
+     * (so the orphan sweep leaves it alone) and only then the temp file dropped. If the object is not
+     * there, or the sweep removed it before the touch, the temp file is moved in instead.
+     * Segments: the bytes are appended to the session's segment and the temp file removed.
+     */
+    private String place(Path temp, String sha256, long size, UUID sessionId, long ts,
+                         String legacyKey) throws IOException {
+        if (segmentsEnabled) {
             try {
-                Files.createDirectories(target.getParent());
-                Files.write(target, decoded.bytes);
-            } catch (IOException e) {
-                // For MVP, propagate as runtime to signal failure
-                throw new RuntimeException("Failed to store snapshot: " + objectKey, e);
+                return segments.append(sessionId, ts, temp, size);
+            } finally {
+                Files.deleteIfExists(temp);
             }
+        }
+        String objectKey = contentAddressed ? "cas/" + sha256.substring(0, 2) + "/" + sha256 : legacyKey;
+        Path target = resolve(objectKey);
+        Files.createDirectories(target.getParent());
+        if (contentAddressed) {
+            try {
+                Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+                Files.deleteIfExists(temp);
+                dedupStats.recordDuplicate(size);
+                return objectKey;
+            } catch (NoSuchFileException e) {
+                // Not stored yet, or just swept: store this copy
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        if (contentAddressed) dedupStats.recordStored();
+        return objectKey;
+    }
 
-            SnapshotIngestDto.Item item = new SnapshotIngestDto.Item();
-            item.sessionId = up.sessionId;
-            item.ts = up.ts;
-            item.objectKey = objectKey;
-            item.fileSize = (long) decoded.bytes.length;
-            item.mimeType = mime;
-            item.faceCount = up.faceCount;
-            item.idempotencyKey = up.idempotencyKey;
-
-            items.add(item);
+    /**
+     * Stream a SnapshotUploadDto.Request JSON body to disk and build the matching ingest request
+     *
+     * Flow:
+     * 1. Walk the body with a Jackson streaming parser (the JSON is never held in memory)
+     * 2. For each imageBase64 (data URL or raw base64) decode incrementally with readBinaryValue
+     *    straight into a temp file; the data URL header is dropped by DataUrlPrefixStrippingInputStream
+     * 3. When the item is complete, sniff the mime from the first bytes and move the file to its object key
+     *
+     * Peak heap per request is a few small buffers plus the item metadata, independent of image sizes.
+     * On any error, every file written for this request is removed.
+     *
+     * @throws IllegalArgumentException for malformed JSON or missing fields (400)
+     * @throws ResponseStatusException 413 if a decoded image exceeds media.upload.max-bytes
+     */
+    public SnapshotIngestDto.Request prepareIngestRequest(InputStream body) throws IOException {
+        List<SnapshotIngestDto.Item> items = null;
+        List<Path> written = new ArrayList<>();
+        boolean complete = false;
+        try (JsonParser p = JSON.createParser(new DataUrlPrefixStrippingInputStream(body))) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Snapshot upload must be a JSON object");
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if ("items".equals(field) && value == JsonToken.START_ARRAY) {
+                    items = new ArrayList<>();
+                    while (p.nextToken() == JsonToken.START_OBJECT) {
+                        items.add(readUploadItem(p, written));
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+            if (items == null) {
+                throw new IllegalArgumentException("items is required");
+            }
+            complete = true;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed snapshot upload: " + e.getOriginalMessage());
+        } finally {
+            if (!complete) {
+                for (Path f : written) Files.deleteIfExists(f);
+            }
         }
 
         SnapshotIngestDto.Request req = new SnapshotIngestDto.Request();
@@ -98,24 +350,147 @@ public class MediaStorageService {
         return req;
     }
 
-    private static Decoded decodeDataUrl(String dataUrlOrBase64) {
-        String base64Part = dataUrlOrBase64;
+    /**
+     * Read one item object; fields may come in any order, so the image goes to a temp file first
+     */
+    private SnapshotIngestDto.Item readUploadItem(JsonParser p, List<Path> written) throws IOException {
+        SnapshotIngestDto.Item item = new SnapshotIngestDto.Item();
+        Path temp = null;
         String mime = null;
-        if (dataUrlOrBase64.startsWith("data:")) {
-            int comma = dataUrlOrBase64.indexOf(',');
-            if (comma > 0) {
-                String header = dataUrlOrBase64.substring(5, comma); // skip 'data:'
-                // e.g. image/jpeg;base64
-                String[] parts = header.split(";");
-                if (parts.length > 0) {
-                    mime = parts[0];
+        String hash = null;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (value == JsonToken.VALUE_NULL) continue;
+            switch (field) {
+                case "sessionId" -> item.sessionId = UUID.fromString(p.getText());
+                case "ts" -> item.ts = p.getValueAsLong();
+                case "faceCount" -> item.faceCount = p.getValueAsInt();
+                case "idempotencyKey" -> item.idempotencyKey = p.getText();
+                case "imageBase64" -> {
+                    if (value != JsonToken.VALUE_STRING) {
+                        throw new IllegalArgumentException("imageBase64 must be a string");
+                    }
+                    if (temp != null) Files.deleteIfExists(temp);
+                    Files.createDirectories(uploadRoot);
+                    temp = Files.createTempFile(uploadRoot, "upload-", ".part");
+                    written.add(temp);
+                    var out = new SniffingOutputStream(Files.newOutputStream(temp), maxUploadBytes);
+                    try (out) {
+                        p.readBinaryValue(out);
+                    }
+                    item.fileSize = out.count;
+                    mime = out.mime();
+                    hash = HexFormat.of().formatHex(out.sha256.digest());
                 }
-                base64Part = dataUrlOrBase64.substring(comma + 1);
+                default -> p.skipChildren();
+            }
+        }
+        if (item.sessionId == null || item.ts == null || item.idempotencyKey == null || item.idempotencyKey.isBlank()) {
+            throw new IllegalArgumentException("sessionId, ts and idempotencyKey are required for every item");
+        }
+        if (temp == null || item.fileSize == 0) {
+            throw new IllegalArgumentException("imageBase64 is required for every item");
+        }
+
+        String objectKey = place(temp, hash, item.fileSize, item.sessionId, item.ts,
+                objectKey(item.sessionId, item.ts, extensionFor(mime)));
+        // Shared content-addressed objects stay even if the request fails later; the orphan sweep handles them.
+        // Segment appends cannot be undone and go away with the session's segments.
+        int index = written.indexOf(temp);
+        if (isFile(objectKey) && !contentAddressed) written.set(index, resolve(objectKey)); else written.remove(index);
+
+        item.objectKey = objectKey;
+        item.mimeType = mime;
+        item.contentHash = contentAddressed ? hash : null;
+        return item;
+    }
+
+    /**
+     * Build object key: sessionId/YYYY/MM/DD/uuid.ext
+     */
+    private static String objectKey(UUID sessionId, long ts, String ext) {
+        var zdt = ZonedDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneId.of("UTC"));
+        return sessionId + "/" +
+                String.format("%04d/%02d/%02d/", zdt.getYear(), zdt.getMonthValue(), zdt.getDayOfMonth()) +
+                UUID.randomUUID() + ext;
+    }
+
+    private static String extensionFor(String mime) {
+        if (mime == null) return ".jpg";
+        return switch (mime) {
+            case "image/png" -> ".png";
+            case "image/jpeg", "image/jpg" -> ".jpg";
+            default -> ".bin";
+        };
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Passes decoded bytes through to the file, counting and hashing them (413 past the limit)
+     * and keeping the first few to recognise the image type
+     */
+    private static final class SniffingOutputStream extends FilterOutputStream {
+        private final long limit;
+        private final byte[] head = new byte[12];
+        final MessageDigest sha256 = sha256();
+        long count;
+
+        SniffingOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (count + len > limit) {
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Snapshot exceeds " + limit + " bytes");
+            }
+            if (count < head.length) {
+                System.arraycopy(b, off, head, (int) count, (int) Math.min(len, head.length - count));
+            }
+            count += len;
+            sha256.update(b, off, len);
+            out.write(b, off, len);
+        }
+
+        String mime() {
+            if (count >= 3 && (head[0] & 0xff) == 0xFF && (head[1] & 0xff) == 0xD8 && (head[2] & 0xff) == 0xFF) {
+                return "image/jpeg";
             }
+            if (count >= 8 && (head[0] & 0xff) == 0x89 && head[1] == 'P' && head[2] == 'N' && head[3] == 'G') {
+                return "image/png";
+            }
+            if (count >= 12 && head[0] == 'R' && head[1] == 'I' && head[2] == 'F' && head[3] == 'F'
+                    && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+                return "image/webp";
+            }
+            return "application/octet-stream";
         }
-        byte[] bytes = Base64.getDecoder().decode(base64Part);
-        return new Decoded(mime, bytes);
     }
 
-    private record Decoded(String mime, byte[] bytes) {}
+    /**
+     * A stored upload: where it is, how big, and its SHA-256 (hex)
+     */
+    public record StoredObject(String objectKey, long size, String sha256, boolean contentAddressed) {
+
+        /**
+         * Hash to record on the snapshot row (content-addressed mode only)
+         */
+        public String contentHash() {
+            return contentAddressed ? sha256 : null;
+        }
+    }
 }
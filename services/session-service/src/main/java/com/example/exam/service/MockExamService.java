@@ -22,10 +22,18 @@ public class MockExamService {
     
     private final SessionRepository sessionRepository;
     private final ExamRepository examRepository;
+    private final SessionStatusCache sessionCache;
+    private final AdminStatsService adminStats;
+    private final RuleWindowStore ruleWindows;
 
-    public MockExamService(SessionRepository sessionRepository, ExamRepository examRepository) {
+    public MockExamService(SessionRepository sessionRepository, ExamRepository examRepository,
+                           SessionStatusCache sessionCache, AdminStatsService adminStats,
+                           RuleWindowStore ruleWindows) {
         this.sessionRepository = sessionRepository;
         this.examRepository = examRepository;
+        this.sessionCache = sessionCache;
+        this.adminStats = adminStats;
+        this.ruleWindows = ruleWindows;
     }
 
     /**
@@ -44,6 +52,8 @@ public class MockExamService {
         session.setStatus(SessionStatus.ACTIVE);
         
         session = sessionRepository.save(session);
+        sessionCache.sessionStarted(session.getId());
+        adminStats.sessionStarted(session.getId(), session.getExamId());
         
         log.info("Started mock exam session {} for user {} and exam {}", 
                 session.getId(), request.userId(), request.examId());
@@ -157,9 +167,13 @@ public class MockExamService {
                 .orElseThrow(() -> new IllegalArgumentException("Session not found: " + request.sessionId()));
         
         // Update session to ENDED
+        SessionStatus previous = session.getStatus();
         session.setEndedAt(Instant.now());
         session.setStatus(SessionStatus.ENDED);
         sessionRepository.save(session);
+        sessionCache.sessionEnded(session.getId(), SessionStatus.ENDED);
+        adminStats.sessionEnded(session.getId(), session.getExamId(), previous);
+        ruleWindows.forget(session.getId());
         
         log.info("Submitted exam for session {}, answered {}/{} questions", 
                 request.sessionId(), request.answers().size(), 10);
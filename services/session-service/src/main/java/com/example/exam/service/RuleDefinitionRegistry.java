@@ -0,0 +1,74 @@
+package com.example.exam.service;
+
+import com.example.exam.model.RuleDefinition;
+import com.example.exam.repository.RuleDefinitionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Holds the current {@link RuleTable}, compiled from the rule_definitions table.
+ * Reloads on startup, on a timer and on demand (admin endpoint); a reload builds a new table
+ * and publishes it with one volatile write, so the ingest path never waits on it.
+ * Until the first successful load the built-in defaults apply; afterwards disabling every
+ * definition really disables rule evaluation.
+ */
+@Service
+public class RuleDefinitionRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(RuleDefinitionRegistry.class);
+
+    private final RuleDefinitionRepository repository;
+    private volatile RuleTable current = RuleTable.builtIn();
+
+    public RuleDefinitionRegistry(RuleDefinitionRepository repository) {
+        this.repository = repository;
+    }
+
+    public RuleTable current() {
+        return current;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        refresh();
+    }
+
+    /**
+     * Periodic reload so edits made directly in the database (or on another node) are picked up
+     */
+    @Scheduled(fixedDelayString = "${rules.definitions.refresh-ms:30000}", initialDelayString = "${rules.definitions.refresh-ms:30000}")
+    public void refresh() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("Rule definitions reload failed, keeping current table: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Compile all enabled definitions and swap the table
+     *
+     * @return number of compiled rules
+     * @throws IllegalArgumentException if a definition is invalid (the current table is kept)
+     */
+    public int reload() {
+        List<RuleDefinition> definitions = repository.findByEnabledTrue();
+        List<Map.Entry<UUID, CompiledRule>> compiled = new ArrayList<>(definitions.size());
+        for (RuleDefinition d : definitions) {
+            compiled.add(new AbstractMap.SimpleImmutableEntry<>(d.getExamId(), CompiledRule.from(d)));
+        }
+        current = RuleTable.compile(compiled);
+        log.debug("Rule table reloaded: {} definitions", definitions.size());
+        return definitions.size();
+    }
+}
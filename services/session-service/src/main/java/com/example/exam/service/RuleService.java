@@ -1,195 +1,252 @@
 package com.example.exam.service;
 
+import com.example.exam.model.Event;
+import com.example.exam.model.EventType;
 import com.example.exam.model.Incident;
 import com.example.exam.model.IncidentStatus;
-import com.example.exam.model.IncidentType;
+import com.example.exam.model.Session;
 import com.example.exam.repository.IncidentRepository;
+import com.example.exam.repository.SessionRepository;
+import com.example.exam.util.AfterCommit;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
-import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Service for evaluating cheating detection rules
+ * Service for evaluating cheating detection rules.
+ * Rules come from {@link RuleDefinitionRegistry} (per exam, hot-reloadable) and are dispatched by
+ * EventType ordinal; counting happens in-process over true sliding windows (see {@link RuleWindowStore}).
+ * No network call is made unless a threshold is crossed and an incident is saved.
+ * Saved incidents are published as {@link IncidentRaised} (telemetry WebSocket, live incident feed).
+ *
+ * Ingested events are evaluated on a small pool of its own once their transaction has committed and
+ * released its connection; each incident is saved in a short transaction of its own.
+ * The pool never drops work: when its queue is full the committing thread waits up to submit-timeout-ms
+ * for space (pushing back on ingest) and then evaluates the batch itself. Shutdown drains the queue.
  */
 @Service
 public class RuleService {
 
     private static final Logger log = LoggerFactory.getLogger(RuleService.class);
     
-    private final StringRedisTemplate redisTemplate;
+    private final RuleDefinitionRegistry registry;
+    private final RuleWindowStore windowStore;
+    private final SessionRepository sessionRepository;
     private final IncidentRepository incidentRepository;
+    private final AdminStatsService adminStats;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate incidentTransaction;
+    private final ThreadPoolExecutor evaluationPool;
+    private final long submitTimeoutMs;
+    // Evaluation lag: time from commit to the start of a batch's evaluation
+    private volatile long lastLagMillis;
+    private final LongAdder callerRuns = new LongAdder();
 
-    // Rule thresholds
-    private static final int TAB_SWITCH_THRESHOLD = 10;
-    private static final int TAB_SWITCH_WINDOW_MINUTES = 5;
-    private static final int PASTE_THRESHOLD = 3;
-    private static final int PASTE_WINDOW_MINUTES = 2;
-
-    public RuleService(StringRedisTemplate redisTemplate, IncidentRepository incidentRepository) {
-        this.redisTemplate = redisTemplate;
+    public RuleService(RuleDefinitionRegistry registry,
+                       RuleWindowStore windowStore,
+                       SessionRepository sessionRepository,
+                       IncidentRepository incidentRepository,
+                       AdminStatsService adminStats,
+                       ApplicationEventPublisher eventPublisher,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${rules.evaluation.threads:2}") int threads,
+                       @Value("${rules.evaluation.queue-capacity:10000}") int queueCapacity,
+                       @Value("${rules.evaluation.submit-timeout-ms:1000}") long submitTimeoutMs) {
+        this.registry = registry;
+        this.windowStore = windowStore;
+        this.sessionRepository = sessionRepository;
         this.incidentRepository = incidentRepository;
+        this.adminStats = adminStats;
+        this.eventPublisher = eventPublisher;
+        this.incidentTransaction = new TransactionTemplate(transactionManager);
+        // A batch evaluated by the committing thread runs inside its afterCommit callback, where a joined
+        // transaction would never commit
+        this.incidentTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.submitTimeoutMs = submitTimeoutMs;
+        AtomicInteger threadNo = new AtomicInteger();
+        this.evaluationPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "rule-eval-" + threadNo.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, this::rejected);
     }
 
     /**
-     * Evaluate tab switch rule: if user switches tab > 10 times in 5 minutes -> create TAB_ABUSE incident
-     * 
-     * @param sessionId Session ID
-     * @param ts Timestamp of the tab switch event
+     * Evaluate newly inserted events once the ingest transaction has committed. The sliding windows are
+     * not transactional, so events counted before a rollback would be counted again when the batch is retried.
+     * Evaluation is handed to the rule pool: the committing thread still holds its connection until the
+     * transaction is cleaned up, and the caller's result must not depend on incidents being saved.
      */
-    public void evaluateTabSwitch(UUID sessionId, Instant ts) {
-        try {
-            // Calculate time window (round to minute)
-            long minuteKey = ts.getEpochSecond() / 60;
-            
-            // Redis key: session:{sessionId}:tabswitch:{minute}
-            String redisKey = String.format("session:%s:tabswitch:%d", sessionId, minuteKey);
-            
-            // Increment counter
-            Long count = redisTemplate.opsForValue().increment(redisKey);
-            
-            // Set expiration (5 minutes + buffer)
-            if (count != null && count == 1) {
-                redisTemplate.expire(redisKey, Duration.ofMinutes(TAB_SWITCH_WINDOW_MINUTES + 1));
-            }
-            
-            log.debug("Tab switch count for session {} at minute {}: {}", sessionId, minuteKey, count);
-            
-            // Check if threshold exceeded
-            if (count != null && count > TAB_SWITCH_THRESHOLD) {
-                // Check if incident already created for this time window
-                String incidentCheckKey = String.format("session:%s:tababuse:incident:%d", sessionId, minuteKey);
-                Boolean alreadyCreated = redisTemplate.opsForValue().setIfAbsent(
-                    incidentCheckKey, 
-                    "1", 
-                    Duration.ofMinutes(TAB_SWITCH_WINDOW_MINUTES + 1)
-                );
-                
-                if (Boolean.TRUE.equals(alreadyCreated)) {
-                    createTabAbuseIncident(sessionId, ts, count.intValue());
-                    log.info("TAB_ABUSE incident created for session {} - count: {}", sessionId, count);
-                }
-            }
-        } catch (Exception e) {
-            log.error("Error evaluating tab switch rule for session {}", sessionId, e);
+    public void evaluateAfterCommit(Collection<Event> events) {
+        if (events.isEmpty()) return;
+        List<Event> created = List.copyOf(events);
+        AfterCommit.run(() -> evaluationPool.execute(new Batch(created, System.currentTimeMillis())));
+    }
+
+    /**
+     * Evaluate committed events on the calling thread, in order
+     */
+    public void evaluate(Collection<Event> events) {
+        for (Event e : events) {
+            evaluate(e.getSessionId(), e.getEventType(), Instant.ofEpochMilli(e.getTs()));
         }
     }
 
     /**
-     * Create TAB_ABUSE incident
+     * Batches waiting for the rule pool, the age of the oldest one and the lag of the last batch started
      */
-    private void createTabAbuseIncident(UUID sessionId, Instant ts, int count) {
-        Incident incident = new Incident();
-        incident.setSessionId(sessionId);
-        incident.setType(IncidentType.TAB_ABUSE);
-        incident.setTs(ts.toEpochMilli()); // Store as milliseconds
-        incident.setScore(calculateTabAbuseScore(count));
-        incident.setReason(String.format("Tab switched %d times in %d minutes (threshold: %d)", 
-                count, TAB_SWITCH_WINDOW_MINUTES, TAB_SWITCH_THRESHOLD));
-        incident.setStatus(IncidentStatus.OPEN);
-        incident.setCreatedAt(Instant.now());
-        
-        incidentRepository.save(incident);
+    public EvaluationStats evaluationStats() {
+        long oldestMillis = 0;
+        if (evaluationPool.getQueue().peek() instanceof Batch oldest) {
+            oldestMillis = Math.max(0, System.currentTimeMillis() - oldest.committedAt());
+        }
+        return new EvaluationStats(evaluationPool.getQueue().size(), oldestMillis, lastLagMillis, callerRuns.sum());
     }
 
     /**
-     * Calculate severity score for tab abuse (0.0 - 1.0)
+     * Stop taking batches and evaluate every one already queued, however long that takes
      */
-    private BigDecimal calculateTabAbuseScore(int count) {
-        // Linear scale: 11 switches = 0.5, 20 switches = 1.0
-        double score = Math.min(1.0, (count - TAB_SWITCH_THRESHOLD) / 10.0 + 0.5);
-        score = Math.round(score * 100) / 100.0; // Round to 2 decimals
-        return BigDecimal.valueOf(score);
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        evaluationPool.shutdown();
+        while (!evaluationPool.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.info("Waiting for rule evaluation to drain, {} batches queued", evaluationPool.getQueue().size());
+        }
+        // Offered to the queue by rejected() while the workers were exiting
+        List<Runnable> rest = new ArrayList<>();
+        evaluationPool.getQueue().drainTo(rest);
+        rest.forEach(Runnable::run);
     }
 
     /**
-     * Get tab switch count for a session in current time window
+     * Full queue: wait for space, then run the batch on the committing thread; never drop it
      */
-    public int getTabSwitchCount(UUID sessionId) {
-        try {
-            long currentMinute = Instant.now().getEpochSecond() / 60;
-            String redisKey = String.format("session:%s:tabswitch:%d", sessionId, currentMinute);
-            String value = redisTemplate.opsForValue().get(redisKey);
-            return value != null ? Integer.parseInt(value) : 0;
-        } catch (Exception e) {
-            log.error("Error getting tab switch count for session {}", sessionId, e);
-            return 0;
+    private void rejected(Runnable batch, ThreadPoolExecutor pool) {
+        if (!pool.isShutdown()) {
+            try {
+                if (pool.getQueue().offer(batch, submitTimeoutMs, TimeUnit.MILLISECONDS)) return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            log.warn("Rule evaluation queue full for {} ms, evaluating on the committing thread", submitTimeoutMs);
         }
+        callerRuns.increment();
+        batch.run();
     }
 
     /**
-     * Evaluate paste rule: if user pastes > 3 times in 2 minutes -> create PASTE incident
-     * 
+     * Evaluate the rule configured for this event type, if any.
+     * E.g. default TAB_SWITCH rule: > 10 switches in 5 minutes -> TAB_ABUSE incident,
+     * at most one incident per session per window.
+     *
      * @param sessionId Session ID
-     * @param ts Timestamp of the paste event
+     * @param type Event type
+     * @param ts Timestamp of the event
      */
-    public void evaluatePaste(UUID sessionId, Instant ts) {
+    public void evaluate(UUID sessionId, EventType type, Instant ts) {
         try {
-            // Calculate time window (round to minute)
-            long minuteKey = ts.getEpochSecond() / 60;
-            
-            // Redis key: session:{sessionId}:paste:{minute}
-            String redisKey = String.format("session:%s:paste:%d", sessionId, minuteKey);
-            
-            // Increment counter
-            Long count = redisTemplate.opsForValue().increment(redisKey);
-            
-            // Set expiration (2 minutes + buffer)
-            if (count != null && count == 1) {
-                redisTemplate.expire(redisKey, Duration.ofMinutes(PASTE_WINDOW_MINUTES + 1));
-            }
-            
-            log.debug("Paste count for session {} at minute {}: {}", sessionId, minuteKey, count);
-            
-            // Check if threshold exceeded
-            if (count != null && count > PASTE_THRESHOLD) {
-                // Check if incident already created for this time window
-                String incidentCheckKey = String.format("session:%s:paste:incident:%d", sessionId, minuteKey);
-                Boolean alreadyCreated = redisTemplate.opsForValue().setIfAbsent(
-                    incidentCheckKey, 
-                    "1", 
-                    Duration.ofMinutes(PASTE_WINDOW_MINUTES + 1)
-                );
-                
-                if (Boolean.TRUE.equals(alreadyCreated)) {
-                    createPasteIncident(sessionId, ts, count.intValue());
-                    log.info("PASTE incident created for session {} - count: {}", sessionId, count);
+            RuleTable table = registry.current();
+            // Resolve the exam only when some exam overrides exist (once per session, cached with its windows)
+            UUID examId = table.hasExamOverrides() ? windowStore.examId(sessionId, this::loadExamId) : null;
+            CompiledRule rule = table.ruleFor(examId, type);
+            if (rule == null) return;
+
+            long tsMillis = ts.toEpochMilli();
+            int count = windowStore.record(sessionId, type, tsMillis, rule.windowMillis());
+
+            log.debug("{} count for session {} in last {} ms: {}", type, sessionId, rule.windowMillis(), count);
+
+            // Check if threshold exceeded, and no incident already created for this window
+            if (count > rule.threshold()
+                    && windowStore.claimIncident(sessionId, type, tsMillis, rule.windowMillis())) {
+                try {
+                    incidentTransaction.executeWithoutResult(status -> createIncident(sessionId, ts, rule, count));
+                } catch (RuntimeException e) {
+                    // Not saved: let the next event over the threshold raise it
+                    windowStore.releaseIncident(sessionId, type, tsMillis);
+                    throw e;
                 }
+                log.info("{} incident created for session {} - count: {}", rule.incidentType(), sessionId, count);
             }
         } catch (Exception e) {
-            log.error("Error evaluating paste rule for session {}", sessionId, e);
+            log.error("Error evaluating {} rule for session {}", type, sessionId, e);
         }
     }
 
     /**
-     * Create PASTE incident
+     * Get tab switch count for a session in the sliding window ending now
      */
-    private void createPasteIncident(UUID sessionId, Instant ts, int count) {
+    public int getTabSwitchCount(UUID sessionId) {
+        CompiledRule rule = registry.current().ruleFor(null, EventType.TAB_SWITCH);
+        if (rule == null) return 0;
+        return windowStore.count(sessionId, EventType.TAB_SWITCH, System.currentTimeMillis(), rule.windowMillis());
+    }
+
+    private final class Batch implements Runnable {
+        private final List<Event> events;
+        private final long committedAt;
+
+        Batch(List<Event> events, long committedAt) {
+            this.events = events;
+            this.committedAt = committedAt;
+        }
+
+        long committedAt() {
+            return committedAt;
+        }
+
+        @Override
+        public void run() {
+            lastLagMillis = System.currentTimeMillis() - committedAt;
+            evaluate(events);
+        }
+    }
+
+    /**
+     * @param queuedBatches batches waiting for a rule thread
+     * @param oldestQueuedMillis how long the oldest of them has been waiting since its commit
+     * @param lastLagMillis commit-to-evaluation delay of the batch started last
+     * @param callerRuns batches evaluated by the committing thread because the queue stayed full
+     */
+    public record EvaluationStats(int queuedBatches, long oldestQueuedMillis, long lastLagMillis, long callerRuns) {}
+
+    private UUID loadExamId(UUID sessionId) {
+        return sessionRepository.findById(sessionId).map(Session::getExamId).orElse(null);
+    }
+
+    /**
+     * Create incident for a rule whose threshold was exceeded
+     */
+    private void createIncident(UUID sessionId, Instant ts, CompiledRule rule, int count) {
         Incident incident = new Incident();
         incident.setSessionId(sessionId);
-        incident.setType(IncidentType.PASTE);
-        incident.setTs(ts.toEpochMilli());
-        incident.setScore(calculatePasteScore(count));
-        incident.setReason(String.format("Pasted %d times in %d minutes (threshold: %d)", 
-                count, PASTE_WINDOW_MINUTES, PASTE_THRESHOLD));
+        incident.setType(rule.incidentType());
+        incident.setTs(ts.toEpochMilli()); // Store as milliseconds
+        incident.setScore(rule.score(count));
+        incident.setReason(rule.reason(count));
         incident.setStatus(IncidentStatus.OPEN);
         incident.setCreatedAt(Instant.now());
         
         incidentRepository.save(incident);
-    }
-
-    /**
-     * Calculate severity score for paste abuse (0.0 - 1.0)
-     */
-    private BigDecimal calculatePasteScore(int count) {
-        // Linear scale: 4 pastes = 0.6, 6+ pastes = 1.0
-        double score = Math.min(1.0, (count - PASTE_THRESHOLD) / 3.0 + 0.6);
-        score = Math.round(score * 100) / 100.0; // Round to 2 decimals
-        return BigDecimal.valueOf(score);
+        adminStats.incidentsCreated(List.of(incident));
+        eventPublisher.publishEvent(new IncidentRaised(incident));
     }
 }
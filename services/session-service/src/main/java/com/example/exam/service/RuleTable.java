@@ -0,0 +1,67 @@
+package com.example.exam.service;
+
+import com.example.exam.model.EventType;
+import com.example.exam.model.IncidentType;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Immutable evaluator table: one {@link CompiledRule} slot per {@link EventType} ordinal,
+ * plus per-exam override arrays. Built once per reload and swapped atomically, so readers never lock.
+ */
+public final class RuleTable {
+
+    private static final int TYPES = EventType.values().length;
+
+    private final CompiledRule[] defaults;
+    private final Map<UUID, CompiledRule[]> byExam;
+
+    private RuleTable(CompiledRule[] defaults, Map<UUID, CompiledRule[]> byExam) {
+        this.defaults = defaults;
+        this.byExam = byExam;
+    }
+
+    /**
+     * Rules equal to the constants RuleService used before definitions moved to the database
+     */
+    public static RuleTable builtIn() {
+        CompiledRule[] defaults = new CompiledRule[TYPES];
+        defaults[EventType.TAB_SWITCH.ordinal()] = new CompiledRule(EventType.TAB_SWITCH, IncidentType.TAB_ABUSE,
+                300, 10, new BigDecimal("0.50"), 10, "Tab switched %d times in %d minutes (threshold: %d)");
+        defaults[EventType.PASTE.ordinal()] = new CompiledRule(EventType.PASTE, IncidentType.PASTE,
+                120, 3, new BigDecimal("0.60"), 3, "Pasted %d times in %d minutes (threshold: %d)");
+        return new RuleTable(defaults, Map.of());
+    }
+
+    /**
+     * Compile rules; examId null = default. Exam arrays inherit the defaults for types they do not override.
+     */
+    public static RuleTable compile(Collection<Map.Entry<UUID, CompiledRule>> rules) {
+        CompiledRule[] defaults = new CompiledRule[TYPES];
+        for (var r : rules) {
+            if (r.getKey() == null) defaults[r.getValue().eventType().ordinal()] = r.getValue();
+        }
+        Map<UUID, CompiledRule[]> byExam = new HashMap<>();
+        for (var r : rules) {
+            if (r.getKey() == null) continue;
+            byExam.computeIfAbsent(r.getKey(), id -> defaults.clone())[r.getValue().eventType().ordinal()] = r.getValue();
+        }
+        return new RuleTable(defaults, Map.copyOf(byExam));
+    }
+
+    public boolean hasExamOverrides() {
+        return !byExam.isEmpty();
+    }
+
+    /**
+     * Rule for an event type, exam override first; null when no rule applies
+     */
+    public CompiledRule ruleFor(UUID examId, EventType type) {
+        CompiledRule[] rules = examId != null ? byExam.getOrDefault(examId, defaults) : defaults;
+        return rules[type.ordinal()];
+    }
+}
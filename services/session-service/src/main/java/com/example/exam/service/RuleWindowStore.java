@@ -0,0 +1,285 @@
+package com.example.exam.service;
+
+import com.example.exam.model.EventType;
+import com.example.exam.util.AfterCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * In-process sliding-window state for rule evaluation, one entry per session.
+ * Rule evaluation touches only local memory; all updates for a session go through that session's lock,
+ * so sessions never contend with each other.
+ *
+ * Redis is an optional asynchronous checkpoint (rules.redis-checkpoint.enabled): dirty sessions are written
+ * out on a timer, and a session seen for the first time on this node is warmed up from its checkpoint once.
+ */
+@Service
+public class RuleWindowStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RuleWindowStore.class);
+    private static final EventType[] TYPES = EventType.values();
+    private static final String INCIDENT_SUFFIX = ":incident";
+    /** Cached in place of a null exam id so sessions without an exam are not looked up again */
+    private static final UUID NO_EXAM = new UUID(0L, 0L);
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean checkpointEnabled;
+    private final long idleEvictMillis;
+    private final ConcurrentHashMap<UUID, SessionWindows> sessions = new ConcurrentHashMap<>();
+
+    public RuleWindowStore(StringRedisTemplate redisTemplate,
+                           @Value("${rules.redis-checkpoint.enabled:false}") boolean checkpointEnabled,
+                           @Value("${rules.window.idle-evict-minutes:15}") long idleEvictMinutes) {
+        this.redisTemplate = redisTemplate;
+        this.checkpointEnabled = checkpointEnabled;
+        this.idleEvictMillis = Duration.ofMinutes(idleEvictMinutes).toMillis();
+    }
+
+    /**
+     * Record an event and return how many events of that type the session had in (ts - window, ts]
+     */
+    public int record(UUID sessionId, EventType type, long tsMillis, long windowMillis) {
+        while (true) {
+            SessionWindows s = windows(sessionId);
+            synchronized (s) {
+                if (s.evicted) continue; // lost a race with maintain(); use the session's new entry
+                s.touch();
+                return s.counter(type).add(tsMillis, windowMillis);
+            }
+        }
+    }
+
+    /**
+     * Current count for a type in the window ending at tsMillis, without recording anything
+     */
+    public int count(UUID sessionId, EventType type, long tsMillis, long windowMillis) {
+        SessionWindows s = sessions.get(sessionId);
+        if (s == null) return 0;
+        synchronized (s) {
+            SlidingWindowCounter c = s.counters[type.ordinal()];
+            return c == null ? 0 : c.count(tsMillis, windowMillis);
+        }
+    }
+
+    /**
+     * Claim the right to raise an incident for this type: at most one per window per session.
+     *
+     * @return true if no incident of this type was raised in the preceding window
+     */
+    public boolean claimIncident(UUID sessionId, EventType type, long tsMillis, long windowMillis) {
+        while (true) {
+            SessionWindows s = windows(sessionId);
+            synchronized (s) {
+                if (s.evicted) continue;
+                long last = s.lastIncidentTs[type.ordinal()];
+                if (last != Long.MIN_VALUE && tsMillis < last + windowMillis && tsMillis >= last) {
+                    return false;
+                }
+                s.lastIncidentTs[type.ordinal()] = tsMillis;
+                s.dirty = true;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Undo a claim whose incident could not be saved (no-op if a later claim replaced it)
+     */
+    public void releaseIncident(UUID sessionId, EventType type, long tsMillis) {
+        SessionWindows s = sessions.get(sessionId);
+        if (s == null) return;
+        synchronized (s) {
+            if (s.lastIncidentTs[type.ordinal()] == tsMillis) {
+                s.lastIncidentTs[type.ordinal()] = Long.MIN_VALUE;
+                s.dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Exam of a session, loaded once through the loader and kept with the session's windows.
+     * A session without an exam is remembered as well, and yields null.
+     */
+    public UUID examId(UUID sessionId, Function<UUID, UUID> loader) {
+        SessionWindows s = windows(sessionId);
+        UUID examId = s.examId;
+        if (examId == null) {
+            examId = loader.apply(sessionId);
+            if (examId == null) examId = NO_EXAM;
+            s.examId = examId;
+        }
+        return examId == NO_EXAM ? null : examId;
+    }
+
+    /**
+     * Drop a session's state and checkpoint once the transaction that ended it commits
+     */
+    public void forget(UUID sessionId) {
+        AfterCommit.run(() -> {
+            sessions.remove(sessionId);
+            if (!checkpointEnabled) return;
+            try {
+                redisTemplate.delete(checkpointKey(sessionId));
+            } catch (Exception e) {
+                // Expires on its own after the idle timeout
+                log.warn("Rule window checkpoint delete failed for session {}: {}", sessionId, e.getMessage());
+            }
+        });
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    private SessionWindows windows(UUID sessionId) {
+        SessionWindows s = sessions.get(sessionId);
+        if (s != null) return s;
+        return sessions.computeIfAbsent(sessionId, id -> {
+            SessionWindows fresh = new SessionWindows();
+            if (checkpointEnabled) restore(id, fresh);
+            return fresh;
+        });
+    }
+
+    /**
+     * Evict idle sessions and, if enabled, checkpoint dirty ones to Redis. Runs off the ingest path.
+     */
+    @Scheduled(fixedDelayString = "${rules.redis-checkpoint.interval-ms:5000}")
+    public void maintain() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        int written = 0;
+        for (var entry : sessions.entrySet()) {
+            UUID sessionId = entry.getKey();
+            SessionWindows s = entry.getValue();
+            Map<String, String> fields = null;
+            synchronized (s) {
+                if (checkpointEnabled && s.dirty) {
+                    fields = s.toFields();
+                    s.dirty = false;
+                }
+            }
+            if (fields != null) {
+                try {
+                    String key = checkpointKey(sessionId);
+                    redisTemplate.opsForHash().putAll(key, fields);
+                    redisTemplate.expire(key, Duration.ofMillis(idleEvictMillis));
+                    written++;
+                } catch (Exception e) {
+                    // Written again on the next run
+                    synchronized (s) {
+                        s.dirty = true;
+                    }
+                    log.warn("Rule window checkpoint failed for session {}: {}", sessionId, e.getMessage());
+                }
+            }
+            sessions.computeIfPresent(sessionId, (id, v) -> v == s && evictIfIdle(v, now) ? null : v);
+            if (s.evicted) evicted++;
+        }
+        if (evicted > 0 || written > 0) {
+            log.debug("Rule windows: {} checkpointed, {} evicted, {} live", written, evicted, sessions.size());
+        }
+    }
+
+    /**
+     * Decide eviction under the session's monitor, so an event recorded since the checkpoint keeps it
+     */
+    private boolean evictIfIdle(SessionWindows s, long now) {
+        synchronized (s) {
+            // Changes that never reached the checkpoint stay in memory until they do
+            if (now - s.lastAccessMillis <= idleEvictMillis || (checkpointEnabled && s.dirty)) return false;
+            s.evicted = true;
+            return true;
+        }
+    }
+
+    private void restore(UUID sessionId, SessionWindows target) {
+        try {
+            Map<Object, Object> fields = redisTemplate.opsForHash().entries(checkpointKey(sessionId));
+            if (!fields.isEmpty()) target.fromFields(fields);
+        } catch (Exception e) {
+            log.warn("Rule window restore failed for session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private static String checkpointKey(UUID sessionId) {
+        return "session:" + sessionId + ":rulewindows";
+    }
+
+    /**
+     * Per-session state: one counter and one last-incident timestamp per event type, indexed by ordinal
+     */
+    private static final class SessionWindows {
+        final SlidingWindowCounter[] counters = new SlidingWindowCounter[TYPES.length];
+        final long[] lastIncidentTs = new long[TYPES.length];
+        long lastAccessMillis = System.currentTimeMillis();
+        boolean dirty;
+        boolean evicted;
+        volatile UUID examId;
+
+        SessionWindows() {
+            Arrays.fill(lastIncidentTs, Long.MIN_VALUE);
+        }
+
+        SlidingWindowCounter counter(EventType type) {
+            SlidingWindowCounter c = counters[type.ordinal()];
+            if (c == null) {
+                c = new SlidingWindowCounter();
+                counters[type.ordinal()] = c;
+            }
+            return c;
+        }
+
+        void touch() {
+            lastAccessMillis = System.currentTimeMillis();
+            dirty = true;
+        }
+
+        Map<String, String> toFields() {
+            Map<String, String> fields = new HashMap<>();
+            for (EventType type : TYPES) {
+                SlidingWindowCounter c = counters[type.ordinal()];
+                if (c != null && !c.isEmpty()) {
+                    StringBuilder sb = new StringBuilder();
+                    for (long ts : c.snapshot()) {
+                        if (sb.length() > 0) sb.append(',');
+                        sb.append(ts);
+                    }
+                    fields.put(type.name(), sb.toString());
+                }
+                if (lastIncidentTs[type.ordinal()] != Long.MIN_VALUE) {
+                    fields.put(type.name() + INCIDENT_SUFFIX, Long.toString(lastIncidentTs[type.ordinal()]));
+                }
+            }
+            return fields;
+        }
+
+        void fromFields(Map<Object, Object> fields) {
+            for (EventType type : TYPES) {
+                Object list = fields.get(type.name());
+                if (list != null && !list.toString().isEmpty()) {
+                    String[] parts = list.toString().split(",");
+                    long[] ts = new long[parts.length];
+                    for (int i = 0; i < parts.length; i++) ts[i] = Long.parseLong(parts[i]);
+                    counter(type).restore(ts);
+                }
+                Object incident = fields.get(type.name() + INCIDENT_SUFFIX);
+                if (incident != null) {
+                    lastIncidentTs[type.ordinal()] = Long.parseLong(incident.toString());
+                }
+            }
+        }
+    }
+}
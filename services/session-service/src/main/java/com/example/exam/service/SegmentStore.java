@@ -0,0 +1,327 @@
+package com.example.exam.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Append-only segment files for snapshot images, one directory per session:
+ * segments/&lt;sessionId&gt;/000001.seg holds the image bytes back to back, 000001.idx one fixed-size
+ * record per image (offset, length, ts). A segment is closed and the next one started at max-bytes.
+ *
+ * Object keys are seg/&lt;sessionId&gt;/&lt;segment&gt;/&lt;offset&gt;/&lt;length&gt;, so a read needs no index lookup.
+ * The index is what makes an append durable: the image bytes are forced to disk before its index
+ * record is written, and the record is forced before append returns (the caller then commits the
+ * media_snapshots row). When a session's appender is reopened, the segment is truncated to the end of
+ * the last indexed image, dropping bytes of an append that never completed. With fsync off (tests,
+ * throwaway environments) a power loss can keep an index record whose bytes never reached the disk.
+ *
+ * All appends of a session go through that session's appender lock; reads are lock-free positional I/O.
+ */
+final class SegmentStore {
+
+    static final String KEY_PREFIX = "seg/";
+    private static final int INDEX_RECORD = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final Path root;
+    private final long maxSegmentBytes;
+    private final boolean fsync;
+    private final ConcurrentHashMap<UUID, Appender> appenders = new ConcurrentHashMap<>();
+
+    SegmentStore(Path root, long maxSegmentBytes) {
+        this(root, maxSegmentBytes, true);
+    }
+
+    SegmentStore(Path root, long maxSegmentBytes, boolean fsync) {
+        this.root = root;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.fsync = fsync;
+    }
+
+    static boolean isSegmentKey(String objectKey) {
+        return objectKey != null && objectKey.startsWith(KEY_PREFIX);
+    }
+
+    /**
+     * Append a complete file to the session's current segment and return its object key
+     */
+    String append(UUID sessionId, long ts, Path source, long size) throws IOException {
+        while (true) {
+            Appender appender = appenders.computeIfAbsent(sessionId, id -> new Appender(root.resolve(id.toString()), fsync));
+            synchronized (appender) {
+                // Closed by an idle sweep or a delete between lookup and lock: take a fresh one
+                if (appender.closed) continue;
+                appender.ensureOpen(maxSegmentBytes, size);
+                long offset = appender.end;
+                try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+                    long copied = 0;
+                    while (copied < size) {
+                        long n = appender.data.transferFrom(in, offset + copied, size - copied);
+                        if (n <= 0) throw new IOException("Short read from " + source);
+                        copied += n;
+                    }
+                }
+                // Bytes first, then the record that points at them
+                if (fsync) appender.data.force(false);
+                ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD)
+                        .putLong(offset).putInt((int) size).putLong(ts).flip();
+                long indexPos = appender.records * INDEX_RECORD;
+                while (record.hasRemaining()) {
+                    indexPos += appender.index.write(record, indexPos);
+                }
+                if (fsync) appender.index.force(false);
+                appender.records++;
+                appender.end = offset + size;
+                appender.lastUsedMillis = System.currentTimeMillis();
+                return KEY_PREFIX + sessionId + "/" + appender.segment + "/" + offset + "/" + size;
+            }
+        }
+    }
+
+    /**
+     * Stream over one stored image; the bytes are memory-mapped, not copied
+     *
+     * @throws IllegalArgumentException for a malformed key or a range outside its segment
+     */
+    InputStream open(String objectKey) throws IOException {
+        Location loc = parse(objectKey);
+        try (FileChannel ch = FileChannel.open(loc.segmentFile, StandardOpenOption.READ)) {
+            if (loc.offset + loc.length > ch.size()) {
+                throw new IllegalArgumentException("Object key outside its segment: " + objectKey);
+            }
+            // The mapping stays valid after the channel is closed
+            return new MappedInputStream(ch.map(FileChannel.MapMode.READ_ONLY, loc.offset, loc.length));
+        }
+    }
+
+    long length(String objectKey) {
+        return parse(objectKey).length;
+    }
+
+    /**
+     * Remove all segments of a session
+     *
+     * @return number of files deleted
+     */
+    int deleteSession(UUID sessionId) throws IOException {
+        Appender appender = appenders.remove(sessionId);
+        if (appender != null) {
+            synchronized (appender) {
+                appender.close();
+            }
+        }
+        Path dir = root.resolve(sessionId.toString());
+        if (!Files.isDirectory(dir)) return 0;
+        int deleted = 0;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                if (Files.isRegularFile(p)) deleted++;
+                Files.deleteIfExists(p);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Close appenders not used for idleMillis; their file handles are released until the next append
+     *
+     * @return number closed
+     */
+    int closeIdle(long idleMillis) {
+        long now = System.currentTimeMillis();
+        int closed = 0;
+        for (var entry : appenders.entrySet()) {
+            Appender appender = entry.getValue();
+            synchronized (appender) {
+                if (now - appender.lastUsedMillis < idleMillis) continue;
+                appenders.remove(entry.getKey(), appender);
+                appender.close();
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    int openAppenders() {
+        return appenders.size();
+    }
+
+    void closeAll() {
+        closeIdle(-1);
+    }
+
+    private Location parse(String objectKey) {
+        String[] parts = objectKey.split("/");
+        if (parts.length != 5 || !objectKey.startsWith(KEY_PREFIX)) {
+            throw new IllegalArgumentException("Invalid segment key: " + objectKey);
+        }
+        try {
+            UUID sessionId = UUID.fromString(parts[1]);
+            int segment = Integer.parseInt(parts[2]);
+            long offset = Long.parseLong(parts[3]);
+            long length = Long.parseLong(parts[4]);
+            if (segment < 1 || offset < 0 || length <= 0) {
+                throw new IllegalArgumentException("Invalid segment key: " + objectKey);
+            }
+            return new Location(root.resolve(sessionId.toString()).resolve(segmentName(segment, ".seg")), offset, length);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid segment key: " + objectKey);
+        }
+    }
+
+    private static String segmentName(int segment, String suffix) {
+        return String.format("%06d%s", segment, suffix);
+    }
+
+    private record Location(Path segmentFile, long offset, long length) {}
+
+    /**
+     * The open segment of one session. Guarded by its own monitor.
+     */
+    private static final class Appender {
+        final Path dir;
+        final boolean fsync;
+        int segment;
+        FileChannel data;
+        FileChannel index;
+        long end;
+        long records;
+        long lastUsedMillis = System.currentTimeMillis();
+        boolean closed;
+
+        Appender(Path dir, boolean fsync) {
+            this.dir = dir;
+            this.fsync = fsync;
+        }
+
+        /**
+         * Open (or recover) the latest segment, and roll to a new one if this append would not fit
+         */
+        void ensureOpen(long maxSegmentBytes, long size) throws IOException {
+            if (data == null) {
+                boolean created = !Files.isDirectory(dir);
+                Files.createDirectories(dir);
+                if (created && fsync) forceDirectory(dir.getParent());
+                segment = Math.max(1, latestSegment());
+                openSegment();
+            }
+            if (end > 0 && end + size > maxSegmentBytes) {
+                closeChannels();
+                segment++;
+                openSegment();
+            }
+        }
+
+        private void openSegment() throws IOException {
+            data = FileChannel.open(dir.resolve(segmentName(segment, ".seg")),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index = FileChannel.open(dir.resolve(segmentName(segment, ".idx")),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Recover: keep whole index records only, and data only up to the last indexed image
+            records = index.size() / INDEX_RECORD;
+            index.truncate(records * INDEX_RECORD);
+            end = 0;
+            if (records > 0) {
+                ByteBuffer last = ByteBuffer.allocate(INDEX_RECORD);
+                long pos = (records - 1) * INDEX_RECORD;
+                while (last.hasRemaining()) {
+                    int n = index.read(last, pos + last.position());
+                    if (n < 0) throw new IOException("Truncated segment index in " + dir);
+                }
+                last.flip();
+                end = last.getLong() + last.getInt();
+            }
+            data.truncate(end);
+            // New files must survive a crash as well as their contents
+            if (fsync && records == 0) forceDirectory(dir);
+        }
+
+        private static void forceDirectory(Path directory) {
+            try (FileChannel ch = FileChannel.open(directory, StandardOpenOption.READ)) {
+                ch.force(true);
+            } catch (IOException ignored) {
+                // Not supported on every platform (e.g. Windows); the file contents are still forced
+            }
+        }
+
+        private int latestSegment() throws IOException {
+            int latest = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.seg")) {
+                for (Path f : files) {
+                    String name = f.getFileName().toString();
+                    try {
+                        latest = Math.max(latest, Integer.parseInt(name.substring(0, name.length() - 4)));
+                    } catch (NumberFormatException ignored) {
+                        // Not one of ours
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                return 0;
+            }
+            return latest;
+        }
+
+        private void closeChannels() {
+            try {
+                if (data != null) data.close();
+                if (index != null) index.close();
+            } catch (IOException ignored) {
+                // Appends are already on disk; nothing to flush
+            }
+            data = null;
+            index = null;
+        }
+
+        void close() {
+            closeChannels();
+            closed = true;
+        }
+    }
+
+    /**
+     * InputStream over a mapped segment range
+     */
+    private static final class MappedInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        MappedInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+            buf.position(buf.position() + k);
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.exam.service;
+
+import com.example.exam.repository.SessionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exam of a session, for whatever groups incidents by exam (admin stats, the live incident feed)
+ *
+ * A session's exam never changes, so entries never go stale. Misses are loaded with one query per call;
+ * call from inside the caller's transaction, not after its commit. Bounded: cleared at max-entries.
+ */
+@Service
+public class SessionExamCache {
+
+    private final SessionRepository sessionRepository;
+    private final int maxEntries;
+    private final ConcurrentHashMap<UUID, UUID> examBySession = new ConcurrentHashMap<>();
+
+    public SessionExamCache(SessionRepository sessionRepository,
+                            @Value("${session.exam-cache.max-entries:100000}") int maxEntries) {
+        this.sessionRepository = sessionRepository;
+        this.maxEntries = maxEntries;
+    }
+
+    public void put(UUID sessionId, UUID examId) {
+        if (examBySession.size() >= maxEntries && !examBySession.containsKey(sessionId)) {
+            examBySession.clear();
+        }
+        examBySession.put(sessionId, examId);
+    }
+
+    /**
+     * @return exam id, or null if the session does not exist
+     */
+    public UUID examOf(UUID sessionId) {
+        return examsOf(List.of(sessionId)).get(sessionId);
+    }
+
+    /**
+     * @return exam by session id, for the sessions that exist
+     */
+    public Map<UUID, UUID> examsOf(Collection<UUID> sessionIds) {
+        Map<UUID, UUID> exams = new HashMap<>();
+        Set<UUID> missing = new HashSet<>();
+        for (UUID sessionId : sessionIds) {
+            UUID examId = examBySession.get(sessionId);
+            if (examId != null) exams.put(sessionId, examId);
+            else missing.add(sessionId);
+        }
+        if (!missing.isEmpty()) {
+            for (SessionRepository.ExamView view : sessionRepository.findExamIds(missing)) {
+                exams.put(view.getId(), view.getExamId());
+                put(view.getId(), view.getExamId());
+            }
+        }
+        return exams;
+    }
+}
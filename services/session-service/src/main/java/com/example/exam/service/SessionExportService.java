@@ -0,0 +1,341 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.EventDto;
+import com.example.exam.dto.IncidentDto;
+import com.example.exam.dto.ReviewDto;
+import com.example.exam.dto.SessionExportDto;
+import com.example.exam.dto.SessionResponse;
+import com.example.exam.model.EventType;
+import com.example.exam.model.IncidentStatus;
+import com.example.exam.model.IncidentType;
+import com.example.exam.model.ReviewStatus;
+import com.example.exam.model.Session;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Evidence bundle of one session (events, snapshots, incidents, reviews), written straight to a stream
+ *
+ * Formats:
+ * - NDJSON: one {"kind": ..., "data": ...} line per row, session first; rows are read with a
+ *   fetch-size cursor and serialized one at a time
+ * - ZIP: session.json plus one CSV per table produced by COPY ... TO STDOUT (events.csv has the
+ *   columns of POST /api/admin/events/import), and optionally the snapshot images under snapshots/
+ *
+ * Memory does not depend on the size of the session, apart from one small entry per snapshot when
+ * images are included. All rows are read in one read-only REPEATABLE READ transaction, so the bundle is
+ * consistent even while the session is still running; images are copied after it has ended, so a slow
+ * download does not keep a pooled connection (or the vacuum horizon) for the transfer of the media.
+ * At most max-concurrent exports run at once, further requests get 503 ({@link #acquire}).
+ */
+@Service
+public class SessionExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionExportService.class);
+
+    public enum Format { NDJSON, ZIP }
+
+    private static final String EVENTS =
+            "SELECT id, session_id, ts, event_type, details::text AS details, created_at FROM events " +
+            "WHERE session_id = ? ORDER BY ts, id";
+
+    private static final String SNAPSHOTS =
+            "SELECT id, ts, object_key, mime_type, file_size, face_count, content_hash, uploaded_at " +
+            "FROM media_snapshots WHERE session_id = ? ORDER BY ts, id";
+
+    private static final String INCIDENTS =
+            "SELECT id, session_id, ts, type, score, reason, evidence_url, status, created_at FROM incidents " +
+            "WHERE session_id = ? ORDER BY ts, id";
+
+    private static final String REVIEWS =
+            "SELECT r.id, r.incident_id, r.reviewer_id, r.status, r.note, r.reviewed_at FROM reviews r " +
+            "JOIN incidents i ON i.id = r.incident_id WHERE i.session_id = ? ORDER BY i.ts, i.id";
+
+    // COPY cannot take bind parameters; %s is always a parsed UUID
+    private static final String COPY_EVENTS =
+            "COPY (SELECT session_id, ts, event_type, details, idempotency_key FROM events " +
+            "WHERE session_id = '%s' ORDER BY ts, id) TO STDOUT WITH (FORMAT csv, HEADER)";
+
+    private static final String COPY_SNAPSHOTS =
+            "COPY (SELECT id, ts, mime_type, file_size, face_count, content_hash, uploaded_at FROM media_snapshots " +
+            "WHERE session_id = '%s' ORDER BY ts, id) TO STDOUT WITH (FORMAT csv, HEADER)";
+
+    private static final String COPY_INCIDENTS =
+            "COPY (SELECT id, ts, type, score, reason, evidence_url, status, created_at FROM incidents " +
+            "WHERE session_id = '%s' ORDER BY ts, id) TO STDOUT WITH (FORMAT csv, HEADER)";
+
+    private static final String COPY_REVIEWS =
+            "COPY (SELECT r.id, r.incident_id, r.reviewer_id, r.status, r.note, r.reviewed_at FROM reviews r " +
+            "JOIN incidents i ON i.id = r.incident_id WHERE i.session_id = '%s' ORDER BY i.ts, i.id) " +
+            "TO STDOUT WITH (FORMAT csv, HEADER)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MediaStorageService storage;
+    private final ObjectWriter writer;
+    private final TransactionTemplate transactionTemplate;
+    private final int fetchSize;
+    private final Semaphore slots;
+
+    public SessionExportService(JdbcTemplate jdbcTemplate,
+                                MediaStorageService storage,
+                                ObjectMapper mapper,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${session.export.fetch-size:1000}") int fetchSize,
+                                @Value("${session.export.max-concurrent:2}") int maxConcurrent) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.storage = storage;
+        // Flushing after every row would send one chunk per line
+        this.writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.fetchSize = fetchSize;
+        this.slots = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Reserve one of the export slots; close the result when the export is done
+     *
+     * @throws ResponseStatusException 503 when max-concurrent exports are already running
+     */
+    public Slot acquire() {
+        if (!slots.tryAcquire()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many exports running, retry later");
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) slots.release();
+        };
+    }
+
+    /**
+     * Write the bundle of a session to out (not closed)
+     *
+     * @param media ZIP only: include the snapshot images
+     */
+    public void export(Session session, Format format, boolean media, OutputStream out) throws IOException {
+        UUID sessionId = session.getId();
+        long start = System.nanoTime();
+        SessionResponse header = SessionResponse.from(session);
+        if (format == Format.ZIP) {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            // Images are already compressed; favour throughput for the rest
+            zip.setLevel(Deflater.BEST_SPEED);
+            List<Image> images = new ArrayList<>();
+            inTransaction(() -> writeZipData(header, media ? images : null, zip));
+            writeImages(sessionId, images, zip);
+            zip.finish();
+        } else {
+            inTransaction(() -> writeNdjson(header, out));
+        }
+        log.info("Exported session {} as {} in {} ms", sessionId, format, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Export slot held for the duration of one download
+     */
+    public interface Slot extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private void inTransaction(IoAction action) throws IOException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    action.run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Usually the client went away; nothing more can be sent on this response
+            throw e.getCause();
+        }
+    }
+
+    private void writeNdjson(SessionResponse session, OutputStream out) throws IOException {
+        JsonGenerator json = writer.getFactory().createGenerator(out);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        line(json, "session", session);
+        UUID sessionId = session.getId();
+        stream(EVENTS, sessionId, rs -> line(json, "event", event(rs)));
+        stream(SNAPSHOTS, sessionId, rs -> line(json, "snapshot", snapshot(rs)));
+        stream(INCIDENTS, sessionId, rs -> line(json, "incident", incident(rs)));
+        stream(REVIEWS, sessionId, rs -> line(json, "review", review(rs)));
+        json.flush();
+    }
+
+    /**
+     * session.json and the CSVs; with images non-null, also collects where each snapshot image is stored
+     */
+    private void writeZipData(SessionResponse session, List<Image> images, ZipOutputStream zip) throws IOException {
+        zip.putNextEntry(new ZipEntry("session.json"));
+        zip.write(writer.withDefaultPrettyPrinter().writeValueAsBytes(session));
+        UUID sessionId = session.getId();
+        copy(zip, "events.csv", COPY_EVENTS, sessionId);
+        copy(zip, "snapshots.csv", COPY_SNAPSHOTS, sessionId);
+        copy(zip, "incidents.csv", COPY_INCIDENTS, sessionId);
+        copy(zip, "reviews.csv", COPY_REVIEWS, sessionId);
+        if (images != null) {
+            stream(SNAPSHOTS, sessionId, rs -> {
+                UUID id = rs.getObject("id", UUID.class);
+                String name = "snapshots/" + rs.getLong("ts") + "-" + id + extension(rs.getString("mime_type"));
+                images.add(new Image(id, name, rs.getString("object_key")));
+            });
+        }
+    }
+
+    /**
+     * Copy the collected images into the ZIP, outside the data transaction
+     */
+    private void writeImages(UUID sessionId, List<Image> images, ZipOutputStream zip) throws IOException {
+        for (Image image : images) {
+            InputStream in;
+            try {
+                in = storage.open(image.objectKey());
+            } catch (IOException e) {
+                log.warn("Export of session {}: snapshot {} not readable, skipped: {}", sessionId, image.id(), e.getMessage());
+                continue;
+            }
+            try (in) {
+                zip.putNextEntry(new ZipEntry(image.name()));
+                in.transferTo(zip);
+            }
+        }
+    }
+
+    private record Image(UUID id, String name, String objectKey) {}
+
+    @FunctionalInterface
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    /**
+     * Run a session-scoped query through a fetch-size cursor, one row at a time
+     */
+    private void stream(String sql, UUID sessionId, RowCallbackHandler handler) {
+        jdbcTemplate.query(con -> {
+            var ps = con.prepareStatement(sql);
+            ps.setFetchSize(fetchSize);
+            ps.setObject(1, sessionId);
+            return ps;
+        }, handler);
+    }
+
+    private void copy(ZipOutputStream zip, String name, String sql, UUID sessionId) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            try {
+                return con.unwrap(PGConnection.class).getCopyAPI().copyOut(String.format(sql, sessionId), zip);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void line(JsonGenerator json, String kind, Object data) {
+        try {
+            writer.writeValue(json, new SessionExportDto.Line(kind, data));
+            json.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String extension(String mimeType) {
+        if (mimeType == null) return ".bin";
+        return switch (mimeType) {
+            case "image/jpeg" -> ".jpg";
+            case "image/png" -> ".png";
+            case "image/webp" -> ".webp";
+            default -> ".bin";
+        };
+    }
+
+    private static EventDto.Response event(ResultSet rs) throws SQLException {
+        EventDto.Response r = new EventDto.Response();
+        r.id = rs.getObject("id", UUID.class);
+        r.sessionId = rs.getObject("session_id", UUID.class);
+        r.ts = rs.getLong("ts");
+        r.eventType = EventType.valueOf(rs.getString("event_type"));
+        r.details = rs.getString("details");
+        r.createdAt = instant(rs, "created_at");
+        return r;
+    }
+
+    private static SessionExportDto.Snapshot snapshot(ResultSet rs) throws SQLException {
+        SessionExportDto.Snapshot r = new SessionExportDto.Snapshot();
+        r.id = rs.getObject("id", UUID.class);
+        r.ts = rs.getLong("ts");
+        r.mimeType = rs.getString("mime_type");
+        r.fileSize = rs.getObject("file_size", Long.class);
+        r.faceCount = rs.getObject("face_count", Integer.class);
+        r.contentHash = rs.getString("content_hash");
+        r.uploadedAt = instant(rs, "uploaded_at");
+        return r;
+    }
+
+    private static IncidentDto.Response incident(ResultSet rs) throws SQLException {
+        IncidentDto.Response r = new IncidentDto.Response();
+        r.id = rs.getObject("id", UUID.class);
+        r.sessionId = rs.getObject("session_id", UUID.class);
+        r.ts = rs.getLong("ts");
+        r.type = IncidentType.valueOf(rs.getString("type"));
+        r.score = rs.getBigDecimal("score");
+        r.reason = rs.getString("reason");
+        r.evidenceUrl = rs.getString("evidence_url");
+        r.status = IncidentStatus.valueOf(rs.getString("status"));
+        r.createdAt = instant(rs, "created_at");
+        return r;
+    }
+
+    private static ReviewDto.Response review(ResultSet rs) throws SQLException {
+        ReviewDto.Response r = new ReviewDto.Response();
+        r.id = rs.getObject("id", UUID.class);
+        r.incidentId = rs.getObject("incident_id", UUID.class);
+        r.reviewerId = rs.getString("reviewer_id");
+        r.status = ReviewStatus.valueOf(rs.getString("status"));
+        r.note = rs.getString("note");
+        r.reviewedAt = instant(rs, "reviewed_at");
+        return r;
+    }
+
+    private static Instant instant(ResultSet rs, String column) throws SQLException {
+        Timestamp ts = rs.getTimestamp(column);
+        return ts == null ? null : ts.toInstant();
+    }
+}
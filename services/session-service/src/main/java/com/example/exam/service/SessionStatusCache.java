@@ -0,0 +1,211 @@
+package com.example.exam.service;
+
+import com.example.exam.model.SessionStatus;
+import com.example.exam.repository.SessionRepository;
+import com.example.exam.util.AfterCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Session status cache for the ingest hot path: which sessions exist and whether they are still ACTIVE
+ *
+ * Flow:
+ * 1. Session start puts ACTIVE, session end / submit puts ENDED (after the transaction commits)
+ * 2. Event ingest asks {@link #accepting}: cached entries answer directly, misses are loaded with one
+ *    status query for the whole batch and cached for ttl-seconds. Snapshot ingest only asks {@link #exists}:
+ *    the image is already stored by then, and late uploads for ended sessions go to the backlog lane
+ * 3. With redis-invalidation enabled, status changes are published on {@link #CHANNEL} and applied by
+ *    every node, so an ended session is rejected everywhere, not only where it was ended
+ *
+ * Unknown session ids are never cached (the session may be created on another node a moment later).
+ * Bounded: at max-entries, expired entries are purged first, then the cache is cleared.
+ * Disabled: the original existence queries are used and ENDED sessions are still accepted.
+ */
+@Service
+public class SessionStatusCache implements MessageListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionStatusCache.class);
+    public static final String CHANNEL = "session:status";
+
+    private final SessionRepository sessionRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final boolean rejectEnded;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final boolean publish;
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+
+    public SessionStatusCache(SessionRepository sessionRepository) {
+        this(sessionRepository, null, false, false, 300, 100_000, false);
+    }
+
+    @Autowired
+    public SessionStatusCache(SessionRepository sessionRepository,
+                              StringRedisTemplate redisTemplate,
+                              @Value("${session.cache.enabled:false}") boolean enabled,
+                              @Value("${session.cache.reject-ended:false}") boolean rejectEnded,
+                              @Value("${session.cache.ttl-seconds:300}") long ttlSeconds,
+                              @Value("${session.cache.max-entries:100000}") int maxEntries,
+                              @Value("${session.cache.redis-invalidation.enabled:false}") boolean publish) {
+        this.sessionRepository = sessionRepository;
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.rejectEnded = rejectEnded;
+        this.ttlMillis = Duration.ofSeconds(ttlSeconds).toMillis();
+        this.maxEntries = maxEntries;
+        this.publish = publish;
+    }
+
+    /**
+     * Whether events for this session are accepted: it exists, and is ACTIVE if reject-ended is on
+     */
+    public boolean accepts(UUID sessionId) {
+        if (sessionId == null) return false;
+        if (!enabled) return sessionRepository.existsById(sessionId);
+        return accepted(statuses(List.of(sessionId)).get(sessionId));
+    }
+
+    /**
+     * Whether the session exists, whatever its status
+     */
+    public boolean exists(UUID sessionId) {
+        if (sessionId == null) return false;
+        if (!enabled) return sessionRepository.existsById(sessionId);
+        return statuses(List.of(sessionId)).get(sessionId) != null;
+    }
+
+    /**
+     * Subset of the given sessions that accept event ingest; at most one query for all cache misses
+     */
+    public Set<UUID> accepting(Collection<UUID> sessionIds) {
+        if (sessionIds.isEmpty()) return Set.of();
+        if (!enabled) return new HashSet<>(sessionRepository.findExistingIds(sessionIds));
+        Set<UUID> result = new HashSet<>();
+        statuses(sessionIds).forEach((id, status) -> {
+            if (accepted(status)) result.add(id);
+        });
+        return result;
+    }
+
+    /**
+     * Subset of the given sessions that are ACTIVE right now (regardless of reject-ended)
+     */
+    public Set<UUID> active(Collection<UUID> sessionIds) {
+        if (sessionIds.isEmpty()) return Set.of();
+        Set<UUID> result = new HashSet<>();
+        if (!enabled) {
+            for (var view : sessionRepository.findStatuses(sessionIds)) {
+                if (view.getStatus() == SessionStatus.ACTIVE) result.add(view.getId());
+            }
+            return result;
+        }
+        statuses(sessionIds).forEach((id, status) -> {
+            if (status == SessionStatus.ACTIVE) result.add(id);
+        });
+        return result;
+    }
+
+    /**
+     * Record a newly started session
+     */
+    public void sessionStarted(UUID sessionId) {
+        if (enabled) AfterCommit.run(() -> put(sessionId, SessionStatus.ACTIVE));
+    }
+
+    /**
+     * Record a session that ended (ENDED or ABORTED) on this node and tell the other nodes
+     */
+    public void sessionEnded(UUID sessionId, SessionStatus status) {
+        if (!enabled) return;
+        AfterCommit.run(() -> {
+            put(sessionId, status);
+            if (publish) {
+                try {
+                    redisTemplate.convertAndSend(CHANNEL, sessionId + ":" + status.name());
+                } catch (Exception e) {
+                    log.warn("Could not publish status of session {}: {}", sessionId, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Status change published by any node (including this one)
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int sep = body.indexOf(':');
+        try {
+            put(UUID.fromString(body.substring(0, sep)), SessionStatus.valueOf(body.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed session status message: {}", body);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private boolean accepted(SessionStatus status) {
+        return status != null && (!rejectEnded || status == SessionStatus.ACTIVE);
+    }
+
+    private Map<UUID, SessionStatus> statuses(Collection<UUID> sessionIds) {
+        long now = System.currentTimeMillis();
+        Map<UUID, SessionStatus> result = new HashMap<>();
+        List<UUID> misses = new ArrayList<>();
+        for (UUID id : sessionIds) {
+            Entry e = entries.get(id);
+            if (e != null && e.expiresAtMillis > now) {
+                result.put(id, e.status);
+            } else {
+                misses.add(id);
+            }
+        }
+        if (!misses.isEmpty()) {
+            for (var view : sessionRepository.findStatuses(misses)) {
+                result.put(view.getId(), view.getStatus());
+                put(view.getId(), view.getStatus());
+            }
+        }
+        return result;
+    }
+
+    private void put(UUID sessionId, SessionStatus status) {
+        if (entries.size() >= maxEntries && !entries.containsKey(sessionId)) {
+            evict();
+        }
+        entries.put(sessionId, new Entry(status, System.currentTimeMillis() + ttlMillis));
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(e -> e.expiresAtMillis <= now);
+        if (entries.size() >= maxEntries) {
+            // Everything is live: start over rather than track recency on the hot path
+            entries.clear();
+        }
+    }
+
+    private record Entry(SessionStatus status, long expiresAtMillis) {}
+}
@@ -0,0 +1,219 @@
+package com.example.exam.service;
+
+import com.example.exam.model.Event;
+import com.example.exam.model.Incident;
+import com.example.exam.model.MediaSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Session timeline read model: per session and minute, events by type, snapshots by detected face
+ * count and incidents by type (table session_timeline, V15)
+ *
+ * Flow:
+ * 1. Ingest, face detection and incident creation report what they wrote, inside their transaction
+ * 2. The changes are summed per (session, minute, kind, name) and appended to session_timeline_deltas
+ *    with one batched insert (V17), so a batch costs one statement and rolls back with the rows it counts.
+ *    Nothing is updated in place: concurrent transactions of a session never wait on each other here
+ * 3. {@link #rollup} periodically moves deltas into session_timeline (any node; SKIP LOCKED)
+ * 4. {@link #timeline} reads a session's rolled-up rows plus its pending deltas, so it is always exact
+ */
+@Service
+public class SessionTimeline {
+
+    public static final long MINUTE_MS = 60_000;
+    private static final int MAX_ROLLUP_ROUNDS = 100;
+
+    private static final String APPEND =
+            "INSERT INTO session_timeline_deltas (session_id, minute_ts, kind, name, count) VALUES (?, ?, ?, ?, ?)";
+
+    // Sums a batch of deltas into the timeline in key order; deltas claimed by another node are skipped
+    private static final String ROLLUP =
+            "WITH moved AS (" +
+            "  DELETE FROM session_timeline_deltas WHERE id IN (" +
+            "    SELECT id FROM session_timeline_deltas ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED" +
+            "  ) RETURNING session_id, minute_ts, kind, name, count" +
+            ") " +
+            "INSERT INTO session_timeline (session_id, minute_ts, kind, name, count) " +
+            "SELECT session_id, minute_ts, kind, name, sum(count) FROM moved GROUP BY 1, 2, 3, 4 ORDER BY 1, 2, 3, 4 " +
+            "ON CONFLICT (session_id, minute_ts, kind, name) DO UPDATE SET count = session_timeline.count + EXCLUDED.count";
+
+    private static final String SELECT =
+            "SELECT minute_ts, kind, name, sum(count) AS count FROM (" +
+            "  SELECT minute_ts, kind, name, count FROM session_timeline WHERE session_id = ? " +
+            "  UNION ALL " +
+            "  SELECT minute_ts, kind, name, count FROM session_timeline_deltas WHERE session_id = ?" +
+            ") t GROUP BY 1, 2, 3 ORDER BY minute_ts";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int rollupBatch;
+
+    public SessionTimeline(JdbcTemplate jdbcTemplate,
+                           @Value("${session.timeline.rollup-batch:10000}") int rollupBatch) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rollupBatch = rollupBatch;
+    }
+
+    /**
+     * Count newly inserted events (not duplicates)
+     */
+    public void eventsCreated(Collection<Event> events) {
+        Map<Key, Integer> changes = new TreeMap<>();
+        for (Event e : events) {
+            add(changes, new Key(e.getSessionId(), minute(e.getTs()), Kind.EVENT, e.getEventType().name()));
+        }
+        apply(changes);
+    }
+
+    /**
+     * Count events already summed per session, minute and type (bulk import aggregates in SQL)
+     */
+    public void eventsCounted(Collection<Count> counts) {
+        Map<Key, Integer> changes = new TreeMap<>();
+        for (Count c : counts) {
+            changes.merge(new Key(c.sessionId(), c.minuteTs(), Kind.EVENT, c.name()), c.count(), Integer::sum);
+        }
+        apply(changes);
+    }
+
+    /**
+     * Count snapshots whose face count was just detected for the first time
+     */
+    public void facesDetected(Collection<MediaSnapshot> snapshots) {
+        Map<Key, Integer> changes = new TreeMap<>();
+        for (MediaSnapshot s : snapshots) {
+            if (s.getFaceCount() == null) continue;
+            add(changes, new Key(s.getSessionId(), minute(s.getTs()), Kind.FACES, faces(s.getFaceCount())));
+        }
+        apply(changes);
+    }
+
+    /**
+     * Every new incident, whoever created it, in the creating transaction
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onIncident(IncidentRaised event) {
+        Incident incident = event.incident();
+        Map<Key, Integer> changes = new TreeMap<>();
+        add(changes, new Key(incident.getSessionId(), minute(incident.getTs()), Kind.INCIDENT, incident.getType().name()));
+        apply(changes);
+    }
+
+    /**
+     * Move pending deltas into session_timeline, rollup-batch at a time (one statement and transaction each)
+     * until none are left, or at most MAX_ROLLUP_ROUNDS batches per run
+     *
+     * @return number of timeline rows inserted or updated
+     */
+    @Scheduled(fixedDelayString = "${session.timeline.rollup-interval-ms:5000}")
+    public int rollup() {
+        int total = 0;
+        for (int round = 0; round < MAX_ROLLUP_ROUNDS; round++) {
+            int rows = jdbcTemplate.update(ROLLUP, rollupBatch);
+            if (rows == 0) break;
+            total += rows;
+        }
+        return total;
+    }
+
+    /**
+     * @return the session's minutes that have anything in them, oldest first
+     */
+    public List<Minute> timeline(UUID sessionId) {
+        Map<Long, Minute> minutes = new LinkedHashMap<>();
+        jdbcTemplate.query(SELECT, rs -> {
+            long minuteTs = rs.getLong("minute_ts");
+            Minute m = minutes.computeIfAbsent(minuteTs, ts -> new Minute(ts,
+                    new TreeMap<>(), new TreeMap<>(), new TreeMap<>()));
+            Map<String, Integer> counts = switch (Kind.of(rs.getString("kind"))) {
+                case EVENT -> m.events();
+                case FACES -> m.faces();
+                case INCIDENT -> m.incidents();
+            };
+            counts.put(rs.getString("name"), rs.getInt("count"));
+        }, sessionId, sessionId);
+        return new ArrayList<>(minutes.values());
+    }
+
+    static long minute(long ts) {
+        return ts - Math.floorMod(ts, MINUTE_MS);
+    }
+
+    static String faces(int faceCount) {
+        return faceCount >= 2 ? "2+" : Integer.toString(faceCount);
+    }
+
+    private static void add(Map<Key, Integer> changes, Key key) {
+        changes.merge(key, 1, Integer::sum);
+    }
+
+    private void apply(Map<Key, Integer> changes) {
+        if (changes.isEmpty()) return;
+        List<Object[]> rows = new ArrayList<>(changes.size());
+        changes.forEach((k, count) -> rows.add(new Object[]{k.sessionId(), k.minuteTs(), k.kind().column, k.name(), count}));
+        jdbcTemplate.batchUpdate(APPEND, rows);
+    }
+
+    /**
+     * One minute of a session; maps are empty when nothing of that kind happened
+     *
+     * @param minuteTs start of the minute, epoch millis (same clock as event and incident ts)
+     * @param events   events by type
+     * @param faces    snapshots by detected face count (0, 1, 2+)
+     * @param incidents incidents by type
+     */
+    public record Minute(long minuteTs, Map<String, Integer> events, Map<String, Integer> faces,
+                         Map<String, Integer> incidents) {
+    }
+
+    /**
+     * Number of events of one type in one minute of a session
+     *
+     * @param minuteTs start of the minute, epoch millis
+     * @param name     event type
+     */
+    public record Count(UUID sessionId, long minuteTs, String name, int count) {
+    }
+
+    enum Kind {
+        EVENT("event"), FACES("faces"), INCIDENT("incident");
+
+        final String column;
+
+        Kind(String column) {
+            this.column = column;
+        }
+
+        static Kind of(String column) {
+            for (Kind kind : values()) {
+                if (kind.column.equals(column)) return kind;
+            }
+            throw new IllegalStateException("Unknown timeline kind: " + column);
+        }
+    }
+
+    // Deterministic row order within a batch
+    private record Key(UUID sessionId, long minuteTs, Kind kind, String name) implements Comparable<Key> {
+
+        @Override
+        public int compareTo(Key o) {
+            int c = sessionId.compareTo(o.sessionId);
+            if (c == 0) c = Long.compare(minuteTs, o.minuteTs);
+            if (c == 0) c = kind.column.compareTo(o.kind.column);
+            if (c == 0) c = name.compareTo(o.name);
+            return c;
+        }
+    }
+}
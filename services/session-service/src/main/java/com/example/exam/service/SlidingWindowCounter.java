@@ -0,0 +1,128 @@
+package com.example.exam.service;
+
+import java.util.Arrays;
+
+/**
+ * Timestamps (epoch millis) of one event type for one session, kept sorted in a primitive ring buffer.
+ * Answers "how many events in (ts - window, ts]" over a true sliding window, not a calendar-minute bucket.
+ *
+ * Not thread-safe: callers hold the owning session's lock.
+ */
+final class SlidingWindowCounter {
+
+    private static final int INITIAL_CAPACITY = 16;
+    // Beyond this the oldest entries are dropped; counts saturate, which is fine since scores cap at 1.0
+    private static final int MAX_CAPACITY = 1024;
+
+    private long[] ring = new long[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
+    /**
+     * Record an event and return the number of recorded events in (ts - windowMillis, ts], including this one.
+     * Entries older than the newest timestamp minus the window are evicted. An event that is itself older
+     * than that (very late delivery) is not stored and only counts the entries still retained.
+     */
+    int add(long ts, long windowMillis) {
+        long newest = size == 0 ? ts : Math.max(get(size - 1), ts);
+        evictUpTo(newest - windowMillis);
+        if (ts > newest - windowMillis) {
+            insertSorted(ts);
+        }
+        return countIn(ts - windowMillis, ts);
+    }
+
+    /**
+     * Number of recorded events in (ts - windowMillis, ts]
+     */
+    int count(long ts, long windowMillis) {
+        return countIn(ts - windowMillis, ts);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Copy of the retained timestamps, oldest first
+     */
+    long[] snapshot() {
+        long[] out = new long[size];
+        for (int i = 0; i < size; i++) out[i] = get(i);
+        return out;
+    }
+
+    /**
+     * Replace the content with the given timestamps (any order)
+     */
+    void restore(long[] timestamps) {
+        long[] sorted = timestamps.clone();
+        Arrays.sort(sorted);
+        int from = Math.max(0, sorted.length - MAX_CAPACITY);
+        int n = sorted.length - from;
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < n) capacity <<= 1;
+        ring = new long[capacity];
+        System.arraycopy(sorted, from, ring, 0, n);
+        head = 0;
+        size = n;
+    }
+
+    private long get(int i) {
+        return ring[(head + i) & (ring.length - 1)];
+    }
+
+    private void set(int i, long value) {
+        ring[(head + i) & (ring.length - 1)] = value;
+    }
+
+    private void evictUpTo(long cutoff) {
+        while (size > 0 && ring[head] <= cutoff) {
+            head = (head + 1) & (ring.length - 1);
+            size--;
+        }
+    }
+
+    private void insertSorted(long ts) {
+        if (size == ring.length) {
+            if (ring.length < MAX_CAPACITY) {
+                grow();
+            } else {
+                head = (head + 1) & (ring.length - 1);
+                size--;
+            }
+        }
+        // Events mostly arrive in order, so the shift from the tail is usually zero steps
+        int i = size;
+        while (i > 0 && get(i - 1) > ts) {
+            set(i, get(i - 1));
+            i--;
+        }
+        set(i, ts);
+        size++;
+    }
+
+    private void grow() {
+        long[] next = new long[ring.length << 1];
+        for (int i = 0; i < size; i++) next[i] = get(i);
+        ring = next;
+        head = 0;
+    }
+
+    /**
+     * Count entries e with lo < e <= hi by binary search over the sorted ring
+     */
+    private int countIn(long lo, long hi) {
+        return firstGreaterThan(hi) - firstGreaterThan(lo);
+    }
+
+    private int firstGreaterThan(long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid) <= value) low = mid + 1; else high = mid;
+        }
+        return low;
+    }
+}
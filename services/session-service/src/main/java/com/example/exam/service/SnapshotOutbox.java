@@ -0,0 +1,243 @@
+package com.example.exam.service;
+
+import com.example.exam.config.RabbitMQConfig;
+import com.example.exam.dto.SnapshotMessage;
+import com.example.exam.util.AfterCommit;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transactional outbox for snapshot.uploaded messages
+ *
+ * Flow:
+ * 1. Ingest writes one outbox_messages row per new snapshot in its own transaction (no broker call)
+ * 2. After that commit the relay thread is woken; it also polls every interval-ms
+ * 3. The relay claims up to batch-size due rows (FOR UPDATE SKIP LOCKED, so several nodes can relay),
+ *    publishes them on one channel in confirm mode, waits for the broker's confirms once for the
+ *    whole batch, and marks the rows sent in the same transaction
+ * 4. A nack or confirm timeout leaves the batch unsent with a backoff; it is published again later
+ *
+ * Delivery is at least once: a batch that was partly confirmed before a failure is published again
+ * in full. Each message carries the outbox row id as message-id. Sent rows are purged after retention-hours.
+ */
+@Service
+public class SnapshotOutbox implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotOutbox.class);
+
+    private static final String INSERT =
+            "INSERT INTO outbox_messages (exchange, routing_key, message_type, payload) VALUES (?, ?, ?, ?::jsonb)";
+
+    private static final String CLAIM =
+            "SELECT id, exchange, routing_key, message_type, payload::text AS payload FROM outbox_messages " +
+            "WHERE sent_at IS NULL AND next_attempt_at <= now() ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    private static final String MARK_SENT =
+            "UPDATE outbox_messages SET sent_at = now(), attempts = attempts + 1, last_error = NULL WHERE id = ANY(?)";
+
+    // Exponential backoff from 1 s, capped at max-backoff-seconds
+    private static final String MARK_FAILED =
+            "UPDATE outbox_messages SET attempts = attempts + 1, last_error = ?, " +
+            "next_attempt_at = now() + make_interval(secs => LEAST(power(2, attempts), ?)) WHERE id = ANY(?)";
+
+    private static final String PURGE =
+            "DELETE FROM outbox_messages WHERE sent_at < now() - make_interval(hours => ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RabbitTemplate rabbitTemplate;
+    private final ObjectMapper mapper;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean relayEnabled;
+    private final int batchSize;
+    private final long intervalMs;
+    private final long confirmTimeoutMs;
+    private final int maxBackoffSeconds;
+    private final int retentionHours;
+
+    // Wake-ups from committed ingest transactions; the relay drains them all per round
+    private final Semaphore wakeups = new Semaphore(0);
+    private volatile boolean running;
+    private Thread relay;
+
+    public SnapshotOutbox(JdbcTemplate jdbcTemplate,
+                          RabbitTemplate rabbitTemplate,
+                          ObjectMapper mapper,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${snapshot.outbox.relay.enabled:true}") boolean relayEnabled,
+                          @Value("${snapshot.outbox.relay.batch-size:200}") int batchSize,
+                          @Value("${snapshot.outbox.relay.interval-ms:1000}") long intervalMs,
+                          @Value("${snapshot.outbox.relay.confirm-timeout-ms:5000}") long confirmTimeoutMs,
+                          @Value("${snapshot.outbox.relay.max-backoff-seconds:300}") int maxBackoffSeconds,
+                          @Value("${snapshot.outbox.retention-hours:24}") int retentionHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rabbitTemplate = rabbitTemplate;
+        this.mapper = mapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.relayEnabled = relayEnabled;
+        this.batchSize = batchSize;
+        this.intervalMs = intervalMs;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.maxBackoffSeconds = maxBackoffSeconds;
+        this.retentionHours = retentionHours;
+    }
+
+    /**
+     * Write snapshot messages for a processing lane to the outbox; must run inside the transaction
+     * that inserts the snapshots
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void stage(List<SnapshotMessage> messages, RabbitMQConfig.Lane lane) {
+        if (messages.isEmpty()) return;
+        List<Object[]> rows = new ArrayList<>(messages.size());
+        for (SnapshotMessage message : messages) {
+            rows.add(new Object[]{RabbitMQConfig.EXCHANGE_NAME, lane.routingKey,
+                    SnapshotMessage.class.getName(), toJson(message)});
+        }
+        jdbcTemplate.batchUpdate(INSERT, rows);
+        AfterCommit.run(wakeups::release);
+    }
+
+    /**
+     * Publish one batch of due messages and mark them sent once the broker has confirmed them all
+     *
+     * @return number of messages sent (0 if there were none, or the batch failed and was rescheduled)
+     */
+    public int relayBatch() {
+        Integer sent = transactionTemplate.execute(status -> {
+            List<Row> rows = jdbcTemplate.query(CLAIM, (rs, rowNum) -> new Row(rs.getLong("id"),
+                    rs.getString("exchange"), rs.getString("routing_key"),
+                    rs.getString("message_type"), rs.getString("payload")), batchSize);
+            if (rows.isEmpty()) return 0;
+            Long[] ids = rows.stream().map(Row::id).toArray(Long[]::new);
+            try {
+                // invoke() keeps one channel for the whole batch, so one wait covers every publish
+                rabbitTemplate.invoke(ops -> {
+                    for (Row row : rows) {
+                        ops.send(row.exchange(), row.routingKey(), row.toMessage());
+                    }
+                    ops.waitForConfirmsOrDie(confirmTimeoutMs);
+                    return null;
+                });
+            } catch (AmqpException e) {
+                log.warn("Outbox publish of {} messages failed, will retry: {}", rows.size(), e.getMessage());
+                jdbcTemplate.update(con -> {
+                    var ps = con.prepareStatement(MARK_FAILED);
+                    ps.setString(1, String.valueOf(e.getMessage()));
+                    ps.setInt(2, maxBackoffSeconds);
+                    ps.setArray(3, con.createArrayOf("int8", ids));
+                    return ps;
+                });
+                return 0;
+            }
+            jdbcTemplate.update(con -> {
+                var ps = con.prepareStatement(MARK_SENT);
+                ps.setArray(1, con.createArrayOf("int8", ids));
+                return ps;
+            });
+            log.debug("Outbox relayed {} messages", rows.size());
+            return rows.size();
+        });
+        return sent == null ? 0 : sent;
+    }
+
+    /**
+     * @return number of sent rows removed
+     */
+    @Scheduled(fixedDelayString = "${snapshot.outbox.purge-interval-ms:3600000}")
+    public int purgeSent() {
+        int purged = jdbcTemplate.update(PURGE, retentionHours);
+        if (purged > 0) log.info("Outbox purge: {} sent messages removed", purged);
+        return purged;
+    }
+
+    @Override
+    public void start() {
+        if (!relayEnabled || running) return;
+        running = true;
+        relay = new Thread(this::relayLoop, "snapshot-outbox-relay");
+        relay.setDaemon(true);
+        relay.start();
+        log.info("Snapshot outbox relay started: batchSize={}, intervalMs={}", batchSize, intervalMs);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+        running = false;
+        wakeups.release();
+        try {
+            relay.join(confirmTimeoutMs + intervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void relayLoop() {
+        while (running) {
+            int sent = 0;
+            try {
+                sent = relayBatch();
+            } catch (RuntimeException e) {
+                log.error("Outbox relay round failed", e);
+            }
+            // A full batch means there is probably more; otherwise wait for a commit or the next poll
+            if (sent == batchSize) continue;
+            try {
+                if (wakeups.tryAcquire(intervalMs, TimeUnit.MILLISECONDS)) wakeups.drainPermits();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private String toJson(Object payload) {
+        try {
+            return mapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Outbox payload could not be serialized", e);
+        }
+    }
+
+    private record Row(long id, String exchange, String routingKey, String type, String payload) {
+
+        Message toMessage() {
+            // Same headers as RabbitTemplate.convertAndSend with Jackson2JsonMessageConverter
+            return MessageBuilder.withBody(payload.getBytes(StandardCharsets.UTF_8))
+                    .setContentType(MessageProperties.CONTENT_TYPE_JSON)
+                    .setContentEncoding(StandardCharsets.UTF_8.name())
+                    .setHeader("__TypeId__", type)
+                    .setMessageId(Long.toString(id))
+                    .setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.exam.service;
+
+import com.example.exam.config.RabbitMQConfig;
+import com.example.exam.dto.SnapshotMessage;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.GetResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Retry and dead-letter routing for failed snapshot.process messages
+ *
+ * Flow:
+ * 1. The worker catches the failure, acks the delivery and hands the message here with its attempt count
+ * 2. Attempt n (1-based) is republished to the lane's n-th delay queue (the last one for later attempts),
+ *    which dead-letters it back to the same lane once its TTL expires
+ * 3. After max-attempts the message goes to snapshot.process.dlq with the last error
+ *
+ * The main queue never holds a failing message, so a burst of failures does not block healthy ones
+ * or spin on redeliveries. Every republish waits for the broker's confirm; if that fails the exception
+ * reaches the listener container, which requeues the original delivery, so the work is not lost.
+ */
+@Service
+public class SnapshotRetryRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotRetryRouter.class);
+
+    /** Failed attempts so far; absent on the first delivery */
+    public static final String ATTEMPTS_HEADER = "x-snapshot-attempts";
+    public static final String ERROR_HEADER = "x-snapshot-error";
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final AmqpAdmin amqpAdmin;
+    private final long[] delaysMs;
+    private final int maxAttempts;
+    private final long confirmTimeoutMs;
+
+    public SnapshotRetryRouter(RabbitTemplate rabbitTemplate,
+                               AmqpAdmin amqpAdmin,
+                               @Value("${snapshot.worker.retry.delays-ms:1000,5000,30000,120000}") long[] delaysMs,
+                               @Value("${snapshot.worker.retry.max-attempts:5}") int maxAttempts,
+                               @Value("${snapshot.worker.retry.confirm-timeout-ms:5000}") long confirmTimeoutMs) {
+        if (delaysMs.length == 0) throw new IllegalArgumentException("snapshot.worker.retry.delays-ms must not be empty");
+        this.rabbitTemplate = rabbitTemplate;
+        this.amqpAdmin = amqpAdmin;
+        this.delaysMs = delaysMs;
+        this.maxAttempts = maxAttempts;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+    }
+
+    /**
+     * Route a message whose processing failed: to the next delay queue, or to the DLQ once out of attempts
+     *
+     * @param attempts failed attempts before this one (the ATTEMPTS_HEADER value, null on first delivery)
+     */
+    public void failed(SnapshotMessage message, RabbitMQConfig.Lane lane, Integer attempts, Exception cause) {
+        int failures = (attempts == null ? 0 : attempts) + 1;
+        String error = describe(cause);
+        String routingKey;
+        if (failures >= maxAttempts) {
+            routingKey = RabbitMQConfig.DEAD_LETTER_ROUTING_KEY;
+            log.error("Snapshot {} failed {} times, dead-lettered: {}", message.snapshotId(), failures, error);
+        } else {
+            long delayMs = delaysMs[Math.min(failures, delaysMs.length) - 1];
+            routingKey = lane.retryQueueName(delayMs);
+            log.warn("Snapshot {} failed (attempt {} of {}), retrying in {} ms: {}",
+                    message.snapshotId(), failures, maxAttempts, delayMs, error);
+        }
+        MessagePostProcessor headers = m -> {
+            m.getMessageProperties().setHeader(ATTEMPTS_HEADER, failures);
+            m.getMessageProperties().setHeader(ERROR_HEADER, error);
+            return m;
+        };
+        rabbitTemplate.invoke(ops -> {
+            ops.convertAndSend(RabbitMQConfig.EXCHANGE_NAME, routingKey, message, headers);
+            ops.waitForConfirmsOrDie(confirmTimeoutMs);
+            return null;
+        });
+    }
+
+    /**
+     * Move up to max messages from the DLQ to the backlog lane with a fresh attempt count
+     *
+     * Messages are taken unacked and acked together once the broker has confirmed their republish;
+     * on failure they return to the DLQ (a message may then be both requeued and still dead-lettered).
+     *
+     * @return number of messages requeued
+     */
+    public int requeueDeadLetters(int max) {
+        Integer moved = rabbitTemplate.execute(channel -> {
+            channel.confirmSelect();
+            int count = 0;
+            long lastTag = -1;
+            while (count < max) {
+                GetResponse response = channel.basicGet(RabbitMQConfig.DEAD_LETTER_QUEUE, false);
+                if (response == null) break;
+                AMQP.BasicProperties props = response.getProps();
+                Map<String, Object> headers = props.getHeaders() == null ? new HashMap<>() : new HashMap<>(props.getHeaders());
+                headers.remove(ATTEMPTS_HEADER);
+                headers.remove(ERROR_HEADER);
+                channel.basicPublish(RabbitMQConfig.EXCHANGE_NAME, RabbitMQConfig.Lane.BACKLOG.routingKey,
+                        props.builder().headers(headers).build(), response.getBody());
+                lastTag = response.getEnvelope().getDeliveryTag();
+                count++;
+            }
+            if (count > 0) {
+                channel.waitForConfirmsOrDie(confirmTimeoutMs);
+                channel.basicAck(lastTag, true);
+            }
+            return count;
+        });
+        int requeued = moved == null ? 0 : moved;
+        if (requeued > 0) log.info("Requeued {} dead-lettered snapshot messages", requeued);
+        return requeued;
+    }
+
+    /**
+     * Messages currently in the DLQ (as reported by the broker), or -1 if the queue does not exist
+     */
+    public long deadLetterCount() {
+        QueueInformation info = amqpAdmin.getQueueInfo(RabbitMQConfig.DEAD_LETTER_QUEUE);
+        return info == null ? -1 : info.getMessageCount();
+    }
+
+    private static String describe(Exception cause) {
+        String error = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.EventIngestDto;
+import com.example.exam.dto.TelemetryDto;
+import com.example.exam.model.Incident;
+import com.example.exam.model.Session;
+import com.example.exam.repository.SessionRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import jakarta.websocket.CloseReason;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side of the telemetry WebSocket (/api/ingest/telemetry/{sessionId})
+ *
+ * Flow:
+ * 1. Connect: the upgrade request is authenticated by the normal JWT filter chain; here the socket is
+ *    only checked against the session (accepting events, and owned by the token subject unless ADMIN/PROCTOR)
+ * 2. Frames are parsed and validated on the container thread, then handed to the session's lane
+ * 3. The lane ingests the items through the bulk path, sends an ack and then evaluates the rules for the
+ *    inserted events itself, after the transaction has committed (not on RuleService's shared pool)
+ * 4. Incidents raised for a connected session are pushed after commit, through the same lane
+ *
+ * Every session is pinned to one single-threaded lane (hash of its id), so all socket ingest, rule evaluation
+ * and sends for a session run on one thread in arrival order and its socket is never written from two threads.
+ * Its rule windows are only contended if the same session also posts over HTTP, whose events are evaluated
+ * on the rule pool; RuleWindowStore keeps its per-session locks for that case (uncontended otherwise).
+ * A full lane closes the socket with TRY_AGAIN_LATER.
+ */
+@Service
+public class TelemetryHub {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryHub.class);
+    private static final Set<String> SUPERVISOR_ROLES = Set.of("ROLE_ADMIN", "ROLE_PROCTOR");
+
+    private final IngestService ingestService;
+    private final RuleService ruleService;
+    private final SessionStatusCache sessionCache;
+    private final SessionRepository sessionRepository;
+    private final ObjectMapper mapper;
+    private final Validator validator;
+    private final ExecutorService[] lanes;
+    private final ConcurrentHashMap<UUID, Set<jakarta.websocket.Session>> connections = new ConcurrentHashMap<>();
+
+    public TelemetryHub(IngestService ingestService,
+                        RuleService ruleService,
+                        SessionStatusCache sessionCache,
+                        SessionRepository sessionRepository,
+                        ObjectMapper mapper,
+                        Validator validator,
+                        @Value("${telemetry.websocket.lanes:8}") int laneCount,
+                        @Value("${telemetry.websocket.lane-capacity:10000}") int laneCapacity) {
+        this.ingestService = ingestService;
+        this.ruleService = ruleService;
+        this.sessionCache = sessionCache;
+        this.sessionRepository = sessionRepository;
+        this.mapper = mapper;
+        this.validator = validator;
+        this.lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            String name = "telemetry-lane-" + i;
+            // Threads start on first use, so an unused hub costs nothing
+            this.lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(laneCapacity), r -> {
+                        Thread t = new Thread(r, name);
+                        t.setDaemon(true);
+                        return t;
+                    });
+        }
+    }
+
+    /**
+     * @return null if the caller may stream events for this session, otherwise why not
+     */
+    public String authorize(UUID sessionId, Principal principal) {
+        if (principal == null) return "Not authenticated";
+        if (!sessionCache.accepts(sessionId)) return "Session not found or not active";
+        if (principal instanceof Authentication auth && auth.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority).anyMatch(SUPERVISOR_ROLES::contains)) {
+            return null;
+        }
+        // Fails closed: anything but a token whose subject owns the session is refused
+        if (principal instanceof JwtAuthenticationToken jwt) {
+            String subject = jwt.getToken().getSubject();
+            String owner = sessionRepository.findById(sessionId).map(Session::getUserId).orElse(null);
+            if (subject != null && subject.equals(owner)) return null;
+        }
+        return "Session belongs to another user";
+    }
+
+    public void opened(UUID sessionId, jakarta.websocket.Session socket) {
+        connections.computeIfAbsent(sessionId, id -> ConcurrentHashMap.newKeySet()).add(socket);
+    }
+
+    public void closed(UUID sessionId, jakarta.websocket.Session socket) {
+        connections.computeIfPresent(sessionId, (id, sockets) -> {
+            sockets.remove(socket);
+            return sockets.isEmpty() ? null : sockets;
+        });
+    }
+
+    /**
+     * Handle one inbound text frame: parse and validate here, ingest and ack on the session's lane
+     */
+    public void receive(UUID sessionId, jakarta.websocket.Session socket, String frame) {
+        List<EventIngestDto.Item> items;
+        try {
+            items = parse(sessionId, frame);
+        } catch (IllegalArgumentException e) {
+            submit(sessionId, socket, () -> send(socket, new TelemetryDto.Error(e.getMessage())));
+            return;
+        }
+        if (items.isEmpty()) return;
+        submit(sessionId, socket, () -> {
+            var outcomes = ingestService.ingestEventItemsBulkWithoutRules(items);
+            int created = 0, duplicates = 0;
+            for (int i = 0; i < items.size(); i++) {
+                if (outcomes.ids()[i] == null) continue;
+                if (outcomes.created()[i]) created++; else duplicates++;
+            }
+            send(socket, new TelemetryDto.Ack(created, duplicates, Arrays.asList(outcomes.ids())));
+            // Committed and connection released: evaluate here so this session's frames are counted in order
+            ruleService.evaluate(outcomes.events());
+        });
+    }
+
+    /**
+     * Push incidents to the sockets of their session; runs after the ingest transaction commits
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onIncident(IncidentRaised event) {
+        Incident incident = event.incident();
+        Set<jakarta.websocket.Session> sockets = connections.get(incident.getSessionId());
+        if (sockets == null) return;
+        var frame = new TelemetryDto.Incident(incident.getId(), incident.getType(), incident.getTs(), incident.getReason());
+        for (var socket : sockets) {
+            submit(incident.getSessionId(), socket, () -> send(socket, frame));
+        }
+    }
+
+    public int connectedSessions() {
+        return connections.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    List<EventIngestDto.Item> parse(UUID sessionId, String frame) {
+        JsonNode root;
+        try {
+            root = mapper.readTree(frame);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed frame: " + e.getOriginalMessage());
+        }
+        List<JsonNode> nodes = new ArrayList<>();
+        if (root != null && root.isArray()) root.forEach(nodes::add); else nodes.add(root);
+        List<EventIngestDto.Item> items = new ArrayList<>(nodes.size());
+        for (JsonNode node : nodes) {
+            if (node == null || !node.isObject()) throw new IllegalArgumentException("Frame items must be JSON objects");
+            EventIngestDto.Item item;
+            try {
+                item = mapper.treeToValue(node, EventIngestDto.Item.class);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Malformed event: " + e.getOriginalMessage());
+            }
+            if (item.sessionId == null) item.sessionId = sessionId;
+            if (!sessionId.equals(item.sessionId)) throw new IllegalArgumentException("Event for another session");
+            Set<ConstraintViolation<EventIngestDto.Item>> violations = validator.validate(item);
+            if (!violations.isEmpty()) {
+                var v = violations.iterator().next();
+                throw new IllegalArgumentException(v.getPropertyPath() + " " + v.getMessage());
+            }
+            try {
+                ingestService.validateDetails(item);
+            } catch (ResponseStatusException e) {
+                throw new IllegalArgumentException(e.getReason());
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    private void submit(UUID sessionId, jakarta.websocket.Session socket, Runnable task) {
+        try {
+            lane(sessionId).execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Telemetry frame for session {} failed", sessionId, e);
+                    send(socket, new TelemetryDto.Error("Internal error"));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Telemetry lane full, closing socket of session {}", sessionId);
+            close(socket, new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "Server busy"));
+        }
+    }
+
+    private ExecutorService lane(UUID sessionId) {
+        return lanes[Math.floorMod(sessionId.hashCode(), lanes.length)];
+    }
+
+    private void send(jakarta.websocket.Session socket, Object frame) {
+        if (!socket.isOpen()) return;
+        try {
+            socket.getBasicRemote().sendText(mapper.writeValueAsString(frame));
+        } catch (IOException e) {
+            log.debug("Telemetry send failed, closing: {}", e.getMessage());
+            close(socket, new CloseReason(CloseReason.CloseCodes.UNEXPECTED_CONDITION, "Send failed"));
+        }
+    }
+
+    private static void close(jakarta.websocket.Session socket, CloseReason reason) {
+        try {
+            socket.close(reason);
+        } catch (IOException ignored) {
+            // Already gone
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.exam.util;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Continuation token for keyset pagination: sort key and id of the last row of a page.
+ * Clients get it as an opaque base64url string and pass it back unchanged as ?cursor=
+ *
+ * Instant keys are stored as epoch microseconds (Postgres timestamptz precision), so the next page
+ * starts exactly after the row the token was made from.
+ */
+public record PageCursor(long key, UUID id) {
+
+    private static final UUID MIN_ID = new UUID(0L, 0L);
+    private static final UUID MAX_ID = new UUID(-1L, -1L);
+
+    /** Before every row, for ascending pages */
+    public static final PageCursor FIRST_ASC = new PageCursor(Long.MIN_VALUE, MIN_ID);
+    /** After every row with a long key, for descending pages */
+    public static final PageCursor FIRST_DESC = new PageCursor(Long.MAX_VALUE, MAX_ID);
+    /** After every row with a timestamp key (Long.MAX_VALUE microseconds is out of timestamptz range) */
+    public static final PageCursor LATEST = of(Instant.parse("9999-12-31T23:59:59.999999Z"), MAX_ID);
+
+    public static PageCursor of(Instant key, UUID id) {
+        return new PageCursor(key.getEpochSecond() * 1_000_000 + key.getNano() / 1_000, id);
+    }
+
+    public Instant instantKey() {
+        return Instant.ofEpochSecond(Math.floorDiv(key, 1_000_000), Math.floorMod(key, 1_000_000) * 1_000L);
+    }
+
+    public String encode() {
+        ByteBuffer buf = ByteBuffer.allocate(24)
+                .putLong(key)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buf.array());
+    }
+
+    /**
+     * @param token value from a previous page's nextCursor, or null for the first page
+     * @param first cursor to start from when there is no token
+     * @throws IllegalArgumentException if the token was not produced by {@link #encode}
+     */
+    public static PageCursor decode(String token, PageCursor first) {
+        if (token == null || token.isBlank()) return first;
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (bytes.length != 24) throw new IllegalArgumentException("Invalid cursor");
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        return new PageCursor(buf.getLong(), new UUID(buf.getLong(), buf.getLong()));
+    }
+}
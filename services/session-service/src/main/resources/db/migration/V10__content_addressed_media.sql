@@ -0,0 +1,51 @@
+-- V10: Content-addressed snapshot storage (media.storage.content-addressed)
+-- One stored object per distinct SHA-256; media_snapshots rows reference it by content_hash.
+
+CREATE TABLE IF NOT EXISTS media_blobs (
+  sha256 CHAR(64) PRIMARY KEY,
+  object_key TEXT NOT NULL UNIQUE,
+  size BIGINT NOT NULL,
+  mime_type VARCHAR(100),
+  ref_count INT NOT NULL DEFAULT 0,
+  -- Face detection result for this content, reused for every snapshot with the same hash
+  face_count INT,
+  created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  -- Set when ref_count drops to 0; the file is removed after a grace period
+  released_at TIMESTAMPTZ,
+  CHECK (ref_count >= 0),
+  CHECK (face_count IS NULL OR face_count >= 0)
+);
+
+CREATE INDEX IF NOT EXISTS idx_media_blobs_released ON media_blobs(released_at) WHERE ref_count = 0;
+
+ALTER TABLE media_snapshots ADD COLUMN IF NOT EXISTS content_hash CHAR(64);
+CREATE INDEX IF NOT EXISTS idx_media_snapshots_content_hash ON media_snapshots(content_hash);
+
+-- Several snapshots can now point at the same stored object
+ALTER TABLE media_snapshots DROP CONSTRAINT IF EXISTS media_snapshots_object_key_key;
+CREATE INDEX IF NOT EXISTS idx_media_snapshots_object_key ON media_snapshots(object_key);
+
+-- Reference counting: ref_count always equals the number of snapshot rows per hash,
+-- including rows removed by ON DELETE CASCADE from sessions
+CREATE OR REPLACE FUNCTION trg_media_blob_ref()
+RETURNS TRIGGER AS $$
+BEGIN
+  IF TG_OP = 'INSERT' AND NEW.content_hash IS NOT NULL THEN
+    INSERT INTO media_blobs (sha256, object_key, size, mime_type, ref_count)
+    VALUES (NEW.content_hash, NEW.object_key, COALESCE(NEW.file_size, 0), NEW.mime_type, 1)
+    ON CONFLICT (sha256) DO UPDATE
+      SET ref_count = media_blobs.ref_count + 1, released_at = NULL;
+  ELSIF TG_OP = 'DELETE' AND OLD.content_hash IS NOT NULL THEN
+    UPDATE media_blobs
+    SET ref_count = ref_count - 1,
+        released_at = CASE WHEN ref_count = 1 THEN now() ELSE released_at END
+    WHERE sha256 = OLD.content_hash;
+  END IF;
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_media_blob_ref ON media_snapshots;
+CREATE TRIGGER trg_media_blob_ref
+AFTER INSERT OR DELETE ON media_snapshots
+FOR EACH ROW EXECUTE FUNCTION trg_media_blob_ref();
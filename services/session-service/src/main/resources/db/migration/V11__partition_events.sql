@@ -0,0 +1,58 @@
+-- V11: Range-partition events on ts (epoch millis)
+-- Partitions are named events_pYYYYMMDD after their first day (UTC) and are created ahead of time
+-- by EventPartitionManager (daily or weekly); retention drops whole partitions instead of deleting rows.
+-- events_default catches timestamps outside every partition; rows are moved out of it when
+-- a partition for their range is created.
+--
+-- Unique constraints on a partitioned table must include the partition key, so idempotency_key is
+-- unique per (idempotency_key, ts). Ingest still resolves duplicates by idempotency_key first.
+-- idx_events_session_ts is dropped: uq_events_session_ts_type has the same leading columns.
+
+ALTER TABLE events RENAME TO events_unpartitioned;
+ALTER TABLE events_unpartitioned RENAME CONSTRAINT events_pkey TO events_unpartitioned_pkey;
+ALTER TABLE events_unpartitioned RENAME CONSTRAINT events_idempotency_key_key TO events_unpartitioned_idempotency_key_key;
+ALTER INDEX IF EXISTS uq_events_session_ts_type RENAME TO uq_events_unpartitioned_session_ts_type;
+DROP INDEX IF EXISTS idx_events_session_ts;
+DROP INDEX IF EXISTS idx_events_type;
+
+CREATE TABLE events (
+  id UUID NOT NULL DEFAULT gen_random_uuid(),
+  session_id UUID NOT NULL REFERENCES sessions(id) ON DELETE CASCADE,
+  ts BIGINT NOT NULL,
+  event_type event_type NOT NULL,
+  details TEXT,
+  idempotency_key VARCHAR(255) NOT NULL,
+  created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  PRIMARY KEY (id, ts),
+  UNIQUE (idempotency_key, ts)
+) PARTITION BY RANGE (ts);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_events_session_ts_type ON events(session_id, ts, event_type);
+COMMENT ON INDEX uq_events_session_ts_type IS 'Ensures idempotency for events by (session_id, ts, event_type)';
+
+CREATE TABLE IF NOT EXISTS events_default PARTITION OF events DEFAULT;
+
+-- Daily partitions for existing data (at most the last 400 days) up to a week ahead
+DO $$
+DECLARE
+  d DATE;
+  last_day DATE := (now() AT TIME ZONE 'UTC')::date + 7;
+BEGIN
+  SELECT GREATEST(
+           COALESCE((to_timestamp(min(ts) / 1000.0) AT TIME ZONE 'UTC')::date, (now() AT TIME ZONE 'UTC')::date),
+           (now() AT TIME ZONE 'UTC')::date - 400)
+  INTO d
+  FROM events_unpartitioned;
+  WHILE d <= last_day LOOP
+    EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF events FOR VALUES FROM (%s) TO (%s)',
+                   'events_p' || to_char(d, 'YYYYMMDD'),
+                   (extract(epoch FROM d::timestamp) * 1000)::bigint,
+                   (extract(epoch FROM (d + 1)::timestamp) * 1000)::bigint);
+    d := d + 1;
+  END LOOP;
+END $$;
+
+INSERT INTO events (id, session_id, ts, event_type, details, idempotency_key, created_at)
+SELECT id, session_id, ts, event_type, details, idempotency_key, created_at FROM events_unpartitioned;
+
+DROP TABLE events_unpartitioned;
@@ -0,0 +1,22 @@
+-- V12: Transactional outbox for RabbitMQ messages (snapshot.uploaded, ...)
+-- Rows are written in the same transaction as the data they describe and published afterwards by
+-- SnapshotOutbox's relay with publisher confirms; sent_at is set once the broker has confirmed.
+
+CREATE TABLE IF NOT EXISTS outbox_messages (
+  id BIGSERIAL PRIMARY KEY,
+  exchange TEXT NOT NULL,
+  routing_key TEXT NOT NULL,
+  -- __TypeId__ header for Jackson2JsonMessageConverter
+  message_type TEXT NOT NULL,
+  payload JSONB NOT NULL,
+  created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  attempts INT NOT NULL DEFAULT 0,
+  -- Failed publishes are retried with backoff from this time on
+  next_attempt_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  last_error TEXT,
+  sent_at TIMESTAMPTZ
+);
+
+-- The relay only ever scans unsent rows
+CREATE INDEX IF NOT EXISTS idx_outbox_messages_pending ON outbox_messages(next_attempt_at, id) WHERE sent_at IS NULL;
+CREATE INDEX IF NOT EXISTS idx_outbox_messages_sent ON outbox_messages(sent_at) WHERE sent_at IS NOT NULL;
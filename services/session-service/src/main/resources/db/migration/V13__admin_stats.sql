@@ -0,0 +1,11 @@
+-- V13: Support for AdminStatsService (GET /api/admin/stats)
+-- Ingested events per minute, summed over all nodes: each node adds its own count for a minute once the
+-- minute is over (one upsert per node per flush, never per event). Rows older than retention are purged.
+
+CREATE TABLE IF NOT EXISTS event_rate_minutes (
+  minute TIMESTAMPTZ PRIMARY KEY,
+  events BIGINT NOT NULL DEFAULT 0
+);
+
+-- Reconciliation counts ACTIVE sessions per exam without scanning ended ones
+CREATE INDEX IF NOT EXISTS idx_sessions_active_exam ON sessions(exam_id) WHERE status = 'ACTIVE';
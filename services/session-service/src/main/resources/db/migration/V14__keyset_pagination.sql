@@ -0,0 +1,12 @@
+-- V14: Indexes for keyset pagination (GET /api/incidents, /api/sessions with ?cursor=)
+-- Each page is one index range scan from the cursor's (key, id), however deep it is.
+
+-- All incidents, newest first
+CREATE INDEX IF NOT EXISTS idx_incidents_ts_id ON incidents(ts, id);
+-- One session's incidents by (ts, id); replaces the (session_id, ts) index
+CREATE INDEX IF NOT EXISTS idx_incidents_session_ts_id ON incidents(session_id, ts, id);
+DROP INDEX IF EXISTS idx_incidents_session_ts;
+
+-- All sessions / one exam's sessions, most recently started first
+CREATE INDEX IF NOT EXISTS idx_sessions_started_id ON sessions(started_at, id);
+CREATE INDEX IF NOT EXISTS idx_sessions_exam_started_id ON sessions(exam_id, started_at, id);
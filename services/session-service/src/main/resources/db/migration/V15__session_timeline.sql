@@ -0,0 +1,29 @@
+-- V15: Session timeline read model (GET /api/sessions/{id}/timeline)
+-- One row per session, minute (ts rounded down to the minute, epoch millis) and counted thing:
+--   kind 'event'    name = event_type     count = events
+--   kind 'faces'    name = 0 | 1 | 2+     count = snapshots with that many faces detected
+--   kind 'incident' name = incident type  count = incidents
+-- Maintained by SessionTimeline in the transactions that write events, face counts and incidents;
+-- a timeline is read with one range scan of the primary key.
+
+CREATE TABLE IF NOT EXISTS session_timeline (
+  session_id UUID NOT NULL REFERENCES sessions(id) ON DELETE CASCADE,
+  minute_ts BIGINT NOT NULL,
+  kind VARCHAR(16) NOT NULL,
+  name VARCHAR(32) NOT NULL,
+  count INT NOT NULL,
+  PRIMARY KEY (session_id, minute_ts, kind, name)
+);
+
+-- Backfill from existing data
+INSERT INTO session_timeline (session_id, minute_ts, kind, name, count)
+SELECT session_id, ts - ts % 60000, 'event', event_type::text, count(*)
+FROM events GROUP BY 1, 2, 4;
+
+INSERT INTO session_timeline (session_id, minute_ts, kind, name, count)
+SELECT session_id, ts - ts % 60000, 'faces', CASE WHEN face_count >= 2 THEN '2+' ELSE face_count::text END, count(*)
+FROM media_snapshots WHERE face_count IS NOT NULL GROUP BY 1, 2, 4;
+
+INSERT INTO session_timeline (session_id, minute_ts, kind, name, count)
+SELECT session_id, ts - ts % 60000, 'incident', type::text, count(*)
+FROM incidents GROUP BY 1, 2, 4;
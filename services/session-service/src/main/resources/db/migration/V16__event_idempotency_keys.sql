@@ -0,0 +1,24 @@
+-- V16: Table-wide unique idempotency keys for the partitioned events table
+-- Since V11 events can only enforce UNIQUE (idempotency_key, ts), so the same key could be stored
+-- twice with different timestamps. event_idempotency_keys is not partitioned: every writer claims the
+-- key here (INSERT ... ON CONFLICT DO NOTHING) before inserting the event, in the same transaction,
+-- and a claim that loses on (session_id, ts, event_type) is released again.
+-- Cost: every event insert also maintains this table's primary key and session index (plus the ts index
+-- of V18), on top of the partitioned indexes of events, and the table is not partitioned, so its rows go
+-- one by one: with their session (FK) or, once their partition is dropped, in background batches (V18).
+
+CREATE TABLE IF NOT EXISTS event_idempotency_keys (
+  idempotency_key VARCHAR(255) PRIMARY KEY,
+  event_id UUID NOT NULL,
+  session_id UUID NOT NULL REFERENCES sessions(id) ON DELETE CASCADE,
+  ts BIGINT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_event_idempotency_keys_session ON event_idempotency_keys(session_id);
+
+-- Keys stored more than once since V11 resolve to their oldest event
+INSERT INTO event_idempotency_keys (idempotency_key, event_id, session_id, ts)
+SELECT DISTINCT ON (idempotency_key) idempotency_key, id, session_id, ts
+FROM events
+ORDER BY idempotency_key, created_at, id
+ON CONFLICT DO NOTHING;
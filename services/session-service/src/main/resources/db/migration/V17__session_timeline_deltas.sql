@@ -0,0 +1,16 @@
+-- V17: Append-only deltas for the session timeline
+-- Writers used to upsert session_timeline directly; every ingest transaction of a session then updated the
+-- same (session, minute, kind, name) row and held its lock until commit, serializing the session's batches.
+-- Writers now only insert here (no conflicts, no shared rows); SessionTimeline.rollup moves deltas into
+-- session_timeline in the background, and reads add the deltas not rolled up yet.
+
+CREATE TABLE IF NOT EXISTS session_timeline_deltas (
+  id BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+  session_id UUID NOT NULL REFERENCES sessions(id) ON DELETE CASCADE,
+  minute_ts BIGINT NOT NULL,
+  kind VARCHAR(16) NOT NULL,
+  name VARCHAR(32) NOT NULL,
+  count INT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_session_timeline_deltas_session ON session_timeline_deltas(session_id);
@@ -0,0 +1,16 @@
+-- V18: Purge idempotency keys of dropped events partitions in the background
+-- Dropping a partition used to delete its event_idempotency_keys rows in the same transaction as the
+-- DETACH: one row-by-row DELETE per event on an unpartitioned table. Now the drop only records its range
+-- here; EventPartitionManager.purgeIdempotencyKeys deletes the keys of that range in small batches, each
+-- in its own short transaction, and removes the range when none are left.
+-- Cost: idx_event_idempotency_keys_ts is a third index every event insert maintains on this table
+-- (with the primary key and the session index), in exchange for range deletes that do not scan it.
+
+CREATE INDEX IF NOT EXISTS idx_event_idempotency_keys_ts ON event_idempotency_keys(ts);
+
+CREATE TABLE IF NOT EXISTS event_key_purges (
+  from_ts BIGINT NOT NULL,
+  to_ts BIGINT NOT NULL,
+  requested_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+  PRIMARY KEY (from_ts, to_ts)
+);
@@ -0,0 +1,31 @@
+-- Declarative rule definitions, compiled by RuleDefinitionRegistry into an in-memory table
+-- exam_id NULL = default rule; a row with exam_id overrides the default for that exam and event type
+-- score(count) = min(1.0, score_base + (count - threshold) / score_span)
+
+CREATE TABLE IF NOT EXISTS rule_definitions (
+  id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+  exam_id UUID REFERENCES exams(id) ON DELETE CASCADE,
+  event_type event_type NOT NULL,
+  incident_type incident_type NOT NULL,
+  window_seconds INT NOT NULL CHECK (window_seconds > 0),
+  threshold INT NOT NULL CHECK (threshold >= 0),
+  score_base NUMERIC(5,2) NOT NULL CHECK (score_base >= 0 AND score_base <= 1),
+  score_span INT NOT NULL CHECK (score_span > 0),
+  reason_template TEXT NOT NULL,
+  enabled BOOLEAN NOT NULL DEFAULT TRUE,
+  updated_at TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_rule_definitions_default
+ON rule_definitions(event_type) WHERE exam_id IS NULL;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_rule_definitions_exam
+ON rule_definitions(exam_id, event_type) WHERE exam_id IS NOT NULL;
+
+-- Defaults equal to the previously hard-coded RuleService constants
+-- reason_template arguments: count, window minutes, threshold
+INSERT INTO rule_definitions (exam_id, event_type, incident_type, window_seconds, threshold, score_base, score_span, reason_template)
+VALUES
+  (NULL, 'TAB_SWITCH', 'TAB_ABUSE', 300, 10, 0.50, 10, 'Tab switched %d times in %d minutes (threshold: %d)'),
+  (NULL, 'PASTE', 'PASTE', 120, 3, 0.60, 3, 'Pasted %d times in %d minutes (threshold: %d)')
+ON CONFLICT DO NOTHING;
@@ -0,0 +1,57 @@
+package com.example.exam.bench;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Minimal timing harness for the benchmarks in this package.
+ * They are plain main classes (not run by surefire), e.g.
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.exam.bench.IngestBulkBenchmark
+ */
+final class Bench {
+
+    private Bench() {}
+
+    @FunctionalInterface
+    interface Op {
+        void run(int iteration) throws Exception;
+    }
+
+    /**
+     * Run op warmup times untimed, then iterations times timed; print and return per-op stats
+     */
+    static Stats measure(String name, int warmup, int iterations, Op op) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            op.run(i);
+        }
+        long[] nanos = new long[iterations];
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            long t0 = System.nanoTime();
+            op.run(warmup + i);
+            nanos[i] = System.nanoTime() - t0;
+        }
+        long total = System.nanoTime() - start;
+        Arrays.sort(nanos);
+        Stats stats = new Stats(name, iterations, total,
+                nanos[iterations / 2], nanos[Math.min(iterations - 1, (int) (iterations * 0.99))]);
+        System.out.println(stats);
+        return stats;
+    }
+
+    static int intProp(String name, int def) {
+        return Integer.getInteger(name, def);
+    }
+
+    record Stats(String name, int iterations, long totalNanos, long p50Nanos, long p99Nanos) {
+        double opsPerSecond() {
+            return iterations / (totalNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-40s %8d ops  %10.1f ops/s  p50=%8.3f ms  p99=%8.3f ms",
+                    name, iterations, opsPerSecond(), p50Nanos / 1e6, p99Nanos / 1e6);
+        }
+    }
+}
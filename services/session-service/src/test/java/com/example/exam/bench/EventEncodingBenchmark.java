@@ -0,0 +1,67 @@
+package com.example.exam.bench;
+
+import com.example.exam.dto.EventIngestDto;
+import com.example.exam.model.EventType;
+import com.example.exam.service.EventBinaryCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * JSON vs the compact binary encoding for event batches: bytes per event and decode cost.
+ * No database needed; batch size and iterations via -Dbench.batch / -Dbench.iterations,
+ * share of events with details via -Dbench.detailsPercent.
+ */
+public class EventEncodingBenchmark {
+
+    private static final EventType[] TYPES = EventType.values();
+
+    public static void main(String[] args) throws Exception {
+        int batch = Bench.intProp("bench.batch", 500);
+        int iterations = Bench.intProp("bench.iterations", 2000);
+        int detailsPercent = Bench.intProp("bench.detailsPercent", 10);
+
+        ObjectMapper mapper = new ObjectMapper();
+        var request = new EventIngestDto.Request();
+        request.items = items(batch, detailsPercent);
+        byte[] json = mapper.writeValueAsBytes(request);
+        byte[] binary = EventBinaryCodec.encode(request.items);
+
+        System.out.printf(Locale.ROOT, "JSON   %8d bytes  %6.1f bytes/event%n", json.length, (double) json.length / batch);
+        System.out.printf(Locale.ROOT, "binary %8d bytes  %6.1f bytes/event  (%.1fx smaller)%n",
+                binary.length, (double) binary.length / batch, (double) json.length / binary.length);
+
+        var reader = mapper.readerFor(EventIngestDto.Request.class);
+        int warmup = iterations / 4;
+        var jsonStats = Bench.measure("JSON decode, batch=" + batch, warmup, iterations,
+                i -> reader.readValue(json));
+        var columns = Bench.measure("binary decode (columns), batch=" + batch, warmup, iterations,
+                i -> EventBinaryCodec.decode(binary));
+        var toItems = Bench.measure("binary decode + toRequest, batch=" + batch, warmup, iterations,
+                i -> EventBinaryCodec.decode(binary).toRequest());
+
+        System.out.printf(Locale.ROOT, "p50 per event: JSON %.0f ns, binary %.0f ns, binary+items %.0f ns%n",
+                (double) jsonStats.p50Nanos() / batch, (double) columns.p50Nanos() / batch,
+                (double) toItems.p50Nanos() / batch);
+    }
+
+    private static List<EventIngestDto.Item> items(int size, int detailsPercent) {
+        UUID sessionId = UUID.randomUUID();
+        long ts = System.currentTimeMillis();
+        List<EventIngestDto.Item> items = new ArrayList<>(size);
+        for (int j = 0; j < size; j++) {
+            var item = new EventIngestDto.Item();
+            item.sessionId = sessionId;
+            item.ts = ts + j * 137L;
+            item.eventType = TYPES[j % TYPES.length];
+            // Same key shape the exam UI sends
+            item.idempotencyKey = sessionId + "-" + item.eventType + "-" + item.ts;
+            if (j % 100 < detailsPercent) item.details = "{\"len\":" + j + ",\"source\":\"clipboard\"}";
+            items.add(item);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.exam.bench;
+
+import com.example.exam.service.IntegralImageFaceDetector;
+import com.example.exam.service.MediaStorageService;
+import com.example.exam.service.SyntheticSnapshots;
+
+import javax.imageio.ImageIO;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of IntegralImageFaceDetector (decode + detect) on a fixed corpus of JPEGs.
+ * -Dbench.corpus=DIR uses the JPEGs in DIR; otherwise a deterministic synthetic corpus of
+ * -Dbench.images 640x480 snapshots (0-2 faces) is written to a temp directory.
+ * Reports images/s on one thread (per core) and on -Dbench.threads threads.
+ */
+public class FaceDetectorBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int images = Bench.intProp("bench.images", 64);
+        int iterations = Bench.intProp("bench.iterations", 20);
+        int threads = Bench.intProp("bench.threads", Runtime.getRuntime().availableProcessors());
+        String corpusProp = System.getProperty("bench.corpus");
+
+        Path corpus = corpusProp != null ? Path.of(corpusProp) : syntheticCorpus(images);
+        List<String> keys;
+        try (Stream<Path> files = Files.list(corpus)) {
+            keys = files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(".jpg") || n.endsWith(".jpeg"))
+                    .sorted()
+                    .toList();
+        }
+        var detector = new IntegralImageFaceDetector(new MediaStorageService(corpus.toString()), 160);
+        System.out.println("Corpus: " + corpus + " (" + keys.size() + " images)");
+
+        var single = Bench.measure("detect, 1 thread (corpus pass)", 3, iterations, i -> {
+            for (String key : keys) detector.detectFaces(key);
+        });
+        System.out.println(String.format(Locale.ROOT, "  %.1f images/s per core", single.opsPerSecond() * keys.size()));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            var parallel = Bench.measure("detect, " + threads + " threads (corpus pass)", 3, iterations, i -> {
+                List<Future<Integer>> futures = new ArrayList<>(keys.size());
+                for (String key : keys) futures.add(pool.submit(() -> detector.detectFaces(key)));
+                for (Future<Integer> f : futures) f.get();
+            });
+            System.out.println(String.format(Locale.ROOT, "  %.1f images/s total", parallel.opsPerSecond() * keys.size()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Path syntheticCorpus(int images) throws Exception {
+        Path dir = Files.createTempDirectory("face-corpus");
+        for (int i = 0; i < images; i++) {
+            ImageIO.write(SyntheticSnapshots.render(640, 480, i % 3, i), "jpg", dir.resolve(String.format("%03d.jpg", i)).toFile());
+        }
+        return dir;
+    }
+}
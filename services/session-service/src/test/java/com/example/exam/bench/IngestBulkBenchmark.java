@@ -0,0 +1,70 @@
+package com.example.exam.bench;
+
+import com.example.exam.ExamApplication;
+import com.example.exam.dto.EventIngestDto;
+import com.example.exam.model.EventType;
+import com.example.exam.model.Session;
+import com.example.exam.model.SessionStatus;
+import com.example.exam.repository.SessionRepository;
+import com.example.exam.service.IngestService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compares the per-item ingest loop with the set-based bulk path on the same batches.
+ * Needs the dev Postgres (see application.yml); batch size and iterations via -Dbench.batch / -Dbench.iterations.
+ * A fraction of every batch (-Dbench.dupPercent) re-sends keys from the previous batch to exercise dedupe.
+ */
+public class IngestBulkBenchmark {
+
+    private static final EventType[] TYPES = {EventType.FOCUS, EventType.BLUR};
+
+    public static void main(String[] args) throws Exception {
+        int batch = Bench.intProp("bench.batch", 500);
+        int iterations = Bench.intProp("bench.iterations", 20);
+        int dupPercent = Bench.intProp("bench.dupPercent", 10);
+
+        try (var ctx = new SpringApplicationBuilder(ExamApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("dev")
+                .run(args)) {
+            var ingest = ctx.getBean(IngestService.class);
+            var sessions = ctx.getBean(SessionRepository.class);
+
+            Session s = new Session();
+            s.setExamId(UUID.fromString("aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee"));
+            s.setUserId("bench");
+            s.setStartedAt(Instant.now());
+            s.setStatus(SessionStatus.ACTIVE);
+            UUID sessionId = sessions.save(s).getId();
+
+            // FOCUS/BLUR only, so rule evaluation does not skew the comparison
+            Bench.measure("per-item loop, batch=" + batch, 3, iterations,
+                    i -> ingest.ingestEventsPerItem(batch(sessionId, "loop", i, batch, dupPercent)));
+            Bench.measure("bulk, batch=" + batch, 3, iterations,
+                    i -> ingest.ingestEventsBulk(batch(sessionId, "bulk", i, batch, dupPercent)));
+        }
+    }
+
+    private static EventIngestDto.Request batch(UUID sessionId, String prefix, int iteration, int size, int dupPercent) {
+        int dups = iteration == 0 ? 0 : size * dupPercent / 100;
+        List<EventIngestDto.Item> items = new ArrayList<>(size);
+        for (int j = 0; j < size; j++) {
+            int it = j < dups ? iteration - 1 : iteration;
+            var item = new EventIngestDto.Item();
+            item.sessionId = sessionId;
+            item.ts = ((long) it * size + j) * 10 + (prefix.equals("bulk") ? 1 : 0);
+            item.eventType = TYPES[j % TYPES.length];
+            item.idempotencyKey = prefix + "-" + sessionId + "-" + it + "-" + j;
+            items.add(item);
+        }
+        var req = new EventIngestDto.Request();
+        req.items = items;
+        return req;
+    }
+}
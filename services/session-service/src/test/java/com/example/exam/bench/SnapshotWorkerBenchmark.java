@@ -0,0 +1,99 @@
+package com.example.exam.bench;
+
+import com.example.exam.ExamApplication;
+import com.example.exam.config.RabbitMQConfig;
+import com.example.exam.dto.SnapshotMessage;
+import com.example.exam.model.MediaSnapshot;
+import com.example.exam.model.Session;
+import com.example.exam.model.SessionStatus;
+import com.example.exam.repository.MediaSnapshotRepository;
+import com.example.exam.repository.SessionRepository;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Snapshots/sec through the snapshot.process queue at 1, 4 and 16 consumers,
+ * per-message listener vs batch listener (snapshot.worker.batch.*).
+ * Needs the dev Postgres and RabbitMQ; a fresh context is started per configuration.
+ * Snapshot count and batch size via -Dbench.snapshots / -Dbench.batch.
+ */
+public class SnapshotWorkerBenchmark {
+
+    private static final int[] CONSUMERS = {1, 4, 16};
+
+    public static void main(String[] args) throws Exception {
+        int snapshots = Bench.intProp("bench.snapshots", 5000);
+        int batch = Bench.intProp("bench.batch", 32);
+
+        for (int consumers : CONSUMERS) {
+            run(args, false, consumers, batch, snapshots);
+            run(args, true, consumers, batch, snapshots);
+        }
+    }
+
+    private static void run(String[] args, boolean batchMode, int consumers, int batch, int count) throws Exception {
+        try (var ctx = new SpringApplicationBuilder(ExamApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("dev")
+                .properties(
+                        "snapshot.worker.batch.enabled=" + batchMode,
+                        "snapshot.worker.batch.concurrency=" + consumers,
+                        "snapshot.worker.batch.size=" + batch,
+                        "snapshot.worker.batch.prefetch=" + batch * 2,
+                        "spring.rabbitmq.listener.simple.concurrency=" + consumers,
+                        "spring.rabbitmq.listener.simple.max-concurrency=" + consumers,
+                        "spring.jpa.show-sql=false")
+                .run(args)) {
+            var sessions = ctx.getBean(SessionRepository.class);
+            var snapshotRepository = ctx.getBean(MediaSnapshotRepository.class);
+            var rabbit = ctx.getBean(RabbitTemplate.class);
+            var jdbc = ctx.getBean(JdbcTemplate.class);
+
+            Session s = new Session();
+            s.setExamId(UUID.fromString("aaaaaaaa-bbbb-cccc-dddd-eeeeeeeeeeee"));
+            s.setUserId("bench");
+            s.setStartedAt(Instant.now());
+            s.setStatus(SessionStatus.ACTIVE);
+            UUID sessionId = sessions.save(s).getId();
+
+            List<MediaSnapshot> seeded = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                MediaSnapshot m = new MediaSnapshot();
+                m.setSessionId(sessionId);
+                m.setTs((long) i);
+                m.setObjectKey("bench/" + sessionId + "/" + i + ".jpg");
+                m.setFileSize(1L);
+                m.setMimeType("image/jpeg");
+                m.setUploadedAt(Instant.now());
+                m.setIdempotencyKey("bench-" + sessionId + "-" + i);
+                seeded.add(m);
+            }
+            snapshotRepository.saveAll(seeded);
+
+            long start = System.nanoTime();
+            for (MediaSnapshot m : seeded) {
+                rabbit.convertAndSend(RabbitMQConfig.EXCHANGE_NAME, RabbitMQConfig.ROUTING_KEY,
+                        new SnapshotMessage(m.getId(), sessionId, m.getObjectKey(), m.getTs()));
+            }
+            Integer done;
+            do {
+                Thread.sleep(50);
+                done = jdbc.queryForObject(
+                        "SELECT count(*) FROM media_snapshots WHERE session_id = ? AND face_count IS NOT NULL",
+                        Integer.class, sessionId);
+            } while (done == null || done < count);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.println(String.format(Locale.ROOT, "%-10s consumers=%-3d %8d snapshots  %10.1f snapshots/s",
+                    batchMode ? "batch" : "single", consumers, count, count / seconds));
+        }
+    }
+}
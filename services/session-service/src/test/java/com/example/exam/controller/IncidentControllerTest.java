@@ -6,6 +6,8 @@ import com.example.exam.model.IncidentStatus;
 import com.example.exam.model.IncidentType;
 import com.example.exam.repository.IncidentRepository;
 import com.example.exam.repository.SessionRepository;
+import com.example.exam.service.AdminStatsService;
+import com.example.exam.service.IncidentFeed;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -25,6 +27,8 @@ import java.util.UUID;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -46,6 +50,12 @@ class IncidentControllerTest {
     @MockBean
     SessionRepository sessionRepository;
 
+    @MockBean
+    AdminStatsService adminStats;
+
+    @MockBean
+    IncidentFeed incidentFeed;
+
     @Test
     void createIncident_happyPath_returnsCreated() throws Exception {
         UUID sessionId = UUID.randomUUID();
@@ -100,7 +110,7 @@ class IncidentControllerTest {
     @Test
     void listIncidents_bySession_returnsOrdered() throws Exception {
         UUID sessionId = UUID.randomUUID();
-        when(incidentRepository.findBySessionIdOrderByTsAsc(eq(sessionId))).thenReturn(List.of(
+        when(incidentRepository.findSessionPageAfter(eq(sessionId), eq(Long.MIN_VALUE), any(UUID.class), eq(1001))).thenReturn(List.of(
                 buildIncident(sessionId, 2L, IncidentType.PASTE),
                 buildIncident(sessionId, 3L, IncidentType.TAB_ABUSE)
         ));
@@ -111,6 +121,33 @@ class IncidentControllerTest {
                 .andExpect(jsonPath("$[0].sessionId", is(sessionId.toString())));
     }
 
+    @Test
+    void listIncidents_withCursor_returnsNextPageAfterIt() throws Exception {
+        UUID sessionId = UUID.randomUUID();
+        Incident first = buildIncident(sessionId, 2L, IncidentType.PASTE);
+        Incident second = buildIncident(sessionId, 3L, IncidentType.TAB_ABUSE);
+        when(incidentRepository.findSessionPageAfter(eq(sessionId), eq(Long.MIN_VALUE), any(UUID.class), eq(2)))
+                .thenReturn(List.of(first, second));
+        when(incidentRepository.countBySessionId(sessionId)).thenReturn(2L);
+
+        String body = mvc.perform(get("/api/incidents").param("sessionId", sessionId.toString())
+                        .param("limit", "1").param("includeTotal", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].ts", is(2)))
+                .andExpect(jsonPath("$.total", is(2)))
+                .andReturn().getResponse().getContentAsString();
+        String cursor = om.readTree(body).get("nextCursor").asText();
+
+        when(incidentRepository.findSessionPageAfter(sessionId, 2L, first.getId(), 2)).thenReturn(List.of(second));
+        mvc.perform(get("/api/incidents").param("sessionId", sessionId.toString())
+                        .param("limit", "1").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].ts", is(3)))
+                .andExpect(jsonPath("$.nextCursor").value(nullValue()));
+        verify(incidentRepository, never()).findAll();
+    }
+
     @Test
     void getIncident_found_returns200() throws Exception {
         UUID id = UUID.randomUUID();
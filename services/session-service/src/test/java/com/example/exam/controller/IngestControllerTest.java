@@ -2,20 +2,27 @@ package com.example.exam.controller;
 
 import com.example.exam.dto.EventIngestDto;
 import com.example.exam.dto.SnapshotIngestDto;
+import com.example.exam.service.EventBinaryCodec;
+import com.example.exam.service.EventStreamIngestService;
+import com.example.exam.service.EventWriteBuffer;
 import com.example.exam.service.IngestService;
+import com.example.exam.service.MediaStorageService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -35,6 +42,15 @@ class IngestControllerTest {
     @MockBean
     IngestService ingestService;
 
+    @MockBean
+    MediaStorageService mediaStorageService;
+
+    @MockBean
+    EventWriteBuffer eventWriteBuffer;
+
+    @MockBean
+    EventStreamIngestService eventStreamIngestService;
+
     @Test
     void ingestEvents_happyPath() throws Exception {
         var id1 = UUID.randomUUID();
@@ -72,6 +88,21 @@ class IngestControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void ingestEvents_writeBehindFull_returns429() throws Exception {
+        when(eventWriteBuffer.isEnabled()).thenReturn(true);
+        when(eventWriteBuffer.submit(any(EventIngestDto.Request.class)))
+                .thenThrow(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Event buffer full, retry later"));
+
+        String body = "{ \"items\": [ { \"sessionId\": \"00000000-0000-0000-0000-000000000001\", " +
+                "\"ts\": 1, \"eventType\": \"BLUR\", \"idempotencyKey\": \"evt-2\" } ] }";
+
+        mvc.perform(post("/api/ingest/events")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isTooManyRequests());
+    }
+
     @Test
     void ingestSnapshots_happyPath() throws Exception {
         var id1 = UUID.randomUUID();
@@ -107,4 +138,48 @@ class IngestControllerTest {
                         .content(body))
                 .andExpect(status().isBadRequest());
     }
+
+    @Test
+    void uploadSnapshotStream_storesBodyAndIngests() throws Exception {
+        var id1 = UUID.randomUUID();
+        var sessionId = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        when(mediaStorageService.storeStream(any(), eq(3L), eq("image/jpeg"), eq(sessionId), eq(5L)))
+                .thenReturn(new MediaStorageService.StoredObject("k/1.jpg", 3, "abc", false));
+        when(ingestService.ingestSnapshots(any(SnapshotIngestDto.Request.class)))
+                .thenReturn(new SnapshotIngestDto.Result(1, 0, List.of(id1)));
+
+        mvc.perform(post("/api/ingest/snapshots/stream")
+                        .param("sessionId", sessionId.toString())
+                        .param("ts", "5")
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .content(new byte[]{1, 2, 3}))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.objectKey").value("k/1.jpg"))
+                .andExpect(jsonPath("$.size").value(3))
+                .andExpect(jsonPath("$.sha256").value("abc"));
+    }
+
+    @Test
+    void ingestEventsBinary_decodesToTheSameIngestPath() throws Exception {
+        var item = new EventIngestDto.Item();
+        item.sessionId = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        item.ts = 1L;
+        item.eventType = com.example.exam.model.EventType.TAB_SWITCH;
+        item.idempotencyKey = "evt-1";
+        var id1 = UUID.randomUUID();
+        when(ingestService.ingestEvents(any(EventIngestDto.Request.class)))
+                .thenReturn(new EventIngestDto.Result(1, 0, List.of(id1)));
+
+        mvc.perform(post("/api/ingest/events")
+                        .contentType(EventBinaryCodec.MEDIA_TYPE)
+                        .content(EventBinaryCodec.encode(List.of(item))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(1));
+
+        mvc.perform(post("/api/ingest/events")
+                        .contentType(EventBinaryCodec.MEDIA_TYPE)
+                        .content(new byte[]{1, 2, 3}))
+                .andExpect(status().isBadRequest());
+    }
 }
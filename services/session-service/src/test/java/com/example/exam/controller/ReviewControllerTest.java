@@ -1,10 +1,13 @@
 package com.example.exam.controller;
 
 import com.example.exam.dto.ReviewDto;
+import com.example.exam.model.Incident;
+import com.example.exam.model.IncidentStatus;
 import com.example.exam.model.Review;
 import com.example.exam.model.ReviewStatus;
 import com.example.exam.repository.IncidentRepository;
 import com.example.exam.repository.ReviewRepository;
+import com.example.exam.service.AdminStatsService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -43,11 +46,13 @@ class ReviewControllerTest {
     ReviewRepository reviewRepository;
     @MockBean
     IncidentRepository incidentRepository;
+    @MockBean
+    AdminStatsService adminStats;
 
     @Test
     void createReview_happyPath_returnsCreated() throws Exception {
         UUID incidentId = UUID.randomUUID();
-        when(incidentRepository.existsById(eq(incidentId))).thenReturn(true);
+        when(incidentRepository.findById(eq(incidentId))).thenReturn(Optional.of(openIncident()));
         when(reviewRepository.findByIncidentId(eq(incidentId))).thenReturn(Optional.empty());
         Mockito.lenient().when(reviewRepository.save(any())).thenAnswer(invocation -> {
             Review r = invocation.getArgument(0);
@@ -74,7 +79,7 @@ class ReviewControllerTest {
     @Test
     void createReview_incidentMissing_returns404() throws Exception {
         UUID incidentId = UUID.randomUUID();
-        when(incidentRepository.existsById(eq(incidentId))).thenReturn(false);
+        when(incidentRepository.findById(eq(incidentId))).thenReturn(Optional.empty());
 
         ReviewDto.CreateRequest req = new ReviewDto.CreateRequest();
         req.incidentId = incidentId;
@@ -89,7 +94,7 @@ class ReviewControllerTest {
     @Test
     void createReview_duplicate_returns409() throws Exception {
         UUID incidentId = UUID.randomUUID();
-        when(incidentRepository.existsById(eq(incidentId))).thenReturn(true);
+        when(incidentRepository.findById(eq(incidentId))).thenReturn(Optional.of(openIncident()));
         when(reviewRepository.findByIncidentId(eq(incidentId))).thenReturn(Optional.of(new Review()));
 
         ReviewDto.CreateRequest req = new ReviewDto.CreateRequest();
@@ -125,4 +130,11 @@ class ReviewControllerTest {
                 .andExpect(jsonPath("$.incidentId", is(incidentId.toString())))
                 .andExpect(jsonPath("$.status", is("REJECTED")));
     }
+
+    private static Incident openIncident() {
+        Incident incident = new Incident();
+        incident.setSessionId(UUID.randomUUID());
+        incident.setStatus(IncidentStatus.OPEN);
+        return incident;
+    }
 }
@@ -1,9 +1,15 @@
 package com.example.exam.controller;
 
+import com.example.exam.dto.CursorPage;
 import com.example.exam.dto.StartSessionRequest;
 import com.example.exam.model.Session;
 import com.example.exam.model.SessionStatus;
+import com.example.exam.repository.EventRepository;
 import com.example.exam.repository.SessionRepository;
+import com.example.exam.service.AdminStatsService;
+import com.example.exam.service.RuleWindowStore;
+import com.example.exam.service.SessionStatusCache;
+import com.example.exam.service.SessionTimeline;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,10 +21,13 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -37,6 +46,21 @@ class SessionControllerTest {
     @MockBean
     SessionRepository sessionRepository;
 
+    @MockBean
+    SessionStatusCache sessionStatusCache;
+
+    @MockBean
+    AdminStatsService adminStats;
+
+    @MockBean
+    EventRepository eventRepository;
+
+    @MockBean
+    SessionTimeline sessionTimeline;
+
+    @MockBean
+    RuleWindowStore ruleWindows;
+
     @Test
     void startSession_happyPath() throws Exception {
         UUID examId = UUID.fromString("11111111-1111-1111-1111-111111111111");
@@ -121,11 +145,40 @@ class SessionControllerTest {
         s.setUserId("22222222-2222-2222-2222-222222222222");
         s.setStartedAt(Instant.parse("2025-11-04T00:00:00Z"));
         s.setStatus(SessionStatus.ACTIVE);
-        when(sessionRepository.findAll()).thenReturn(List.of(s));
+        when(sessionRepository.findPageBefore(any(Instant.class), any(UUID.class), eq(1001))).thenReturn(List.of(s));
 
         mvc.perform(get("/api/sessions"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].status").value("ACTIVE"));
+                .andExpect(jsonPath("$[0].status").value("ACTIVE"))
+                .andExpect(header().doesNotExist(CursorPage.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void listSessions_withLimit_returnsCursorThatContinuesAfterTheLastSession() throws Exception {
+        Session newer = session(Instant.parse("2025-11-04T10:00:00.123456Z"));
+        Session older = session(Instant.parse("2025-11-04T09:00:00Z"));
+        when(sessionRepository.findPageBefore(any(Instant.class), any(UUID.class), eq(2)))
+                .thenReturn(List.of(newer, older));
+
+        String body = mvc.perform(get("/api/sessions").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty())
+                .andExpect(jsonPath("$.total").doesNotExist())
+                .andReturn().getResponse().getContentAsString();
+        String cursor = objectMapper.readTree(body).get("nextCursor").asText();
+
+        mvc.perform(get("/api/sessions").param("limit", "1").param("cursor", cursor))
+                .andExpect(status().isOk());
+        verify(sessionRepository).findPageBefore(newer.getStartedAt(), newer.getId(), 2);
+    }
+
+    @Test
+    void listSessions_invalidCursorOrLimit_returns400() throws Exception {
+        mvc.perform(get("/api/sessions").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/sessions").param("limit", "100000"))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
@@ -142,5 +195,30 @@ class SessionControllerTest {
         mvc.perform(post("/api/sessions/" + UUID.randomUUID() + "/end"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.status").value("ENDED"));
+        verify(ruleWindows).forget(s.getId());
+    }
+
+    @Test
+    void getTimeline_returnsMinutes_and404ForUnknownSession() throws Exception {
+        UUID id = UUID.randomUUID();
+        when(sessionTimeline.timeline(id)).thenReturn(List.of(new SessionTimeline.Minute(60_000L,
+                Map.of("TAB_SWITCH", 3), Map.of("0", 1), Map.of())));
+
+        mvc.perform(get("/api/sessions/" + id + "/timeline"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].minuteTs").value(60000))
+                .andExpect(jsonPath("$[0].events.TAB_SWITCH").value(3))
+                .andExpect(jsonPath("$[0].faces['0']").value(1));
+        mvc.perform(get("/api/sessions/" + UUID.randomUUID() + "/timeline"))
+                .andExpect(status().isNotFound());
+    }
+
+    private static Session session(Instant startedAt) {
+        Session s = new Session();
+        s.setExamId(UUID.fromString("11111111-1111-1111-1111-111111111111"));
+        s.setUserId("22222222-2222-2222-2222-222222222222");
+        s.setStartedAt(startedAt);
+        s.setStatus(SessionStatus.ACTIVE);
+        return s;
     }
 }
@@ -0,0 +1,76 @@
+package com.example.exam.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventRepositoryCustomImplTest {
+
+    private static final long FROM = 1_792_022_400_000L;
+    private static final long TO = FROM + 86_400_000L;
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void createEventPartition_locksDefaultPartitionBeforeMovingRows() {
+        // Arrange
+        var repository = new EventRepositoryCustomImpl(jdbcTemplate);
+
+        // Act
+        repository.createEventPartition("events_p20261014", FROM, TO);
+
+        // Assert
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute(startsWith("CREATE TABLE events_p20261014"));
+        order.verify(jdbcTemplate).execute("LOCK TABLE events_default IN SHARE ROW EXCLUSIVE MODE");
+        order.verify(jdbcTemplate).update(startsWith("WITH moved AS (DELETE FROM events_default"), eq(FROM), eq(TO));
+        order.verify(jdbcTemplate).execute(startsWith("ALTER TABLE events ATTACH PARTITION events_p20261014"));
+    }
+
+    @Test
+    void createEventPartition_attachFails_propagatesSoTheMoveRollsBack() {
+        // Arrange
+        var repository = new EventRepositoryCustomImpl(jdbcTemplate);
+        doAnswer(inv -> {
+            if (inv.<String>getArgument(0).startsWith("ALTER TABLE events ATTACH PARTITION")) {
+                throw new DataIntegrityViolationException("updated partition constraint for default partition would be violated");
+            }
+            return null;
+        }).when(jdbcTemplate).execute(anyString());
+
+        // Act + Assert
+        assertThatThrownBy(() -> repository.createEventPartition("events_p20261014", FROM, TO))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        verify(jdbcTemplate).execute("LOCK TABLE events_default IN SHARE ROW EXCLUSIVE MODE");
+        verify(jdbcTemplate, never()).execute(startsWith("DROP"));
+        verify(jdbcTemplate, times(3)).execute(anyString());
+    }
+
+    @Test
+    void dropEventPartition_recordsTheRangeInsteadOfDeletingKeys() {
+        // Arrange
+        var repository = new EventRepositoryCustomImpl(jdbcTemplate);
+
+        // Act
+        repository.dropEventPartition("events_p20261014", FROM, TO);
+
+        // Assert
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute("ALTER TABLE events DETACH PARTITION events_p20261014");
+        order.verify(jdbcTemplate).execute("DROP TABLE events_p20261014");
+        order.verify(jdbcTemplate).update(startsWith("INSERT INTO event_key_purges"), eq(FROM), eq(TO));
+        verify(jdbcTemplate, never()).update(contains("event_idempotency_keys"), any(Object[].class));
+    }
+}
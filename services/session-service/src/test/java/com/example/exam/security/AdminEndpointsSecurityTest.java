@@ -0,0 +1,157 @@
+package com.example.exam.security;
+
+import com.example.exam.config.SecurityConfig;
+import com.example.exam.controller.AdminStatsController;
+import com.example.exam.controller.EventImportController;
+import com.example.exam.controller.MediaAdminController;
+import com.example.exam.controller.RuleDefinitionController;
+import com.example.exam.controller.SessionExportController;
+import com.example.exam.controller.SnapshotAdminController;
+import com.example.exam.repository.MediaBlobRepository;
+import com.example.exam.repository.MediaSnapshotRepository;
+import com.example.exam.repository.RuleDefinitionRepository;
+import com.example.exam.repository.SessionRepository;
+import com.example.exam.service.AdminStatsService;
+import com.example.exam.service.EventImportService;
+import com.example.exam.service.MediaDedupStats;
+import com.example.exam.service.MediaStorageService;
+import com.example.exam.service.RuleDefinitionRegistry;
+import com.example.exam.service.RuleService;
+import com.example.exam.service.SessionExportService;
+import com.example.exam.service.SnapshotRetryRouter;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * /api/admin/** requires ROLE_ADMIN: one endpoint per admin controller, with the real SecurityConfig
+ */
+@WebMvcTest(controllers = {
+        EventImportController.class,
+        RuleDefinitionController.class,
+        MediaAdminController.class,
+        SnapshotAdminController.class,
+        AdminStatsController.class,
+        SessionExportController.class
+})
+@Import(SecurityConfig.class)
+@SuppressWarnings("null")
+class AdminEndpointsSecurityTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockBean
+    JwtDecoder jwtDecoder;
+    @MockBean
+    EventImportService importService;
+    @MockBean
+    RuleDefinitionRepository ruleDefinitionRepository;
+    @MockBean
+    RuleDefinitionRegistry ruleRegistry;
+    @MockBean
+    RuleService ruleService;
+    @MockBean
+    MediaStorageService storage;
+    @MockBean
+    MediaDedupStats dedupStats;
+    @MockBean
+    MediaBlobRepository blobRepository;
+    @MockBean
+    MediaSnapshotRepository snapshotRepository;
+    @MockBean
+    SnapshotRetryRouter retryRouter;
+    @MockBean
+    AdminStatsService adminStats;
+    @MockBean
+    SessionRepository sessionRepository;
+    @MockBean
+    SessionExportService exportService;
+
+    /** Controller under test, a request it serves and what an admin gets back from the mocked services */
+    static Stream<Arguments> endpoints() {
+        return Stream.of(
+                Arguments.of("EventImportController",
+                        post("/api/admin/events/import").contentType("text/csv").content(""), status().isOk()),
+                Arguments.of("RuleDefinitionController", get("/api/admin/rules"), status().isOk()),
+                Arguments.of("MediaAdminController", get("/api/admin/media/dedup-stats"), status().isOk()),
+                Arguments.of("SnapshotAdminController", get("/api/admin/snapshots/dead-letters"), status().isOk()),
+                Arguments.of("AdminStatsController", get("/api/admin/stats"), status().isOk()),
+                // No such session: reaching the controller at all is what matters
+                Arguments.of("SessionExportController",
+                        get("/api/admin/sessions/{id}/export", UUID.randomUUID()), status().isNotFound()));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("endpoints")
+    void withoutToken_should401(String controller, MockHttpServletRequestBuilder request, ResultMatcher asAdmin) throws Exception {
+        mockMvc.perform(request)
+                .andExpect(status().isUnauthorized());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("endpoints")
+    void withCandidateRole_should403(String controller, MockHttpServletRequestBuilder request, ResultMatcher asAdmin) throws Exception {
+        mockMvc.perform(request.with(jwt().authorities(new SimpleGrantedAuthority("ROLE_CANDIDATE"))))
+                .andExpect(status().isForbidden());
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("endpoints")
+    void withProctorRole_should403(String controller, MockHttpServletRequestBuilder request, ResultMatcher asAdmin) throws Exception {
+        mockMvc.perform(request.with(jwt().authorities(new SimpleGrantedAuthority("ROLE_PROCTOR"))))
+                .andExpect(status().isForbidden());
+    }
+
+    /** Every operation that changes rule definitions (TAB_SWITCH/PASTE thresholds) */
+    static Stream<MockHttpServletRequestBuilder> ruleChanges() {
+        String rule = """
+                {"eventType":"TAB_SWITCH","incidentType":"TAB_ABUSE","windowSeconds":300,"threshold":1000,
+                 "scoreBase":0.5,"scoreSpan":10,"reasonTemplate":"%d switches","enabled":false}""";
+        UUID id = UUID.randomUUID();
+        return Stream.of(
+                post("/api/admin/rules").contentType("application/json").content(rule),
+                put("/api/admin/rules/{id}", id).contentType("application/json").content(rule),
+                delete("/api/admin/rules/{id}", id),
+                post("/api/admin/rules/reload"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("ruleChanges")
+    void ruleChanges_withCandidateRole_should403AndLeaveRulesUntouched(MockHttpServletRequestBuilder request) throws Exception {
+        mockMvc.perform(request.with(jwt().authorities(new SimpleGrantedAuthority("ROLE_CANDIDATE"))))
+                .andExpect(status().isForbidden());
+
+        verifyNoInteractions(ruleDefinitionRepository);
+        verify(ruleRegistry, never()).reload();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("endpoints")
+    void withAdminRole_reachesController(String controller, MockHttpServletRequestBuilder request, ResultMatcher asAdmin) throws Exception {
+        mockMvc.perform(request.with(jwt().authorities(new SimpleGrantedAuthority("ROLE_ADMIN"))))
+                .andExpect(asAdmin);
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.exam.service;
+
+import com.example.exam.model.Incident;
+import com.example.exam.model.IncidentStatus;
+import com.example.exam.model.IncidentType;
+import com.example.exam.model.ReviewStatus;
+import com.example.exam.model.SessionStatus;
+import com.example.exam.repository.SessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdminStatsServiceTest {
+
+    private static final Instant NOW = Instant.parse("2026-10-14T12:00:30Z");
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+    @Mock
+    SessionRepository sessionRepository;
+    @Mock
+    Clock clock;
+
+    AdminStatsService stats;
+    UUID examId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        stats = new AdminStatsService(jdbcTemplate, new SessionExamCache(sessionRepository, 1000), 24, clock);
+    }
+
+    @Test
+    void reconcile_thenChanges_areAddedToTheBaseline() throws Exception {
+        // Arrange: 3 OPEN TAB_ABUSE incidents (2 without review) and 5 ACTIVE sessions in the database
+        when(clock.instant()).thenReturn(NOW);
+        ResultSet incidents = mock(ResultSet.class);
+        when(incidents.getObject("exam_id", UUID.class)).thenReturn(examId);
+        when(incidents.getString("type")).thenReturn("TAB_ABUSE");
+        when(incidents.getString("status")).thenReturn("OPEN");
+        when(incidents.getLong("total")).thenReturn(3L);
+        when(incidents.getLong("unreviewed")).thenReturn(2L);
+        ResultSet sessions = mock(ResultSet.class);
+        when(sessions.getObject("exam_id", UUID.class)).thenReturn(examId);
+        when(sessions.getLong("active")).thenReturn(5L);
+        doAnswer(inv -> {
+            inv.<RowCallbackHandler>getArgument(1).processRow(incidents);
+            return null;
+        }).when(jdbcTemplate).query(contains("FROM incidents"), any(RowCallbackHandler.class));
+        doAnswer(inv -> {
+            inv.<RowCallbackHandler>getArgument(1).processRow(sessions);
+            return null;
+        }).when(jdbcTemplate).query(contains("FROM sessions"), any(RowCallbackHandler.class));
+        UUID sessionId = UUID.randomUUID();
+        Incident incident = new Incident();
+        incident.setSessionId(sessionId);
+        incident.setType(IncidentType.NO_FACE);
+        incident.setStatus(IncidentStatus.OPEN);
+        Incident reviewed = new Incident();
+        reviewed.setSessionId(sessionId);
+        reviewed.setType(IncidentType.TAB_ABUSE);
+        reviewed.setStatus(IncidentStatus.OPEN);
+
+        // Act
+        stats.reconcile();
+        stats.sessionStarted(sessionId, examId);
+        stats.sessionEnded(UUID.randomUUID(), examId, SessionStatus.ACTIVE);
+        stats.sessionEnded(UUID.randomUUID(), examId, SessionStatus.ENDED);
+        stats.incidentsCreated(List.of(incident));
+        stats.incidentReviewed(reviewed, ReviewStatus.CONFIRMED);
+        var overview = stats.overview();
+        var exam = stats.exam(examId);
+
+        // Assert: the session's exam was known from its start, so no lookup was needed;
+        // the review moved one TAB_ABUSE incident from OPEN to CONFIRMED without waiting for a reconcile
+        assertThat(overview.activeSessions()).isEqualTo(5);
+        assertThat(overview.openReviewBacklog()).isEqualTo(2);
+        assertThat(overview.incidentsByType()).containsEntry(IncidentType.TAB_ABUSE, 3L)
+                .containsEntry(IncidentType.NO_FACE, 1L);
+        assertThat(overview.incidentsByStatus()).containsEntry(IncidentStatus.OPEN, 3L)
+                .containsEntry(IncidentStatus.CONFIRMED, 1L);
+        assertThat(overview.reconciledAt()).isEqualTo(NOW);
+        assertThat(exam.incidents().get(IncidentType.NO_FACE)).containsEntry(IncidentStatus.OPEN, 1L);
+        assertThat(exam.incidents().get(IncidentType.TAB_ABUSE)).containsEntry(IncidentStatus.OPEN, 2L)
+                .containsEntry(IncidentStatus.CONFIRMED, 1L);
+        assertThat(stats.exams()).containsExactly(examId);
+        verify(sessionRepository, never()).findExamIds(anyCollection());
+    }
+
+    @Test
+    void reconcile_failure_keepsChangesRecordedSince() {
+        // Arrange
+        doThrow(new QueryTimeoutException("timeout"))
+                .when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+        stats.sessionStarted(UUID.randomUUID(), examId);
+
+        // Act
+        stats.reconcile();
+        stats.sessionStarted(UUID.randomUUID(), examId);
+
+        // Assert
+        assertThat(stats.overview().activeSessions()).isEqualTo(2);
+        assertThat(stats.exam(examId).activeSessions()).isEqualTo(2);
+        assertThat(stats.overview().reconciledAt()).isNull();
+    }
+
+    @Test
+    void flushEventRate_writesFinishedMinutesOnlyAndReadsBackTheLastOne() {
+        // Arrange: 7 events at 12:00:30 and 2 at 12:01:10; flushed at 12:01:20
+        long minute = NOW.toEpochMilli();
+        when(clock.millis()).thenReturn(minute, minute, minute + 40_000, minute + 50_000);
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class), any(Timestamp.class))).thenReturn(List.of(12L));
+
+        // Act
+        stats.eventsIngested(4);
+        stats.eventsIngested(3);
+        stats.eventsIngested(2);
+        stats.flushEventRate();
+
+        // Assert: 12:00 is written with this node's 7 events; 12:01 is still counting
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(contains("event_rate_minutes"), rows.capture());
+        assertThat(rows.getValue()).singleElement().satisfies(row -> {
+            assertThat(row[0]).isEqualTo(Timestamp.from(Instant.parse("2026-10-14T12:00:00Z")));
+            assertThat(row[1]).isEqualTo(7L);
+        });
+        var overview = stats.overview();
+        assertThat(overview.eventsPerMinute()).isEqualTo(12);
+        assertThat(overview.eventsMinute()).isEqualTo(Instant.parse("2026-10-14T12:00:00Z"));
+    }
+}
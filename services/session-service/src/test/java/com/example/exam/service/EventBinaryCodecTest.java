@@ -0,0 +1,67 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.EventIngestDto;
+import com.example.exam.model.EventType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventBinaryCodecTest {
+
+    @Test
+    void roundTrip_keepsEveryFieldAndSharesRepeatedSessions() {
+        // Arrange: two sessions, ts going backwards once, details with non-ASCII text
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        List<EventIngestDto.Item> items = List.of(
+                item(a, 1_700_000_000_000L, EventType.TAB_SWITCH, "k1", null),
+                item(a, 1_700_000_000_250L, EventType.PASTE, "k2", "{\"text\":\"ünïcode\"}"),
+                item(b, 1_699_999_999_000L, EventType.BLUR, "k3", null),
+                item(b, 1_699_999_999_000L, EventType.FOCUS, "k4", null));
+
+        // Act
+        byte[] bytes = EventBinaryCodec.encode(items);
+        var decoded = EventBinaryCodec.decode(bytes).toRequest().items;
+
+        // Assert
+        assertThat(decoded).hasSize(4);
+        for (int i = 0; i < items.size(); i++) {
+            assertThat(decoded.get(i)).usingRecursiveComparison().isEqualTo(items.get(i));
+        }
+        assertThat(decoded.get(1).sessionId).isSameAs(decoded.get(0).sessionId);
+        // 2 sessions x 16 bytes, everything else a few bytes per event
+        assertThat(bytes.length).isLessThan(32 + 4 * 12 + 30);
+    }
+
+    @Test
+    void decode_rejectsCorruptInput() {
+        byte[] valid = EventBinaryCodec.encode(List.of(item(UUID.randomUUID(), 5, EventType.FOCUS, "k", null)));
+
+        assertThatThrownBy(() -> EventBinaryCodec.decode(new byte[]{1, 2, 3}))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("version 1");
+        assertThatThrownBy(() -> EventBinaryCodec.decode(Arrays.copyOf(valid, valid.length - 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EventBinaryCodec.decode(Arrays.copyOf(valid, valid.length + 1)))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Trailing");
+
+        byte[] badType = valid.clone();
+        badType[valid.length - 3] = 9; // event type byte, before key length and key
+        assertThatThrownBy(() -> EventBinaryCodec.decode(badType))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Unknown event type");
+    }
+
+    private static EventIngestDto.Item item(UUID sessionId, long ts, EventType type, String key, String details) {
+        var item = new EventIngestDto.Item();
+        item.sessionId = sessionId;
+        item.ts = ts;
+        item.eventType = type;
+        item.idempotencyKey = key;
+        item.details = details;
+        return item;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.exam.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventImportEncoderTest {
+
+    @Test
+    void ndjson_isConvertedToQuotedCsvRows() throws Exception {
+        // Arrange: object details, string details, a missing field and an unknown field
+        String ndjson = """
+                {"sessionId":"11111111-1111-1111-1111-111111111111","ts":1700000000000,"eventType":"PASTE","details":{"len":12,"text":"a \\"quote\\""},"idempotencyKey":"k1"}
+                {"sessionId":"11111111-1111-1111-1111-111111111111","ts":"1700000000001","eventType":"BLUR","details":"plain, text","idempotencyKey":"k2","extra":[1,2]}
+                {"sessionId":"11111111-1111-1111-1111-111111111111","eventType":"FOCUS","idempotencyKey":"k3"}
+                """;
+
+        // Act
+        String csv = encode(ndjson, EventImportService.Format.NDJSON);
+
+        // Assert
+        assertThat(csv.split("\n")).containsExactly(
+                "\"11111111-1111-1111-1111-111111111111\",\"1700000000000\",\"PASTE\",\"{\"\"len\"\":12,\"\"text\"\":\"\"a \\\"\"quote\\\"\"\"\"}\",\"k1\"",
+                "\"11111111-1111-1111-1111-111111111111\",\"1700000000001\",\"BLUR\",\"plain, text\",\"k2\"",
+                "\"11111111-1111-1111-1111-111111111111\",,\"FOCUS\",,\"k3\"");
+    }
+
+    @Test
+    void ndjson_rejectsNonObjectLines() {
+        assertThatThrownBy(() -> encode("{\"ts\":1}\n[1,2]\n", EventImportService.Format.NDJSON))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Event 2");
+        assertThatThrownBy(() -> encode("{\"ts\":1\n", EventImportService.Format.NDJSON))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Malformed NDJSON");
+    }
+
+    @Test
+    void csv_dropsHeaderAndPassesRowsThrough() throws Exception {
+        String rows = "11111111-1111-1111-1111-111111111111,1700000000000,PASTE,,k1\n";
+
+        assertThat(encode("session_id,ts,event_type,details,idempotency_key\n" + rows, EventImportService.Format.CSV))
+                .isEqualTo(rows);
+        assertThat(encode(rows, EventImportService.Format.CSV)).isEqualTo(rows);
+    }
+
+    private static String encode(String body, EventImportService.Format format) throws Exception {
+        var out = new ByteArrayOutputStream();
+        EventImportEncoder.encode(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
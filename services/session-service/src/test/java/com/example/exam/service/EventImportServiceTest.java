@@ -0,0 +1,114 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.EventImportDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventImportServiceTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+    @Mock
+    AdminStatsService adminStats;
+    @Mock
+    SessionTimeline timeline;
+    @Mock
+    Connection con;
+    @Mock
+    Statement statement;
+    @Mock
+    ResultSet merged;
+    @Captor
+    ArgumentCaptor<Collection<SessionTimeline.Count>> timelineCounts;
+
+    EventImportService importService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        importService = new EventImportService(jdbcTemplate, adminStats, timeline, 4096);
+        PGConnection pg = mock(PGConnection.class);
+        CopyManager copy = mock(CopyManager.class);
+        CopyIn copyIn = mock(CopyIn.class);
+        when(con.unwrap(PGConnection.class)).thenReturn(pg);
+        when(pg.getCopyAPI()).thenReturn(copy);
+        when(copy.copyIn(anyString())).thenReturn(copyIn);
+        when(copyIn.endCopy()).thenReturn(3L);
+        when(con.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(merged);
+        when(jdbcTemplate.execute(ArgumentMatchers.<ConnectionCallback<EventImportDto.Result>>any()))
+                .thenAnswer(inv -> inv.<ConnectionCallback<EventImportDto.Result>>getArgument(0).doInConnection(con));
+    }
+
+    @Test
+    void importEvents_countsInsertedRowsInStatsAndTimeline() throws Exception {
+        // Arrange: three valid rows, two inserted (summed per minute and type by the database), one duplicate
+        UUID sessionId = UUID.randomUUID();
+        when(merged.next()).thenReturn(true, true, false);
+        when(merged.getLong("valid_rows")).thenReturn(3L);
+        when(merged.getObject("session_id", UUID.class)).thenReturn(sessionId, sessionId);
+        when(merged.getLong("minute_ts")).thenReturn(60_000L, 60_000L);
+        when(merged.getString("event_type")).thenReturn("TAB_SWITCH", "PASTE");
+        when(merged.getInt("events")).thenReturn(1, 1);
+
+        // Act
+        var result = importService.importEvents(csv(sessionId), EventImportService.Format.CSV);
+
+        // Assert
+        assertThat(result.created).isEqualTo(2);
+        assertThat(result.duplicates).isEqualTo(1);
+        assertThat(result.rejected).isZero();
+        verify(adminStats).eventsIngested(2);
+        verify(timeline).eventsCounted(timelineCounts.capture());
+        assertThat(timelineCounts.getValue()).containsExactly(
+                new SessionTimeline.Count(sessionId, 60_000L, "TAB_SWITCH", 1),
+                new SessionTimeline.Count(sessionId, 60_000L, "PASTE", 1));
+    }
+
+    @Test
+    void importEvents_nothingInserted_countsNothing() throws Exception {
+        // Arrange: the single summary row has no inserted event in it
+        when(merged.next()).thenReturn(true, false);
+        when(merged.getLong("valid_rows")).thenReturn(3L);
+
+        // Act
+        var result = importService.importEvents(csv(UUID.randomUUID()), EventImportService.Format.CSV);
+
+        // Assert
+        assertThat(result.created).isZero();
+        assertThat(result.duplicates).isEqualTo(3);
+        verify(adminStats).eventsIngested(0);
+        verify(timeline).eventsCounted(timelineCounts.capture());
+        assertThat(timelineCounts.getValue()).isEmpty();
+    }
+
+    private static ByteArrayInputStream csv(UUID sessionId) {
+        String body = sessionId + ",60000,TAB_SWITCH,,k1\n" +
+                sessionId + ",61000,PASTE,,k2\n" +
+                sessionId + ",61000,PASTE,,k3\n";
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.exam.service;
+
+import com.example.exam.repository.EventRepository;
+import com.example.exam.repository.EventRepositoryCustom.EventPartition;
+import com.example.exam.repository.EventRepositoryCustom.KeyPurge;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventPartitionManagerTest {
+
+    // Wednesday
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2026-10-14T12:00:00Z"), ZoneOffset.UTC);
+    private static final long DAY = 86_400_000L;
+
+    @Mock
+    EventRepository eventRepository;
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    @Test
+    void precreate_daily_createsOnlyMissingDays() {
+        // Arrange: today and tomorrow exist, plus the default partition
+        long today = millis("2026-10-14");
+        when(eventRepository.findEventPartitions()).thenReturn(List.of(
+                new EventPartition("events_default", null, null),
+                new EventPartition("events_p20261014", today, today + DAY),
+                new EventPartition("events_p20261015", today + DAY, today + 2 * DAY)));
+        var manager = new EventPartitionManager(eventRepository, transactionManager, true,
+                EventPartitionManager.Interval.DAILY, 3, 100, CLOCK);
+
+        // Act
+        List<String> created = manager.precreate();
+
+        // Assert
+        assertThat(created).containsExactly("events_p20261016", "events_p20261017");
+        verify(eventRepository).createEventPartition("events_p20261016", today + 2 * DAY, today + 3 * DAY);
+        verify(eventRepository).createEventPartition("events_p20261017", today + 3 * DAY, today + 4 * DAY);
+        verifyNoMoreInteractions(ignoreStubs(eventRepository));
+    }
+
+    @Test
+    void precreate_weekly_startsOnMondayAndSkipsOverlaps() {
+        // Arrange: a daily partition from an earlier configuration covers part of this week
+        when(eventRepository.findEventPartitions()).thenReturn(List.of(
+                new EventPartition("events_p20261013", millis("2026-10-13"), millis("2026-10-14"))));
+        var manager = new EventPartitionManager(eventRepository, transactionManager, true,
+                EventPartitionManager.Interval.WEEKLY, 7, 100, CLOCK);
+
+        // Act
+        List<String> created = manager.precreate();
+
+        // Assert
+        assertThat(created).containsExactly("events_p20261019");
+        verify(eventRepository).createEventPartition("events_p20261019", millis("2026-10-19"), millis("2026-10-26"));
+    }
+
+    @Test
+    void precreate_attachFails_rollsBackAndCreatesTheRest() {
+        // Arrange: the first ATTACH finds rows for its range that are still in events_default
+        long today = millis("2026-10-14");
+        when(eventRepository.findEventPartitions()).thenReturn(List.of(new EventPartition("events_default", null, null)));
+        doThrow(new DataIntegrityViolationException("updated partition constraint for default partition would be violated"))
+                .when(eventRepository).createEventPartition("events_p20261014", today, today + DAY);
+        var manager = new EventPartitionManager(eventRepository, transactionManager, true,
+                EventPartitionManager.Interval.DAILY, 1, 100, CLOCK);
+
+        // Act
+        List<String> created = manager.precreate();
+
+        // Assert
+        assertThat(created).containsExactly("events_p20261015");
+        verify(transactionManager).rollback(any());
+        verify(transactionManager).commit(any());
+        verify(eventRepository).createEventPartition("events_p20261015", today + DAY, today + 2 * DAY);
+    }
+
+    @Test
+    void applyRetention_dropsPartitionsExpiredForEveryExamInThem() {
+        // Arrange: shortest retention 7 days; the 20-day-old partition holds an exam with 30 days
+        long now = CLOCK.millis();
+        when(eventRepository.minExamRetentionDays()).thenReturn(7);
+        when(eventRepository.findEventPartitions()).thenReturn(List.of(
+                new EventPartition("events_default", null, null),
+                new EventPartition("events_p20260901", millis("2026-09-01"), millis("2026-09-02")),
+                new EventPartition("events_p20260924", millis("2026-09-24"), millis("2026-09-25")),
+                new EventPartition("events_p20261013", millis("2026-10-13"), millis("2026-10-14"))));
+        when(eventRepository.maxRetentionDaysInEventPartition("events_p20260901")).thenReturn(30);
+        when(eventRepository.maxRetentionDaysInEventPartition("events_p20260924")).thenReturn(30);
+        var manager = new EventPartitionManager(eventRepository, transactionManager, true,
+                EventPartitionManager.Interval.DAILY, 7, 100, CLOCK);
+
+        // Act
+        List<String> dropped = manager.applyRetention();
+
+        // Assert
+        assertThat(dropped).containsExactly("events_p20260901");
+        verify(eventRepository).dropEventPartition("events_p20260901", millis("2026-09-01"), millis("2026-09-02"));
+        verify(eventRepository, never()).dropEventPartition(eq("events_p20260924"), anyLong(), anyLong());
+        verify(eventRepository, never()).purgeIdempotencyKeys(anyLong(), anyLong(), anyInt());
+        verify(eventRepository, never()).maxRetentionDaysInEventPartition("events_p20261013");
+        assertThat(now).isGreaterThan(millis("2026-10-13"));
+    }
+
+    @Test
+    void purgeIdempotencyKeys_deletesInBatchesUntilARangeIsDone() {
+        // Arrange: the first range needs two full batches and a short one; the second fails
+        long sep1 = millis("2026-09-01");
+        long sep2 = millis("2026-09-02");
+        when(eventRepository.findKeyPurges()).thenReturn(List.of(new KeyPurge(sep1, sep2), new KeyPurge(sep2, sep2 + DAY)));
+        when(eventRepository.purgeIdempotencyKeys(sep1, sep2, 100)).thenReturn(100, 100, 7);
+        when(eventRepository.purgeIdempotencyKeys(sep2, sep2 + DAY, 100)).thenThrow(new QueryTimeoutException("timeout"));
+        var manager = new EventPartitionManager(eventRepository, transactionManager, true,
+                EventPartitionManager.Interval.DAILY, 7, 100, CLOCK);
+
+        // Act
+        long deleted = manager.purgeIdempotencyKeys();
+
+        // Assert: the failed range stays recorded for the next run; nothing runs in a transaction
+        assertThat(deleted).isEqualTo(207);
+        verify(eventRepository, times(3)).purgeIdempotencyKeys(sep1, sep2, 100);
+        verify(eventRepository).completeKeyPurge(sep1, sep2);
+        verify(eventRepository, never()).completeKeyPurge(sep2, sep2 + DAY);
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    void disabled_doesNothing() {
+        var manager = new EventPartitionManager(eventRepository, transactionManager, false,
+                EventPartitionManager.Interval.DAILY, 7, 100, CLOCK);
+
+        assertThat(manager.precreate()).isEmpty();
+        assertThat(manager.applyRetention()).isEmpty();
+        assertThat(manager.purgeIdempotencyKeys()).isZero();
+        verify(eventRepository, never()).createEventPartition(anyString(), anyLong(), anyLong());
+        verifyNoInteractions(eventRepository);
+    }
+
+    private static long millis(String day) {
+        return LocalDate.parse(day).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+}
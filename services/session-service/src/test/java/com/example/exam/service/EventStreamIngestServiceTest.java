@@ -0,0 +1,144 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.EventIngestDto;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventStreamIngestServiceTest {
+
+    @Mock
+    IngestService ingestService;
+
+    ObjectMapper mapper = new ObjectMapper();
+    UUID sessionId = UUID.randomUUID();
+    List<Integer> chunkSizes = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        // Every event is created with a fresh id
+        lenient().when(ingestService.ingestEventItemsBulk(anyList())).thenAnswer(inv -> {
+            List<?> items = inv.getArgument(0);
+            chunkSizes.add(items.size());
+            UUID[] ids = new UUID[items.size()];
+            boolean[] created = new boolean[items.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = UUID.randomUUID();
+                created[i] = true;
+            }
+            return new IngestService.ItemOutcomes(ids, created);
+        });
+    }
+
+    @Test
+    void ingest_commitsInChunksOfMaxChunk() throws Exception {
+        // Arrange
+        var service = service(2);
+        var out = new ByteArrayOutputStream();
+
+        // Act
+        var summary = service.ingest(body(lines(1, 5)), out);
+
+        // Assert
+        assertThat(chunkSizes).containsExactly(2, 2, 1);
+        List<JsonNode> response = response(out);
+        assertThat(response).hasSize(4);
+        assertThat(response.get(1).get("seq").asLong()).isEqualTo(2);
+        assertThat(response.get(1).get("firstLine").asLong()).isEqualTo(3);
+        assertThat(response.get(1).get("ids")).hasSize(2);
+        assertThat(response.get(3).get("done").asBoolean()).isTrue();
+        assertThat(response.get(3).get("created").asLong()).isEqualTo(5);
+        assertThat(summary.lines).isEqualTo(5);
+        assertThat(summary.error).isNull();
+    }
+
+    @Test
+    void ingest_acksPendingEventsWhenTheClientPauses() throws Exception {
+        // Arrange: the second part only "arrives" after the first has been read completely
+        var service = service(100);
+        var out = new ByteArrayOutputStream();
+        InputStream in = new SequenceInputStream(body(lines(1, 2)), body(lines(3, 3)));
+
+        // Act
+        service.ingest(in, out);
+
+        // Assert
+        assertThat(chunkSizes).containsExactly(2, 1);
+        assertThat(response(out)).hasSize(3);
+    }
+
+    @Test
+    void ingest_stopsAtInvalidLineAfterCommittingEarlierOnes() throws Exception {
+        // Arrange: line 3 has no idempotencyKey
+        var service = service(100);
+        var out = new ByteArrayOutputStream();
+        String body = lines(1, 2) + "{\"sessionId\":\"" + sessionId + "\",\"ts\":3,\"eventType\":\"BLUR\"}\n" + lines(4, 4);
+
+        // Act
+        var summary = service.ingest(body(body), out);
+
+        // Assert
+        assertThat(chunkSizes).containsExactly(2);
+        assertThat(summary.lines).isEqualTo(3);
+        assertThat(summary.errorLine).isEqualTo(3);
+        assertThat(summary.error).contains("idempotencyKey");
+        assertThat(response(out).get(1).get("error").asText()).contains("idempotencyKey");
+    }
+
+    @Test
+    void ingest_reportsMalformedJson() throws Exception {
+        var service = service(100);
+        var out = new ByteArrayOutputStream();
+
+        var summary = service.ingest(body(lines(1, 1) + "{\"sessionId\": nope}\n"), out);
+
+        assertThat(chunkSizes).containsExactly(1);
+        assertThat(summary.error).startsWith("Malformed event");
+        assertThat(summary.errorLine).isEqualTo(2);
+    }
+
+    private EventStreamIngestService service(int maxChunk) {
+        return new EventStreamIngestService(ingestService, mapper,
+                Validation.buildDefaultValidatorFactory().getValidator(), maxChunk);
+    }
+
+    private String lines(int from, int to) {
+        var sb = new StringBuilder();
+        for (int i = from; i <= to; i++) {
+            sb.append("{\"sessionId\":\"").append(sessionId).append("\",\"ts\":").append(i)
+                    .append(",\"eventType\":\"TAB_SWITCH\",\"idempotencyKey\":\"evt-").append(i).append("\"}\n");
+        }
+        return sb.toString();
+    }
+
+    private static InputStream body(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<JsonNode> response(ByteArrayOutputStream out) throws Exception {
+        List<JsonNode> nodes = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            nodes.add(mapper.readTree(line));
+        }
+        return nodes;
+    }
+}
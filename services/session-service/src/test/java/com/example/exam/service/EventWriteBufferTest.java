@@ -0,0 +1,259 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.EventIngestDto;
+import com.example.exam.model.Event;
+import com.example.exam.model.EventType;
+import com.example.exam.repository.EventRepository;
+import com.example.exam.repository.IncidentRepository;
+import com.example.exam.repository.MediaSnapshotRepository;
+import com.example.exam.repository.RuleDefinitionRepository;
+import com.example.exam.repository.SessionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EventWriteBufferTest {
+
+    @Mock
+    IngestService ingestService;
+    @Mock
+    EventRepository eventRepository;
+    @Mock
+    MediaSnapshotRepository snapshotRepository;
+    @Mock
+    SnapshotOutbox snapshotOutbox;
+    @Mock
+    SessionRepository sessionRepository;
+    @Mock
+    IncidentRepository incidentRepository;
+    @Mock
+    RuleDefinitionRepository ruleDefinitionRepository;
+    @Mock
+    StringRedisTemplate redisTemplate;
+    @Mock
+    AdminStatsService adminStats;
+    @Mock
+    SessionTimeline timeline;
+
+    EventWriteBuffer buffer;
+
+    @AfterEach
+    void tearDown() {
+        if (buffer != null) buffer.stop();
+    }
+
+    @Test
+    void submit_groupCommitsRequestsAndSplitsResultsPerRequest() throws Exception {
+        // Arrange: long interval so both requests land in the same flush
+        buffer = new EventWriteBuffer(ingestService, true, 100, 200, 1000, "flush", 5000);
+        when(ingestService.ingestEventItemsBulk(anyList())).thenAnswer(inv -> {
+            List<EventIngestDto.Item> items = inv.getArgument(0);
+            UUID[] ids = new UUID[items.size()];
+            boolean[] created = new boolean[items.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = UUID.randomUUID();
+                created[i] = !items.get(i).idempotencyKey.startsWith("dup");
+            }
+            return new IngestService.ItemOutcomes(ids, created);
+        });
+        buffer.start();
+
+        // Act
+        var first = buffer.submit(request("a1", "dup-a2"));
+        var second = buffer.submit(request("b1"));
+
+        // Assert
+        var r1 = first.get(2, TimeUnit.SECONDS);
+        var r2 = second.get(2, TimeUnit.SECONDS);
+        assertThat(r1.created).isEqualTo(1);
+        assertThat(r1.duplicates).isEqualTo(1);
+        assertThat(r1.ids).hasSize(2);
+        assertThat(r2.created).isEqualTo(1);
+        assertThat(r2.ids).hasSize(1);
+        verify(ingestService, times(1)).ingestEventItemsBulk(anyList());
+        assertThat(buffer.size()).isZero();
+    }
+
+    @Test
+    void submit_whenFull_rejectsWith429() throws Exception {
+        // Arrange: block the flusher so the buffer cannot drain
+        buffer = new EventWriteBuffer(ingestService, true, 2, 1, 1, "enqueue", 5000);
+        var release = new CountDownLatch(1);
+        when(ingestService.ingestEventItemsBulk(anyList())).thenAnswer(inv -> {
+            release.await(2, TimeUnit.SECONDS);
+            List<EventIngestDto.Item> items = inv.getArgument(0);
+            return new IngestService.ItemOutcomes(new UUID[items.size()], new boolean[items.size()]);
+        });
+        buffer.start();
+
+        buffer.submit(request("k1"));
+        buffer.submit(request("k2"));
+
+        // Act / Assert
+        assertThatThrownBy(() -> buffer.submit(request("k3")))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+        release.countDown();
+    }
+
+    @Test
+    void submit_largerThanCapacity_rejectsWith413() {
+        // Arrange
+        buffer = new EventWriteBuffer(ingestService, true, 2, 200, 1000, "enqueue", 5000);
+        buffer.start();
+
+        // Act / Assert: could never fit, so no 429 retry hint; nothing was buffered
+        assertThatThrownBy(() -> buffer.submit(request("k1", "k2", "k3")))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        assertThat(buffer.size()).isZero();
+    }
+
+    @Test
+    void stop_drainsBufferedEvents() throws Exception {
+        // Arrange
+        buffer = new EventWriteBuffer(ingestService, true, 100, 10_000, 1000, "enqueue", 5000);
+        when(ingestService.ingestEventItemsBulk(anyList())).thenAnswer(inv -> {
+            List<EventIngestDto.Item> items = inv.getArgument(0);
+            return new IngestService.ItemOutcomes(new UUID[items.size()], new boolean[items.size()]);
+        });
+        buffer.start();
+        var pending = buffer.submit(request("k1"));
+
+        // Act
+        buffer.stop();
+
+        // Assert
+        assertThat(pending).isDone();
+        assertThatThrownBy(() -> buffer.submit(request("k2")))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    void flush_groupCommitFailsAndIsRetried_rulesCountEachEventOnce() throws Exception {
+        // Arrange: real ingest and rule path; the group transaction fails to commit
+        var txManager = new ResourcelessTransactionManager(1);
+        var windows = new RuleWindowStore(redisTemplate, false, 15);
+        var ruleService = new RuleService(new RuleDefinitionRegistry(ruleDefinitionRepository), windows,
+                sessionRepository, incidentRepository, adminStats, event -> { }, txManager, 1, 100, 1000);
+        var tx = new TransactionTemplate(txManager);
+        // Stands in for the @Transactional proxy
+        var transactional = new IngestService(eventRepository, snapshotRepository, ruleService, snapshotOutbox,
+                new SessionStatusCache(sessionRepository), adminStats, timeline) {
+            @Override
+            public ItemOutcomes ingestEventItemsBulk(List<EventIngestDto.Item> items) {
+                return tx.execute(status -> super.ingestEventItemsBulk(items));
+            }
+        };
+        UUID sessionId = UUID.randomUUID();
+        when(sessionRepository.findExistingIds(anyCollection())).thenReturn(List.of(sessionId));
+        when(eventRepository.insertAllIgnoringConflicts(anyCollection())).thenAnswer(inv -> {
+            Collection<Event> events = inv.getArgument(0);
+            return events.stream().map(Event::getId).collect(Collectors.toSet());
+        });
+        buffer = new EventWriteBuffer(transactional, true, 100, 200, 1000, "flush", 5000);
+        buffer.start();
+
+        // Act: 6 tab switches in two requests that share the failing group commit
+        var first = buffer.submit(tabSwitches(sessionId, 0, 3));
+        var second = buffer.submit(tabSwitches(sessionId, 3, 3));
+        var r1 = first.get(2, TimeUnit.SECONDS);
+        var r2 = second.get(2, TimeUnit.SECONDS);
+        ruleService.shutdown(); // waits for the evaluations queued after commit
+
+        // Assert: counted once per committed event (12 would have crossed the threshold of 10)
+        assertThat(r1.created + r2.created).isEqualTo(6);
+        verify(timeline, times(3)).eventsCreated(anyCollection());
+        assertThat(windows.count(sessionId, EventType.TAB_SWITCH, 6_000L, 300_000L)).isEqualTo(6);
+        verify(incidentRepository, never()).save(any());
+    }
+
+    private static EventIngestDto.Request tabSwitches(UUID sessionId, int from, int count) {
+        List<EventIngestDto.Item> items = new ArrayList<>();
+        for (int i = from; i < from + count; i++) {
+            var item = new EventIngestDto.Item();
+            item.sessionId = sessionId;
+            item.ts = 1_000L * (i + 1);
+            item.eventType = EventType.TAB_SWITCH;
+            item.idempotencyKey = "switch-" + i;
+            items.add(item);
+        }
+        var req = new EventIngestDto.Request();
+        req.items = items;
+        return req;
+    }
+
+    /**
+     * Transactions without a resource: synchronizations run on commit and are dropped on rollback.
+     * The first failingCommits commits throw, as a lost connection would.
+     */
+    private static final class ResourcelessTransactionManager extends AbstractPlatformTransactionManager {
+        private final AtomicInteger failingCommits;
+
+        ResourcelessTransactionManager(int failingCommits) {
+            this.failingCommits = new AtomicInteger(failingCommits);
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            if (failingCommits.getAndDecrement() > 0) {
+                throw new CannotCreateTransactionException("connection reset");
+            }
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+
+    private static EventIngestDto.Request request(String... keys) {
+        List<EventIngestDto.Item> items = new ArrayList<>();
+        for (String key : keys) {
+            var item = new EventIngestDto.Item();
+            item.sessionId = UUID.randomUUID();
+            item.ts = 1L;
+            item.eventType = EventType.BLUR;
+            item.idempotencyKey = key;
+            items.add(item);
+        }
+        var req = new EventIngestDto.Request();
+        req.items = items;
+        return req;
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.exam.service;
+
+import com.example.exam.config.RabbitMQConfig;
+import com.example.exam.dto.SnapshotMessage;
+import com.example.exam.model.Incident;
+import com.example.exam.model.IncidentType;
+import com.example.exam.model.MediaBlob;
+import com.example.exam.model.MediaSnapshot;
+import com.example.exam.repository.IncidentRepository;
+import com.example.exam.repository.MediaBlobRepository;
+import com.example.exam.repository.MediaSnapshotRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FaceDetectionWorkerTest {
+
+    @Mock
+    MediaSnapshotRepository snapshotRepository;
+    @Mock
+    IncidentRepository incidentRepository;
+    @Mock
+    MediaBlobRepository blobRepository;
+    @Mock
+    PlatformTransactionManager transactionManager;
+    @Mock
+    SnapshotRetryRouter retryRouter;
+    @Mock
+    AdminStatsService adminStats;
+    @Mock
+    ApplicationEventPublisher eventPublisher;
+    @Mock
+    SessionTimeline timeline;
+
+    MediaDedupStats dedupStats = new MediaDedupStats();
+    FaceDetectionWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        worker = new FaceDetectionWorker(snapshotRepository, incidentRepository, new RandomFaceDetector(),
+                blobRepository, dedupStats, transactionManager, retryRouter, adminStats, eventPublisher, timeline, 4, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        worker.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void processBatch_loadsOnceAndWritesBackInOneTransaction() {
+        // Arrange: 50 snapshots, one message redelivered twice
+        UUID sessionId = UUID.randomUUID();
+        List<MediaSnapshot> snapshots = new ArrayList<>();
+        List<SnapshotMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            MediaSnapshot s = new MediaSnapshot();
+            s.setSessionId(sessionId);
+            s.setTs(1_000L + i);
+            s.setObjectKey("snap-" + i + ".jpg");
+            snapshots.add(s);
+            messages.add(new SnapshotMessage(s.getId(), sessionId, s.getObjectKey(), s.getTs()));
+        }
+        messages.add(messages.get(0));
+        when(snapshotRepository.findAllById(anyCollection())).thenReturn(snapshots);
+        lenient().when(incidentRepository.findBySessionIdInAndTsIn(anyCollection(), anyCollection())).thenReturn(List.of());
+
+        // Act
+        int created = worker.processBatch(messages);
+
+        // Assert
+        ArgumentCaptor<Collection<UUID>> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(snapshotRepository, times(1)).findAllById(ids.capture());
+        assertThat(ids.getValue()).hasSize(50);
+        verify(snapshotRepository, times(1)).updateFaceCounts(snapshots);
+        assertThat(snapshots).allSatisfy(s -> assertThat(s.getFaceCount()).isNotNull());
+
+        long abnormal = snapshots.stream().filter(s -> s.getFaceCount() != 1).count();
+        ArgumentCaptor<Collection<Incident>> inserted = ArgumentCaptor.forClass(Collection.class);
+        verify(incidentRepository, times(1)).insertAll(inserted.capture());
+        assertThat(inserted.getValue()).hasSize((int) abnormal);
+        assertThat(created).isEqualTo(abnormal);
+        verify(transactionManager, times(1)).commit(any());
+        verify(snapshotRepository, never()).save(any());
+        verify(incidentRepository, never()).save(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void processBatch_skipsExistingIncidents() {
+        // Arrange: every snapshot already has an incident of the type it will get
+        UUID sessionId = UUID.randomUUID();
+        List<MediaSnapshot> snapshots = new ArrayList<>();
+        List<SnapshotMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            MediaSnapshot s = new MediaSnapshot();
+            s.setSessionId(sessionId);
+            s.setTs(2_000L + i);
+            s.setObjectKey("snap-" + i + ".jpg");
+            snapshots.add(s);
+            messages.add(new SnapshotMessage(s.getId(), sessionId, s.getObjectKey(), s.getTs()));
+        }
+        when(snapshotRepository.findAllById(anyCollection())).thenReturn(snapshots);
+        lenient().when(incidentRepository.findBySessionIdInAndTsIn(anyCollection(), anyCollection())).thenAnswer(inv -> {
+            List<Incident> existing = new ArrayList<>();
+            for (MediaSnapshot s : snapshots) {
+                if (s.getFaceCount() == 1) continue;
+                Incident incident = new Incident();
+                incident.setSessionId(sessionId);
+                incident.setTs(s.getTs());
+                incident.setType(s.getFaceCount() == 0
+                        ? IncidentType.NO_FACE
+                        : IncidentType.MULTI_FACE);
+                existing.add(incident);
+            }
+            return existing;
+        });
+
+        // Act
+        int created = worker.processBatch(messages);
+
+        // Assert
+        assertThat(created).isZero();
+        ArgumentCaptor<Collection<Incident>> inserted = ArgumentCaptor.forClass(Collection.class);
+        verify(incidentRepository, atMostOnce()).insertAll(inserted.capture());
+        inserted.getAllValues().forEach(v -> assertThat(v).isEmpty());
+    }
+
+    @Test
+    void processBatch_detectsEachContentOnceAndReusesRecordedCounts() {
+        // Arrange: "known" already has a face count, "fresh" appears twice and has none yet
+        AtomicInteger detectorCalls = new AtomicInteger();
+        worker.shutdown();
+        worker = new FaceDetectionWorker(snapshotRepository, incidentRepository,
+                key -> { detectorCalls.incrementAndGet(); return 1; },
+                blobRepository, dedupStats, transactionManager, retryRouter, adminStats, eventPublisher, timeline, 4, 1);
+        String known = "a".repeat(64);
+        String fresh = "b".repeat(64);
+        UUID sessionId = UUID.randomUUID();
+        List<MediaSnapshot> snapshots = new ArrayList<>();
+        List<SnapshotMessage> messages = new ArrayList<>();
+        for (String hash : List.of(known, known, fresh, fresh)) {
+            MediaSnapshot s = new MediaSnapshot();
+            s.setSessionId(sessionId);
+            s.setTs(3_000L + snapshots.size());
+            s.setObjectKey("cas/" + hash.substring(0, 2) + "/" + hash);
+            s.setContentHash(hash);
+            snapshots.add(s);
+            messages.add(new SnapshotMessage(s.getId(), sessionId, s.getObjectKey(), s.getTs()));
+        }
+        MediaBlob blob = new MediaBlob();
+        blob.setSha256(known);
+        blob.setFaceCount(2);
+        when(snapshotRepository.findAllById(anyCollection())).thenReturn(snapshots);
+        when(blobRepository.findAllById(anyCollection())).thenReturn(List.of(blob));
+        lenient().when(incidentRepository.findBySessionIdInAndTsIn(anyCollection(), anyCollection())).thenReturn(List.of());
+
+        // Act
+        worker.processBatch(messages);
+
+        // Assert
+        assertThat(detectorCalls.get()).isEqualTo(1);
+        assertThat(snapshots).extracting(MediaSnapshot::getFaceCount).containsExactly(2, 2, 1, 1);
+        verify(blobRepository).recordFaceCount(fresh, 1);
+        verify(blobRepository, never()).recordFaceCount(eq(known), anyInt());
+        assertThat(dedupStats.snapshot().detections()).isEqualTo(1);
+        assertThat(dedupStats.snapshot().detectionsReused()).isEqualTo(3);
+    }
+
+    @Test
+    void processSnapshot_failedDetection_opensNoTransactionAndRoutesToRetry() {
+        // Arrange: detection fails (e.g. the file is not there yet)
+        worker.shutdown();
+        worker = new FaceDetectionWorker(snapshotRepository, incidentRepository,
+                key -> { throw new IllegalStateException("missing " + key); },
+                blobRepository, dedupStats, transactionManager, retryRouter, adminStats, eventPublisher, timeline, 4, 1);
+        MediaSnapshot s = new MediaSnapshot();
+        s.setSessionId(UUID.randomUUID());
+        s.setTs(4_000L);
+        s.setObjectKey("late.jpg");
+        var message = new SnapshotMessage(s.getId(), s.getSessionId(), s.getObjectKey(), s.getTs());
+        when(snapshotRepository.findById(s.getId())).thenReturn(Optional.of(s));
+
+        // Act
+        worker.processSnapshot(message, 2);
+
+        // Assert
+        verifyNoInteractions(transactionManager);
+        verify(retryRouter).failed(eq(message), eq(RabbitMQConfig.Lane.LIVE), eq(2), any(IllegalStateException.class));
+        verify(snapshotRepository, never()).save(any());
+    }
+
+    @Test
+    void processSnapshot_detectsBeforeTheWriteTransactionAndRollsBackAFailedWrite() {
+        // Arrange: detection succeeds, the write fails
+        FaceDetector detector = mock(FaceDetector.class);
+        worker.shutdown();
+        worker = new FaceDetectionWorker(snapshotRepository, incidentRepository, detector,
+                blobRepository, dedupStats, transactionManager, retryRouter, adminStats, eventPublisher, timeline, 4, 1);
+        MediaSnapshot s = new MediaSnapshot();
+        s.setSessionId(UUID.randomUUID());
+        s.setTs(5_000L);
+        s.setObjectKey("ok.jpg");
+        var message = new SnapshotMessage(s.getId(), s.getSessionId(), s.getObjectKey(), s.getTs());
+        when(snapshotRepository.findById(s.getId())).thenReturn(Optional.of(s));
+        when(detector.detectFaces("ok.jpg")).thenReturn(2);
+        when(snapshotRepository.save(s)).thenThrow(new IllegalStateException("write failed"));
+
+        // Act
+        worker.processSnapshot(message, 1);
+
+        // Assert
+        var order = inOrder(detector, transactionManager);
+        order.verify(detector).detectFaces("ok.jpg");
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        verify(retryRouter).failed(eq(message), eq(RabbitMQConfig.Lane.LIVE), eq(1), any(IllegalStateException.class));
+    }
+
+    @Test
+    void processBatch_failedDetection_isReportedAndNotWrittenBack() {
+        // Arrange: one readable snapshot, one unreadable
+        worker.shutdown();
+        worker = new FaceDetectionWorker(snapshotRepository, incidentRepository,
+                key -> { if (key.startsWith("bad")) throw new IllegalStateException("unreadable"); return 1; },
+                blobRepository, dedupStats, transactionManager, retryRouter, adminStats, eventPublisher, timeline, 4, 1);
+        UUID sessionId = UUID.randomUUID();
+        List<MediaSnapshot> snapshots = new ArrayList<>();
+        List<SnapshotMessage> messages = new ArrayList<>();
+        for (String key : List.of("good.jpg", "bad.jpg")) {
+            MediaSnapshot s = new MediaSnapshot();
+            s.setSessionId(sessionId);
+            s.setTs(5_000L + snapshots.size());
+            s.setObjectKey(key);
+            snapshots.add(s);
+            messages.add(new SnapshotMessage(s.getId(), sessionId, key, s.getTs()));
+        }
+        when(snapshotRepository.findAllById(anyCollection())).thenReturn(snapshots);
+        Set<UUID> failed = new HashSet<>();
+
+        // Act
+        worker.processBatch(messages, RabbitMQConfig.Lane.BACKLOG, failed);
+
+        // Assert
+        assertThat(failed).containsExactly(snapshots.get(1).getId());
+        verify(snapshotRepository).updateFaceCounts(List.of(snapshots.get(0)));
+    }
+
+    @Test
+    void undeterminedFaceCount_raisesNoIncident() {
+        // Arrange: a grayscale frame the detector cannot judge
+        worker.shutdown();
+        worker = new FaceDetectionWorker(snapshotRepository, incidentRepository,
+                key -> key.startsWith("gray") ? FaceDetector.UNDETERMINED : 1,
+                blobRepository, dedupStats, transactionManager, retryRouter, adminStats, eventPublisher, timeline, 4, 1);
+        UUID sessionId = UUID.randomUUID();
+        List<MediaSnapshot> snapshots = new ArrayList<>();
+        List<SnapshotMessage> messages = new ArrayList<>();
+        for (String key : List.of("color.jpg", "gray.jpg")) {
+            MediaSnapshot s = new MediaSnapshot();
+            s.setSessionId(sessionId);
+            s.setTs(6_000L + snapshots.size());
+            s.setObjectKey(key);
+            snapshots.add(s);
+            messages.add(new SnapshotMessage(s.getId(), sessionId, key, s.getTs()));
+        }
+        when(snapshotRepository.findAllById(anyCollection())).thenReturn(snapshots);
+        when(snapshotRepository.findById(snapshots.get(1).getId())).thenReturn(Optional.of(snapshots.get(1)));
+        Set<UUID> failed = new HashSet<>();
+
+        // Act
+        worker.processBatch(messages, RabbitMQConfig.Lane.LIVE, failed);
+        worker.processSnapshot(messages.get(1));
+
+        // Assert: not a failure to retry, not NO_FACE, and no face count recorded
+        assertThat(failed).isEmpty();
+        assertThat(snapshots.get(1).getFaceCount()).isNull();
+        verify(snapshotRepository).updateFaceCounts(List.of(snapshots.get(0)));
+        verify(snapshotRepository, never()).save(any());
+        verify(incidentRepository, never()).save(any());
+        verify(incidentRepository, never()).insertAll(any());
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.exam.service;
+
+import com.example.exam.dto.IncidentDto;
+import com.example.exam.model.Incident;
+import com.example.exam.model.IncidentStatus;
+import com.example.exam.model.IncidentType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IncidentFeedTest {
+
+    @Mock
+    SessionExamCache sessionExams;
+    @Mock
+    StringRedisTemplate redisTemplate;
+
+    ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+    IncidentFeed feed;
+    UUID examId = UUID.randomUUID();
+    UUID sessionId = UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        if (feed != null) feed.shutdown();
+    }
+
+    @Test
+    void onIncident_deliversToMatchingSubscribersOnly() throws Exception {
+        // Arrange
+        feed = new IncidentFeed(sessionExams, redisTemplate, mapper, false, 16, 10, 60_000, 1, 5_000);
+        when(sessionExams.examOf(sessionId)).thenReturn(examId);
+        SseEmitter sameExam = mock(SseEmitter.class);
+        SseEmitter otherExam = mock(SseEmitter.class);
+        SseEmitter otherSession = mock(SseEmitter.class);
+        feed.subscribe(sameExam, examId, null);
+        feed.subscribe(otherExam, UUID.randomUUID(), null);
+        feed.subscribe(otherSession, null, UUID.randomUUID());
+
+        // Act: no transaction, so it is delivered right away
+        feed.onIncident(new IncidentRaised(incident(sessionId)));
+
+        // Assert
+        verify(sameExam, timeout(1000)).send(any(SseEmitter.SseEventBuilder.class));
+        verify(otherExam, never()).send(any(SseEmitter.SseEventBuilder.class));
+        verify(otherSession, never()).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void slowSubscriber_dropsOldestAndIsToldHowMany() throws Exception {
+        // Arrange: the first send blocks until 5 more incidents have arrived for a buffer of 2
+        feed = new IncidentFeed(sessionExams, redisTemplate, mapper, false, 2, 10, 60_000, 1, 5_000);
+        SseEmitter emitter = mock(SseEmitter.class);
+        CountDownLatch firstSend = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(inv -> {
+            if (firstSend.getCount() > 0) {
+                firstSend.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        feed.subscribe(emitter, null, sessionId);
+
+        // Act
+        feed.deliver(item("first"));
+        assertThat(firstSend.await(1, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i <= 5; i++) feed.deliver(item("late-" + i));
+        release.countDown();
+
+        // Assert: late-1..3 were dropped; the two newest are still sent
+        ArgumentCaptor<SseEmitter.SseEventBuilder> events = ArgumentCaptor.forClass(SseEmitter.SseEventBuilder.class);
+        verify(emitter, timeout(1000).times(4)).send(events.capture());
+        List<String> sent = events.getAllValues().stream().map(IncidentFeedTest::render).toList();
+        assertThat(sent.get(0)).contains("event:incident").contains("\"reason\":\"first\"");
+        assertThat(sent.get(1)).contains("event:dropped").contains("\"dropped\":3");
+        assertThat(sent.get(2)).contains("\"reason\":\"late-4\"");
+        assertThat(sent.get(3)).contains("\"reason\":\"late-5\"");
+    }
+
+    @Test
+    void fanout_publishesToRedisAndDeliversFromTheChannel() throws Exception {
+        // Arrange
+        feed = new IncidentFeed(sessionExams, redisTemplate, mapper, true, 16, 10, 60_000, 1, 5_000);
+        when(sessionExams.examOf(sessionId)).thenReturn(examId);
+        SseEmitter emitter = mock(SseEmitter.class);
+        feed.subscribe(emitter, examId, null);
+
+        // Act
+        feed.onIncident(new IncidentRaised(incident(sessionId)));
+
+        // Assert: nothing local until the message comes back on the channel
+        ArgumentCaptor<String> json = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(IncidentFeed.CHANNEL), json.capture());
+        verify(emitter, never()).send(any(SseEmitter.SseEventBuilder.class));
+        feed.onMessage(new DefaultMessage(IncidentFeed.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                json.getValue().getBytes(StandardCharsets.UTF_8)), null);
+        verify(emitter, timeout(1000)).send(any(SseEmitter.SseEventBuilder.class));
+    }
+
+    @Test
+    void failedSend_closesSubscription() throws Exception {
+        // Arrange
+        feed = new IncidentFeed(sessionExams, redisTemplate, mapper, false, 16, 10, 60_000, 1, 5_000);
+        SseEmitter emitter = mock(SseEmitter.class);
+        doThrow(new IOException("Broken pipe")).when(emitter).send(any(SseEmitter.SseEventBuilder.class));
+        // completeWithError is synchronized: wait on a latch, verify(timeout) would hold the mock's monitor
+        CountDownLatch closed = new CountDownLatch(1);
+        doAnswer(inv -> {
+            closed.countDown();
+            return null;
+        }).when(emitter).completeWithError(any(IOException.class));
+        feed.subscribe(emitter, null, null);
+
+        // Act
+        feed.deliver(item("gone"));
+
+        // Assert
+        assertThat(closed.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(feed.subscriberCount()).isZero();
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void stalledSends_areClosedAndDoNotHoldUpOtherSubscribers() throws Exception {
+        // Arrange: both send threads block on stalled clients; one ignores interrupts, like a socket write might
+        feed = new IncidentFeed(sessionExams, redisTemplate, mapper, false, 16, 10, 60_000, 2, 50);
+        CountDownLatch blocked = new CountDownLatch(2);
+        CountDownLatch unstick = new CountDownLatch(1);
+        SseEmitter interruptible = mock(SseEmitter.class);
+        doAnswer(inv -> {
+            blocked.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                throw new IOException("interrupted");
+            }
+            return null;
+        }).when(interruptible).send(any(SseEmitter.SseEventBuilder.class));
+        SseEmitter stuck = mock(SseEmitter.class);
+        doAnswer(inv -> {
+            blocked.countDown();
+            while (true) {
+                try {
+                    if (unstick.await(5, TimeUnit.SECONDS)) return null;
+                } catch (InterruptedException ignored) {
+                    // keeps blocking
+                }
+            }
+        }).when(stuck).send(any(SseEmitter.SseEventBuilder.class));
+        CountDownLatch closed = new CountDownLatch(2);
+        for (SseEmitter emitter : List.of(interruptible, stuck)) {
+            doAnswer(inv -> {
+                closed.countDown();
+                return null;
+            }).when(emitter).completeWithError(any(IOException.class));
+            feed.subscribe(emitter, null, sessionId);
+        }
+        feed.deliver(item("to the stalled ones"));
+        assertThat(blocked.await(1, TimeUnit.SECONDS)).isTrue();
+        SseEmitter healthy = mock(SseEmitter.class);
+        CountDownLatch received = new CountDownLatch(1);
+        doAnswer(inv -> {
+            received.countDown();
+            return null;
+        }).when(healthy).send(any(SseEmitter.SseEventBuilder.class));
+        feed.subscribe(healthy, null, null);
+        feed.deliver(item("to everyone"));
+        assertThat(received.await(200, TimeUnit.MILLISECONDS)).isFalse();
+
+        // Act
+        Thread.sleep(100);
+        int closedNow = feed.closeStalled();
+
+        // Assert: the healthy subscriber gets its incident on a replacement thread
+        assertThat(closedNow).isEqualTo(2);
+        assertThat(received.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(feed.subscriberCount()).isEqualTo(1);
+        unstick.countDown();
+        assertThat(closed.await(2, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private Incident incident(UUID sessionId) {
+        Incident incident = new Incident();
+        incident.setSessionId(sessionId);
+        incident.setTs(1000L);
+        incident.setType(IncidentType.NO_FACE);
+        incident.setStatus(IncidentStatus.OPEN);
+        return incident;
+    }
+
+    private IncidentDto.FeedItem item(String reason) {
+        IncidentDto.FeedItem item = IncidentDto.FeedItem.from(incident(sessionId), examId);
+        item.reason = reason;
+        return item;
+    }
+
+    private static String render(SseEmitter.SseEventBuilder event) {
+        return event.build().stream().map(part -> {
+            try {
+                return part.getData() instanceof String s ? s : new ObjectMapper().writeValueAsString(part.getData());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }).collect(Collectors.joining());
+    }
+}
@@ -1,28 +1,36 @@
 package com.example.exam.service;
 
+import com.example.exam.config.RabbitMQConfig;
 import com.example.exam.dto.EventIngestDto;
 import com.example.exam.dto.SnapshotIngestDto;
+import com.example.exam.dto.SnapshotMessage;
 import com.example.exam.model.Event;
 import com.example.exam.model.EventType;
 import com.example.exam.model.MediaSnapshot;
+import com.example.exam.model.SessionStatus;
 import com.example.exam.repository.EventRepository;
+import com.example.exam.repository.EventRepositoryCustom.EventRef;
 import com.example.exam.repository.MediaSnapshotRepository;
 import com.example.exam.repository.SessionRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,8 +42,19 @@ class IngestServiceTest {
     EventRepository eventRepository;
     @Mock
     MediaSnapshotRepository snapshotRepository;
+    @Mock
+    RuleService ruleService;
+    @Mock
+    SnapshotOutbox snapshotOutbox;
+    @Mock
+    AdminStatsService adminStats;
+    @Mock
+    SessionTimeline timeline;
+    @Captor
+    ArgumentCaptor<List<SnapshotMessage>> staged;
+    @Captor
+    ArgumentCaptor<Collection<Event>> evaluated;
 
-    @InjectMocks
     IngestService ingestService;
 
     UUID sessionId;
@@ -43,13 +62,16 @@ class IngestServiceTest {
     @BeforeEach
     void setUp() {
         sessionId = UUID.randomUUID();
+        // Cache disabled: plain existence queries, as before the cache existed
+        ingestService = new IngestService(eventRepository, snapshotRepository, ruleService, snapshotOutbox,
+                new SessionStatusCache(sessionRepository), adminStats, timeline);
     }
 
     @Test
     void ingestEvents_happyPath_createsAll_noDuplicates() {
         // Arrange
         when(sessionRepository.existsById(sessionId)).thenReturn(true);
-        when(eventRepository.findByIdempotencyKey(any())).thenReturn(Optional.empty());
+        when(eventRepository.claimIdempotencyKey(any(Event.class))).thenReturn(true);
         // save returns the same entity (ID is pre-generated in constructor)
         when(eventRepository.save(any(Event.class))).thenAnswer(inv -> inv.getArgument(0));
 
@@ -97,8 +119,10 @@ class IngestServiceTest {
         existing.setIdempotencyKey("dup-key");
         existing.setCreatedAt(Instant.now());
 
-        when(eventRepository.findByIdempotencyKey("dup-key")).thenReturn(Optional.of(existing));
-        when(eventRepository.findByIdempotencyKey("new-key")).thenReturn(Optional.empty());
+        when(eventRepository.claimIdempotencyKey(any(Event.class)))
+                .thenAnswer(inv -> !"dup-key".equals(inv.<Event>getArgument(0).getIdempotencyKey()));
+        when(eventRepository.findRefsByIdempotencyKeys(List.of("dup-key"))).thenReturn(List.of(new EventRef(
+                existing.getId(), sessionId, 100L, EventType.TAB_SWITCH, "dup-key")));
         when(eventRepository.save(any(Event.class))).thenAnswer(inv -> inv.getArgument(0));
 
         var dup = new EventIngestDto.Item();
@@ -128,6 +152,74 @@ class IngestServiceTest {
         assertThat(result.ids).contains(existing.getId());
 
         verify(eventRepository, times(1)).save(any(Event.class));
+        verify(eventRepository, never()).findBySessionIdAndTsAndEventType(sessionId, 100L, EventType.TAB_SWITCH);
+    }
+
+    @Test
+    void ingestEvents_naturalKeyDuplicate_releasesClaimAndReturnsExistingId() {
+        // Arrange
+        when(sessionRepository.existsById(sessionId)).thenReturn(true);
+        when(eventRepository.claimIdempotencyKey(any(Event.class))).thenReturn(true);
+
+        var existing = new Event();
+        existing.setSessionId(sessionId);
+        existing.setTs(100L);
+        existing.setEventType(EventType.PASTE);
+        existing.setIdempotencyKey("first-key");
+        when(eventRepository.findBySessionIdAndTsAndEventType(sessionId, 100L, EventType.PASTE))
+                .thenReturn(Optional.of(existing));
+
+        var item = new EventIngestDto.Item();
+        item.sessionId = sessionId;
+        item.ts = 100L;
+        item.eventType = EventType.PASTE;
+        item.details = null;
+        item.idempotencyKey = "retry-key";
+
+        var req = new EventIngestDto.Request();
+        req.items = List.of(item);
+
+        // Act
+        var result = ingestService.ingestEvents(req);
+
+        // Assert
+        assertThat(result.created).isZero();
+        assertThat(result.duplicates).isEqualTo(1);
+        assertThat(result.ids).containsExactly(existing.getId());
+        ArgumentCaptor<Event> claimed = ArgumentCaptor.forClass(Event.class);
+        verify(eventRepository).claimIdempotencyKey(claimed.capture());
+        verify(eventRepository).releaseIdempotencyKey(claimed.getValue());
+        verify(eventRepository, never()).save(any(Event.class));
+    }
+
+    @Test
+    void ingestEvents_keyClaimedConcurrently_countsDuplicateAndReturnsWinnerId() {
+        // Arrange
+        when(sessionRepository.existsById(sessionId)).thenReturn(true);
+        UUID winnerId = UUID.randomUUID();
+        // The claim loses to a writer that stored the key with a different ts
+        when(eventRepository.claimIdempotencyKey(any(Event.class))).thenReturn(false);
+        when(eventRepository.findRefsByIdempotencyKeys(List.of("k1")))
+                .thenReturn(List.of(new EventRef(winnerId, sessionId, 90L, EventType.PASTE, "k1")));
+
+        var item = new EventIngestDto.Item();
+        item.sessionId = sessionId;
+        item.ts = 100L;
+        item.eventType = EventType.PASTE;
+        item.details = null;
+        item.idempotencyKey = "k1";
+
+        var req = new EventIngestDto.Request();
+        req.items = List.of(item);
+
+        // Act
+        var result = ingestService.ingestEvents(req);
+
+        // Assert
+        assertThat(result.created).isZero();
+        assertThat(result.duplicates).isEqualTo(1);
+        assertThat(result.ids).containsExactly(winnerId);
+        verify(eventRepository, never()).save(any(Event.class));
     }
 
     @Test
@@ -155,12 +247,105 @@ class IngestServiceTest {
         verify(eventRepository, never()).save(any());
     }
 
+    @Test
+    void ingestEventsBulk_newAndKnownKeys_singleInsertAndSameResultContract() {
+        // Arrange
+        when(sessionRepository.findExistingIds(anyCollection())).thenReturn(List.of(sessionId));
+
+        var existingId = UUID.randomUUID();
+        when(eventRepository.findRefsByIdempotencyKeys(anyCollection()))
+                .thenReturn(List.of(new EventRef(existingId, sessionId, 100L, EventType.TAB_SWITCH, "dup-key")));
+        when(eventRepository.insertAllIgnoringConflicts(anyCollection()))
+                .thenAnswer(inv -> {
+                    java.util.Collection<Event> events = inv.getArgument(0);
+                    return new java.util.HashSet<>(events.stream().map(Event::getId).toList());
+                });
+
+        var dup = new EventIngestDto.Item();
+        dup.sessionId = sessionId;
+        dup.ts = 100L;
+        dup.eventType = EventType.TAB_SWITCH;
+        dup.idempotencyKey = "dup-key";
+
+        var fresh = new EventIngestDto.Item();
+        fresh.sessionId = sessionId;
+        fresh.ts = 101L;
+        fresh.eventType = EventType.PASTE;
+        fresh.details = "{}";
+        fresh.idempotencyKey = "new-key";
+
+        var repeated = new EventIngestDto.Item();
+        repeated.sessionId = sessionId;
+        repeated.ts = 101L;
+        repeated.eventType = EventType.PASTE;
+        repeated.idempotencyKey = "new-key";
+
+        var unknownSession = new EventIngestDto.Item();
+        unknownSession.sessionId = UUID.randomUUID();
+        unknownSession.ts = 102L;
+        unknownSession.eventType = EventType.FOCUS;
+        unknownSession.idempotencyKey = "other-key";
+
+        var req = new EventIngestDto.Request();
+        req.items = List.of(dup, fresh, repeated, unknownSession);
+
+        // Act
+        var result = ingestService.ingestEventsBulk(req);
+
+        // Assert
+        assertThat(result.created).isEqualTo(1);
+        assertThat(result.duplicates).isEqualTo(2);
+        assertThat(result.ids).hasSize(3);
+        assertThat(result.ids.get(0)).isEqualTo(existingId);
+        assertThat(result.ids.get(2)).isEqualTo(result.ids.get(1));
+
+        verify(sessionRepository, times(1)).findExistingIds(anyCollection());
+        verify(eventRepository, times(1)).insertAllIgnoringConflicts(anyCollection());
+        verify(eventRepository, never()).findRefsByNaturalKeys(anyCollection());
+        verify(eventRepository, never()).save(any());
+        verify(ruleService).evaluateAfterCommit(evaluated.capture());
+        assertThat(evaluated.getValue()).extracting(Event::getEventType).containsExactly(EventType.PASTE);
+    }
+
+    @Test
+    void ingestEventsBulk_compositeConflict_resolvedToExistingId() {
+        // Arrange
+        when(sessionRepository.findExistingIds(anyCollection())).thenReturn(List.of(sessionId));
+        when(eventRepository.findRefsByIdempotencyKeys(anyCollection())).thenReturn(List.of());
+        when(eventRepository.insertAllIgnoringConflicts(anyCollection())).thenReturn(Set.of());
+
+        var winnerId = UUID.randomUUID();
+        when(eventRepository.findRefsByNaturalKeys(anyCollection()))
+                .thenReturn(List.of(new EventRef(winnerId, sessionId, 100L, EventType.BLUR, "earlier-key")));
+
+        var item = new EventIngestDto.Item();
+        item.sessionId = sessionId;
+        item.ts = 100L;
+        item.eventType = EventType.BLUR;
+        item.idempotencyKey = "later-key";
+
+        var req = new EventIngestDto.Request();
+        req.items = List.of(item);
+
+        // Act
+        var result = ingestService.ingestEventsBulk(req);
+
+        // Assert
+        assertThat(result.created).isZero();
+        assertThat(result.duplicates).isEqualTo(1);
+        assertThat(result.ids).containsExactly(winnerId);
+        verify(ruleService).evaluateAfterCommit(evaluated.capture());
+        assertThat(evaluated.getValue()).isEmpty();
+    }
+
     @Test
     void ingestSnapshots_happyPath_createsAll_noDuplicates() {
         // Arrange
         when(sessionRepository.existsById(sessionId)).thenReturn(true);
         when(snapshotRepository.findByIdempotencyKey(any())).thenReturn(Optional.empty());
         when(snapshotRepository.save(any(MediaSnapshot.class))).thenAnswer(inv -> inv.getArgument(0));
+        var status = status(sessionId, SessionStatus.ACTIVE);
+        when(sessionRepository.findStatuses(anyCollection())).thenReturn(List.of(status));
 
         var s1 = new SnapshotIngestDto.Item();
         s1.sessionId = sessionId;
@@ -196,6 +381,39 @@ class IngestServiceTest {
         var saved = captor.getAllValues();
         assertThat(saved.get(0).getUploadedAt()).isNotNull();
         assertThat(saved.get(1).getUploadedAt()).isNotNull();
+
+        verify(snapshotOutbox).stage(staged.capture(), eq(RabbitMQConfig.Lane.LIVE));
+        verify(snapshotOutbox).stage(List.of(), RabbitMQConfig.Lane.BACKLOG);
+        assertThat(staged.getValue()).extracting(SnapshotMessage::objectKey).containsExactly("obj-1", "obj-2");
+        assertThat(staged.getValue()).extracting(SnapshotMessage::snapshotId).containsExactlyElementsOf(result.ids);
+    }
+
+    @Test
+    void ingestSnapshots_endedSession_stagedOnBacklogLane() {
+        // Arrange: late upload for a session that has already ended (kept even with reject-ended on)
+        when(sessionRepository.existsById(sessionId)).thenReturn(true);
+        when(snapshotRepository.findByIdempotencyKey(any())).thenReturn(Optional.empty());
+        when(snapshotRepository.save(any(MediaSnapshot.class))).thenAnswer(inv -> inv.getArgument(0));
+        var status = status(sessionId, SessionStatus.ENDED);
+        when(sessionRepository.findStatuses(anyCollection())).thenReturn(List.of(status));
+
+        var item = new SnapshotIngestDto.Item();
+        item.sessionId = sessionId;
+        item.ts = 123L;
+        item.objectKey = "late.jpg";
+        item.idempotencyKey = "late";
+
+        var req = new SnapshotIngestDto.Request();
+        req.items = List.of(item);
+
+        // Act
+        var result = ingestService.ingestSnapshots(req);
+
+        // Assert
+        assertThat(result.created).isEqualTo(1);
+        verify(snapshotOutbox).stage(List.of(), RabbitMQConfig.Lane.LIVE);
+        verify(snapshotOutbox).stage(
+                List.of(new SnapshotMessage(result.ids.get(0), sessionId, "late.jpg", 123L)), RabbitMQConfig.Lane.BACKLOG);
     }
 
     @Test
@@ -263,4 +481,11 @@ class IngestServiceTest {
         assertThat(result.ids).isEmpty();
         verify(snapshotRepository, never()).save(any());
     }
+
+    private static SessionRepository.StatusView status(UUID id, SessionStatus status) {
+        var view = mock(SessionRepository.StatusView.class);
+        lenient().when(view.getId()).thenReturn(id);
+        when(view.getStatus()).thenReturn(status);
+        return view;
+    }
 }
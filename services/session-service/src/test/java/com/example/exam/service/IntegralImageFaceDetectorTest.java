@@ -0,0 +1,94 @@
+package com.example.exam.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IntegralImageFaceDetectorTest {
+
+    @TempDir
+    Path uploadDir;
+
+    IntegralImageFaceDetector detector;
+
+    @BeforeEach
+    void setUp() {
+        detector = new IntegralImageFaceDetector(new MediaStorageService(uploadDir.toString()), 160);
+    }
+
+    @Test
+    void detect_countsFaces() {
+        for (long seed = 1; seed <= 5; seed++) {
+            assertThat(detector.detect(withDoor(SyntheticSnapshots.render(640, 480, 0, seed)))).as("seed %d", seed).isZero();
+            assertThat(detector.detect(SyntheticSnapshots.render(640, 480, 1, seed))).as("seed %d", seed).isEqualTo(1);
+            assertThat(detector.detect(SyntheticSnapshots.render(640, 480, 2, seed))).as("seed %d", seed).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void detectFaces_decodesStoredJpeg() throws Exception {
+        // Arrange
+        Files.createDirectories(uploadDir.resolve("s1"));
+        ImageIO.write(SyntheticSnapshots.render(1280, 720, 1, 7), "jpg", uploadDir.resolve("s1/a.jpg").toFile());
+
+        // Act
+        int faces = detector.detectFaces("s1/a.jpg");
+
+        // Assert
+        assertThat(faces).isEqualTo(1);
+    }
+
+    @Test
+    void detect_findsFacesAcrossSkinTones() {
+        Color[] tones = {
+                new Color(255, 224, 196), new Color(234, 192, 134), new Color(141, 85, 36),
+                new Color(110, 70, 50), new Color(92, 51, 23), new Color(70, 45, 30)
+        };
+        for (Color tone : tones) {
+            assertThat(detector.detect(SyntheticSnapshots.render(640, 480, 1, 4, tone))).as("%s", tone).isEqualTo(1);
+            assertThat(detector.detect(SyntheticSnapshots.render(640, 480, 2, 4, tone))).as("%s", tone).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void detect_withoutSkinColourIsUndetermined() {
+        // Arrange: a grayscale (or IR) frame of a face, and an empty colour frame with nothing skin-toned
+        BufferedImage gray = new BufferedImage(320, 240, BufferedImage.TYPE_BYTE_GRAY);
+        gray.getGraphics().drawImage(SyntheticSnapshots.render(320, 240, 1, 3), 0, 0, null);
+        BufferedImage empty = SyntheticSnapshots.render(320, 240, 0, 3);
+
+        // Act + Assert: the detector cannot see a face there, which is not the same as 0 faces
+        assertThat(detector.detect(gray)).isEqualTo(FaceDetector.UNDETERMINED);
+        assertThat(detector.detect(empty)).isEqualTo(FaceDetector.UNDETERMINED);
+    }
+
+    /**
+     * Skin-toned wooden door beside the empty chair, so the skin gate has something to look at
+     */
+    private static BufferedImage withDoor(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(205, 150, 110));
+        g.fillRect(image.getWidth() / 2, image.getHeight() / 8, image.getWidth() / 3, image.getHeight() * 7 / 8);
+        g.dispose();
+        return image;
+    }
+
+    @Test
+    void detectFaces_rejectsUnreadableAndEscapingKeys() throws Exception {
+        Files.writeString(uploadDir.resolve("broken.jpg"), "not an image");
+
+        assertThatThrownBy(() -> detector.detectFaces("broken.jpg")).isInstanceOf(UncheckedIOException.class);
+        assertThatThrownBy(() -> detector.detectFaces("../outside.jpg")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
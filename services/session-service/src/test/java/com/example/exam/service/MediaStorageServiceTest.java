@@ -0,0 +1,232 @@
+package com.example.exam.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MediaStorageServiceTest {
+
+    @TempDir
+    Path uploadDir;
+
+    @Test
+    void storeStream_writesFileWithSizeAndHash() throws Exception {
+        // Arrange: larger than the buffer so the copy loops
+        var storage = new MediaStorageService(uploadDir.toString(), 1024 * 1024, 4096);
+        byte[] image = new byte[100_000];
+        new Random(1).nextBytes(image);
+        UUID sessionId = UUID.randomUUID();
+
+        // Act
+        var stored = storage.storeStream(new ByteArrayInputStream(image), image.length, "image/jpeg", sessionId, 1_700_000_000_000L);
+
+        // Assert
+        assertThat(stored.objectKey()).startsWith(sessionId + "/2023/11/14/").endsWith(".jpg");
+        assertThat(stored.size()).isEqualTo(image.length);
+        assertThat(stored.sha256()).isEqualTo(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(image)));
+        assertThat(Files.readAllBytes(storage.resolve(stored.objectKey()))).isEqualTo(image);
+    }
+
+    @Test
+    void storeStream_moreUploadsThanPooledBuffers_fallBackToHeapAndStoreIntact() throws Exception {
+        // Arrange: one pooled buffer, held by an upload whose body stalls until the second upload is stored
+        var storage = new MediaStorageService(uploadDir.toString(), 1024 * 1024, 4096, false, new MediaDedupStats(),
+                false, 1024 * 1024, 60_000, true, 1);
+        byte[] first = new byte[20_000];
+        byte[] second = new byte[30_000];
+        new Random(2).nextBytes(first);
+        new Random(3).nextBytes(second);
+        var secondStored = new CountDownLatch(1);
+        InputStream stalled = new ByteArrayInputStream(first) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                try {
+                    secondStored.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.read(b, off, len);
+            }
+        };
+        var pending = CompletableFuture.supplyAsync(() -> {
+            try {
+                return storage.storeStream(stalled, first.length, "image/jpeg", UUID.randomUUID(), 1L);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        // Act
+        var stored = storage.storeStream(new ByteArrayInputStream(second), second.length, "image/jpeg", UUID.randomUUID(), 2L);
+        secondStored.countDown();
+        var storedFirst = pending.get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertThat(Files.readAllBytes(storage.resolve(stored.objectKey()))).isEqualTo(second);
+        assertThat(Files.readAllBytes(storage.resolve(storedFirst.objectKey()))).isEqualTo(first);
+    }
+
+    @Test
+    void storeStream_declaredLengthOverLimit_rejectedBeforeReading() {
+        var storage = new MediaStorageService(uploadDir.toString(), 1000, 256);
+        InputStream body = new ByteArrayInputStream(new byte[10]) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                throw new AssertionError("body must not be read");
+            }
+        };
+
+        assertThatThrownBy(() -> storage.storeStream(body, 5000, "image/jpeg", UUID.randomUUID(), 1L))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+    }
+
+    @Test
+    void storeStream_limitExceededMidStream_leavesNoFile() throws Exception {
+        // Arrange: chunked body (no Content-Length) that turns out too big
+        var storage = new MediaStorageService(uploadDir.toString(), 1000, 256);
+
+        // Act + Assert
+        assertThatThrownBy(() -> storage.storeStream(new ByteArrayInputStream(new byte[5000]), -1, "image/png", UUID.randomUUID(), 1L))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PAYLOAD_TOO_LARGE));
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            assertThat(files.filter(Files::isRegularFile)).isEmpty();
+        }
+    }
+
+    @Test
+    void prepareIngestRequest_streamsDataUrlsAndRawBase64ToDisk() throws Exception {
+        // Arrange: item fields in arbitrary order, one data URL (PNG bytes) and one raw base64 (JPEG bytes)
+        var storage = new MediaStorageService(uploadDir.toString(), 1024 * 1024, 4096);
+        UUID sessionId = UUID.randomUUID();
+        byte[] png = new byte[50_000];
+        new Random(2).nextBytes(png);
+        png[0] = (byte) 0x89; png[1] = 'P'; png[2] = 'N'; png[3] = 'G';
+        byte[] jpeg = new byte[3_000];
+        new Random(3).nextBytes(jpeg);
+        jpeg[0] = (byte) 0xFF; jpeg[1] = (byte) 0xD8; jpeg[2] = (byte) 0xFF;
+        String body = "{\"items\": [" +
+                "{\"imageBase64\": \"data:image/png;base64," + Base64.getEncoder().encodeToString(png) + "\"," +
+                " \"sessionId\": \"" + sessionId + "\", \"ts\": 1000, \"idempotencyKey\": \"data:not-a-url\"}," +
+                "{\"sessionId\": \"" + sessionId + "\", \"ts\": 2000, \"idempotencyKey\": \"k2\", \"faceCount\": 1," +
+                " \"imageBase64\": \"" + Base64.getEncoder().encodeToString(jpeg) + "\"}" +
+                "], \"extra\": {\"ignored\": [1, 2]}}";
+
+        // Act
+        var req = storage.prepareIngestRequest(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        // Assert
+        assertThat(req.items).hasSize(2);
+        var first = req.items.get(0);
+        assertThat(first.idempotencyKey).isEqualTo("data:not-a-url");
+        assertThat(first.mimeType).isEqualTo("image/png");
+        assertThat(first.objectKey).startsWith(sessionId + "/").endsWith(".png");
+        assertThat(first.fileSize).isEqualTo(png.length);
+        assertThat(Files.readAllBytes(storage.resolve(first.objectKey))).isEqualTo(png);
+        var second = req.items.get(1);
+        assertThat(second.mimeType).isEqualTo("image/jpeg");
+        assertThat(second.faceCount).isEqualTo(1);
+        assertThat(Files.readAllBytes(storage.resolve(second.objectKey))).isEqualTo(jpeg);
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            assertThat(files.filter(Files::isRegularFile)).hasSize(2);
+        }
+    }
+
+    @Test
+    void prepareIngestRequest_invalidItem_removesFilesOfTheRequest() throws Exception {
+        // Arrange: second item lacks its idempotencyKey
+        var storage = new MediaStorageService(uploadDir.toString(), 1024 * 1024, 4096);
+        String image = Base64.getEncoder().encodeToString(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 1, 2, 3});
+        String body = "{\"items\": [" +
+                "{\"sessionId\": \"" + UUID.randomUUID() + "\", \"ts\": 1, \"idempotencyKey\": \"a\", \"imageBase64\": \"" + image + "\"}," +
+                "{\"sessionId\": \"" + UUID.randomUUID() + "\", \"ts\": 2, \"imageBase64\": \"" + image + "\"}]}";
+
+        // Act + Assert
+        assertThatThrownBy(() -> storage.prepareIngestRequest(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))))
+                .isInstanceOf(IllegalArgumentException.class);
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            assertThat(files.filter(Files::isRegularFile)).isEmpty();
+        }
+    }
+
+    @Test
+    void contentAddressed_identicalUploadsShareOneObject() throws Exception {
+        // Arrange: same bytes from two sessions, once streamed and once as base64 JSON
+        var stats = new MediaDedupStats();
+        var storage = new MediaStorageService(uploadDir.toString(), 1024 * 1024, 4096, true, stats);
+        byte[] jpeg = new byte[20_000];
+        new Random(4).nextBytes(jpeg);
+        jpeg[0] = (byte) 0xFF; jpeg[1] = (byte) 0xD8; jpeg[2] = (byte) 0xFF;
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(jpeg));
+        String body = "{\"items\": [{\"sessionId\": \"" + UUID.randomUUID() + "\", \"ts\": 5, \"idempotencyKey\": \"k\"," +
+                " \"imageBase64\": \"" + Base64.getEncoder().encodeToString(jpeg) + "\"}]}";
+
+        // Act
+        var streamed = storage.storeStream(new ByteArrayInputStream(jpeg), jpeg.length, "image/jpeg", UUID.randomUUID(), 1L);
+        var item = storage.prepareIngestRequest(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))).items.get(0);
+
+        // Assert
+        assertThat(streamed.objectKey()).isEqualTo("cas/" + sha256.substring(0, 2) + "/" + sha256);
+        assertThat(streamed.contentHash()).isEqualTo(sha256);
+        assertThat(item.objectKey).isEqualTo(streamed.objectKey());
+        assertThat(item.contentHash).isEqualTo(sha256);
+        assertThat(item.mimeType).isEqualTo("image/jpeg");
+        assertThat(Files.readAllBytes(storage.resolve(item.objectKey))).isEqualTo(jpeg);
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            assertThat(files.filter(Files::isRegularFile)).hasSize(1);
+        }
+        assertThat(stats.snapshot().storedObjects()).isEqualTo(1);
+        assertThat(stats.snapshot().duplicateObjects()).isEqualTo(1);
+        assertThat(stats.snapshot().duplicateBytes()).isEqualTo(jpeg.length);
+        assertThat(stats.snapshot().duplicateRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    void contentAddressed_duplicateTouchesTheObjectAndASweptObjectIsStoredAgain() throws Exception {
+        // Arrange: one stored object, aged past any sweep cutoff
+        var stats = new MediaDedupStats();
+        var storage = new MediaStorageService(uploadDir.toString(), 1024 * 1024, 4096, true, stats);
+        byte[] jpeg = new byte[5_000];
+        new Random(5).nextBytes(jpeg);
+        var first = storage.storeStream(new ByteArrayInputStream(jpeg), jpeg.length, "image/jpeg", UUID.randomUUID(), 1L);
+        Path target = storage.resolve(first.objectKey());
+        Files.setLastModifiedTime(target, FileTime.fromMillis(0));
+
+        // Act: a duplicate upload, then another after the object was swept
+        storage.storeStream(new ByteArrayInputStream(jpeg), jpeg.length, "image/jpeg", UUID.randomUUID(), 2L);
+        long touched = Files.getLastModifiedTime(target).toMillis();
+        Files.delete(target);
+        var again = storage.storeStream(new ByteArrayInputStream(jpeg), jpeg.length, "image/jpeg", UUID.randomUUID(), 3L);
+
+        // Assert
+        assertThat(touched).isGreaterThan(0);
+        assertThat(again.objectKey()).isEqualTo(first.objectKey());
+        assertThat(Files.readAllBytes(target)).isEqualTo(jpeg);
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            assertThat(files.filter(Files::isRegularFile)).hasSize(1);
+        }
+        assertThat(stats.snapshot().storedObjects()).isEqualTo(2);
+        assertThat(stats.snapshot().duplicateObjects()).isEqualTo(1);
+    }
+}
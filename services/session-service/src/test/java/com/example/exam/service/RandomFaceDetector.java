@@ -0,0 +1,35 @@
+package com.example.exam.service;
+
+import java.util.Random;
+
+/**
+ * Test implementation of {@link FaceDetector} (the original stub): random face count, no image access
+ * Distribution:
+ * - 0 faces: 30% (candidate not looking at camera)
+ * - 1 face: 60% (normal)
+ * - 2 faces: 10% (someone helping)
+ */
+public class RandomFaceDetector implements FaceDetector {
+
+    private final Random random;
+
+    public RandomFaceDetector() {
+        this(new Random());
+    }
+
+    public RandomFaceDetector(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public int detectFaces(String objectKey) {
+        int rand = random.nextInt(100);
+        if (rand < 30) {
+            return 0; // No face
+        } else if (rand < 90) {
+            return 1; // Normal
+        } else {
+            return 2; // Multiple faces
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.exam.service;
+
+import com.example.exam.model.Event;
+import com.example.exam.model.EventType;
+import com.example.exam.model.Incident;
+import com.example.exam.model.IncidentType;
+import com.example.exam.model.RuleDefinition;
+import com.example.exam.model.Session;
+import com.example.exam.repository.IncidentRepository;
+import com.example.exam.repository.RuleDefinitionRepository;
+import com.example.exam.repository.SessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RuleServiceTest {
+
+    @Mock
+    StringRedisTemplate redisTemplate;
+    @Mock
+    IncidentRepository incidentRepository;
+    @Mock
+    SessionRepository sessionRepository;
+    @Mock
+    AdminStatsService adminStats;
+    @Mock
+    RuleDefinitionRepository ruleDefinitionRepository;
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    RuleDefinitionRegistry registry;
+    RuleService ruleService;
+    UUID sessionId;
+
+    @BeforeEach
+    void setUp() {
+        registry = new RuleDefinitionRegistry(ruleDefinitionRepository);
+        ruleService = new RuleService(registry, new RuleWindowStore(redisTemplate, false, 15), sessionRepository, incidentRepository,
+                adminStats, event -> { }, transactionManager, 1, 100, 1000);
+        sessionId = UUID.randomUUID();
+    }
+
+    @Test
+    void evaluateTabSwitch_countsAcrossMinuteBoundary() {
+        // Arrange: 11 switches within 2 minutes, straddling a minute boundary
+        Instant start = Instant.parse("2025-11-04T10:00:30Z");
+
+        // Act
+        for (int i = 0; i < 11; i++) {
+            ruleService.evaluate(sessionId, EventType.TAB_SWITCH, start.plusSeconds(i * 10L));
+        }
+
+        // Assert
+        ArgumentCaptor<Incident> captor = ArgumentCaptor.forClass(Incident.class);
+        verify(incidentRepository, times(1)).save(captor.capture());
+        assertThat(captor.getValue().getType()).isEqualTo(IncidentType.TAB_ABUSE);
+        assertThat(captor.getValue().getScore()).isEqualByComparingTo("0.6");
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void evaluateTabSwitch_eventsOutsideWindowDoNotCount() {
+        // Arrange: 6 switches, then 5 more just over 5 minutes later
+        Instant start = Instant.parse("2025-11-04T10:00:00Z");
+        for (int i = 0; i < 6; i++) {
+            ruleService.evaluate(sessionId, EventType.TAB_SWITCH, start.plusSeconds(i));
+        }
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            ruleService.evaluate(sessionId, EventType.TAB_SWITCH, start.plusSeconds(301 + i));
+        }
+
+        // Assert
+        verify(incidentRepository, never()).save(any());
+        assertThat(ruleService.getTabSwitchCount(UUID.randomUUID())).isZero();
+    }
+
+    @Test
+    void evaluatePaste_oneIncidentPerWindow() {
+        // Arrange
+        Instant start = Instant.parse("2025-11-04T10:00:00Z");
+
+        // Act: 8 pastes in 80 seconds, then 4 more after the 2-minute window has passed
+        for (int i = 0; i < 8; i++) {
+            ruleService.evaluate(sessionId, EventType.PASTE, start.plusSeconds(i * 10L));
+        }
+        for (int i = 0; i < 4; i++) {
+            ruleService.evaluate(sessionId, EventType.PASTE, start.plusSeconds(200 + i));
+        }
+
+        // Assert: first incident at the 4th paste, second only after the window
+        verify(incidentRepository, times(2)).save(any(Incident.class));
+    }
+
+    @Test
+    void evaluate_examOverrideReplacesDefault() {
+        // Arrange: this exam allows only 2 tab switches per minute; sessions of other exams keep the default
+        UUID examId = UUID.randomUUID();
+        Session session = new Session();
+        session.setExamId(examId);
+        when(sessionRepository.findById(sessionId)).thenReturn(Optional.of(session));
+        when(ruleDefinitionRepository.findByEnabledTrue()).thenReturn(List.of(
+                definition(null, 300, 10),
+                definition(examId, 60, 2)));
+        registry.reload();
+        Instant start = Instant.parse("2025-11-04T10:00:00Z");
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            ruleService.evaluate(sessionId, EventType.TAB_SWITCH, start.plusSeconds(i));
+        }
+
+        // Assert
+        ArgumentCaptor<Incident> captor = ArgumentCaptor.forClass(Incident.class);
+        verify(incidentRepository, times(1)).save(captor.capture());
+        assertThat(captor.getValue().getReason()).isEqualTo("3 tab switches within 1 minute(s), limit 2");
+        verify(sessionRepository, times(1)).findById(sessionId);
+    }
+
+    @Test
+    void evaluate_failedIncidentSaveReleasesClaim() {
+        // Arrange: the first save fails, e.g. the database is briefly unreachable
+        when(incidentRepository.save(any(Incident.class)))
+                .thenThrow(new DataAccessResourceFailureException("connection refused"))
+                .thenAnswer(inv -> inv.getArgument(0));
+        Instant start = Instant.parse("2025-11-04T10:00:00Z");
+
+        // Act: the 11th switch crosses the threshold but cannot be saved, the 12th can
+        for (int i = 0; i < 12; i++) {
+            ruleService.evaluate(sessionId, EventType.TAB_SWITCH, start.plusSeconds(i));
+        }
+
+        // Assert: the window was not marked as having an incident by the failed attempt
+        verify(incidentRepository, times(2)).save(any(Incident.class));
+        verify(adminStats, times(1)).incidentsCreated(anyList());
+    }
+
+    @Test
+    void evaluateAfterCommit_runsOffTheCallingThread() throws Exception {
+        // Arrange
+        Instant start = Instant.parse("2025-11-04T10:00:00Z");
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            Event e = new Event();
+            e.setSessionId(sessionId);
+            e.setEventType(EventType.TAB_SWITCH);
+            e.setTs(start.plusSeconds(i).toEpochMilli());
+            events.add(e);
+        }
+        Thread caller = Thread.currentThread();
+        List<Thread> savedOn = new ArrayList<>();
+        when(incidentRepository.save(any(Incident.class))).thenAnswer(inv -> {
+            savedOn.add(Thread.currentThread());
+            return inv.getArgument(0);
+        });
+
+        // Act
+        ruleService.evaluateAfterCommit(events);
+        ruleService.shutdown();
+
+        // Assert
+        assertThat(savedOn).hasSize(1);
+        assertThat(savedOn.get(0)).isNotSameAs(caller);
+    }
+
+    @Test
+    void evaluateAfterCommit_fullQueue_evaluatesEveryEvent() throws Exception {
+        // Arrange: one rule thread, one queue slot; the first batch raises an incident whose save blocks
+        RuleWindowStore windows = new RuleWindowStore(redisTemplate, false, 15);
+        RuleService small = new RuleService(registry, windows, sessionRepository, incidentRepository,
+                adminStats, event -> { }, transactionManager, 1, 1, 10);
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(incidentRepository.save(any(Incident.class))).thenAnswer(inv -> {
+            saving.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return inv.getArgument(0);
+        });
+        Instant start = Instant.parse("2025-11-04T10:00:00Z");
+        List<Event> burst = new ArrayList<>();
+        for (int i = 0; i < 11; i++) burst.add(event(sessionId, EventType.TAB_SWITCH, start.plusSeconds(i)));
+        small.evaluateAfterCommit(burst);
+        assertThat(saving.await(2, TimeUnit.SECONDS)).isTrue();
+
+        // Act: 20 more batches while the only rule thread is stuck
+        List<UUID> sessions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            UUID other = UUID.randomUUID();
+            sessions.add(other);
+            small.evaluateAfterCommit(List.of(event(other, EventType.PASTE, start), event(other, EventType.PASTE, start.plusSeconds(1))));
+        }
+        var stats = small.evaluationStats();
+        release.countDown();
+        small.shutdown();
+
+        // Assert: all but the queued batch ran on the caller; none was dropped
+        assertThat(stats.queuedBatches()).isEqualTo(1);
+        assertThat(stats.callerRuns()).isEqualTo(19);
+        for (UUID other : sessions) {
+            assertThat(windows.count(other, EventType.PASTE, start.plusSeconds(1).toEpochMilli(), 120_000L)).isEqualTo(2);
+        }
+        assertThat(windows.count(sessionId, EventType.TAB_SWITCH, start.plusSeconds(10).toEpochMilli(), 300_000L)).isEqualTo(11);
+        verify(incidentRepository, times(1)).save(any(Incident.class));
+    }
+
+    @Test
+    void evaluate_disabledRulesDoNothing() {
+        // Arrange: no enabled definitions in the database
+        when(ruleDefinitionRepository.findByEnabledTrue()).thenReturn(List.of());
+        registry.reload();
+
+        // Act
+        for (int i = 0; i < 20; i++) {
+            ruleService.evaluate(sessionId, EventType.PASTE, Instant.parse("2025-11-04T10:00:00Z").plusSeconds(i));
+        }
+
+        // Assert
+        verifyNoInteractions(incidentRepository, sessionRepository);
+    }
+
+    private static Event event(UUID sessionId, EventType type, Instant ts) {
+        Event e = new Event();
+        e.setSessionId(sessionId);
+        e.setEventType(type);
+        e.setTs(ts.toEpochMilli());
+        return e;
+    }
+
+    private static RuleDefinition definition(UUID examId, int windowSeconds, int threshold) {
+        RuleDefinition d = new RuleDefinition();
+        d.setExamId(examId);
+        d.setEventType(EventType.TAB_SWITCH);
+        d.setIncidentType(IncidentType.TAB_ABUSE);
+        d.setWindowSeconds(windowSeconds);
+        d.setThreshold(threshold);
+        d.setScoreBase(new BigDecimal("0.50"));
+        d.setScoreSpan(10);
+        d.setReasonTemplate("%d tab switches within %d minute(s), limit %d");
+        return d;
+    }
+}
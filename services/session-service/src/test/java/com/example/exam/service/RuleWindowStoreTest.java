@@ -0,0 +1,91 @@
+package com.example.exam.service;
+
+import com.example.exam.model.EventType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RuleWindowStoreTest {
+
+    @Mock
+    StringRedisTemplate redisTemplate;
+    @Mock
+    HashOperations<String, Object, Object> hashOps;
+
+    UUID sessionId;
+
+    @BeforeEach
+    void setUp() {
+        sessionId = UUID.randomUUID();
+    }
+
+    @Test
+    void examId_sessionWithoutExam_loadsOnce() {
+        // Arrange
+        var store = new RuleWindowStore(redisTemplate, false, 15);
+        var loads = new AtomicInteger();
+
+        // Act
+        UUID first = store.examId(sessionId, id -> { loads.incrementAndGet(); return null; });
+        UUID second = store.examId(sessionId, id -> { loads.incrementAndGet(); return null; });
+
+        // Assert
+        assertThat(first).isNull();
+        assertThat(second).isNull();
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void maintain_checkpointFails_keepsSessionAndWritesItAgain() throws Exception {
+        // Arrange: evict as soon as a session is idle; the first checkpoint write fails
+        var store = new RuleWindowStore(redisTemplate, true, 0);
+        when(redisTemplate.opsForHash()).thenReturn(hashOps);
+        when(hashOps.entries(anyString())).thenReturn(Map.of());
+        doThrow(new RedisConnectionFailureException("down")).doNothing().when(hashOps).putAll(anyString(), anyMap());
+        store.record(sessionId, EventType.PASTE, 1_000L, 60_000L);
+        Thread.sleep(5);
+
+        // Act + Assert: the unwritten changes keep the idle session in memory
+        store.maintain();
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.count(sessionId, EventType.PASTE, 1_000L, 60_000L)).isEqualTo(1);
+
+        // Act + Assert: written on the next run, then evicted
+        store.maintain();
+        verify(hashOps, times(2)).putAll(eq("session:" + sessionId + ":rulewindows"), eq(Map.of("PASTE", "1000")));
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    void record_afterEviction_startsFromCheckpointInNewEntry() throws Exception {
+        // Arrange
+        var store = new RuleWindowStore(redisTemplate, true, 0);
+        when(redisTemplate.opsForHash()).thenReturn(hashOps);
+        when(hashOps.entries(anyString())).thenReturn(Map.of(), Map.of("PASTE", "1000"));
+        store.record(sessionId, EventType.PASTE, 1_000L, 60_000L);
+        Thread.sleep(5);
+        store.maintain();
+
+        // Act
+        int count = store.record(sessionId, EventType.PASTE, 2_000L, 60_000L);
+
+        // Assert
+        assertThat(count).isEqualTo(2);
+        assertThat(store.size()).isEqualTo(1);
+    }
+}
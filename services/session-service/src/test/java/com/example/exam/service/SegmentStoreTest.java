@@ -0,0 +1,118 @@
+package com.example.exam.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void append_packsImagesIntoSegmentsAndReadsThemBack() throws Exception {
+        // Arrange: 10 images of 3000 bytes, segments of 10000 bytes -> 3 per segment
+        var store = new SegmentStore(dir.resolve("segments"), 10_000);
+        UUID sessionId = UUID.randomUUID();
+        List<byte[]> images = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            byte[] image = image(3000, i);
+            images.add(image);
+            keys.add(store.append(sessionId, 1000L + i, write(image), image.length));
+        }
+
+        // Assert
+        for (int i = 0; i < 10; i++) {
+            try (InputStream in = store.open(keys.get(i))) {
+                assertThat(in.readAllBytes()).isEqualTo(images.get(i));
+            }
+        }
+        assertThat(keys.get(0)).isEqualTo("seg/" + sessionId + "/1/0/3000");
+        assertThat(keys.get(3)).isEqualTo("seg/" + sessionId + "/2/0/3000");
+        try (Stream<Path> files = Files.list(dir.resolve("segments").resolve(sessionId.toString()))) {
+            assertThat(files.filter(f -> f.toString().endsWith(".seg"))).hasSize(4);
+        }
+    }
+
+    @Test
+    void reopen_truncatesBytesOfAnUnindexedAppend() throws Exception {
+        // Arrange: one indexed image, then garbage as if the process died mid-append
+        var store = new SegmentStore(dir.resolve("segments"), 1_000_000);
+        UUID sessionId = UUID.randomUUID();
+        String first = store.append(sessionId, 1L, write(image(500, 1)), 500);
+        store.closeAll();
+        Path segment = dir.resolve("segments").resolve(sessionId.toString()).resolve("000001.seg");
+        Files.write(segment, new byte[123], StandardOpenOption.APPEND);
+
+        // Act
+        var reopened = new SegmentStore(dir.resolve("segments"), 1_000_000);
+        byte[] next = image(700, 2);
+        String second = reopened.append(sessionId, 2L, write(next), next.length);
+
+        // Assert
+        assertThat(second).isEqualTo("seg/" + sessionId + "/1/500/700");
+        try (FileChannel ch = FileChannel.open(segment)) {
+            assertThat(ch.size()).isEqualTo(1200);
+        }
+        try (InputStream in = reopened.open(first)) {
+            assertThat(in.readAllBytes()).isEqualTo(image(500, 1));
+        }
+        try (InputStream in = reopened.open(second)) {
+            assertThat(in.readAllBytes()).isEqualTo(next);
+        }
+    }
+
+    @Test
+    void deleteSession_dropsItsSegmentsOnly() throws Exception {
+        // Arrange
+        var store = new SegmentStore(dir.resolve("segments"), 1_000);
+        UUID gone = UUID.randomUUID();
+        UUID kept = UUID.randomUUID();
+        for (int i = 0; i < 5; i++) {
+            store.append(gone, i, write(image(600, i)), 600);
+        }
+        String keptKey = store.append(kept, 1L, write(image(600, 9)), 600);
+
+        // Act
+        int deleted = store.deleteSession(gone);
+
+        // Assert: 5 segments, each with its index
+        assertThat(deleted).isEqualTo(10);
+        assertThat(dir.resolve("segments").resolve(gone.toString())).doesNotExist();
+        try (InputStream in = store.open(keptKey)) {
+            assertThat(in.readAllBytes()).isEqualTo(image(600, 9));
+        }
+        assertThatThrownBy(() -> store.open("seg/" + gone + "/1/0/99999"))
+                .isInstanceOf(java.nio.file.NoSuchFileException.class);
+        assertThatThrownBy(() -> store.open("seg/../../etc/0/1"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Path write(byte[] bytes) throws Exception {
+        Path f = Files.createTempFile(dir, "img-", ".part");
+        Files.write(f, bytes);
+        return f;
+    }
+
+    private static byte[] image(int size, int seed) {
+        byte[] b = new byte[size];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.exam.service;
+
+import com.example.exam.model.Session;
+import com.example.exam.model.SessionStatus;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionExportServiceTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+    @Mock
+    MediaStorageService storage;
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+    SessionExportService exportService;
+    Session session = new Session();
+
+    @BeforeEach
+    void setUp() {
+        exportService = new SessionExportService(jdbcTemplate, storage, mapper, transactionManager, 500, 1);
+        session.setExamId(UUID.randomUUID());
+        session.setUserId("user-1");
+        session.setStartedAt(Instant.parse("2026-10-18T09:00:00Z"));
+        session.setStatus(SessionStatus.ACTIVE);
+    }
+
+    @Test
+    void ndjson_writesSessionThenOneLinePerRow() throws Exception {
+        // Arrange: one event with jsonb details, one incident, no snapshots or reviews
+        ResultSet event = row();
+        when(event.getObject("id", UUID.class)).thenReturn(UUID.randomUUID());
+        when(event.getLong("ts")).thenReturn(1000L);
+        when(event.getString("event_type")).thenReturn("TAB_SWITCH");
+        when(event.getString("details")).thenReturn("{\"to\":\"other\"}");
+        when(event.getTimestamp("created_at")).thenReturn(Timestamp.from(Instant.parse("2026-10-18T09:00:01Z")));
+        ResultSet incident = row();
+        when(incident.getObject("id", UUID.class)).thenReturn(UUID.randomUUID());
+        when(incident.getLong("ts")).thenReturn(2000L);
+        when(incident.getString("type")).thenReturn("TAB_ABUSE");
+        when(incident.getString("status")).thenReturn("OPEN");
+        Map<String, ResultSet> rows = new LinkedHashMap<>();
+        rows.put("FROM events", event);
+        rows.put("FROM incidents", incident);
+        List<Integer> fetchSizes = stubQueries(rows);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        exportService.export(session, SessionExportService.Format.NDJSON, false, out);
+
+        // Assert
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) lines.add(mapper.readTree(line));
+        assertThat(lines).extracting(l -> l.get("kind").asText()).containsExactly("session", "event", "incident");
+        assertThat(lines.get(0).get("data").get("userId").asText()).isEqualTo("user-1");
+        assertThat(lines.get(1).get("data").get("details").get("to").asText()).isEqualTo("other");
+        assertThat(lines.get(2).get("data").get("type").asText()).isEqualTo("TAB_ABUSE");
+        assertThat(fetchSizes).containsOnly(500);
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void zip_copiesOneCsvPerTableAndAddsImages() throws Exception {
+        // Arrange
+        Connection con = mock(Connection.class);
+        PGConnection pg = mock(PGConnection.class);
+        CopyManager copy = mock(CopyManager.class);
+        when(con.unwrap(PGConnection.class)).thenReturn(pg);
+        when(pg.getCopyAPI()).thenReturn(copy);
+        when(copy.copyOut(anyString(), any(OutputStream.class))).thenAnswer(inv -> {
+            inv.<OutputStream>getArgument(1).write("id,ts\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        });
+        when(jdbcTemplate.execute(ArgumentMatchers.<ConnectionCallback<Long>>any()))
+                .thenAnswer(inv -> inv.<ConnectionCallback<Long>>getArgument(0).doInConnection(con));
+        UUID snapshotId = UUID.randomUUID();
+        ResultSet snapshot = row();
+        when(snapshot.getObject("id", UUID.class)).thenReturn(snapshotId);
+        when(snapshot.getLong("ts")).thenReturn(3000L);
+        when(snapshot.getString("mime_type")).thenReturn("image/jpeg");
+        when(snapshot.getString("object_key")).thenReturn("key.jpg");
+        stubQueries(Map.of("FROM media_snapshots", snapshot));
+        when(storage.open("key.jpg")).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        exportService.export(session, SessionExportService.Format.ZIP, true, out);
+
+        // Assert
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) entries.add(entry.getName());
+        }
+        assertThat(entries).containsExactly("session.json", "events.csv", "snapshots.csv", "incidents.csv",
+                "reviews.csv", "snapshots/3000-" + snapshotId + ".jpg");
+        // Images are read once the data transaction has released its connection
+        var order = inOrder(transactionManager, storage);
+        order.verify(transactionManager).commit(any());
+        order.verify(storage).open("key.jpg");
+        verify(copy).copyOut(contains("idempotency_key FROM events WHERE session_id = '" + session.getId() + "'"),
+                any(OutputStream.class));
+    }
+
+    @Test
+    void acquire_beyondMaxConcurrent_is503UntilASlotIsReleased() {
+        // Act + Assert: one slot configured
+        var slot = exportService.acquire();
+        assertThatThrownBy(exportService::acquire)
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(ex -> assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+        slot.close();
+        slot.close();
+        exportService.acquire().close();
+        assertThatCode(exportService::acquire).doesNotThrowAnyException();
+    }
+
+    /**
+     * Unstubbed columns read as null, like SQL NULLs
+     */
+    private static ResultSet row() {
+        return mock(ResultSet.class, withSettings().strictness(Strictness.LENIENT));
+    }
+
+    /**
+     * Feed each query whose SQL contains a key its one row; other queries return nothing
+     *
+     * @return fetch size set on each statement
+     */
+    private List<Integer> stubQueries(Map<String, ResultSet> rows) throws Exception {
+        List<Integer> fetchSizes = new ArrayList<>();
+        doAnswer(inv -> {
+            Connection con = mock(Connection.class);
+            PreparedStatement ps = mock(PreparedStatement.class);
+            String[] sql = new String[1];
+            when(con.prepareStatement(anyString())).thenAnswer(p -> {
+                sql[0] = p.getArgument(0);
+                return ps;
+            });
+            inv.<PreparedStatementCreator>getArgument(0).createPreparedStatement(con);
+            ArgumentCaptor<Integer> fetch = ArgumentCaptor.forClass(Integer.class);
+            verify(ps).setFetchSize(fetch.capture());
+            fetchSizes.add(fetch.getValue());
+            for (var e : rows.entrySet()) {
+                if (sql[0].contains(e.getKey())) inv.<RowCallbackHandler>getArgument(1).processRow(e.getValue());
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        return fetchSizes;
+    }
+}
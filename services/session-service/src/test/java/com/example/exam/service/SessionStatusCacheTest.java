@@ -0,0 +1,136 @@
+package com.example.exam.service;
+
+import com.example.exam.model.SessionStatus;
+import com.example.exam.repository.SessionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionStatusCacheTest {
+
+    @Mock
+    SessionRepository sessionRepository;
+    @Mock
+    StringRedisTemplate redisTemplate;
+
+    @Test
+    void accepting_loadsMissesOnceThenAnswersFromCache() {
+        // Arrange
+        var cache = new SessionStatusCache(sessionRepository, redisTemplate, true, true, 300, 100, false);
+        UUID active = UUID.randomUUID();
+        UUID ended = UUID.randomUUID();
+        UUID unknown = UUID.randomUUID();
+        when(sessionRepository.findStatuses(anyCollection())).thenReturn(List.of(
+                view(active, SessionStatus.ACTIVE), view(ended, SessionStatus.ENDED)));
+
+        // Act
+        Set<UUID> first = cache.accepting(List.of(active, ended, unknown));
+        boolean again = cache.accepts(active);
+        boolean endedAgain = cache.accepts(ended);
+
+        // Assert
+        assertThat(first).containsExactly(active);
+        assertThat(again).isTrue();
+        assertThat(endedAgain).isFalse();
+        verify(sessionRepository, times(1)).findStatuses(anyCollection());
+        verify(sessionRepository, never()).existsById(any());
+    }
+
+    @Test
+    void unknownSessions_areNotCached() {
+        // Arrange: the session appears after the first lookup (started on another node)
+        var cache = new SessionStatusCache(sessionRepository, redisTemplate, true, true, 300, 100, false);
+        UUID id = UUID.randomUUID();
+        when(sessionRepository.findStatuses(anyCollection()))
+                .thenReturn(List.of())
+                .thenReturn(List.of(view(id, SessionStatus.ACTIVE)));
+
+        // Act + Assert
+        assertThat(cache.accepts(id)).isFalse();
+        assertThat(cache.accepts(id)).isTrue();
+    }
+
+    @Test
+    void sessionEnded_rejectsLocallyAndPublishes_andMessagesApplyOnOtherNodes() {
+        // Arrange
+        var node1 = new SessionStatusCache(sessionRepository, redisTemplate, true, true, 300, 100, true);
+        var node2 = new SessionStatusCache(sessionRepository, redisTemplate, true, true, 300, 100, true);
+        UUID id = UUID.randomUUID();
+        node1.sessionStarted(id);
+        node2.sessionStarted(id);
+
+        // Act
+        node1.sessionEnded(id, SessionStatus.ENDED);
+        node2.onMessage(new DefaultMessage(SessionStatusCache.CHANNEL.getBytes(StandardCharsets.UTF_8),
+                (id + ":ENDED").getBytes(StandardCharsets.UTF_8)), null);
+
+        // Assert
+        verify(redisTemplate).convertAndSend(SessionStatusCache.CHANNEL, id + ":ENDED");
+        assertThat(node1.accepts(id)).isFalse();
+        assertThat(node2.accepts(id)).isFalse();
+        verifyNoInteractions(sessionRepository);
+    }
+
+    @Test
+    void rejectEndedOff_acceptsEndedSessions() {
+        var cache = new SessionStatusCache(sessionRepository, redisTemplate, true, false, 300, 100, false);
+        UUID id = UUID.randomUUID();
+        cache.sessionEnded(id, SessionStatus.ENDED);
+
+        assertThat(cache.accepts(id)).isTrue();
+    }
+
+    @Test
+    void exists_ignoresRejectEnded() {
+        var cache = new SessionStatusCache(sessionRepository, redisTemplate, true, true, 300, 100, false);
+        UUID ended = UUID.randomUUID();
+        cache.sessionEnded(ended, SessionStatus.ABORTED);
+        when(sessionRepository.findStatuses(anyCollection())).thenReturn(List.of());
+
+        assertThat(cache.accepts(ended)).isFalse();
+        assertThat(cache.exists(ended)).isTrue();
+        assertThat(cache.exists(UUID.randomUUID())).isFalse();
+    }
+
+    @Test
+    void staysBounded() {
+        var cache = new SessionStatusCache(sessionRepository, redisTemplate, true, true, 300, 50, false);
+        for (int i = 0; i < 500; i++) {
+            cache.sessionStarted(UUID.randomUUID());
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(50);
+    }
+
+    @Test
+    void disabled_usesExistenceQueries() {
+        var cache = new SessionStatusCache(sessionRepository);
+        UUID id = UUID.randomUUID();
+        when(sessionRepository.existsById(id)).thenReturn(true);
+        when(sessionRepository.findExistingIds(anyCollection())).thenReturn(List.of(id));
+
+        assertThat(cache.accepts(id)).isTrue();
+        assertThat(cache.accepting(List.of(id))).containsExactly(id);
+        verify(sessionRepository, never()).findStatuses(anyCollection());
+    }
+
+    private static SessionRepository.StatusView view(UUID id, SessionStatus status) {
+        return new SessionRepository.StatusView() {
+            public UUID getId() { return id; }
+            public SessionStatus getStatus() { return status; }
+        };
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.exam.service;
+
+import com.example.exam.model.Event;
+import com.example.exam.model.EventType;
+import com.example.exam.model.MediaSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SessionTimelineTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+
+    SessionTimeline timeline;
+    UUID sessionId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        timeline = new SessionTimeline(jdbcTemplate, 500);
+    }
+
+    @Test
+    void eventsCreated_sumsPerMinuteAndTypeInOneBatch() {
+        // Arrange: two tab switches in the first minute, one in the second, one blur in the first; rows come out in key order
+        List<Event> events = List.of(
+                event(1_000, EventType.TAB_SWITCH),
+                event(59_999, EventType.TAB_SWITCH),
+                event(60_000, EventType.TAB_SWITCH),
+                event(2_000, EventType.BLUR));
+
+        // Act
+        timeline.eventsCreated(events);
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO session_timeline_deltas "), rows.capture());
+        assertThat(rows.getValue()).containsExactly(
+                new Object[]{sessionId, 0L, "event", "BLUR", 1},
+                new Object[]{sessionId, 0L, "event", "TAB_SWITCH", 2},
+                new Object[]{sessionId, 60_000L, "event", "TAB_SWITCH", 1});
+    }
+
+    @Test
+    void eventsCounted_mergesPreSummedCounts() {
+        // Act
+        timeline.eventsCounted(List.of(
+                new SessionTimeline.Count(sessionId, 60_000L, "PASTE", 4),
+                new SessionTimeline.Count(sessionId, 0L, "BLUR", 2),
+                new SessionTimeline.Count(sessionId, 60_000L, "PASTE", 1)));
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        assertThat(rows.getValue()).containsExactly(
+                new Object[]{sessionId, 0L, "event", "BLUR", 2},
+                new Object[]{sessionId, 60_000L, "event", "PASTE", 5});
+    }
+
+    @Test
+    void facesDetected_bucketsFaceCountsAndSkipsUndetected() {
+        // Arrange
+        List<MediaSnapshot> snapshots = List.of(snapshot(0), snapshot(3), snapshot(2), snapshot(null));
+
+        // Act
+        timeline.facesDetected(snapshots);
+        timeline.facesDetected(List.of(snapshot(null)));
+
+        // Assert: nothing to write for the second call
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        assertThat(rows.getValue()).containsExactly(
+                new Object[]{sessionId, 0L, "faces", "0", 1},
+                new Object[]{sessionId, 0L, "faces", "2+", 2});
+    }
+
+    @Test
+    void timeline_groupsRowsIntoMinutes() throws Exception {
+        // Arrange
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("minute_ts")).thenReturn(0L, 0L, 60_000L);
+        when(rs.getString("kind")).thenReturn("event", "incident", "faces");
+        when(rs.getString("name")).thenReturn("TAB_SWITCH", "TAB_ABUSE", "1");
+        when(rs.getInt("count")).thenReturn(5, 1, 2);
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            for (int i = 0; i < 3; i++) handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(sessionId), eq(sessionId));
+
+        // Act
+        List<SessionTimeline.Minute> minutes = timeline.timeline(sessionId);
+
+        // Assert
+        assertThat(minutes).containsExactly(
+                new SessionTimeline.Minute(0L, Map.of("TAB_SWITCH", 5), Map.of(), Map.of("TAB_ABUSE", 1)),
+                new SessionTimeline.Minute(60_000L, Map.of(), Map.of("1", 2), Map.of()));
+    }
+
+    @Test
+    void rollup_movesBatchesUntilNoDeltasAreLeft() {
+        when(jdbcTemplate.update(anyString(), eq(500))).thenReturn(3, 2, 0);
+
+        assertThat(timeline.rollup()).isEqualTo(5);
+        verify(jdbcTemplate, times(3)).update(contains("FOR UPDATE SKIP LOCKED"), eq(500));
+    }
+
+    private Event event(long ts, EventType type) {
+        Event e = new Event();
+        e.setSessionId(sessionId);
+        e.setTs(ts);
+        e.setEventType(type);
+        return e;
+    }
+
+    private MediaSnapshot snapshot(Integer faceCount) {
+        MediaSnapshot s = new MediaSnapshot();
+        s.setSessionId(sessionId);
+        s.setTs(500L);
+        s.setFaceCount(faceCount);
+        return s;
+    }
+}
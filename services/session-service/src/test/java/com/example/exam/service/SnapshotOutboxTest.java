@@ -0,0 +1,112 @@
+package com.example.exam.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpTimeoutException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SnapshotOutboxTest {
+
+    @Mock
+    JdbcTemplate jdbcTemplate;
+    @Mock
+    RabbitTemplate rabbitTemplate;
+    @Mock
+    RabbitOperations channel;
+    @Mock
+    PlatformTransactionManager transactionManager;
+
+    SnapshotOutbox outbox;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        outbox = new SnapshotOutbox(jdbcTemplate, rabbitTemplate, new ObjectMapper(), transactionManager,
+                false, 200, 1000, 5000, 300, 24);
+        // Two due rows in the outbox
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenReturn(1L, 2L);
+        when(rs.getString("exchange")).thenReturn("exam.events");
+        when(rs.getString("routing_key")).thenReturn("snapshot.uploaded");
+        when(rs.getString("message_type")).thenReturn("com.example.exam.dto.SnapshotMessage");
+        when(rs.getString("payload")).thenReturn("{\"objectKey\":\"a\"}", "{\"objectKey\":\"b\"}");
+        when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<Object>>any(), eq(200))).thenAnswer(inv -> {
+            RowMapper<?> mapper = inv.getArgument(1);
+            return new ArrayList<>(List.of(mapper.mapRow(rs, 0), mapper.mapRow(rs, 1)));
+        });
+        when(rabbitTemplate.invoke(any())).thenAnswer(inv ->
+                ((RabbitOperations.OperationsCallback<?>) inv.getArgument(0)).doInRabbit(channel));
+    }
+
+    @Test
+    void relayBatch_confirmed_publishesAllThenWaitsOnceAndMarksSent() throws Exception {
+        // Act
+        int sent = outbox.relayBatch();
+
+        // Assert
+        assertThat(sent).isEqualTo(2);
+        ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        var order = inOrder(channel);
+        order.verify(channel, times(2)).send(eq("exam.events"), eq("snapshot.uploaded"), messages.capture());
+        order.verify(channel).waitForConfirmsOrDie(5000);
+        assertThat(messages.getAllValues()).extracting(m -> m.getMessageProperties().getMessageId())
+                .containsExactly("1", "2");
+        assertThat(messages.getValue().getMessageProperties().getHeaders())
+                .containsEntry("__TypeId__", "com.example.exam.dto.SnapshotMessage");
+        assertThat(executedSql()).singleElement().asString().contains("SET sent_at = now()");
+    }
+
+    @Test
+    void relayBatch_confirmTimeout_reschedulesBatchWithoutMarkingSent() throws Exception {
+        // Arrange
+        doThrow(new AmqpTimeoutException("no confirms")).when(channel).waitForConfirmsOrDie(5000);
+
+        // Act
+        int sent = outbox.relayBatch();
+
+        // Assert
+        assertThat(sent).isZero();
+        assertThat(executedSql()).singleElement().asString()
+                .contains("next_attempt_at")
+                .doesNotContain("sent_at = now()");
+    }
+
+    /**
+     * SQL of the statements run through jdbcTemplate.update(PreparedStatementCreator)
+     */
+    private List<String> executedSql() throws Exception {
+        ArgumentCaptor<PreparedStatementCreator> creators = ArgumentCaptor.forClass(PreparedStatementCreator.class);
+        verify(jdbcTemplate, atLeastOnce()).update(creators.capture());
+        Connection con = mock(Connection.class);
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        when(con.prepareStatement(sql.capture())).thenReturn(mock(PreparedStatement.class));
+        for (PreparedStatementCreator creator : creators.getAllValues()) {
+            creator.createPreparedStatement(con);
+        }
+        return sql.getAllValues();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.exam.service;
+
+import com.example.exam.config.RabbitMQConfig;
+import com.example.exam.dto.SnapshotMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SnapshotRetryRouterTest {
+
+    @Mock
+    RabbitTemplate rabbitTemplate;
+    @Mock
+    RabbitOperations channel;
+    @Mock
+    AmqpAdmin amqpAdmin;
+
+    SnapshotRetryRouter router;
+    SnapshotMessage message = new SnapshotMessage(UUID.randomUUID(), UUID.randomUUID(), "snap.jpg", 1L);
+
+    @BeforeEach
+    void setUp() {
+        router = new SnapshotRetryRouter(rabbitTemplate, amqpAdmin, new long[]{1000, 5000}, 4, 5000);
+        when(rabbitTemplate.invoke(any())).thenAnswer(inv ->
+                ((RabbitOperations.OperationsCallback<?>) inv.getArgument(0)).doInRabbit(channel));
+    }
+
+    @Test
+    void failed_routesByAttemptToDelayQueuesThenDeadLetters() throws Exception {
+        // Act: first delivery, second, third (past the last delay), fourth (= max-attempts)
+        router.failed(message, RabbitMQConfig.Lane.LIVE, null, new IllegalStateException("db down"));
+        router.failed(message, RabbitMQConfig.Lane.LIVE, 1, new IllegalStateException("db down"));
+        router.failed(message, RabbitMQConfig.Lane.LIVE, 2, new IllegalStateException("db down"));
+        router.failed(message, RabbitMQConfig.Lane.LIVE, 3, new IllegalStateException("db down"));
+
+        // Assert
+        var order = inOrder(channel);
+        order.verify(channel).convertAndSend(eq("exam.events"), eq("snapshot.process.retry.1000ms"), eq(message), any(MessagePostProcessor.class));
+        order.verify(channel).convertAndSend(eq("exam.events"), eq("snapshot.process.retry.5000ms"), eq(message), any(MessagePostProcessor.class));
+        order.verify(channel).convertAndSend(eq("exam.events"), eq("snapshot.process.retry.5000ms"), eq(message), any(MessagePostProcessor.class));
+        order.verify(channel).convertAndSend(eq("exam.events"), eq("snapshot.dead"), eq(message), any(MessagePostProcessor.class));
+        verify(channel, times(4)).waitForConfirmsOrDie(5000);
+    }
+
+    @Test
+    void failed_setsAttemptAndErrorHeaders() {
+        // Act
+        router.failed(message, RabbitMQConfig.Lane.BACKLOG, 1, new IllegalStateException("file missing"));
+
+        // Assert
+        ArgumentCaptor<MessagePostProcessor> headers = ArgumentCaptor.forClass(MessagePostProcessor.class);
+        verify(channel).convertAndSend(eq("exam.events"), eq("snapshot.process.backlog.retry.5000ms"), eq(message), headers.capture());
+        Message out = headers.getValue().postProcessMessage(new Message(new byte[0], new MessageProperties()));
+        assertThat(out.getMessageProperties().<Integer>getHeader(SnapshotRetryRouter.ATTEMPTS_HEADER)).isEqualTo(2);
+        assertThat(out.getMessageProperties().<String>getHeader(SnapshotRetryRouter.ERROR_HEADER))
+                .isEqualTo("IllegalStateException: file missing");
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.exam.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Deterministic webcam-like test images: plain background with 0..n cartoon frontal faces
+ * (skin-toned oval, dark eyes and brows, mouth). Used by detector tests and benchmarks.
+ */
+public final class SyntheticSnapshots {
+
+    private static final Color[] SKIN = {
+            new Color(224, 172, 140), new Color(198, 134, 96), new Color(241, 194, 160)
+    };
+
+    private SyntheticSnapshots() {}
+
+    /**
+     * @param faces number of faces, laid out side by side
+     * @param seed  varies background, skin tone and small position offsets
+     */
+    public static BufferedImage render(int width, int height, int faces, long seed) {
+        return render(width, height, faces, seed, null);
+    }
+
+    /**
+     * @param skin skin tone of every face, or null to pick one per face from the seed
+     */
+    public static BufferedImage render(int width, int height, int faces, long seed, Color skin) {
+        Random rnd = new Random(seed);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(new Color(40 + rnd.nextInt(40), 70 + rnd.nextInt(40), 120 + rnd.nextInt(60)));
+        g.fillRect(0, 0, width, height);
+        if (faces > 0) {
+            int slot = width / faces;
+            int faceW = Math.min(slot * 6 / 10, height * 45 / 100);
+            for (int i = 0; i < faces; i++) {
+                int cx = slot * i + slot / 2 + rnd.nextInt(Math.max(1, faceW / 10));
+                int cy = height / 2 + rnd.nextInt(Math.max(1, faceW / 10));
+                Color tone = SKIN[rnd.nextInt(SKIN.length)];
+                drawFace(g, cx, cy, faceW, skin != null ? skin : tone);
+            }
+        }
+        g.dispose();
+        return img;
+    }
+
+    private static void drawFace(Graphics2D g, int cx, int cy, int w, Color skin) {
+        int h = w * 13 / 10;
+        g.setColor(skin);
+        g.fillOval(cx - w / 2, cy - h / 2, w, h);
+
+        int eyeY = cy - h / 10;
+        int eyeDx = w * 22 / 100;
+        int eyeW = w * 18 / 100;
+        int eyeH = w * 9 / 100;
+        g.setColor(new Color(45, 35, 30));
+        g.fillOval(cx - eyeDx - eyeW / 2, eyeY - eyeH / 2, eyeW, eyeH);
+        g.fillOval(cx + eyeDx - eyeW / 2, eyeY - eyeH / 2, eyeW, eyeH);
+        // Brows
+        g.fillRect(cx - eyeDx - eyeW / 2, eyeY - eyeH * 2, eyeW, Math.max(1, eyeH / 2));
+        g.fillRect(cx + eyeDx - eyeW / 2, eyeY - eyeH * 2, eyeW, Math.max(1, eyeH / 2));
+
+        g.setColor(new Color(150, 60, 60));
+        g.fillOval(cx - w / 6, cy + h / 5, w / 3, Math.max(2, w / 12));
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.exam.service;
+
+import com.example.exam.model.Event;
+import com.example.exam.model.Incident;
+import com.example.exam.model.IncidentType;
+import com.example.exam.model.Session;
+import com.example.exam.repository.SessionRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import jakarta.websocket.RemoteEndpoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TelemetryHubTest {
+
+    @Mock
+    IngestService ingestService;
+    @Mock
+    RuleService ruleService;
+    @Mock
+    SessionStatusCache sessionCache;
+    @Mock
+    SessionRepository sessionRepository;
+    @Mock
+    jakarta.websocket.Session socket;
+    @Mock
+    RemoteEndpoint.Basic remote;
+
+    TelemetryHub hub;
+    UUID sessionId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        hub = new TelemetryHub(ingestService, ruleService, sessionCache, sessionRepository, new ObjectMapper(),
+                Validation.buildDefaultValidatorFactory().getValidator(), 2, 100);
+        lenient().when(socket.isOpen()).thenReturn(true);
+        lenient().when(socket.getBasicRemote()).thenReturn(remote);
+    }
+
+    @AfterEach
+    void tearDown() {
+        hub.shutdown();
+    }
+
+    @Test
+    void receive_ingestsFrameAcksAndEvaluatesRulesOnTheLane() throws Exception {
+        // Arrange: sessionId omitted in the frame, taken from the socket
+        UUID id = UUID.randomUUID();
+        List<Event> inserted = List.of(new Event());
+        when(ingestService.ingestEventItemsBulkWithoutRules(anyList()))
+                .thenReturn(new IngestService.ItemOutcomes(new UUID[]{id, null}, new boolean[]{true, false}, inserted));
+        Thread caller = Thread.currentThread();
+        List<Thread> evaluatedOn = new CopyOnWriteArrayList<>();
+        doAnswer(inv -> evaluatedOn.add(Thread.currentThread())).when(ruleService).evaluate(inserted);
+        String frame = "[{\"ts\":1,\"eventType\":\"TAB_SWITCH\",\"idempotencyKey\":\"a\"}," +
+                "{\"ts\":2,\"eventType\":\"BLUR\",\"idempotencyKey\":\"b\"}]";
+
+        // Act
+        hub.receive(sessionId, socket, frame);
+
+        // Assert
+        var order = inOrder(remote, ruleService);
+        order.verify(remote, timeout(2000)).sendText(contains("\"type\":\"ack\",\"created\":1,\"duplicates\":0,\"ids\":[\"" + id + "\",null]"));
+        order.verify(ruleService, timeout(2000)).evaluate(inserted);
+        assertThat(evaluatedOn).singleElement().isNotSameAs(caller)
+                .satisfies(t -> assertThat(t.getName()).startsWith("telemetry-lane-"));
+        verify(ingestService, never()).ingestEventItemsBulk(anyList());
+    }
+
+    @Test
+    void receive_invalidFrameIsRejectedWithoutIngest() throws Exception {
+        hub.receive(sessionId, socket, "{\"ts\":1,\"eventType\":\"TAB_SWITCH\"}");
+        hub.receive(sessionId, socket, "{\"sessionId\":\"" + UUID.randomUUID() + "\",\"ts\":1,\"eventType\":\"BLUR\",\"idempotencyKey\":\"k\"}");
+
+        verify(remote, timeout(2000)).sendText(contains("idempotencyKey"));
+        verify(remote, timeout(2000)).sendText(contains("another session"));
+        verifyNoInteractions(ingestService);
+    }
+
+    @Test
+    void onIncident_pushesToConnectedSocketsOfThatSession() throws Exception {
+        // Arrange
+        hub.opened(sessionId, socket);
+        Incident incident = new Incident();
+        incident.setSessionId(sessionId);
+        incident.setType(IncidentType.TAB_ABUSE);
+        incident.setTs(5L);
+        incident.setReason("11 tab switches in 5 minutes");
+        Incident other = new Incident();
+        other.setSessionId(UUID.randomUUID());
+
+        // Act
+        hub.onIncident(new IncidentRaised(incident));
+        hub.onIncident(new IncidentRaised(other));
+
+        // Assert
+        verify(remote, timeout(2000)).sendText(contains("\"incidentType\":\"TAB_ABUSE\""));
+        hub.closed(sessionId, socket);
+        assertThat(hub.connectedSessions()).isZero();
+    }
+
+    @Test
+    void authorize_requiresOwnerUnlessSupervisor() {
+        // Arrange
+        Session session = new Session();
+        session.setUserId("candidate-1");
+        when(sessionCache.accepts(sessionId)).thenReturn(true);
+        when(sessionRepository.findById(sessionId)).thenReturn(Optional.of(session));
+
+        // Act + Assert
+        assertThat(hub.authorize(sessionId, token("candidate-1", "ROLE_CANDIDATE"))).isNull();
+        assertThat(hub.authorize(sessionId, token("candidate-2", "ROLE_CANDIDATE"))).contains("another user");
+        assertThat(hub.authorize(sessionId, token("proctor", "ROLE_PROCTOR"))).isNull();
+        assertThat(hub.authorize(sessionId, null)).isNotNull();
+    }
+
+    @Test
+    void authorize_failsClosedWithoutAnOwningTokenSubject() {
+        // Arrange
+        when(sessionCache.accepts(sessionId)).thenReturn(true);
+        when(sessionRepository.findById(sessionId)).thenReturn(Optional.of(new Session()));
+        Principal notAJwt = new UsernamePasswordAuthenticationToken("candidate-1", null,
+                List.of(new SimpleGrantedAuthority("ROLE_CANDIDATE")));
+        Jwt noSubject = Jwt.withTokenValue("t").header("alg", "none").claim("authorities", List.of()).build();
+
+        // Act + Assert
+        assertThat(hub.authorize(sessionId, notAJwt)).contains("another user");
+        assertThat(hub.authorize(sessionId, () -> "candidate-1")).contains("another user");
+        // A session without an owner does not match a token without a subject
+        assertThat(hub.authorize(sessionId, new JwtAuthenticationToken(noSubject, List.of()))).contains("another user");
+    }
+
+    private static JwtAuthenticationToken token(String subject, String role) {
+        Jwt jwt = Jwt.withTokenValue("t").header("alg", "none").subject(subject).build();
+        return new JwtAuthenticationToken(jwt, List.of(new SimpleGrantedAuthority(role)));
+    }
+}